@@ -25,6 +25,7 @@ import com.google.gwt.user.client.Timer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -362,81 +363,165 @@ public final class EditorManager {
 
 
   /**
-   * This code used to send the contents of all changed files to the server
-   * in the same RPC transaction. However we are now sending them separately
-   * so that we can have more fine grained control over handling errors that
-   * happen only on one file. In particular, we need to handle the case where
-   * a trivial blocks workspace is attempting to be written over a non-trivial
-   * file.
+   * Saves the contents of the changed files, with one RPC per project. The
+   * server writes the files of a project in a single transaction and skips
+   * the ones whose content did not change.
    *
-   * If any unhandled errors occur while saving, the afterSavingFiles
-   * command will not be executed.  If filesWithContent is empty, the
-   * afterSavingFiles command is called immediately, not
-   * asynchronously.
+   * If the server refuses the save because a trivial blocks workspace would
+   * be written over a non-trivial file, nothing is written and the files of
+   * that project are saved again one at a time, so that the user can be
+   * asked about the blocks file without holding back the other files.
+   *
+   * The afterSavingFiles command is executed once, after all of the files
+   * have been saved or have failed to save. If filesWithContent is empty, it
+   * is called immediately, not asynchronously.
    *
    * @param filesWithContent  the files that need to be saved
    * @param afterSavingFiles  optional command to be executed after file
    *                          editors are saved.
    */
   private void saveMultipleFilesAtOnce(
-      final List<FileDescriptorWithContent> filesWithContent, final Command afterSavingFiles, final DateHolder dateHolder) {
+      final List<FileDescriptorWithContent> filesWithContent, final Command afterSavingFiles,
+      final DateHolder dateHolder) {
     if (filesWithContent.isEmpty()) {
       // No files needed saving.
       // Execute the afterSavingFiles command if one was given.
       if (afterSavingFiles != null) {
         afterSavingFiles.execute();
       }
+      return;
+    }
 
-    } else {
-      for (FileDescriptorWithContent fileDescriptor : filesWithContent ) {
-        final long projectId = fileDescriptor.getProjectId();
-        final String fileId = fileDescriptor.getFileId();
-        final String content = fileDescriptor.getContent();
-        Ode.CLog("Saving fileId " + fileId + " for projectId " + projectId);
-        Ode.getInstance().getProjectService().save2(Ode.getInstance().getSessionId(),
-          projectId, fileId, false, content, new OdeAsyncCallback<Long>(MESSAGES.saveErrorMultipleFiles()) {
+    // Group the files by project, keeping the order in which they were changed.
+    Map<Long, List<FileDescriptorWithContent>> filesByProject =
+        new LinkedHashMap<Long, List<FileDescriptorWithContent>>();
+    for (FileDescriptorWithContent fileDescriptor : filesWithContent) {
+      List<FileDescriptorWithContent> projectFiles =
+          filesByProject.get(fileDescriptor.getProjectId());
+      if (projectFiles == null) {
+        projectFiles = new ArrayList<FileDescriptorWithContent>();
+        filesByProject.put(fileDescriptor.getProjectId(), projectFiles);
+      }
+      projectFiles.add(fileDescriptor);
+    }
+
+    final Command afterSavingProject = countDown(filesByProject.size(), afterSavingFiles);
+    for (Map.Entry<Long, List<FileDescriptorWithContent>> entry : filesByProject.entrySet()) {
+      final long projectId = entry.getKey();
+      final List<FileDescriptorWithContent> projectFiles = entry.getValue();
+      Ode.CLog("Saving " + projectFiles.size() + " files for projectId " + projectId);
+      Ode.getInstance().getProjectService().saveFiles(Ode.getInstance().getSessionId(),
+          projectId, false, projectFiles,
+          new OdeAsyncCallback<Long>(MESSAGES.saveErrorMultipleFiles()) {
             @Override
             public void onSuccess(Long date) {
-              if (dateHolder.date != 0) {
-                // This sets the project modification time to that of one of
-                // the successful file saves. It doesn't really matter which
-                // file date we use, they will all be close. However it is important
-                // to use some files date because that will be based on the server's
-                // time. If we used the local clients time, then we may be off if the
-                // client's computer's time isn't set correctly.
-                dateHolder.date = date;
-                dateHolder.projectId = projectId;
-              }
-              if (afterSavingFiles != null) {
-                afterSavingFiles.execute();
-              }
+              setDate(dateHolder, projectId, date);
+              afterSavingProject.execute();
             }
             @Override
             public void onFailure(Throwable caught) {
-              // Here is where we handle BlocksTruncatedException
               if (caught instanceof BlocksTruncatedException) {
-                Ode.getInstance().blocksTruncatedDialog(projectId, fileId, content, this);
-              } else {
-                // We mark the file editor as dirty again because the save failed.
-                //
-                // Note: I considered re-scheduling the auto-save and decided against
-                // it. One reason we might be getting errors is due to a problem with
-                // the server. If a lot of clients start re-scheduling saves, this might
-                // make the situation worse due to the "thundering Herd!" So we compromise
-                // we mark the editors as dirty, so the next update by the user to any
-                // file will retry all of the non-saved files. The "Save Project" menu
-                // item will also re-attempt the failed I/O
-                if (pendingFileEditors.containsKey(fileId)) {
-                  dirtyFileEditors.add(pendingFileEditors.get(fileId));
-                }
-                super.onFailure(caught);
+                // Nothing was written. Save the files one at a time so that only the
+                // truncated blocks file needs the user's attention.
+                saveFilesOneAtATime(projectFiles, afterSavingProject, dateHolder);
+                return;
               }
-              if (afterSavingFiles != null) { // Need to call this to decrement the count
-                afterSavingFiles.execute();   // of files saved (or not in this case)
+              // See saveFilesOneAtATime for why the editors are only marked as dirty.
+              for (FileDescriptorWithContent fileDescriptor : projectFiles) {
+                markDirtyAfterFailure(fileDescriptor.getFileId());
               }
+              super.onFailure(caught);
+              afterSavingProject.execute();
             }
           });
-      }
     }
   }
+
+  /**
+   * Saves the contents of the given files with one RPC per file, so that
+   * errors that happen only on one file can be handled on their own. In
+   * particular, we need to handle the case where a trivial blocks workspace
+   * is attempting to be written over a non-trivial file.
+   *
+   * The afterSavingFiles command is executed once, after all of the files
+   * have been saved or have failed to save.
+   *
+   * @param filesWithContent  the files that need to be saved, which must not be empty
+   * @param afterSavingFiles  command to be executed after file editors are saved.
+   */
+  private void saveFilesOneAtATime(
+      final List<FileDescriptorWithContent> filesWithContent, final Command afterSavingFiles,
+      final DateHolder dateHolder) {
+    final Command afterSavingFile = countDown(filesWithContent.size(), afterSavingFiles);
+    for (FileDescriptorWithContent fileDescriptor : filesWithContent) {
+      final long projectId = fileDescriptor.getProjectId();
+      final String fileId = fileDescriptor.getFileId();
+      final String content = fileDescriptor.getContent();
+      Ode.CLog("Saving fileId " + fileId + " for projectId " + projectId);
+      Ode.getInstance().getProjectService().save2(Ode.getInstance().getSessionId(),
+        projectId, fileId, false, content, new OdeAsyncCallback<Long>(MESSAGES.saveErrorMultipleFiles()) {
+          @Override
+          public void onSuccess(Long date) {
+            setDate(dateHolder, projectId, date);
+            afterSavingFile.execute();
+          }
+          @Override
+          public void onFailure(Throwable caught) {
+            // Here is where we handle BlocksTruncatedException
+            if (caught instanceof BlocksTruncatedException) {
+              Ode.getInstance().blocksTruncatedDialog(projectId, fileId, content, this);
+            } else {
+              // We mark the file editor as dirty again because the save failed.
+              //
+              // Note: I considered re-scheduling the auto-save and decided against
+              // it. One reason we might be getting errors is due to a problem with
+              // the server. If a lot of clients start re-scheduling saves, this might
+              // make the situation worse due to the "thundering Herd!" So we compromise
+              // we mark the editors as dirty, so the next update by the user to any
+              // file will retry all of the non-saved files. The "Save Project" menu
+              // item will also re-attempt the failed I/O
+              markDirtyAfterFailure(fileId);
+              super.onFailure(caught);
+            }
+            afterSavingFile.execute(); // Need to call this to decrement the count
+                                       // of files saved (or not in this case)
+          }
+        });
+    }
+  }
+
+  private void setDate(DateHolder dateHolder, long projectId, long date) {
+    if (dateHolder.date == 0) {
+      // This sets the project modification time to that of one of
+      // the successful saves. It doesn't really matter which
+      // date we use, they will all be close. However it is important
+      // to use a date from the server because that will be based on the server's
+      // time. If we used the local clients time, then we may be off if the
+      // client's computer's time isn't set correctly.
+      dateHolder.date = date;
+      dateHolder.projectId = projectId;
+    }
+  }
+
+  private void markDirtyAfterFailure(String fileId) {
+    if (pendingFileEditors.containsKey(fileId)) {
+      dirtyFileEditors.add(pendingFileEditors.get(fileId));
+    }
+  }
+
+  /**
+   * Returns a command that executes the given command the count-th time it
+   * is executed, and does nothing the other times.
+   */
+  private static Command countDown(int count, final Command command) {
+    final AtomicInteger pending = new AtomicInteger(count);
+    return new Command() {
+      @Override
+      public void execute() {
+        if (pending.decrementAndGet() == 0 && command != null) {
+          command.execute();
+        }
+      }
+    };
+  }
 }
@@ -15,13 +15,13 @@ import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 
 import com.google.appinventor.shared.rpc.ServerLayout;
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
 import com.google.appinventor.shared.storage.StorageUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -105,6 +105,19 @@ public class DownloadServlet extends OdeServlet {
 
   private final FileExporter fileExporter = new FileExporterImpl();
 
+  /*
+   * A zip that is written straight to the response, rather than built in memory first.
+   */
+  private abstract static class ZipDownload {
+    final String fileName;
+
+    ZipDownload(String fileName) {
+      this.fileName = fileName;
+    }
+
+    abstract void write(OutputStream out) throws IOException;
+  }
+
   @Override
   public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
     // Set a default http header to avoid security vulnerabilities.
@@ -112,6 +125,7 @@ public class DownloadServlet extends OdeServlet {
     resp.setContentType(CONTENT_TYPE);
 
     RawFile downloadableFile = null;
+    ZipDownload downloadableZip = null;
 
     String userId = null;
 
@@ -139,17 +153,25 @@ public class DownloadServlet extends OdeServlet {
         String projectTitle = (uriComponents.length > PROJECT_TITLE_INDEX) ?
             uriComponents[PROJECT_TITLE_INDEX] : null;
         final boolean includeProjectHistory = true;
-        String zipName = (projectTitle == null) ? null :
-            StringUtils.normalizeForFilename(projectTitle) + ".aia";
         // If the requester is an Admin, we include any Yail files in the
         // project in the export
-        boolean includeYail = userInfoProvider.getIsAdmin();
-        boolean includeScreenShots = includeYail;
-        StorageIoInstanceHolder.getInstance().assertUserHasProject(userId, projectId);
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(userId,
-          projectId, includeProjectHistory, false, zipName, includeYail,
-          includeScreenShots, false, false);
-        downloadableFile = zipFile.getRawFile();
+        final boolean includeYail = userInfoProvider.getIsAdmin();
+        final boolean includeScreenShots = includeYail;
+        StorageIo storageIo = StorageIoInstanceHolder.getInstance();
+        storageIo.assertUserHasProject(userId, projectId);
+        // The name is sent before the zip, so it cannot come from the export
+        String zipName = (projectTitle == null) ?
+            storageIo.getProjectName(userId, projectId) + ".aia" :
+            StringUtils.normalizeForFilename(projectTitle) + ".aia";
+        final String exportUserId = userId;
+        final long exportProjectId = projectId;
+        downloadableZip = new ZipDownload(zipName) {
+          @Override
+          void write(OutputStream out) throws IOException {
+            fileExporter.writeProjectSourceZip(exportUserId, exportProjectId,
+                includeProjectHistory, false, includeYail, includeScreenShots, false, false, out);
+          }
+        };
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USER_PROJECT_SOURCE)) {
         if (!userInfoProvider.getIsAdmin()) {
@@ -160,7 +182,7 @@ public class DownloadServlet extends OdeServlet {
         uriComponents = uri.split("/", SPLIT_LIMIT_USER_PROJECT_SOURCE);
 
         String userIdOrEmail = uriComponents[USER_PROJECT_USERID_INDEX];
-        String projectUserId;
+        final String projectUserId;
         StorageIo storageIo = StorageIoInstanceHolder.getInstance();
         if (userIdOrEmail.contains("@")) {
           // email address
@@ -196,29 +218,55 @@ public class DownloadServlet extends OdeServlet {
             projectName = projectIdOrName;
           }
         }
+        // Checked before the zip is started, after which it cannot be answered with a 404
+        storageIo.assertUserHasProject(projectUserId, projectId);
         String zipName;
         if (!projectName.isEmpty()) {
           zipName = projectName + "_" + projectUserId + ".aia";
         } else {
           zipName = "u" + projectUserId + "_p" + projectId + ".aia";
         }
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(projectUserId,
-          projectId, /* include history*/ true, /* include keystore */ true, zipName, true, true, false, false);
-        downloadableFile = zipFile.getRawFile();
+        final long exportProjectId = projectId;
+        downloadableZip = new ZipDownload(zipName) {
+          @Override
+          void write(OutputStream out) throws IOException {
+            fileExporter.writeProjectSourceZip(projectUserId, exportProjectId,
+                /* include history*/ true, /* include keystore */ true, true, true, false, false,
+                out);
+          }
+        };
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_SELECTED_PROJECTS_SOURCE)) {
         String[] projectIdStrings = uriComponents[PROJECT_ID_INDEX].split("-");
-        List<Long> projectIds = new ArrayList<Long>();
-        for (String projectId : projectIdStrings) {
-          projectIds.add(Long.valueOf(projectId));
+        final List<Long> projectIds = new ArrayList<Long>();
+        StorageIo storageIo = StorageIoInstanceHolder.getInstance();
+        for (String projectIdString : projectIdStrings) {
+          long projectId = Long.parseLong(projectIdString);
+          // Checked before the zip is started, after which it cannot be answered with a 404
+          storageIo.assertUserHasProject(userId, projectId);
+          projectIds.add(projectId);
         }
-        ProjectSourceZip zipFile = fileExporter.exportSelectedProjectsSourceZip(
-          userId, "selected-projects.zip", projectIds);
-        downloadableFile = zipFile.getRawFile();
+        final String exportUserId = userId;
+        downloadableZip = new ZipDownload("selected-projects.zip") {
+          @Override
+          void write(OutputStream out) throws IOException {
+            fileExporter.writeSelectedProjectsSourceZip(exportUserId, projectIds, out);
+          }
+        };
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE)) {
-        // Download all project source files as a zip of zips.
-        ProjectSourceZip zipFile = fileExporter.exportAllProjectsSourceZip(
-            userId, "all-projects.zip");
-        downloadableFile = zipFile.getRawFile();
+        // Download all project source files as a zip of zips. The projects are listed before
+        // the zip is started, so that a user without projects gets an error rather than an
+        // empty download.
+        final List<Long> projectIds = StorageIoInstanceHolder.getInstance().getProjects(userId);
+        if (projectIds.isEmpty()) {
+          throw new IllegalArgumentException("No projects to download");
+        }
+        final String exportUserId = userId;
+        downloadableZip = new ZipDownload("all-projects.zip") {
+          @Override
+          void write(OutputStream out) throws IOException {
+            fileExporter.writeSelectedProjectsSourceZip(exportUserId, projectIds, out);
+          }
+        };
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_FILE)) {
         // Download a specific file.
@@ -272,15 +320,24 @@ public class DownloadServlet extends OdeServlet {
 
     resp.setStatus(statusCode);
 
-    if (statusCode == HttpServletResponse.SC_OK) {
+    if (downloadableZip != null) {
+      LOG.fine("Sending Zip!");
+      // The length is not known until the zip is written, so the response is chunked
+      setDownloadHeaders(req, resp, downloadableZip.fileName);
+      ServletOutputStream out = resp.getOutputStream();
+      try {
+        downloadableZip.write(out);
+      } catch (IllegalArgumentException e) {
+        // Thrown before anything is written, e.g., when there are no files to download
+        throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
+      }
+      out.close();
+    } else if (statusCode == HttpServletResponse.SC_OK) {
       LOG.fine("Sending File!");
       String fileName = downloadableFile.getFileName();
       byte[] content = downloadableFile.getContent();
       // Set http response information
-      resp.setHeader(
-        "content-disposition",
-        req.getParameter("inline") != null ? "inline" : "attachment" + "; filename=\"" + fileName + "\"");
-      resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+      setDownloadHeaders(req, resp, fileName);
       resp.setContentLength(content.length);
 
       // Attach download data
@@ -295,6 +352,14 @@ public class DownloadServlet extends OdeServlet {
     }
   }
 
+  private static void setDownloadHeaders(HttpServletRequest req, HttpServletResponse resp,
+      String fileName) {
+    resp.setHeader(
+      "content-disposition",
+      req.getParameter("inline") != null ? "inline" : "attachment" + "; filename=\"" + fileName + "\"");
+    resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+  }
+
   private static String byteArray2Hex(final byte[] hash) {
     Formatter formatter = new Formatter();
     for (byte b : hash) {
@@ -10,6 +10,7 @@ import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -59,29 +60,55 @@ public interface FileExporter {
     boolean fatalError, boolean forGallery) throws IOException;
 
   /**
-   * Exports projects selected by the user as a zip of zips.
+   * Writes the project source files as a zip to a stream, without holding
+   * the zip in memory.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param includeProjectHistory indicates whether to include a file
+   *        containing the project's history in the zip
+   * @param includeAndroidKeystore indicates whether to include the user's android.keystore file
+   * @param includeYail indicates whether to include the project's YAIL files
+   * @param includeScreenShots indicates whether to include the project's screenshots
+   * @param fatalError set to true to cause missing GCS file to throw exception
+   * @param forGallery indicates whether the project is exported for the gallery
+   * @param out the stream to write the zip to, which is left open
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no source files), in which case nothing is written
+   * @throws IOException if files cannot be read or written
+   */
+  void writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean fatalError, boolean forGallery, OutputStream out) throws IOException;
+
+  /**
+   * Writes projects selected by the user as a zip of zips to a stream,
+   * without holding the zip in memory.
    *
    * @param userId the userId
-   * @param zipName the desired name for the zip
    * @param projectIds the list of project ids corresponding to selected projects
-   * @return the name, contents, and number of files in the zip
+   * @param out the stream to write the zip to, which is left open
    * @throws IllegalArgumentException if download request cannot be fulfilled
-   *         (no projects)
-   * @throws IOException if files cannot be written
+   *         (no projects), in which case nothing is written
+   * @throws IOException if files cannot be read or written
    */
-  ProjectSourceZip exportSelectedProjectsSourceZip(String userId, String zipName, List<Long> projectIds) throws IOException;
+  void writeSelectedProjectsSourceZip(String userId, List<Long> projectIds, OutputStream out)
+      throws IOException;
 
   /**
-   * Exports all of the user's projects' source files as a zip of zips.
+   * Writes all of the user's projects' source files as a zip of zips to a
+   * stream, without holding the zip in memory.
    *
    * @param userId the userId
-   * @param zipName the desired name for the zip
-   * @return the name, contents, and number of files in the zip
+   * @param out the stream to write the zip to, which is left open
    * @throws IllegalArgumentException if download request cannot be fulfilled
-   *         (no projects)
-   * @throws IOException if files cannot be written
+   *         (no projects), in which case nothing is written
+   * @throws IOException if files cannot be read or written
    */
-  ProjectSourceZip exportAllProjectsSourceZip(String userId, String zipName) throws IOException;
+  void writeAllProjectsSourceZip(String userId, OutputStream out) throws IOException;
 
   /**
    * Exports a specific project file.
@@ -12,12 +12,13 @@ import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.storage.StorageUtil;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
@@ -71,45 +72,63 @@ public final class FileExporterImpl implements FileExporter {
   }
 
   @Override
-  public ProjectSourceZip exportSelectedProjectsSourceZip(String userId,
-      String zipName, List<Long> projectIds) throws IOException {
-      // Create a zip file for each project's sources.
+  public void writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean fatalError,
+    boolean forGallery,
+    OutputStream out) throws IOException {
+    storageIo.writeProjectSourceZip(userId, projectId, includeProjectHistory,
+      includeAndroidKeystore, includeYail, includeScreenShots, forGallery, fatalError, out);
+  }
+
+  @Override
+  public void writeSelectedProjectsSourceZip(String userId, List<Long> projectIds,
+      OutputStream out) throws IOException {
+    writeProjectsSourceZip(userId, projectIds, out);
+  }
+
+  @Override
+  public void writeAllProjectsSourceZip(String userId, OutputStream out) throws IOException {
+    writeProjectsSourceZip(userId, storageIo.getProjects(userId), out);
+  }
+
+  /*
+   * Writes a zip with an entry for each project, which holds the zip of the project's sources,
+   * and the user's keystore. Each project's zip is written straight into its entry, so that
+   * neither the projects' zips nor the whole zip are held in memory.
+   */
+  private void writeProjectsSourceZip(String userId, List<Long> projectIds,
+      OutputStream outputStream) throws IOException {
     if (projectIds.size() == 0) {
       throw new IllegalArgumentException("No projects to download");
     }
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
+    ZipOutputStream out = new ZipOutputStream(outputStream);
     int count = 0;
-    String metadata = "";
     for (Long projectId : projectIds) {
+      ProjectEntryOutputStream entry = new ProjectEntryOutputStream(out,
+          storageIo.getProjectName(userId, projectId) + ".aia");
       try {
-        ProjectSourceZip projectSourceZip =
-            exportProjectSourceZip(userId, projectId, false, false, null, false, false, false, false);
-        byte[] data = projectSourceZip.getContent();
-        String name = projectSourceZip.getFileName();
-
-        // If necessary, renae duplicate projects
-        while (true) {
-          try {
-            out.putNextEntry(new ZipEntry(name));
-            break;
-          } catch (IOException e) {
-            name = "duplicate-" + name;
-          }
-        }
-        metadata += projectSourceZip.getMetadata() + "\n";
-
-        out.write(data, 0, data.length);
+        // Note: We never include Yail files when exporting all source projects
+        // even for Admins. If you are an admin and want to debug a project, download
+        // it explicitly.
+        storageIo.writeProjectSourceZip(userId, projectId, false, false, false, false, false,
+            false, entry);
         out.closeEntry();
         count++;
       } catch (IllegalArgumentException e) {
         System.err.println("No files found for userid: " + userId +
             " for projectid: " + projectId);
       } catch (IOException e) {
+        if (entry.isStarted()) {
+          // Part of the project was already sent, so the zip cannot be completed
+          throw e;
+        }
         System.err.println("IOException while reading files found for userid: " +
             userId + " for projectid: " + projectId);
-        continue;
       }
     }
     if (count == 0) {
@@ -124,89 +143,63 @@ public final class FileExporterImpl implements FileExporter {
         out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
         out.write(androidKeystoreBytes, 0, androidKeystoreBytes.length);
         out.closeEntry();
-        count++;
       }
     }
 
-    out.close();
-
-    // Package the big zip file up as a ProjectSourceZip and return it.
-    byte[] content = zipFile.toByteArray();
-    ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
-    return projectSourceZip;
+    out.finish();
   }
 
-  @Override
-  public ProjectSourceZip exportAllProjectsSourceZip(String userId,
-      String zipName) throws IOException {
-    // Create a zip file for each project's sources.
-    List<Long> projectIds = storageIo.getProjects(userId);
-    if (projectIds.size() == 0) {
-      throw new IllegalArgumentException("No projects to download");
+  /*
+   * Writes to the entry of a project in a zip of zips. The entry is only started when the first
+   * byte is written, so that a project that turns out to have no files is left out.
+   */
+  private static final class ProjectEntryOutputStream extends OutputStream {
+    private final ZipOutputStream zip;
+    private final String name;
+    private boolean started = false;
+
+    ProjectEntryOutputStream(ZipOutputStream zip, String name) {
+      this.zip = zip;
+      this.name = name;
     }
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
-    int count = 0;
-    String metadata = "";
-    for (Long projectId : projectIds) {
-      try {
-        // Note: We never include Yail files when exporting all source projects
-        // even for Admins. If you are an admin and want to debug a project, download
-        // it explicitly.
-        ProjectSourceZip projectSourceZip =
-          exportProjectSourceZip(userId, projectId, false, false, null, false, false, false, false);
-        byte[] data = projectSourceZip.getContent();
-        String name = projectSourceZip.getFileName();
-
-        // If necessary, rename duplicate projects
-        while (true) {
-          try {
-            out.putNextEntry(new ZipEntry(name));
-            break;
-          } catch (IOException e) {
-            name = "duplicate-" + name;
-          }
-        }
-        metadata += projectSourceZip.getMetadata() + "\n";
-
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        count++;
-      } catch (IllegalArgumentException e) {
-        System.err.println("No files found for userid: " + userId +
-            " for projectid: " + projectId);
-        continue;
-      } catch (IOException e) {
-        System.err.println("IOException while reading files found for userid: " +
-            userId + " for projectid: " + projectId);
-        continue;
-      }
+    boolean isStarted() {
+      return started;
     }
-    if (count == 0) {
-      throw new IllegalArgumentException("No files to download");
+
+    @Override
+    public void write(int b) throws IOException {
+      start();
+      zip.write(b);
     }
 
-    List<String> userFiles = storageIo.getUserFiles(userId);
-    if (userFiles.contains(StorageUtil.ANDROID_KEYSTORE_FILENAME)) {
-      byte[] androidKeystoreBytes =
-          storageIo.downloadRawUserFile(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
-      if (androidKeystoreBytes.length > 0) {
-        out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
-        out.write(androidKeystoreBytes, 0, androidKeystoreBytes.length);
-        out.closeEntry();
-        count++;
-      }
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      start();
+      zip.write(b, off, len);
     }
 
-    out.close();
+    @Override
+    public void flush() throws IOException {
+      zip.flush();
+    }
 
-    // Package the big zip file up as a ProjectSourceZip and return it.
-    byte[] content = zipFile.toByteArray();
-    ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
-    return projectSourceZip;
+    private void start() throws IOException {
+      if (started) {
+        return;
+      }
+      // If necessary, rename duplicate projects
+      String entryName = name;
+      while (true) {
+        try {
+          zip.putNextEntry(new ZipEntry(entryName));
+          break;
+        } catch (ZipException e) {
+          entryName = "duplicate-" + entryName;
+        }
+      }
+      started = true;
+    }
   }
 
   @Override
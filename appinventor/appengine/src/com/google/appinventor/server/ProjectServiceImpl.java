@@ -45,6 +45,7 @@ import java.io.FileReader;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -305,9 +306,7 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public List<UserProject> getProjectInfos() {
-    String userId = userInfoProvider.getUserId();
-    List<Long> projectIds = storageIo.getProjects(userId);
-    return makeUserProjects(userId, projectIds);
+    return storageIo.getUserProjects(userInfoProvider.getUserId());
   }
 
   /**
@@ -680,15 +679,48 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
       BlocksTruncatedException {
     validateSessionId(sessionId);
     final String userId = userInfoProvider.getUserId();
-    long date = 0;
+    // Save the files of each project together
+    Map<Long, List<FileDescriptorWithContent>> filesByProject =
+        new LinkedHashMap<Long, List<FileDescriptorWithContent>>();
     for (FileDescriptorWithContent fileAndContent : filesAndContent) {
-     long projectId = fileAndContent.getProjectId();
-     date = getProjectRpcImpl(userId, projectId).
-         save(userId, projectId, fileAndContent.getFileId(), fileAndContent.getContent());
+      List<FileDescriptorWithContent> projectFiles =
+          filesByProject.get(fileAndContent.getProjectId());
+      if (projectFiles == null) {
+        projectFiles = new ArrayList<FileDescriptorWithContent>();
+        filesByProject.put(fileAndContent.getProjectId(), projectFiles);
+      }
+      projectFiles.add(fileAndContent);
+    }
+    long date = 0;
+    for (Map.Entry<Long, List<FileDescriptorWithContent>> entry : filesByProject.entrySet()) {
+      long projectId = entry.getKey();
+      date = getProjectRpcImpl(userId, projectId).saveFiles(userId, projectId, true,
+          entry.getValue());
     }
     return date;
   }
 
+  /**
+   * Saves the contents of several files of a project at once, in a single
+   * transaction. Files whose content did not change are not written.
+   *
+   * @param sessionId session id
+   * @param projectId  project ID
+   * @param force whether to write trivial (empty) blocks workspaces
+   * @param filesAndContent  list containing file descriptors of files of the
+   *                         project and their associated content
+   * @return modification date for project
+   */
+  @Override
+  public long saveFiles(String sessionId, long projectId, boolean force,
+      List<FileDescriptorWithContent> filesAndContent) throws InvalidSessionException,
+      BlocksTruncatedException {
+    validateSessionId(sessionId);
+    final String userId = userInfoProvider.getUserId();
+    return getProjectRpcImpl(userId, projectId).saveFiles(userId, projectId, force,
+        filesAndContent);
+  }
+
   @Override
   public RpcResult screenshot(String sessionId, long projectId, String fileId, String content)
     throws InvalidSessionException {
@@ -749,12 +781,6 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     return storageIo.getUserProject(userId, projectId);
   }
 
-  // Bulk fetch UserProjects -- efficiently get all project infos asked for
-  // using a minimum number of datastore API calls
-  private List<UserProject> makeUserProjects(String userId, List<Long> projectIds) {
-    return storageIo.getUserProjects(userId, projectIds);
-  }
-
   /*
    * Returns the RPC implementation for the given project type.
    */
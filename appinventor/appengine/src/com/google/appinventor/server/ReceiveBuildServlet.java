@@ -69,20 +69,23 @@ public class ReceiveBuildServlet extends OdeServlet {
           break;
         }
         String fileName = zipEntry.getName();
-        byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
         if (StorageUtil.ANDROID_KEYSTORE_FILENAME.equals(fileName)) {
           LOG.info("Saving android.keystore for user: " + userId);
           storageIo.addFilesToUser(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
-          storageIo.uploadRawUserFile(userId, fileName, fileBytes);
+          storageIo.uploadRawUserFile(userId, fileName,
+              ByteStreams.toByteArray(zipInputStream));
         } else if (fileName.equals("build.status")) {
+          byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
           int progress = Integer.parseInt((new String(fileBytes)).trim());
           LOG.info("Received a build.status file contents = " + progress);
           storageIo.storeBuildStatus(userId, projectId, progress);
         } else {
+          // Build outputs can be tens of megabytes, so they are streamed into storage. Saving
+          // them is idempotent, so the Build Server may safely send the same results again.
           String filePath = buildFileDirPath + "/" + fileName;
           LOG.info("Saving build output files: " + filePath);
           storageIo.addOutputFilesToProject(userId, projectId, filePath);
-          storageIo.uploadRawFileForce(projectId, filePath, userId, fileBytes);
+          storageIo.uploadRawFileForce(projectId, filePath, userId, zipInputStream);
           storageIo.storeBuildStatus(userId, projectId, 0); // Reset for the next build
         }
       }
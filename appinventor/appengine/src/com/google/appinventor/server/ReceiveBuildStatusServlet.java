@@ -0,0 +1,81 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appinventor.server.encryption.EncryptionException;
+import com.google.appinventor.server.project.utils.Security;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet for receiving the progress of a build from a Build Server.
+ *
+ * <p>The body of a request is the progress of the build, in percent, as plain text. This is much
+ * cheaper to send and to handle than the zipped build.status file that older Build Servers send
+ * to the {@link ReceiveBuildServlet}.
+ *
+ * <p>Like the {@link ReceiveBuildServlet}, this servlet does not require login. Requests contain
+ * an encrypted user and project ID as part of their URL.
+ */
+public class ReceiveBuildStatusServlet extends OdeServlet {
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(ReceiveBuildStatusServlet.class.getName());
+
+  // Progress reports are a few bytes long; anything larger is not one.
+  private static final int MAX_BODY_LENGTH = 64;
+
+  private final transient StorageIo storageIo = StorageIoInstanceHolder.getInstance();
+
+  @Override
+  public void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    // URIs for receivebuildstatus requests are structured as follows:
+    //   /<baseurl>/receivebuildstatus/encryptedUserAndProjectId
+    String uriComponents[] = req.getRequestURI().split("/", 4);
+    if (uriComponents.length < 4) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    String userId;
+    long projectId;
+    try {
+      userId = Security.decryptUserId(uriComponents[3]);
+      projectId = Security.decryptProjectId(uriComponents[3]);
+    } catch (EncryptionException e) {
+      throw CrashReport.createAndLogError(LOG, req, null, e);
+    }
+
+    if (req.getContentLength() > MAX_BODY_LENGTH) {
+      resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+    // The content length is unknown for chunked requests, so also bound what is read.
+    byte[] bytes = ByteStreams.toByteArray(
+        ByteStreams.limit(req.getInputStream(), MAX_BODY_LENGTH + 1));
+    if (bytes.length > MAX_BODY_LENGTH) {
+      resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+    String body = new String(bytes, "UTF-8");
+    int progress;
+    try {
+      progress = Integer.parseInt(body.trim());
+    } catch (NumberFormatException e) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    storageIo.storeBuildStatus(userId, projectId, progress);
+    resp.setStatus(HttpServletResponse.SC_OK);
+  }
+}
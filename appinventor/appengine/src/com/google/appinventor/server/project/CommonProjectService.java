@@ -11,6 +11,7 @@ import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.RpcResult;
 import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
 import com.google.appinventor.shared.rpc.project.ChecksumedFileException;
+import com.google.appinventor.shared.rpc.project.FileDescriptorWithContent;
 import com.google.appinventor.shared.rpc.project.NewProjectParameters;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.TextFile;
@@ -22,9 +23,12 @@ import com.google.appinventor.shared.util.Base64Util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The base class for classes that provide project services for a specific
@@ -302,6 +306,40 @@ public abstract class CommonProjectService {
     }
   }
 
+  /**
+   * Saves the contents of several files of a project at once. All of the
+   * files are written in a single transaction, with a single update of the
+   * project modification date, and files whose content did not change are
+   * not written. If the same file appears more than once, the last content
+   * is saved.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param force whether to write trivial (empty) blocks workspaces
+   * @param filesAndContent  the files of the project and their content
+   * @return modification date for project
+   * @throws BlocksTruncatedException if force is false and a blocks workspace
+   *         would be replaced by a trivial one, in which case no file is saved
+   */
+  public long saveFiles(String userId, long projectId, boolean force,
+      List<FileDescriptorWithContent> filesAndContent) throws BlocksTruncatedException {
+    Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+    for (FileDescriptorWithContent fileAndContent : filesAndContent) {
+      if (fileAndContent.getProjectId() != projectId) {
+        throw new IllegalArgumentException("File " + fileAndContent.getFileId()
+            + " is not in project " + projectId);
+      }
+      try {
+        contents.put(fileAndContent.getFileId(),
+            fileAndContent.getContent().getBytes(StorageUtil.DEFAULT_CHARSET));
+      } catch (UnsupportedEncodingException e) {
+        // Won't happen, every Java platform supports the default charset
+        throw new IllegalStateException(e);
+      }
+    }
+    return storageIo.uploadRawFiles(projectId, userId, force, contents);
+  }
+
   /**
    * Saves a screenshot of a current blocks editor. This is called from the client side
    * whenever the user leaves a blocks editor. The data is shipped to us in base64 encoding
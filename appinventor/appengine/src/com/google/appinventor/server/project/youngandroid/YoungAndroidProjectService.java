@@ -751,15 +751,16 @@ public final class YoungAndroidProjectService extends CommonProjectService {
   private String getBuildServerUrlStr(String userName, String userId,
     long projectId, boolean secondBuildserver, String fileName, boolean isAab)
       throws EncryptionException {
+    String encryptedIds = Security.encryptUserAndProjectId(userId, projectId);
     UriBuilder uriBuilder = new UriBuilder(
         "http://"
             + (secondBuildserver ? buildServerHost2.get() : buildServerHost.get())
             + "/buildserver/build-all-from-zip-async")
         .add("uname", userName)
         .add("callback", "http://" + getCurrentHost() + ServerLayout.ODE_BASEURL_NOAUTH +
-            ServerLayout.RECEIVE_BUILD_SERVLET + "/" +
-            Security.encryptUserAndProjectId(userId, projectId) + "/" +
-            fileName)
+            ServerLayout.RECEIVE_BUILD_SERVLET + "/" + encryptedIds + "/" + fileName)
+        .add("progress", "http://" + getCurrentHost() + ServerLayout.ODE_BASEURL_NOAUTH +
+            ServerLayout.RECEIVE_BUILD_STATUS_SERVLET + "/" + encryptedIds)
         .add("ext", isAab ? "aab" : "apk");
     if (sendGitVersion.get()) {
       uriBuilder.add("gitBuildVersion", GitBuildId.getVersion());
@@ -881,8 +882,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
   private String verifyProjectName(String userId, String projectName) {
     projectName = projectName.replace(" ", "_");
     int count = 0;
-    List<Long> projectIds = storageIo.getProjects(userId);
-    List<UserProject> projects = storageIo.getUserProjects(userId, projectIds);
+    List<UserProject> projects = storageIo.getUserProjects(userId);
     TreeSet<String> projectNames = new TreeSet();
     for (UserProject project : projects) {
       projectNames.add(project.getProjectName());
@@ -0,0 +1,160 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.memcache.MemcacheService;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A two level cache of the contents of project files kept in GCS or Blobstore.
+ *
+ * <p>The first level is a least recently used map in the memory of the instance, bounded by the
+ * total size of the contents it holds. The second level is memcache, which is shared by all
+ * instances. Entries are keyed by the project id, the file name and the version of the file.
+ * The version is stored in the {@link StoredData.FileData} of the file and changes every time
+ * its contents do, in the same transaction, so an entry is never stale: a file that changed is
+ * looked up under a new key, and the old entries are left to be evicted.</p>
+ *
+ * <p>Contents are shared by the cache and its callers, which must not modify them.</p>
+ */
+final class FileContentCache {
+
+  private static final Logger LOG = Logger.getLogger(FileContentCache.class.getName());
+
+  private static final String MEMCACHE_PREFIX = "filecontent:";
+
+  // Log the statistics of the cache after this many lookups
+  private static final long LOG_INTERVAL = 1000;
+
+  private final MemcacheService memcache;
+  private final long maxLocalBytes;
+  private final int maxFileBytes;
+
+  // All of the following are protected by this.
+  private final LinkedHashMap<String, byte[]> local =
+      new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+  private long localBytes = 0;
+
+  private final AtomicLong localHits = new AtomicLong();
+  private final AtomicLong memcacheHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  /**
+   * Creates a cache.
+   *
+   * @param memcache the memcache service, or null to only cache in the instance
+   * @param maxLocalBytes the maximum total size of the contents cached in the instance
+   * @param maxFileBytes the size above which the contents of a file are not cached, which must
+   *     be below the memcache limit on the size of a value
+   */
+  FileContentCache(MemcacheService memcache, long maxLocalBytes, int maxFileBytes) {
+    this.memcache = memcache;
+    this.maxLocalBytes = maxLocalBytes;
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  /**
+   * Looks up the contents of a version of a file.
+   *
+   * @return the contents, or null if they are not cached
+   */
+  byte[] get(long projectId, String fileName, long version) {
+    String key = key(projectId, fileName, version);
+    byte[] content;
+    synchronized (this) {
+      content = local.get(key);
+    }
+    if (content != null) {
+      localHits.incrementAndGet();
+    } else if (memcache != null && (content = (byte[]) memcache.get(key)) != null) {
+      memcacheHits.incrementAndGet();
+      putLocal(key, content);
+    } else {
+      misses.incrementAndGet();
+    }
+    if (content != null) {
+      bytesSaved.addAndGet(content.length);
+    }
+    long lookups = getLocalHits() + getMemcacheHits() + getMisses();
+    if (lookups % LOG_INTERVAL == 0) {
+      LOG.log(Level.INFO, "File content cache: " + lookups + " lookups, " + getLocalHits()
+          + " instance hits, " + getMemcacheHits() + " memcache hits, " + getMisses()
+          + " misses, " + getEvictions() + " evictions, " + getBytesSaved() + " bytes saved, "
+          + getLocalBytes() + " bytes in the instance");
+    }
+    return content;
+  }
+
+  /**
+   * Caches the contents of a version of a file.
+   */
+  void put(long projectId, String fileName, long version, byte[] content) {
+    if (content == null || content.length > maxFileBytes) {
+      return;
+    }
+    String key = key(projectId, fileName, version);
+    putLocal(key, content);
+    if (memcache != null) {
+      memcache.put(key, content);
+    }
+  }
+
+  long getLocalHits() {
+    return localHits.get();
+  }
+
+  long getMemcacheHits() {
+    return memcacheHits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of entries removed from the instance to stay within its limit
+   */
+  long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return the total size of the contents served from the cache instead of GCS or Blobstore
+   */
+  long getBytesSaved() {
+    return bytesSaved.get();
+  }
+
+  synchronized long getLocalBytes() {
+    return localBytes;
+  }
+
+  private synchronized void putLocal(String key, byte[] content) {
+    byte[] previous = local.put(key, content);
+    if (previous != null) {
+      localBytes -= previous.length;
+    }
+    localBytes += content.length;
+    Iterator<Map.Entry<String, byte[]>> it = local.entrySet().iterator();
+    while (localBytes > maxLocalBytes && it.hasNext()) {
+      localBytes -= it.next().getValue().length;
+      it.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private static String key(long projectId, String fileName, long version) {
+    return MEMCACHE_PREFIX + projectId + ":" + version + ":" + fileName;
+  }
+}
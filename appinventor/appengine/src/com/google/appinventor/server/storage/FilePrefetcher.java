@@ -0,0 +1,235 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads the contents of a list of files concurrently, ahead of a consumer that takes them one at
+ * a time, in the order of the list.
+ *
+ * <p>Reading the files of a project from GCS one after another pays the latency of GCS once per
+ * file. The prefetcher keeps up to a given number of reads in flight instead. Reads are started
+ * in the order of the list, so the file the consumer needs next is always being read or has been
+ * read already. New reads are not started while the files that were read but not yet taken hold
+ * more than a given number of bytes, which bounds the memory used by the files read ahead.</p>
+ *
+ * <p>The time taken by each read, and the time the consumer spent waiting, are recorded.</p>
+ *
+ * @param <T> the type that describes a file
+ */
+final class FilePrefetcher<T> implements Closeable {
+
+  /**
+   * Reads the contents of a file.
+   */
+  interface Loader<T> {
+    /**
+     * @return the contents of the file, or null if it has none
+     */
+    byte[] load(T file) throws IOException;
+  }
+
+  private final List<T> files;
+  private final Loader<T> loader;
+  private final ExecutorService executor;
+  private final int maxReads;
+  private final long maxBufferedBytes;
+
+  // All of the following are protected by this.
+  private final List<Future<byte[]>> reads = new ArrayList<Future<byte[]>>();
+  private int readsInFlight = 0;
+  private long bufferedBytes = 0;
+  private int taken = 0;
+  private boolean closed = false;
+  private long totalBytes = 0;
+  private long totalReadMillis = 0;
+  private long maxReadMillis = 0;
+  private long waitMillis = 0;
+
+  /**
+   * Creates a prefetcher and starts reading the first files.
+   *
+   * @param files the files, in the order they are taken
+   * @param loader reads a file
+   * @param executor runs the reads, which the prefetcher does not shut down
+   * @param maxReads the maximum number of reads in flight
+   * @param maxBufferedBytes the number of bytes read ahead, but not yet taken, above which no
+   *     new reads are started
+   */
+  FilePrefetcher(List<T> files, Loader<T> loader, ExecutorService executor, int maxReads,
+      long maxBufferedBytes) {
+    this.files = files;
+    this.loader = loader;
+    this.executor = executor;
+    this.maxReads = Math.max(1, maxReads);
+    this.maxBufferedBytes = maxBufferedBytes;
+    startReads();
+  }
+
+  /**
+   * Takes the contents of the next file, waiting for it to be read if needed.
+   *
+   * @return the contents of the file, or null if it has none
+   * @throws IOException if the file cannot be read
+   * @throws IndexOutOfBoundsException if all files have been taken
+   */
+  byte[] next() throws IOException {
+    startReads();
+    long start = System.currentTimeMillis();
+    T file;
+    byte[] data;
+    try {
+      Future<byte[]> read;
+      synchronized (this) {
+        if (taken >= files.size()) {
+          throw new IndexOutOfBoundsException("No more files");
+        }
+        file = files.get(taken);
+        // The read has been started, but may not have been handed to the executor yet
+        while (reads.size() <= taken || reads.get(taken) == null) {
+          if (closed) {
+            throw new IOException("Closed while reading " + file);
+          }
+          wait();
+        }
+        read = reads.get(taken);
+      }
+      data = read.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("Unable to read file", cause);
+    }
+    synchronized (this) {
+      waitMillis += System.currentTimeMillis() - start;
+      // Release the read, so that the contents can be collected once the consumer is done
+      reads.set(taken, null);
+      taken++;
+      bufferedBytes -= sizeOf(data);
+    }
+    startReads();
+    return data;
+  }
+
+  /**
+   * Cancels the reads that have not finished. Files that have not been taken can no longer be.
+   */
+  @Override
+  public void close() {
+    List<Future<byte[]>> pending;
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      pending = new ArrayList<Future<byte[]>>(reads.subList(taken, reads.size()));
+    }
+    for (Future<byte[]> read : pending) {
+      if (read != null) {
+        read.cancel(true);
+      }
+    }
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * @return the sum of the times taken by each read, in milliseconds
+   */
+  synchronized long getTotalReadMillis() {
+    return totalReadMillis;
+  }
+
+  synchronized long getMaxReadMillis() {
+    return maxReadMillis;
+  }
+
+  /**
+   * @return the time the consumer spent waiting for files to be read, in milliseconds
+   */
+  synchronized long getWaitMillis() {
+    return waitMillis;
+  }
+
+  /**
+   * Starts as many reads as the limits allow.
+   */
+  private void startReads() {
+    while (true) {
+      final T file;
+      final int index;
+      synchronized (this) {
+        if (closed || reads.size() >= files.size() || readsInFlight >= maxReads
+            || (bufferedBytes >= maxBufferedBytes && reads.size() > taken)) {
+          return;
+        }
+        index = reads.size();
+        file = files.get(index);
+        readsInFlight++;
+        // Reserve the slot, so that the read is in the list before it can finish
+        reads.add(null);
+      }
+      Future<byte[]> read;
+      try {
+        read = executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            long start = System.currentTimeMillis();
+            byte[] data = null;
+            try {
+              data = loader.load(file);
+              return data;
+            } finally {
+              loaded(sizeOf(data), System.currentTimeMillis() - start);
+              startReads();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          readsInFlight--;
+          closed = true;
+          notifyAll();
+        }
+        throw e;
+      }
+      synchronized (this) {
+        reads.set(index, read);
+        notifyAll();
+      }
+    }
+  }
+
+  private synchronized void loaded(long size, long millis) {
+    readsInFlight--;
+    bufferedBytes += size;
+    totalBytes += size;
+    totalReadMillis += millis;
+    maxReadMillis = Math.max(maxReadMillis, millis);
+  }
+
+  private static long sizeOf(byte[] data) {
+    return data == null ? 0 : data.length;
+  }
+}
@@ -6,6 +6,7 @@
 
 package com.google.appinventor.server.storage;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.appidentity.AppIdentityService;
 import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
 import com.google.appengine.api.appidentity.AppIdentityServiceFailureException;
@@ -33,6 +34,7 @@ import com.google.appinventor.server.storage.StoredData.FileData;
 import com.google.appinventor.server.storage.StoredData.MotdData;
 import com.google.appinventor.server.storage.StoredData.NonceData;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
+import com.google.appinventor.server.storage.StoredData.ProjectIndexData;
 import com.google.appinventor.server.storage.StoredData.PWData;
 import com.google.appinventor.server.storage.StoredData.SplashData;
 import com.google.appinventor.server.storage.StoredData.UserData;
@@ -62,6 +64,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 
@@ -85,15 +88,20 @@ import com.google.appengine.tools.cloudstorage.RetryParams;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -101,9 +109,12 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nullable;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -123,12 +134,20 @@ public class ObjectifyStorageIo implements  StorageIo {
   private static final long MOTD_ID = 1;
   private static final long ALLOWEDURL_ID = 1;
   private static final long SPLASHDATA_ID = 1;
+  static final long PROJECT_INDEX_ID = 1;
+
+  // Change this whenever the summaries in ProjectIndexData change
+  private static final int PROJECT_INDEX_FORMAT = 1;
 
   // TODO(user): need a way to modify this. Also, what is really a good value?
   private static final int MAX_JOB_RETRIES = 10;
 
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
+  // Contents of files in GCS and Blobstore, keyed by their version
+  private final FileContentCache fileContentCache = new FileContentCache(memcache,
+      FILE_CACHE_BYTES, FILE_CACHE_MAX_FILE_BYTES);
+
   private final GcsService gcsService;
 
   private static final String GCS_BUCKET_NAME;
@@ -137,6 +156,21 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   private static final boolean DEBUG = Flag.createFlag("appinventor.debugging", false).get();
 
+  // The number of project files read concurrently when exporting a project, and the number of
+  // bytes read ahead of the zip being written above which no new reads are started.
+  private static final int EXPORT_PREFETCH_THREADS =
+      Math.max(1, Flag.createFlag("export.prefetch.threads", 8).get());
+  private static final long EXPORT_PREFETCH_BYTES =
+      Flag.createFlag("export.prefetch.mb", 32).get() * 1024L * 1024L;
+
+  // The size of the contents of files in GCS and Blobstore cached in the memory of an instance,
+  // and the size above which the contents of a file are not cached. Memcache does not accept
+  // values over 1 MB.
+  private static final long FILE_CACHE_BYTES =
+      Flag.createFlag("filecache.instance.mb", 32).get() * 1024L * 1024L;
+  private static final int FILE_CACHE_MAX_FILE_BYTES =
+      Math.min(1000, Flag.createFlag("filecache.maxfile.kb", 512).get()) * 1024;
+
   // Use this class to define the work of a job that can be
   // retried. The "datastore" argument to run() is the Objectify
   // object for this job (created with
@@ -190,6 +224,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     ObjectifyService.register(UserData.class);
     ObjectifyService.register(ProjectData.class);
     ObjectifyService.register(UserProjectData.class);
+    ObjectifyService.register(ProjectIndexData.class);
     ObjectifyService.register(FileData.class);
     ObjectifyService.register(UserFileData.class);
     ObjectifyService.register(MotdData.class);
@@ -487,6 +522,7 @@ public class ObjectifyStorageIo implements  StorageIo {
   public long createProject(final String userId, final Project project,
       final String projectSettings) {
     final Result<Long> projectId = new Result<Long>();
+    final Result<UserProject> summary = new Result<UserProject>();
     final List<FileData> addedFiles = new ArrayList<FileData>();
 
     try {
@@ -508,6 +544,8 @@ public class ObjectifyStorageIo implements  StorageIo {
 
           assert pd.id != null;
           projectId.t = pd.id;
+          summary.t = new UserProject(pd.id, pd.name, pd.type, pd.dateCreated,
+              pd.dateModified, false);
           // After the job commits projectId.t should end up with the last value
           // we've gotten for pd.id (i.e. the one that committed if there
           // was no error).
@@ -560,6 +598,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           upd.state = UserProjectData.StateEnum.OPEN;
           upd.userKey = userKey(userId);
           datastore.put(upd);
+          putProjectIndexEntry(datastore, userId, summary.t);
         }
       }, true);
     } catch (ObjectifyException e) {
@@ -596,6 +635,8 @@ public class ObjectifyStorageIo implements  StorageIo {
     file.projectKey = projectKey;
     file.role = role;
     file.userId = userId;
+    file.version = nextVersion(file);
+    file.checksum = checksum(content);
     if (useGCSforFile(fileName, content.length)) {
       file.isGCS = true;
       file.gcsName = makeGCSfileName(fileName, projectKey.getId());
@@ -623,6 +664,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           // delete the UserProjectData object
           Key<UserData> userKey = userKey(userId);
           datastore.delete(userProjectKey(userKey, projectId));
+          removeProjectIndexEntry(datastore, userId, projectId);
           // delete any FileData objects associated with this project
         }
       }, true);
@@ -679,6 +721,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    updateProjectIndex(userId, projectId, 0, flag);
   }
 
   @Override
@@ -841,6 +884,236 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  @Override
+  public List<UserProject> getUserProjects(final String userId) {
+    final Result<JSONObject> projects = new Result<JSONObject>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          projects.t = findProjectIndex(datastore, userId);
+        }
+      }, false); // Transaction not needed, and we want the caching we get if we don't
+                 // use them.
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+    }
+    if (projects.t == null) {
+      return buildProjectIndex(userId);
+    }
+    List<UserProject> uProjects = Lists.newArrayListWithExpectedSize(projects.t.length());
+    Iterator<?> keys = projects.t.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      JSONObject project = projects.t.getJSONObject(key);
+      uProjects.add(new UserProject(Long.parseLong(key), project.getString("name"),
+          project.getString("type"), project.getLong("created"), project.getLong("modified"),
+          project.getBoolean("trash")));
+    }
+    Collections.sort(uProjects, new Comparator<UserProject>() {
+      @Override
+      public int compare(UserProject a, UserProject b) {
+        return Long.compare(a.getProjectId(), b.getProjectId());
+      }
+    });
+    return uProjects;
+  }
+
+  /**
+   * Builds the project index of a user from their UserProjectData and
+   * ProjectData. This is how users who had projects before the index was
+   * introduced get one, and how an index that could not be updated is
+   * recovered.
+   *
+   * <p>A project changed while the index is built finds no index to update,
+   * see updateProjectIndex, so the summaries are checked against the
+   * ProjectData before the index is stored, and again after, since a change
+   * committed in between would not have found the index either. If any
+   * differ, the index is not kept.</p>
+   */
+  private List<UserProject> buildProjectIndex(final String userId) {
+    final List<Long> projectIds = getProjects(userId);
+    final List<UserProject> uProjects = getUserProjects(userId, projectIds);
+    final JSONObject projects = new JSONObject();
+    for (UserProject uProject : uProjects) {
+      projects.put(Long.toString(uProject.getProjectId()), projectSummary(uProject));
+    }
+    final Result<Boolean> stored = new Result<Boolean>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          // Projects created or deleted since we looked are not in the index
+          List<Long> currentIds = new ArrayList<Long>();
+          for (UserProjectData upd : datastore.query(UserProjectData.class)
+              .ancestor(userKey(userId))) {
+            currentIds.add(upd.projectId);
+          }
+          stored.t = currentIds.equals(projectIds) && !projectsChanged(uProjects);
+          if (stored.t) {
+            putProjectIndex(datastore, userId, projects);
+          }
+        }
+      }, true);
+      if (stored.t && projectsChanged(uProjects)) {
+        ObjectifyService.begin().delete(projectIndexKey(userKey(userId)));
+      }
+    } catch (ObjectifyException e) {
+      // We will try again the next time the projects are listed
+      LOG.log(Level.WARNING, "Unable to store the project index of " + userId, e);
+    }
+    return uProjects;
+  }
+
+  /**
+   * Checks whether the summary of any of the given projects differs from its
+   * ProjectData. The ProjectData are in their own entity groups, so they are
+   * read outside of any transaction.
+   */
+  private boolean projectsChanged(List<UserProject> uProjects) {
+    List<Long> projectIds = new ArrayList<Long>(uProjects.size());
+    for (UserProject uProject : uProjects) {
+      projectIds.add(uProject.getProjectId());
+    }
+    Map<Long, ProjectData> current =
+        ObjectifyService.begin().get(ProjectData.class, projectIds);
+    for (UserProject uProject : uProjects) {
+      ProjectData pd = current.get(uProject.getProjectId());
+      if (pd == null || pd.dateModified != uProject.getDateModified()
+          || pd.projectMovedToTrashFlag != uProject.isInTrash()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records a change committed to a project in the project index of its
+   * owner. The index is in the user's entity group, so this cannot be done in
+   * the transaction that changed the project. If the index cannot be updated,
+   * it is deleted, so that it is built again the next time it is read.
+   *
+   * @param dateModified the date the project was modified, which replaces the
+   *        date in the index if it is later
+   * @param inTrash whether the project is in the trash, or null if that did
+   *        not change
+   */
+  private void updateProjectIndex(final String userId, final long projectId,
+      final long dateModified, @Nullable final Boolean inTrash) {
+    try {
+      // Most saves do not change the date modified, see updateProjectModDate,
+      // so check the cached index before starting a transaction
+      JSONObject cached = findProjectIndex(ObjectifyService.begin(), userId);
+      if (cached == null || !updateProjectSummary(cached, projectId, dateModified, inTrash)) {
+        return;
+      }
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          JSONObject projects = findProjectIndex(datastore, userId);
+          if (projects != null
+              && updateProjectSummary(projects, projectId, dateModified, inTrash)) {
+            putProjectIndex(datastore, userId, projects);
+          }
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      dropProjectIndex(userId, e);
+    } catch (RuntimeException e) {
+      dropProjectIndex(userId, e);
+    }
+  }
+
+  private void dropProjectIndex(String userId, Exception cause) {
+    LOG.log(Level.WARNING, "Unable to update the project index of " + userId, cause);
+    try {
+      ObjectifyService.begin().delete(projectIndexKey(userKey(userId)));
+    } catch (RuntimeException e) {
+      LOG.log(Level.SEVERE, "Unable to delete the project index of " + userId, e);
+    }
+  }
+
+  /**
+   * Applies a change to the summary of a project in a project index.
+   *
+   * @return true if the summary changed, false otherwise
+   */
+  private static boolean updateProjectSummary(JSONObject projects, long projectId,
+      long dateModified, Boolean inTrash) {
+    JSONObject project = projects.optJSONObject(Long.toString(projectId));
+    if (project == null) {      // The project was deleted
+      return false;
+    }
+    boolean changed = false;
+    if (dateModified > project.getLong("modified")) {
+      project.put("modified", dateModified);
+      changed = true;
+    }
+    if (inTrash != null && inTrash != project.getBoolean("trash")) {
+      project.put("trash", inTrash.booleanValue());
+      changed = true;
+    }
+    return changed;
+  }
+
+  /**
+   * Adds or replaces the summary of a project in the project index of a user,
+   * in a job on the user's entity group. Does nothing if the user has no index
+   * yet, since it is built from the projects the first time it is read.
+   */
+  private void putProjectIndexEntry(Objectify datastore, String userId, UserProject project) {
+    JSONObject projects = findProjectIndex(datastore, userId);
+    if (projects != null) {
+      projects.put(Long.toString(project.getProjectId()), projectSummary(project));
+      putProjectIndex(datastore, userId, projects);
+    }
+  }
+
+  private void removeProjectIndexEntry(Objectify datastore, String userId, long projectId) {
+    JSONObject projects = findProjectIndex(datastore, userId);
+    if (projects != null && projects.remove(Long.toString(projectId)) != null) {
+      putProjectIndex(datastore, userId, projects);
+    }
+  }
+
+  /**
+   * Reads the project index of a user.
+   *
+   * @return the summaries of the projects keyed by project id, or null if the
+   *         user has no usable index
+   */
+  private JSONObject findProjectIndex(Objectify datastore, String userId) {
+    ProjectIndexData index = datastore.find(projectIndexKey(userKey(userId)));
+    if (index == null || index.format != PROJECT_INDEX_FORMAT || index.projects == null) {
+      return null;
+    }
+    try {
+      return new JSONObject(index.projects);
+    } catch (JSONException e) {
+      LOG.log(Level.WARNING, "Ignoring the unreadable project index of " + userId, e);
+      return null;
+    }
+  }
+
+  private void putProjectIndex(Objectify datastore, String userId, JSONObject projects) {
+    ProjectIndexData index = new ProjectIndexData();
+    index.id = PROJECT_INDEX_ID;
+    index.userKey = userKey(userId);
+    index.format = PROJECT_INDEX_FORMAT;
+    index.projects = projects.toString();
+    datastore.put(index);
+  }
+
+  private static JSONObject projectSummary(UserProject project) {
+    JSONObject summary = new JSONObject();
+    summary.put("name", project.getProjectName());
+    summary.put("type", project.getProjectType());
+    summary.put("created", project.getDateCreated());
+    summary.put("modified", project.getDateModified());
+    summary.put("trash", project.isInTrash());
+    return summary;
+  }
+
   @Override
   public String getProjectName(final String userId, final long projectId) {
     final Result<String> projectName = new Result<String>();
@@ -1134,17 +1407,22 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public void addSourceFilesToProject(final String userId, final long projectId,
     final boolean changeModDate, final String... fileNames) {
+    final Result<Long> modTime = new Result<Long>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          addFilesToProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate, userId, fileNames);
+          modTime.t = addFilesToProject(datastore, projectId, FileData.RoleEnum.SOURCE,
+              changeModDate, userId, fileNames);
         }
       }, true);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      updateProjectIndex(userId, projectId, modTime.t, null);
+    }
   }
 
   @Override
@@ -1163,7 +1441,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
-  private void addFilesToProject(Objectify datastore, long projectId, FileData.RoleEnum role,
+  private long addFilesToProject(Objectify datastore, long projectId, FileData.RoleEnum role,
     boolean changeModDate, String userId, String... fileNames) {
     List<FileData> addedFiles = new ArrayList<FileData>();
     Key<ProjectData> projectKey = projectKey(projectId);
@@ -1176,8 +1454,9 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
     datastore.put(addedFiles); // batch put
     if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+      return updateProjectModDate(datastore, projectId);
     }
+    return 0;
   }
 
   private FileData createProjectFile(Objectify datastore, Key<ProjectData> projectKey,
@@ -1188,6 +1467,7 @@ public class ObjectifyStorageIo implements  StorageIo {
       fd.fileName = fileName;
       fd.projectKey = projectKey;
       fd.role = role;
+      fd.version = nextVersion(fd);
       return fd;
     } else if (!fd.role.equals(role)) {
       throw CrashReport.createAndLogError(LOG, null,
@@ -1200,17 +1480,22 @@ public class ObjectifyStorageIo implements  StorageIo {
   @Override
   public void removeSourceFilesFromProject(final String userId, final long projectId,
       final boolean changeModDate, final String... fileNames) {
+    final Result<Long> modTime = new Result<Long>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          removeFilesFromProject(datastore, projectId, FileData.RoleEnum.SOURCE, changeModDate, fileNames);
+          modTime.t = removeFilesFromProject(datastore, projectId, FileData.RoleEnum.SOURCE,
+              changeModDate, fileNames);
         }
       }, true);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      updateProjectIndex(userId, projectId, modTime.t, null);
+    }
   }
 
   @Override
@@ -1229,7 +1514,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
-  private void removeFilesFromProject(Objectify datastore, long projectId,
+  private long removeFilesFromProject(Objectify datastore, long projectId,
       FileData.RoleEnum role, boolean changeModDate, String... fileNames) {
     Key<ProjectData> projectKey = projectKey(projectId);
     List<Key<FileData>> filesToRemove = new ArrayList<Key<FileData>>();
@@ -1249,8 +1534,9 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
     datastore.delete(filesToRemove);  // batch delete
     if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+      return updateProjectModDate(datastore, projectId);
     }
+    return 0;
   }
 
   @Override
@@ -1357,118 +1643,286 @@ public class ObjectifyStorageIo implements  StorageIo {
       final boolean force, final byte[] content) throws BlocksTruncatedException {
     validateGCS();
     final Result<Long> modTime = new Result<Long>();
+    final Result<Long> version = new Result<Long>();
     final boolean useGCS = useGCSforFile(fileName, content.length);
 
-    final boolean considerBackup = (fileName.contains("src/") &&
-      (fileName.endsWith(".bky") || fileName.endsWith(".scm")));
-
     try {
       runJobWithRetries(new JobRetryHelper() {
         FileData fd;
 
         @Override
         public void run(Objectify datastore) throws ObjectifyException {
+          // Read the file in the transaction, and not from memcache, so that its version
+          // is the one the update replaces
           Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
-          fd = (FileData) memcache.get(key.getString());
-          if (fd == null) {
-            fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
-          } else {
-            if (DEBUG) {
-              LOG.log(Level.INFO, "Fetched " + key.getString() + " from memcache.");
+          fd = findFileForUpload(datastore, datastore.find(key), projectId, fileName, userId);
+          checkUploadTruncation(fd, fileName, force, content);
+          writeFileContent(fd, projectId, fileName, userId, content);
+          version.t = fd.version;
+          datastore.put(fd);
+          memcache.put(key.getString(), fd); // Store the updated data in memcache
+          modTime.t = updateProjectModDate(datastore, projectId);
+        }
+      }, true); // The version of the file must change with its content
+
+    } catch (ObjectifyException e) {
+      if (e.getMessage().startsWith("Blocks")) { // Convert Exception
+        throw new BlocksTruncatedException();
+      }
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    if (useGCS) {
+      // The file is likely to be read again soon, when the project is reopened or built
+      fileContentCache.put(projectId, fileName, version.t, content);
+    }
+    updateProjectIndex(userId, projectId, modTime.t, null);
+    return modTime.t;
+  }
+
+  @Override
+  public long uploadRawFiles(final long projectId, final String userId, final boolean force,
+      final Map<String, byte[]> contents) throws BlocksTruncatedException {
+    validateGCS();
+    final Result<Long> modTime = new Result<Long>();
+    final Map<String, FileData> written = new HashMap<String, FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException {
+          written.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<Key<FileData>> keys = new ArrayList<Key<FileData>>();
+          for (String fileName : contents.keySet()) {
+            keys.add(projectFileKey(projectKey, fileName));
+          }
+          Map<Key<FileData>, FileData> found = datastore.get(keys);
+          // Check all of the files before writing any of them to GCS
+          Map<String, FileData> changed = new LinkedHashMap<String, FileData>();
+          for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            String fileName = entry.getKey();
+            FileData fd = findFileForUpload(datastore,
+                found.get(projectFileKey(projectKey, fileName)), projectId, fileName, userId);
+            if (!hasContent(fd, entry.getValue())) {
+              checkUploadTruncation(fd, fileName, force, entry.getValue());
+              changed.put(fileName, fd);
             }
           }
-
-          // <Screen>.yail files are missing when user converts AI1 project to AI2
-          // instead of blowing up, just create a <Screen>.yail file
-          if (fd == null && (fileName.endsWith(".yail") || (fileName.endsWith(".png")))){
-            fd = createProjectFile(datastore, projectKey(projectId), FileData.RoleEnum.SOURCE, fileName);
-            fd.userId = userId;
+          if (changed.isEmpty()) {
+            ProjectData pd = datastore.find(projectKey);
+            modTime.t = pd == null ? 0 : pd.dateModified;
+            return;
           }
+          for (Map.Entry<String, FileData> entry : changed.entrySet()) {
+            writeFileContent(entry.getValue(), projectId, entry.getKey(), userId,
+                contents.get(entry.getKey()));
+          }
+          datastore.put(changed.values());
+          for (FileData fd : changed.values()) {
+            memcache.put(projectFileKey(projectKey, fd.fileName).getString(), fd);
+          }
+          modTime.t = updateProjectModDate(datastore, projectId);
+          written.putAll(changed);
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      if (e.getMessage().startsWith("Blocks")) { // Convert Exception
+        throw new BlocksTruncatedException();
+      }
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, contents.keySet().toString()), e);
+    }
+    for (FileData fd : written.values()) {
+      if (isTrue(fd.isGCS)) {
+        fileContentCache.put(projectId, fd.fileName, fd.version, contents.get(fd.fileName));
+      }
+    }
+    if (!written.isEmpty()) {
+      updateProjectIndex(userId, projectId, modTime.t, null);
+    }
+    if (DEBUG) {
+      LOG.log(Level.INFO, "uploadRawFiles: wrote " + written.size() + " of " + contents.size()
+          + " files of project " + projectId);
+    }
+    return modTime.t;
+  }
 
-          Preconditions.checkState(fd != null);
+  /**
+   * Returns the file that an upload replaces the content of, creating it if
+   * needed, after checking that the user owns it.
+   *
+   * @param fd the file as read in the upload's job, or null if it does not exist
+   */
+  private FileData findFileForUpload(Objectify datastore, FileData fd, long projectId,
+      String fileName, String userId) {
+    // <Screen>.yail files are missing when user converts AI1 project to AI2
+    // instead of blowing up, just create a <Screen>.yail file
+    if (fd == null && (fileName.endsWith(".yail") || (fileName.endsWith(".png")))){
+      fd = createProjectFile(datastore, projectKey(projectId), FileData.RoleEnum.SOURCE, fileName);
+      fd.userId = userId;
+    }
+
+    Preconditions.checkState(fd != null);
+
+    if (fd.userId != null && !fd.userId.equals("")) {
+      if (!fd.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+      }
+    }
+    return fd;
+  }
 
-          if (fd.userId != null && !fd.userId.equals("")) {
-            if (!fd.userId.equals(userId)) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectUserProjectErrorInfo(userId, projectId),
-                new UnauthorizedAccessException(userId, projectId, null));
-            }
-          }
+  private void checkUploadTruncation(FileData fd, String fileName, boolean force,
+      byte[] content) throws ObjectifyException {
+    if ((content.length < 125) && (fileName.endsWith(".bky"))) { // Likely this is an empty blocks workspace
+      if (!force) {            // force is true if we *really* want to save it!
+        checkForBlocksTruncation(fd); // See if we had previous content and throw and exception if so
+      }
+    }
+  }
 
-          if ((content.length < 125) && (fileName.endsWith(".bky"))) { // Likely this is an empty blocks workspace
-            if (!force) {            // force is true if we *really* want to save it!
-              checkForBlocksTruncation(fd); // See if we had previous content and throw and exception if so
-            }
-          }
+  /**
+   * Returns whether a file already has the given content, using the checksum
+   * of content written since checksums were introduced.
+   */
+  private boolean hasContent(FileData fd, byte[] content) {
+    if (fd.checksum != null) {
+      return fd.checksum.equals(checksum(content));
+    }
+    return !fd.isBlob && !isTrue(fd.isGCS) && fd.content != null
+        && Arrays.equals(fd.content, content);
+  }
 
-          if (useGCS) {
-            fd.isGCS = true;
-            fd.gcsName = makeGCSfileName(fileName, projectId);
-            try {
-              GcsOutputChannel outputChannel =
-                gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName), GcsFileOptions.getDefaultInstance());
-              outputChannel.write(ByteBuffer.wrap(content));
-              outputChannel.close();
-            } catch (IOException e) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-            }
-            // If the content was previously stored in the datastore, clear it out.
-            fd.content = null;
-            fd.isBlob = false;  // in case we are converting from a blob
-            fd.blobstorePath = null;
-          } else {
-            if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
-              try {             // and is now stored in the data store
-                gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName));
-              } catch (IOException e) {
-                throw CrashReport.createAndLogError(LOG, null,
-                  collectProjectErrorInfo(userId, projectId, fileName), e);
-              }
-              fd.isGCS = false;
-              fd.gcsName = null;
-            }
-            // Note, Don't have to do anything if the file was in the
-            // Blobstore and shrank because the code above (3 lines
-            // into the function) already handles removing the old
-            // contents from the Blobstore.
-            fd.isBlob = false;
-            fd.blobstorePath = null;
-            fd.content = content;
-          }
-          if (considerBackup) {
-            if ((fd.lastBackup + TWENTYFOURHOURS) < System.currentTimeMillis()) {
-              try {
-                String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup", projectId);
-                GcsOutputChannel outputChannel =
-                    gcsService.createOrReplace((new GcsFilename(GCS_BUCKET_NAME, gcsName)), GcsFileOptions.getDefaultInstance());
-                outputChannel.write(ByteBuffer.wrap(content));
-                outputChannel.close();
-                fd.lastBackup = System.currentTimeMillis();
-              } catch (IOException e) {
-                throw CrashReport.createAndLogError(LOG, null,
-                    collectProjectErrorInfo(userId, projectId, fileName + "(backup)"), e);
-              }
-            }
-          }
-          // Old file not marked with ownership, mark it now
+  private static String checksum(byte[] content) {
+    return Hashing.sha256().hashBytes(content).toString();
+  }
+
+  /**
+   * Stores new content for a file in a job on the project's entity group,
+   * writing it to GCS if the file belongs there. The caller puts the FileData.
+   */
+  private void writeFileContent(FileData fd, long projectId, String fileName, String userId,
+      byte[] content) {
+    final boolean useGCS = useGCSforFile(fileName, content.length);
+
+    final boolean considerBackup = (fileName.contains("src/") &&
+      (fileName.endsWith(".bky") || fileName.endsWith(".scm")));
+
+    if (useGCS) {
+      fd.isGCS = true;
+      fd.gcsName = makeGCSfileName(fileName, projectId);
+      try {
+        GcsOutputChannel outputChannel =
+          gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName), GcsFileOptions.getDefaultInstance());
+        outputChannel.write(ByteBuffer.wrap(content));
+        outputChannel.close();
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+      // If the content was previously stored in the datastore, clear it out.
+      fd.content = null;
+      fd.isBlob = false;  // in case we are converting from a blob
+      fd.blobstorePath = null;
+    } else {
+      if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
+        try {             // and is now stored in the data store
+          gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, fd.gcsName));
+        } catch (IOException e) {
+          throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+        }
+        fd.isGCS = false;
+        fd.gcsName = null;
+      }
+      // Note, Don't have to do anything if the file was in the
+      // Blobstore and shrank because the code above (3 lines
+      // into the function) already handles removing the old
+      // contents from the Blobstore.
+      fd.isBlob = false;
+      fd.blobstorePath = null;
+      fd.content = content;
+    }
+    if (considerBackup) {
+      if ((fd.lastBackup + TWENTYFOURHOURS) < System.currentTimeMillis()) {
+        try {
+          String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup", projectId);
+          GcsOutputChannel outputChannel =
+              gcsService.createOrReplace((new GcsFilename(GCS_BUCKET_NAME, gcsName)), GcsFileOptions.getDefaultInstance());
+          outputChannel.write(ByteBuffer.wrap(content));
+          outputChannel.close();
+          fd.lastBackup = System.currentTimeMillis();
+        } catch (IOException e) {
+          throw CrashReport.createAndLogError(LOG, null,
+              collectProjectErrorInfo(userId, projectId, fileName + "(backup)"), e);
+        }
+      }
+    }
+    // Old file not marked with ownership, mark it now
+    if (fd.userId == null || fd.userId.equals("")) {
+      fd.userId = userId;
+    }
+    fd.checksum = checksum(content);
+    fd.version = nextVersion(fd);
+  }
+
+  @Override
+  public long uploadRawFileForce(final long projectId, final String fileName,
+      final String userId, InputStream content) throws IOException {
+    if (!useGCSforFile(fileName, 0)) {
+      // Small files are kept in the datastore, which needs all of the content at once
+      return uploadRawFileForce(projectId, fileName, userId, ByteStreams.toByteArray(content));
+    }
+    validateGCS();
+    final Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
+    FileData existing = ObjectifyService.begin().find(key);
+    if (existing != null && existing.userId != null && !existing.userId.equals("")
+        && !existing.userId.equals(userId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+
+    // Copy the content into GCS as it arrives, so that it is never all in memory
+    final String gcsName = makeGCSfileName(fileName, projectId);
+    GcsOutputChannel outputChannel = gcsService.createOrReplace(
+        new GcsFilename(GCS_BUCKET_NAME, gcsName), GcsFileOptions.getDefaultInstance());
+    OutputStream out = Channels.newOutputStream(outputChannel);
+    try {
+      ByteStreams.copy(content, out);
+    } finally {
+      out.close();
+    }
+
+    final Result<Long> modTime = new Result<Long>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException {
+          FileData fd = datastore.find(key);
+          Preconditions.checkState(fd != null);
+          fd.isGCS = true;
+          fd.gcsName = gcsName;
+          fd.content = null;
+          fd.isBlob = false;
+          fd.blobstorePath = null;
           if (fd.userId == null || fd.userId.equals("")) {
             fd.userId = userId;
           }
+          fd.checksum = null;   // The content was never all in memory
+          fd.version = nextVersion(fd);
           datastore.put(fd);
           memcache.put(key.getString(), fd); // Store the updated data in memcache
           modTime.t = updateProjectModDate(datastore, projectId);
         }
-      }, false); // Use transaction for blobstore, otherwise we don't need one
-                 // and without one the caching code comes into play.
-
+      }, true);
     } catch (ObjectifyException e) {
-      if (e.getMessage().startsWith("Blocks")) { // Convert Exception
-        throw new BlocksTruncatedException();
-      }
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    updateProjectIndex(userId, projectId, modTime.t, null);
     return modTime.t;
   }
 
@@ -1548,6 +2002,9 @@ public class ObjectifyStorageIo implements  StorageIo {
         LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
       }
     }
+    if (modTime.t != null) {
+      updateProjectIndex(userId, projectId, modTime.t, null);
+    }
     return (modTime.t == null) ? 0 : modTime.t;
   }
 
@@ -1617,7 +2074,13 @@ public class ObjectifyStorageIo implements  StorageIo {
             new UnauthorizedAccessException(userId, projectId, null));
         }
       }
-      if (isTrue(fileData.isGCS)) {     // It's in the Cloud Store
+      byte[] cached = null;
+      if (isTrue(fileData.isGCS) || fileData.isBlob) {
+        cached = fileContentCache.get(projectId, fileName, fileData.version);
+      }
+      if (cached != null) {
+        result.t = cached;
+      } else if (isTrue(fileData.isGCS)) {     // It's in the Cloud Store
         try {
           int count;
           boolean npfHappened = false;
@@ -1692,6 +2155,10 @@ public class ObjectifyStorageIo implements  StorageIo {
           result.t = fileData.content;
         }
       }
+      if (cached == null && (isTrue(fileData.isGCS) || fileData.isBlob)
+          && result.t.length > 0) {
+        fileContentCache.put(projectId, fileName, fileData.version, result.t);
+      }
     } else {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName),
@@ -1738,6 +2205,50 @@ public class ObjectifyStorageIo implements  StorageIo {
     final boolean includeScreenShots,
     final boolean forGallery,
     final boolean fatalError) throws IOException {
+    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
+    Result<String> projectName = new Result<String>();
+    int fileCount = writeProjectSourceZip(userId, projectId, includeProjectHistory,
+        includeAndroidKeystore, includeYail, includeScreenShots, forGallery, fatalError, zipFile,
+        projectName);
+    if (zipName == null) {
+      zipName = projectName.t + ".aia";
+    }
+    ProjectSourceZip projectSourceZip =
+        new ProjectSourceZip(zipName, zipFile.toByteArray(), fileCount);
+    projectSourceZip.setMetadata(projectName.t);
+    return projectSourceZip;
+  }
+
+  @Override
+  public int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean forGallery,
+    boolean fatalError,
+    OutputStream outputStream) throws IOException {
+    return writeProjectSourceZip(userId, projectId, includeProjectHistory,
+        includeAndroidKeystore, includeYail, includeScreenShots, forGallery, fatalError,
+        outputStream, new Result<String>());
+  }
+
+  /**
+   * Writes project files as a zip archive to a stream, which is left open. Nothing is written if
+   * the project has no files to export.
+   *
+   * @param projectName receives the name of the project
+   * @return the number of files in the archive
+   */
+  private int writeProjectSourceZip(final String userId, final long projectId,
+    final boolean includeProjectHistory,
+    final boolean includeAndroidKeystore,
+    final boolean includeYail,
+    final boolean includeScreenShots,
+    final boolean forGallery,
+    final boolean fatalError,
+    OutputStream outputStream,
+    final Result<String> projectName) throws IOException {
     final boolean forBuildserver = includeAndroidKeystore && includeYail;
     validateGCS();
     final Result<Integer> fileCount = new Result<Integer>();
@@ -1749,13 +2260,13 @@ public class ObjectifyStorageIo implements  StorageIo {
     // to avoid problems reading blobs in a transaction with the wrong
     // entity group.
     final List<FileData> fileData = new ArrayList<FileData>();
-    final Result<String> projectName = new Result<String>();
     final Map<String, Integer> screens = new HashMap<String, Integer>();
     projectName.t = null;
     String fileName = null;
 
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    final ZipOutputStream out = new ZipOutputStream(zipFile);
+    // Entries are written to the stream as they are read, so that the archive is never held in
+    // memory. The zip is only finished, not closed, since the stream belongs to the caller.
+    final ZipOutputStream out = new ZipOutputStream(outputStream);
     out.setComment("Built with MIT App Inventor");
 
     try {
@@ -1821,87 +2332,41 @@ public class ObjectifyStorageIo implements  StorageIo {
         throw error;
       }
       // Process the file contents outside of the job since we can't read
-      // blobs in the job.
-      for (FileData fd : fileData) {
-        fileName = fd.fileName;
-        byte[] data = null;
-        if (fd.isBlob) {
-          try {
-            if (fd.blobKey == null) {
-              throw new BlobReadException("blobKey is null");
-            }
-            data = getBlobstoreBytes(fd.blobKey);
-          } catch (BlobReadException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-          }
-        } else if (isTrue(fd.isGCS)) {
-          try {
-            int count;
-            boolean npfHappened = false;
-            boolean recovered = false;
-            for (count = 0; count < 5; count++) {
-              GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fd.gcsName);
-              int bytesRead = 0;
-              int fileSize = 0;
-              ByteBuffer resultBuffer;
-              try {
-                fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-                resultBuffer = ByteBuffer.allocate(fileSize);
-                GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-                try {
-                  while (bytesRead < fileSize) {
-                    bytesRead += readChannel.read(resultBuffer);
-                    if (bytesRead < fileSize) {
-                      if (DEBUG) {
-                        LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
-                      }
-                    }
-                  }
-                  recovered = true;
-                  data = resultBuffer.array();
-                  break;        // We got the data, break out of the loop!
-                } finally {
-                  readChannel.close();
-                }
-              } catch (NullPointerException e) {
-                // This happens if the object in GCS is non-existent, which would happen
-                // when people uploaded a zero length object. As of this change, we now
-                // store zero length objects into GCS, but there are plenty of older objects
-                // that are missing in GCS.
-                LOG.log(Level.WARNING, "exportProjectFile: NPF recorded for " + fd.gcsName);
-                npfHappened = true;
-                resultBuffer = ByteBuffer.allocate(0);
-                data = resultBuffer.array();
-              }
-            }
-
-            // report out on how things went above
-            if (npfHappened) {    // We lost at least once
-              if (recovered) {
-                LOG.log(Level.WARNING, "recovered from NPF in exportProjectFile filename = " + fd.gcsName +
-                  " count = " + count);
-              } else {
-                LOG.log(Level.WARNING, "FATAL NPF in exportProjectFile filename = " + fd.gcsName);
-                if (fatalError) {
-                  throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
-                }
-              }
+      // blobs in the job. Files in GCS and Blobstore are read concurrently,
+      // ahead of writing them, but are written in the order of the query.
+      ExecutorService readExecutor = Executors.newFixedThreadPool(EXPORT_PREFETCH_THREADS,
+          ThreadManager.currentRequestThreadFactory());
+      FilePrefetcher<FileData> prefetcher = new FilePrefetcher<FileData>(fileData,
+          new FilePrefetcher.Loader<FileData>() {
+            @Override
+            public byte[] load(FileData fd) throws IOException {
+              return readFileData(userId, projectId, fd, fatalError);
             }
-          } catch (IOException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
-          }
-        } else {
-          data = fd.content;
-        }
-        if (data == null) {     // This happens if file creation is interrupted
-          data = new byte[0];
+          }, readExecutor, EXPORT_PREFETCH_THREADS, EXPORT_PREFETCH_BYTES);
+      long exportStart = System.currentTimeMillis();
+      try {
+        for (FileData fd : fileData) {
+          fileName = fd.fileName;
+          byte[] data = prefetcher.next();
+          if (data == null) {     // This happens if file creation is interrupted
+            data = new byte[0];
+          }
+          out.putNextEntry(new ZipEntry(fileName));
+          out.write(data, 0, data.length);
+          out.closeEntry();
+          fileCount.t++;
         }
-        out.putNextEntry(new ZipEntry(fileName));
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        fileCount.t++;
+      } finally {
+        prefetcher.close();
+        readExecutor.shutdownNow();
+      }
+      if (fileData.size() > 0) {
+        LOG.log(Level.INFO, "exportProjectSourceZip: read " + fileData.size() + " files ("
+            + prefetcher.getTotalBytes() + " bytes) for project " + projectId + " in "
+            + (System.currentTimeMillis() - exportStart) + " ms, average read "
+            + prefetcher.getTotalReadMillis() / fileData.size() + " ms, slowest read "
+            + prefetcher.getMaxReadMillis() + " ms, waited "
+            + prefetcher.getWaitMillis() + " ms");
       }
       if (projectHistory.t != null) {
         byte[] data = projectHistory.t.getBytes(StorageUtil.DEFAULT_CHARSET);
@@ -1955,15 +2420,112 @@ public class ObjectifyStorageIo implements  StorageIo {
       }
     }
 
-    out.close();
+    out.finish();
+    return fileCount.t;
+  }
 
-    if (zipName == null) {
-      zipName = projectName.t + ".aia";
+  /**
+   * Reads the contents of a project file from wherever it is stored: the
+   * datastore, Blobstore or GCS. Called concurrently for the files of a
+   * project by exportProjectSourceZip.
+   *
+   * @return the contents of the file, or null if it has none
+   */
+  private byte[] readFileData(String userId, long projectId, FileData fd,
+      boolean fatalError) throws IOException {
+    if (fd.isBlob || isTrue(fd.isGCS)) {
+      byte[] cached = fileContentCache.get(projectId, fd.fileName, fd.version);
+      if (cached != null) {
+        return cached;
+      }
     }
-    ProjectSourceZip projectSourceZip =
-        new ProjectSourceZip(zipName, zipFile.toByteArray(), fileCount.t);
-    projectSourceZip.setMetadata(projectName.t);
-    return projectSourceZip;
+    byte[] data = null;
+    if (fd.isBlob) {
+      try {
+        if (fd.blobKey == null) {
+          throw new BlobReadException("blobKey is null");
+        }
+        data = getBlobstoreBytes(fd.blobKey);
+      } catch (BlobReadException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fd.fileName), e);
+      }
+    } else if (isTrue(fd.isGCS)) {
+      try {
+        int count;
+        boolean npfHappened = false;
+        boolean recovered = false;
+        for (count = 0; count < 5; count++) {
+          GcsFilename gcsFileName = new GcsFilename(GCS_BUCKET_NAME, fd.gcsName);
+          int bytesRead = 0;
+          int fileSize = 0;
+          ByteBuffer resultBuffer;
+          try {
+            fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
+            resultBuffer = ByteBuffer.allocate(fileSize);
+            GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
+            try {
+              while (bytesRead < fileSize) {
+                bytesRead += readChannel.read(resultBuffer);
+                if (bytesRead < fileSize) {
+                  if (DEBUG) {
+                    LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
+                  }
+                }
+              }
+              recovered = true;
+              data = resultBuffer.array();
+              break;        // We got the data, break out of the loop!
+            } finally {
+              readChannel.close();
+            }
+          } catch (NullPointerException e) {
+            // This happens if the object in GCS is non-existent, which would happen
+            // when people uploaded a zero length object. As of this change, we now
+            // store zero length objects into GCS, but there are plenty of older objects
+            // that are missing in GCS.
+            LOG.log(Level.WARNING, "exportProjectFile: NPF recorded for " + fd.gcsName);
+            npfHappened = true;
+            resultBuffer = ByteBuffer.allocate(0);
+            data = resultBuffer.array();
+          }
+        }
+
+        // report out on how things went above
+        if (npfHappened) {    // We lost at least once
+          if (recovered) {
+            LOG.log(Level.WARNING, "recovered from NPF in exportProjectFile filename = " + fd.gcsName +
+              " count = " + count);
+          } else {
+            LOG.log(Level.WARNING, "FATAL NPF in exportProjectFile filename = " + fd.gcsName);
+            if (fatalError) {
+              throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fd.fileName), e);
+      }
+    } else {
+      data = fd.content;
+    }
+    if (data == null) {     // This happens if file creation is interrupted
+      data = new byte[0];
+    }
+    if ((fd.isBlob || isTrue(fd.isGCS)) && data.length > 0) {
+      fileContentCache.put(projectId, fd.fileName, fd.version, data);
+    }
+    return data;
+  }
+
+  /**
+   * Returns the version of the content of a file that is being written.
+   * Versions are at least the time they were written, so a file that is
+   * deleted and created again does not reuse the versions it had before.
+   */
+  private static long nextVersion(FileData fd) {
+    return Math.max(fd.version + 1, System.currentTimeMillis());
   }
 
   @Override
@@ -2270,6 +2832,10 @@ public class ObjectifyStorageIo implements  StorageIo {
     return new Key<UserProjectData>(userKey, UserProjectData.class, projectId);
   }
 
+  private Key<ProjectIndexData> projectIndexKey(Key<UserData> userKey) {
+    return new Key<ProjectIndexData>(userKey, ProjectIndexData.class, PROJECT_INDEX_ID);
+  }
+
   private Key<UserFileData> userFileKey(Key<UserData> userKey, String fileName) {
     return new Key<UserFileData>(userKey, UserFileData.class, fileName);
   }
@@ -19,8 +19,10 @@ import com.google.appinventor.shared.rpc.user.SplashConfig;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -202,6 +204,14 @@ public interface StorageIo {
 
   List<UserProject> getUserProjects(String userId, List<Long> projectIds);
 
+  /**
+   * Returns all of the projects of a user. Unlike getUserProjects with the
+   * ids returned by getProjects, this reads a single summary of the projects.
+   * @param userId a userId
+   * @return new List of UserProject objects
+   */
+  List<UserProject> getUserProjects(String userId);
+
   /**
    * Returns a project name.
    *
@@ -413,6 +423,22 @@ public interface StorageIo {
   long uploadRawFile(long projectId, String fileId, String userId, boolean force, byte[] content)
       throws BlocksTruncatedException;
 
+  /**
+   * Uploads several files of a project at once, in a single transaction with
+   * a single update of the project modification date. Files whose content
+   * did not change are not written.
+   * @param projectId  project ID
+   * @param userId the user who owns the files
+   * @param force write files even if they are trivial workspaces
+   * @param contents  file contents keyed by file ID
+   * @return modification date for project
+   * @throws BlocksTruncatedException if force is false and one of the files
+   *         would replace a blocks workspace with a trivial one, in which
+   *         case none of the files are written
+   */
+  long uploadRawFiles(long projectId, String userId, boolean force, Map<String, byte[]> contents)
+      throws BlocksTruncatedException;
+
   /**
    * Uploads a file. -- forces the save even with trivial workspace
    * @param projectId  project ID
@@ -423,6 +449,22 @@ public interface StorageIo {
    */
   long uploadRawFileForce(long projectId, String fileId, String userId, byte[] content);
 
+  /**
+   * Uploads a file from a stream. -- forces the save even with trivial workspace
+   *
+   * <p>Files that are kept in Cloud Storage, such as build outputs, are copied there as they are
+   * read, so they need not fit in memory.
+   *
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param userId the user who owns the file
+   * @param content  file content, which is read but not closed
+   * @return modification date for project
+   * @throws IOException if the content cannot be read or stored
+   */
+  long uploadRawFileForce(long projectId, String fileId, String userId, InputStream content)
+      throws IOException;
+
   /**
    * Deletes a file.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -524,6 +566,33 @@ public interface StorageIo {
     final boolean forGallery,
     final boolean fatalError) throws IOException;
 
+  /**
+   * Writes project files as a zip archive to a stream, without holding the
+   * archive in memory.
+   *
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param includeProjectHistory  whether or not to include the project history
+   * @param includeAndroidKeystore  whether or not to include the Android keystore
+   * @param includeYail include any yail files in the project
+   * @param includeScreenShots include any screen shots stored with the project
+   * @param forGallery flag to indicate we are exporting for the gallery
+   * @param fatalError set true to cause missing GCS file to throw exception
+   * @param out  the stream to write the archive to, which is left open
+   *
+   * @return  the number of files in the archive
+   * @throws IllegalArgumentException if the project has no files to export,
+   *    in which case nothing is written to the stream
+   */
+  int writeProjectSourceZip(String userId, long projectId,
+    boolean includeProjectHistory,
+    boolean includeAndroidKeystore,
+    boolean includeYail,
+    boolean includeScreenShots,
+    boolean forGallery,
+    boolean fatalError,
+    OutputStream out) throws IOException;
+
   /**
    * Find a user's id given their email address. Note that this query is case
    * sensitive!
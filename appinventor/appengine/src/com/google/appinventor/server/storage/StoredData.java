@@ -125,6 +125,27 @@ public class StoredData {
     String settings;
   }
 
+  // Summaries of all of the projects of a user, so that the project list can
+  // be loaded with a single read instead of a query and a read of every
+  // ProjectData. There is at most one per user, in the user's entity group.
+  // It is maintained along with UserProjectData and ProjectData, and rebuilt
+  // from them when it is missing.
+  @Cached
+  @Unindexed
+  static final class ProjectIndexData {
+    // Always ObjectifyStorageIo.PROJECT_INDEX_ID
+    @Id Long id;
+
+    // The user (parent's) key
+    @Parent Key<UserData> userKey;
+
+    // The format of the summaries, so that a change to it causes a rebuild
+    int format;
+
+    // JSON object mapping each project id to the summary of the project
+    String projects;
+  }
+
   // Non-project-specific files (tied to user)
   @Unindexed
   static final class UserFileData {
@@ -194,6 +215,16 @@ public class StoredData {
     // DateTime of last backup only used if GCS is enabled
     long lastBackup;
 
+    // Version of the content, which increases every time the content changes. Used to key the
+    // cached content of files in GCS and Blobstore. 0 for files written before versions were
+    // introduced, which is a version like any other until the file is written again.
+    long version;
+
+    // SHA-256 of the content, used to skip writes that would not change it.
+    // null if the content was written before checksums were introduced, or
+    // streamed to GCS.
+    String checksum;
+
     String userId;              // The userId which owns this file
                                 // if null or the empty string, we haven't initialized
                                 // it yet
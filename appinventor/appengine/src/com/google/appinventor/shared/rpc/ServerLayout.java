@@ -172,6 +172,12 @@ public class ServerLayout {
    */
   public static final String RECEIVE_BUILD_SERVLET = "receivebuild";
 
+  /**
+   * Relative path of the {@link com.google.appinventor.server.ReceiveBuildStatusServlet} within
+   * {@link #ODE_BASEURL_NOAUTH}
+   */
+  public static final String RECEIVE_BUILD_STATUS_SERVLET = "receivebuildstatus";
+
   /**
    * Name of the form element to upload files.
    */
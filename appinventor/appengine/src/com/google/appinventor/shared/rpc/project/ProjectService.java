@@ -307,6 +307,23 @@ public interface ProjectService extends RemoteService {
   public long save(String sessionId, List<FileDescriptorWithContent> filesAndContent) throws InvalidSessionException,
       BlocksTruncatedException;
 
+  /**
+   * Saves the contents of several files of a project at once, in a single
+   * transaction. Files whose content did not change are not written.
+   *
+   * @param sessionId current session id
+   * @param projectId  project ID
+   * @param force whether to write trivial (empty) blocks workspaces
+   * @param filesAndContent  list containing file descriptors of files of the
+   *                         project and their associated content
+   * @return modification date for project
+   * @throws BlocksTruncatedException if force is false and a blocks workspace
+   *         would be replaced by a trivial one, in which case no file is saved
+   */
+  long saveFiles(String sessionId, long projectId, boolean force,
+      List<FileDescriptorWithContent> filesAndContent) throws InvalidSessionException,
+      BlocksTruncatedException;
+
   /**
    * Saves a screenshot of the blocks
    * This is called on the client side when a user leaves a blocks editor
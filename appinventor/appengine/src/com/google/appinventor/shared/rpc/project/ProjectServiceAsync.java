@@ -167,6 +167,12 @@ public interface ProjectServiceAsync {
    */
   void save(String sessionId, List<FileDescriptorWithContent> filesAndContent, AsyncCallback<Long> callback);
 
+  /**
+   * @see ProjectService#saveFiles(String, long, boolean, List)
+   */
+  void saveFiles(String sessionId, long projectId, boolean force,
+      List<FileDescriptorWithContent> filesAndContent, AsyncCallback<Long> callback);
+
   /**
    * @see ProjectService#screnshot(String, long, String, String)
    */
@@ -8,7 +8,6 @@ package com.google.appinventor.server;
 
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.riq.MockHttpServletRequest;
 import com.riq.MockHttpServletResponse;
@@ -21,11 +20,14 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.fail;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
 
 /**
  * Tests for {@link DownloadServlet}. Mocks out FileExporter. Mainly tests
@@ -42,12 +44,8 @@ public class DownloadServletTest {
   private static final long PROJECT_ID = 1234L;
   private static final String DUMMY_FILENAME = "filename123";
   private static final String DUMMY_APK_FILENAME = "filename123.apk";
-  private static final String DUMMY_ZIP_FILENAME = "filename123.aia";
-  private static final String DUMMY_ZIP_FILENAME_WITH_TITLE = "MyProjectTitle123.aia";
   private static final String DOWNLOAD_URL = "http://localhost/baseUrl/download/";
 
-  private ProjectSourceZip dummyZip;
-  private ProjectSourceZip dummyZipWithTitle;
   private RawFile dummyApk;
   private RawFile dummyFile;
 
@@ -67,8 +65,6 @@ public class DownloadServletTest {
     storageIoMock = PowerMock.createNiceMock(StorageIo.class);
     StorageIoInstanceHolder.setInstance(storageIoMock);
 
-    dummyZip = new ProjectSourceZip(DUMMY_ZIP_FILENAME, new byte[] {}, 2);
-    dummyZipWithTitle = new ProjectSourceZip(DUMMY_ZIP_FILENAME_WITH_TITLE, new byte[] {}, 2);
     dummyApk = new RawFile(DUMMY_APK_FILENAME, new byte[] {});
     dummyFile = new RawFile(DUMMY_FILENAME, new byte[] {});
   }
@@ -85,8 +81,10 @@ public class DownloadServletTest {
     PowerMock.expectLastCall().once();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false, null, false, false, false, false))
-        .andReturn(dummyZip);
+    expect(storageIoMock.getProjectName(USER_ID, PROJECT_ID)).andReturn(DUMMY_FILENAME);
+    exporterMock.writeProjectSourceZip(eq(USER_ID), eq(PROJECT_ID), eq(true), eq(false),
+        eq(false), eq(false), eq(false), eq(false), isA(OutputStream.class));
+    PowerMock.expectLastCall().once();
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
     MockHttpServletResponse response = new MockHttpServletResponse();
@@ -102,9 +100,9 @@ public class DownloadServletTest {
     PowerMock.expectLastCall().once();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234/My Project Title 123");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false,
-        "MyProjectTitle123.aia", false, false, false, false))
-        .andReturn(dummyZipWithTitle);
+    exporterMock.writeProjectSourceZip(eq(USER_ID), eq(PROJECT_ID), eq(true), eq(false),
+        eq(false), eq(false), eq(false), eq(false), isA(OutputStream.class));
+    PowerMock.expectLastCall().once();
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
     MockHttpServletResponse response = new MockHttpServletResponse();
@@ -127,6 +125,24 @@ public class DownloadServletTest {
     assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
   }
 
+  @Test
+  public void testDownloadSelectedProjectsSourceWithOtherUsersProject() throws IOException {
+    storageIoMock.assertUserHasProject(USER_ID, PROJECT_ID);
+    PowerMock.expectLastCall().once();
+    storageIoMock.assertUserHasProject(USER_ID, 12345L);
+    PowerMock.expectLastCall().andThrow(new SecurityException());
+    PowerMock.replayAll();
+    MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
+        "selected-projects-source/1234-12345");
+    DownloadServlet download = new DownloadServlet();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    download.doGet(request, response);
+    // Nothing of the zip was sent before the project was refused
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+    assertEquals("text/plain", response.getContentType());
+    PowerMock.verifyAll();
+  }
+
   @Test
   public void testDownloadProjectOutputFileWithoutTarget() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
@@ -167,5 +167,49 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
     }
   }
 
-  // TODO(user): Add test of exportAllProjectsSourceZip().
+  public void testWriteProjectSourceZip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    exporter.writeProjectSourceZip(USER_ID, projectId, true, false, false, false, false, false,
+        out);
+    ProjectSourceZip expected = exporter.exportProjectSourceZip(USER_ID, projectId,
+      true, false, null, false, false, false, false);
+    assertTrue(Arrays.equals(expected.getContent(), out.toByteArray()));
+  }
+
+  public void testWriteProjectSourceZipWithNonExistingProject() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      exporter.writeProjectSourceZip(USER_ID, projectId + 1, false, false, false, false, false,
+          false, out);
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof IllegalArgumentException ||
+                 e.getCause() instanceof IllegalArgumentException);
+    }
+    assertEquals(0, out.size());
+  }
+
+  public void testWriteAllProjectsSourceZip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    exporter.writeAllProjectsSourceZip(USER_ID, out);
+    ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    ZipEntry zipEntry = zis.getNextEntry();
+    assertEquals(PROJECT_NAME + ".aia", zipEntry.getName());
+    ByteArrayOutputStream projectZip = new ByteArrayOutputStream();
+    ByteStreams.copy(zis, projectZip);
+    testExportProjectSourceZipHelper(new ProjectSourceZip(PROJECT_NAME + ".aia",
+        projectZip.toByteArray(), 2));
+    assertNull(zis.getNextEntry());
+  }
+
+  public void testWriteSelectedProjectsSourceZipWithNonExistingProject() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      exporter.writeSelectedProjectsSourceZip(USER_ID, Arrays.asList(projectId + 1), out);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(0, out.size());
+  }
 }
@@ -0,0 +1,72 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appinventor.server.LocalDatastoreTestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for {@link FileContentCache}.
+ */
+public class FileContentCacheTest extends LocalDatastoreTestCase {
+  private static final byte[] CONTENT = { 1, 2, 3, 4 };
+  private static final byte[] NEW_CONTENT = { 5, 6, 7, 8 };
+
+  public void testVersions() {
+    FileContentCache cache = new FileContentCache(null, 1024, 1024);
+    assertNull(cache.get(1, "assets/a.png", 1));
+    cache.put(1, "assets/a.png", 1, CONTENT);
+    cache.put(1, "assets/a.png", 2, NEW_CONTENT);
+    assertTrue(Arrays.equals(CONTENT, cache.get(1, "assets/a.png", 1)));
+    assertTrue(Arrays.equals(NEW_CONTENT, cache.get(1, "assets/a.png", 2)));
+    assertNull(cache.get(2, "assets/a.png", 2));
+    assertNull(cache.get(1, "assets/b.png", 2));
+    assertEquals(2, cache.getLocalHits());
+    assertEquals(0, cache.getMemcacheHits());
+    assertEquals(3, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+    assertEquals(8, cache.getBytesSaved());
+  }
+
+  public void testLocalLimits() {
+    FileContentCache cache = new FileContentCache(null, 8, 4);
+    cache.put(1, "a", 1, CONTENT);
+    cache.put(1, "b", 1, CONTENT);
+    assertNotNull(cache.get(1, "a", 1));
+    // b is now the least recently used
+    cache.put(1, "c", 1, CONTENT);
+    assertEquals(8, cache.getLocalBytes());
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.get(1, "b", 1));
+    assertNotNull(cache.get(1, "a", 1));
+    assertNotNull(cache.get(1, "c", 1));
+    // Files over the limit are not cached
+    cache.put(1, "d", 1, new byte[5]);
+    assertNull(cache.get(1, "d", 1));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(3, cache.getLocalHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  public void testMemcache() {
+    FileContentCache cache = new FileContentCache(MemcacheServiceFactory.getMemcacheService(),
+        1024, 1024);
+    cache.put(1, "assets/a.png", 1, CONTENT);
+
+    // Another instance finds the contents in memcache
+    FileContentCache other = new FileContentCache(MemcacheServiceFactory.getMemcacheService(),
+        1024, 1024);
+    assertTrue(Arrays.equals(CONTENT, other.get(1, "assets/a.png", 1)));
+    assertEquals(1, other.getMemcacheHits());
+    assertTrue(Arrays.equals(CONTENT, other.get(1, "assets/a.png", 1)));
+    assertEquals(1, other.getLocalHits());
+    assertNull(other.get(1, "assets/a.png", 2));
+    assertEquals(1, other.getMisses());
+    assertEquals(8, other.getBytesSaved());
+  }
+}
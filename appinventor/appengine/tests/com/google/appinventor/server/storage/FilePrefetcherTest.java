@@ -0,0 +1,145 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import junit.framework.TestCase;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link FilePrefetcher}.
+ */
+public class FilePrefetcherTest extends TestCase {
+  private static final List<String> FILES = Arrays.asList("a", "bb", "ccc", "dddd", "eeeee");
+
+  private ExecutorService executor;
+
+  /**
+   * Returns the name of a file as its contents, recording how many loads run at once.
+   */
+  private static class NameLoader implements FilePrefetcher.Loader<String> {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger started = new AtomicInteger();
+
+    @Override
+    public byte[] load(String file) throws IOException {
+      started.incrementAndGet();
+      int now = running.incrementAndGet();
+      while (true) {
+        int max = maxRunning.get();
+        if (now <= max || maxRunning.compareAndSet(max, now)) {
+          break;
+        }
+      }
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+      return file.getBytes("UTF-8");
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  public void testReadsInOrder() throws Exception {
+    NameLoader loader = new NameLoader();
+    FilePrefetcher<String> prefetcher = new FilePrefetcher<String>(FILES, loader, executor, 3,
+        1024);
+    try {
+      for (String file : FILES) {
+        assertEquals(file, new String(prefetcher.next(), "UTF-8"));
+      }
+    } finally {
+      prefetcher.close();
+    }
+    assertTrue(loader.maxRunning.get() <= 3);
+    assertEquals(15, prefetcher.getTotalBytes());
+    assertTrue(prefetcher.getMaxReadMillis() <= prefetcher.getTotalReadMillis());
+    try {
+      prefetcher.next();
+      fail("Expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testBufferedBytesLimit() throws Exception {
+    final CountDownLatch firstRead = new CountDownLatch(1);
+    NameLoader loader = new NameLoader() {
+      @Override
+      public byte[] load(String file) throws IOException {
+        byte[] data = super.load(file);
+        firstRead.countDown();
+        return data;
+      }
+    };
+    // The first file alone is over the limit, so nothing else is read until it is taken
+    FilePrefetcher<String> prefetcher = new FilePrefetcher<String>(FILES, loader, executor, 1,
+        1);
+    try {
+      firstRead.await(10, TimeUnit.SECONDS);
+      Thread.sleep(50);
+      assertEquals(1, loader.started.get());
+      assertEquals("a", new String(prefetcher.next(), "UTF-8"));
+      assertEquals("bb", new String(prefetcher.next(), "UTF-8"));
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  public void testReadError() throws Exception {
+    FilePrefetcher.Loader<String> loader = new FilePrefetcher.Loader<String>() {
+      @Override
+      public byte[] load(String file) throws IOException {
+        if (file.equals("bb")) {
+          throw new FileNotFoundException(file);
+        }
+        return file.getBytes("UTF-8");
+      }
+    };
+    FilePrefetcher<String> prefetcher = new FilePrefetcher<String>(FILES, loader, executor, 2,
+        1024);
+    try {
+      assertEquals("a", new String(prefetcher.next(), "UTF-8"));
+      try {
+        prefetcher.next();
+        fail("Expected FileNotFoundException");
+      } catch (FileNotFoundException e) {
+        assertEquals("bb", e.getMessage());
+      }
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  public void testEmpty() throws Exception {
+    FilePrefetcher<String> prefetcher = new FilePrefetcher<String>(
+        Arrays.<String>asList(), new NameLoader(), executor, 2, 1024);
+    prefetcher.close();
+    assertEquals(0, prefetcher.getTotalBytes());
+  }
+}
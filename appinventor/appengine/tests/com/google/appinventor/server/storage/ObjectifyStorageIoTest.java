@@ -23,6 +23,7 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.base.Charsets;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -31,7 +32,9 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -306,6 +309,112 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     oldModificationDate = modificationDate;
   }
 
+  public void testProjectIndex() throws BlocksTruncatedException {
+    final String USER_ID = "1150";
+    final String USER_EMAIL = "newuser1150@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId1 = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+
+    // The first read builds the index, later changes are applied to it
+    List<UserProject> projects = storage.getUserProjects(USER_ID);
+    assertEquals(1, projects.size());
+    assertEquals(storage.getUserProject(USER_ID, projectId1), projects.get(0));
+    long projectId2 = createProject(USER_ID, "Project2", FAKE_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.setMoveToTrashFlag(USER_ID, projectId1, true);
+    projects = storage.getUserProjects(USER_ID);
+    assertEquals(2, projects.size());
+    assertEquals(projectId1, projects.get(0).getProjectId());
+    assertTrue(projects.get(0).isInTrash());
+    assertEquals(storage.getUserProject(USER_ID, projectId2), projects.get(1));
+    assertEquals("Project2", projects.get(1).getProjectName());
+    assertFalse(projects.get(1).isInTrash());
+
+    storage.addSourceFilesToProject(USER_ID, projectId2, false, FILE_NAME1);
+    long modificationDate = storage.uploadFile(projectId2, FILE_NAME1, USER_ID, FILE_CONTENT1,
+        StorageUtil.DEFAULT_CHARSET);
+    assertEquals(modificationDate, storage.getUserProjects(USER_ID).get(1).getDateModified());
+
+    storage.deleteProject(USER_ID, projectId1);
+    projects = storage.getUserProjects(USER_ID);
+    assertEquals(1, projects.size());
+    assertEquals(projectId2, projects.get(0).getProjectId());
+  }
+
+  public void testProjectIndexNotKeptWhenProjectChangesWhileBuilt() {
+    final String USER_ID = "1160";
+    final String USER_EMAIL = "newuser1160@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    final long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+
+    // Move the project to the trash after its summary is read, before the index is stored
+    final boolean[] changePending = { true };
+    ObjectifyStorageIo racingStorage = new ObjectifyStorageIo() {
+      @Override
+      void runJobWithRetries(JobRetryHelper job, boolean useTransaction)
+          throws ObjectifyException {
+        if (useTransaction && changePending[0]) {
+          changePending[0] = false;
+          setMoveToTrashFlag(USER_ID, projectId, true);
+        }
+        super.runJobWithRetries(job, useTransaction);
+      }
+    };
+    List<UserProject> projects = racingStorage.getUserProjects(USER_ID);
+    assertFalse(changePending[0]);
+    assertEquals(1, projects.size());
+    assertFalse(projects.get(0).isInTrash());
+
+    // The stale summary was not stored, so the next read sees the change
+    projects = storage.getUserProjects(USER_ID);
+    assertEquals(1, projects.size());
+    assertTrue(projects.get(0).isInTrash());
+  }
+
+  public void testUploadRawFiles() throws BlocksTruncatedException {
+    final String USER_ID = "1175";
+    final String USER_EMAIL = "newuser1175@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, FILE_NAME1, BKY_FILE_NAME1,
+        SCM_FILE_NAME1);
+    byte[] blocks = FILE_CONTENT2.getBytes(StorageUtil.DEFAULT_CHARSET);
+    Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+    contents.put(FILE_NAME1, FILE_CONTENT1.getBytes(StorageUtil.DEFAULT_CHARSET));
+    contents.put(BKY_FILE_NAME1, blocks);
+    long modificationDate = storage.uploadRawFiles(projectId, USER_ID, false, contents);
+    assertEquals(modificationDate, storage.getProjectDateModified(USER_ID, projectId));
+    assertEquals(FILE_CONTENT1, storage.downloadFile(USER_ID, projectId, FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+    assertTrue(Arrays.equals(blocks, storage.downloadRawFile(USER_ID, projectId,
+        BKY_FILE_NAME1)));
+
+    // Saving the same contents again does not write anything
+    assertEquals(modificationDate, storage.uploadRawFiles(projectId, USER_ID, false, contents));
+
+    // A trivial blocks workspace is refused unless forced, and nothing is written
+    byte[] empty = "<xml/>".getBytes(StorageUtil.DEFAULT_CHARSET);
+    contents.clear();
+    contents.put(SCM_FILE_NAME1, RAW_FILE_CONTENT3);
+    contents.put(BKY_FILE_NAME1, empty);
+    try {
+      storage.uploadRawFiles(projectId, USER_ID, false, contents);
+      fail("Expected BlocksTruncatedException");
+    } catch (BlocksTruncatedException e) {
+      // expected
+    }
+    assertEquals(0, storage.downloadRawFile(USER_ID, projectId, SCM_FILE_NAME1).length);
+    assertTrue(Arrays.equals(blocks, storage.downloadRawFile(USER_ID, projectId,
+        BKY_FILE_NAME1)));
+    storage.uploadRawFiles(projectId, USER_ID, true, contents);
+    assertTrue(Arrays.equals(RAW_FILE_CONTENT3, storage.downloadRawFile(USER_ID, projectId,
+        SCM_FILE_NAME1)));
+    assertTrue(Arrays.equals(empty, storage.downloadRawFile(USER_ID, projectId,
+        BKY_FILE_NAME1)));
+  }
+
   public void testAddRemoveFile() throws BlocksTruncatedException {
     final String USER_ID = "1200";
     final String USER_EMAIL = "newuser1200@test.com";
@@ -446,6 +555,29 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     // TODO(sharon): should test large blob files (e.g., >2MB (chunk size), >4MB (row size));
   }
 
+  public void testStreamedOutputFiles() throws IOException {
+    final String USER_ID = "1301";
+    final String USER_EMAIL = "newuser1301@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addOutputFilesToProject(USER_ID, projectId, APK_FILE_NAME1);
+    storage.uploadRawFileForce(projectId, APK_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(APK_FILE_CONTENT));
+    assertTrue(storage.isGcsFile(projectId, APK_FILE_NAME1));
+    assertTrue(Arrays.equals(APK_FILE_CONTENT,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+
+    // Sending the same results again is harmless
+    storage.addOutputFilesToProject(USER_ID, projectId, APK_FILE_NAME1);
+    storage.uploadRawFileForce(projectId, APK_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(APK_FILE_CONTENT));
+    assertEquals(1, storage.getProjectOutputFiles(USER_ID, projectId).size());
+    assertTrue(Arrays.equals(APK_FILE_CONTENT,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+  }
+
   public void testOldBlockFilesInDatastoreStillWork() throws BlocksTruncatedException {
     // Create new storage object that forces storage in the datastore
     ObjectifyStorageIo oldStyleStorage = new ObjectifyStorageIo() {
@@ -0,0 +1,399 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.android.ide.common.internal.PngCruncher;
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.appinventor.buildserver.util.AARLibraries;
+import com.google.appinventor.buildserver.util.AARLibrary;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * An on-disk cache of exploded AAR libraries and their merged resources, shared by all builds
+ * that use the same set of libraries.
+ *
+ * <p>Entries are keyed by the SHA-256 hashes of the contents of the libraries, sorted, so the
+ * order in which components name their libraries does not matter. An entry is a directory that
+ * holds the exploded libraries and, once a build has needed them, the merged resources of the
+ * libraries, with their PNGs crunched. Both are written to a temporary directory and renamed
+ * into place. The {@link AARLibrary} objects of an entry are kept in memory, so the symbol tables
+ * of the libraries are loaded once and shared.</p>
+ *
+ * <p>Builds must treat an entry as read-only and release it when they are done. The cache is
+ * bounded in size; when it grows beyond its limit, the least recently used entries that no build
+ * is using are removed. Hits, misses and evictions are reported to a {@link StatReporter} under
+ * the name {@link #NAME}.</p>
+ */
+final class AarCache {
+
+  static final String NAME = "aar";
+
+  // Change this whenever the layout of an entry changes.
+  private static final String VERSION = "aar-cache-1";
+
+  private static final String TEMP_PREFIX = ".tmp-";
+  private static final String EXPLODED_DIR = "exploded";
+  private static final String MERGED_RES_DIR = "merged-res";
+  // Lists the content hash and the package name of each library of an entry
+  private static final String LIBRARIES_FILE = "libraries.txt";
+
+  private static final int MAX_INDEXED_FILES = 10000;
+
+  private static final Logger LOG = Logger.getLogger(AarCache.class.getName());
+
+  /**
+   * The libraries of one build, taken from the cache.
+   */
+  final class Entry {
+    private final String key;
+    private final File dir;
+    private long size;
+    private long lastUsed;
+    private int users = 0;
+    // Loaded when the entry is first used by this server
+    private List<AARLibrary> libraries;
+
+    private Entry(String key, long size, long lastUsed) {
+      this.key = key;
+      this.dir = new File(AarCache.this.dir, key);
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+
+    /**
+     * Gets the libraries of this entry, in the order in which they were requested.
+     */
+    List<AARLibrary> getLibraries() {
+      return libraries;
+    }
+
+    /**
+     * Gets the merged resources of the libraries, merging them if no build has done so yet.
+     *
+     * @param explodedLibs the libraries of this entry
+     * @param cruncher the cruncher for PNG files
+     * @return the directory of merged resources, or null if the resources could not be merged
+     */
+    File getMergedResources(AARLibraries explodedLibs, PngCruncher cruncher) {
+      File mergedDir = new File(dir, MERGED_RES_DIR);
+      synchronized (this) {
+        if (mergedDir.isDirectory()) {
+          return mergedDir;
+        }
+        File tempDir = new File(dir, TEMP_PREFIX + UUID.randomUUID());
+        try {
+          if (!tempDir.mkdirs() || !explodedLibs.mergeLibraryResources(tempDir, cruncher)
+              || !tempDir.renameTo(mergedDir)) {
+            LOG.warning("Unable to merge the resources of AAR cache entry " + key);
+            return null;
+          }
+          addSize(sizeOf(mergedDir));
+          return mergedDir;
+        } finally {
+          if (tempDir.exists()) {
+            FileUtils.deleteQuietly(tempDir);
+          }
+        }
+      }
+    }
+
+    /**
+     * Tells the cache that the build no longer uses this entry.
+     */
+    void release() {
+      synchronized (AarCache.this) {
+        users--;
+      }
+      evict();
+    }
+
+    private void addSize(long bytes) {
+      synchronized (AarCache.this) {
+        size += bytes;
+        totalBytes += bytes;
+      }
+    }
+  }
+
+  // Content hashes of libraries, keyed by path, size and modification time
+  private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<String, String>();
+
+  // One lock per entry key
+  private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+  private final File dir;
+  private final long maxBytes;
+  private final StatReporter statReporter;
+
+  // All of the following are protected by this.
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private long totalBytes = 0;
+
+  /**
+   * Creates a cache backed by the given directory, indexing any entries already present.
+   *
+   * @param dir the cache directory, which is created if needed
+   * @param maxBytes the maximum total size of the entries
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  AarCache(File dir, long maxBytes, StatReporter statReporter) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create AAR cache directory " + dir);
+    }
+    this.dir = dir.getAbsoluteFile();
+    this.maxBytes = maxBytes;
+    this.statReporter = statReporter;
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.getName().startsWith(TEMP_PREFIX)
+            || !new File(child, LIBRARIES_FILE).isFile()) {
+          // Left behind by a server that stopped while writing an entry
+          FileUtils.deleteQuietly(child);
+        } else {
+          File[] parts = child.listFiles();
+          for (File part : parts == null ? new File[0] : parts) {
+            if (part.getName().startsWith(TEMP_PREFIX)) {
+              FileUtils.deleteQuietly(part);
+            }
+          }
+          long size = sizeOf(child);
+          entries.put(child.getName(), new Entry(child.getName(), size, child.lastModified()));
+          totalBytes += size;
+        }
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Gets the entry for a set of libraries, exploding them if no build has used them yet. The
+   * caller must {@link Entry#release()} the entry when it is done with it.
+   *
+   * @param aars the AAR libraries of a build
+   * @return the entry for the libraries
+   * @throws IOException if a library cannot be read or exploded
+   */
+  Entry acquire(List<File> aars) throws IOException {
+    List<String> aarHashes = new ArrayList<String>();
+    for (File aar : aars) {
+      aarHashes.add(hash(aar));
+    }
+    List<String> sortedHashes = new ArrayList<String>(aarHashes);
+    Collections.sort(sortedHashes);
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(VERSION, Charsets.UTF_8);
+    for (String hash : sortedHashes) {
+      hasher.putString(hash, Charsets.UTF_8);
+    }
+    String key = hasher.hash().toString();
+
+    Entry entry;
+    synchronized (lockFor(key)) {
+      synchronized (this) {
+        entry = entries.get(key);
+        if (entry != null) {
+          entry.users++;
+          entry.lastUsed = System.currentTimeMillis();
+        }
+      }
+      if (entry == null) {
+        statReporter.cacheEvent(NAME, CacheEvent.MISS);
+        long size = explode(key, aars, aarHashes);
+        synchronized (this) {
+          entry = new Entry(key, size, System.currentTimeMillis());
+          entry.users++;
+          entries.put(key, entry);
+          totalBytes += size;
+        }
+      } else {
+        statReporter.cacheEvent(NAME, CacheEvent.HIT);
+      }
+      if (entry.libraries == null) {
+        try {
+          entry.libraries = load(entry.dir, aars, aarHashes);
+        } catch (IOException e) {
+          entry.release();
+          throw e;
+        }
+      }
+      entry.dir.setLastModified(entry.lastUsed);
+    }
+    evict();
+    return entry;
+  }
+
+  synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Explodes the libraries into a new entry.
+   *
+   * @return the size of the entry
+   */
+  private long explode(String key, List<File> aars, List<String> aarHashes) throws IOException {
+    File tempDir = new File(dir, TEMP_PREFIX + UUID.randomUUID());
+    try {
+      File explodedDir = new File(tempDir, EXPLODED_DIR);
+      if (!explodedDir.mkdirs()) {
+        throw new IOException("Unable to create " + explodedDir);
+      }
+      StringBuilder libraries = new StringBuilder();
+      for (int i = 0; i < aars.size(); i++) {
+        AARLibrary library = new AARLibrary(aars.get(i));
+        library.unpackToDirectory(explodedDir);
+        libraries.append(aarHashes.get(i)).append(' ').append(library.getPackageName())
+            .append('\n');
+      }
+      Files.write(libraries, new File(tempDir, LIBRARIES_FILE), Charsets.UTF_8);
+      File entryDir = new File(dir, key);
+      if (!tempDir.renameTo(entryDir)) {
+        throw new IOException("Unable to create AAR cache entry " + entryDir);
+      }
+      return sizeOf(entryDir);
+    } finally {
+      if (tempDir.exists()) {
+        FileUtils.deleteQuietly(tempDir);
+      }
+    }
+  }
+
+  /**
+   * Catalogs the exploded libraries of an entry.
+   */
+  private static List<AARLibrary> load(File entryDir, List<File> aars, List<String> aarHashes)
+      throws IOException {
+    Map<String, String> packageNames = new HashMap<String, String>();
+    for (String line : Files.readLines(new File(entryDir, LIBRARIES_FILE), Charsets.UTF_8)) {
+      String[] parts = line.split(" ");
+      if (parts.length == 2) {
+        packageNames.put(parts[0], parts[1]);
+      }
+    }
+    List<AARLibrary> libraries = new ArrayList<AARLibrary>();
+    for (int i = 0; i < aars.size(); i++) {
+      String packageName = packageNames.get(aarHashes.get(i));
+      if (packageName == null) {
+        throw new IOException("AAR cache entry " + entryDir + " does not have " + aars.get(i));
+      }
+      AARLibrary library = new AARLibrary(aars.get(i));
+      library.loadFromDirectory(new File(new File(entryDir, EXPLODED_DIR), packageName));
+      libraries.add(library);
+    }
+    return libraries;
+  }
+
+  /**
+   * Removes the least recently used entries that are not in use until the cache fits its limit.
+   */
+  private void evict() {
+    List<File> evicted = new ArrayList<File>();
+    synchronized (this) {
+      if (totalBytes <= maxBytes) {
+        return;
+      }
+      List<Entry> byAge = new ArrayList<Entry>(entries.values());
+      Collections.sort(byAge, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+          return Long.compare(a.lastUsed, b.lastUsed);
+        }
+      });
+      for (Entry entry : byAge) {
+        if (totalBytes <= maxBytes) {
+          break;
+        }
+        if (entry.users > 0) {
+          continue;
+        }
+        entries.remove(entry.key);
+        totalBytes -= entry.size;
+        // Move the entry out of the way, so that it can be created again right away
+        File trash = new File(dir, TEMP_PREFIX + UUID.randomUUID());
+        evicted.add(entry.dir.renameTo(trash) ? trash : entry.dir);
+        statReporter.cacheEvent(NAME, CacheEvent.EVICTION);
+      }
+    }
+    for (File file : evicted) {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+
+  private Object lockFor(String key) {
+    Object lock = locks.get(key);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(key, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  private String hash(File input) throws IOException {
+    String id = input.getAbsolutePath() + File.pathSeparator + input.length()
+        + File.pathSeparator + input.lastModified();
+    String hash = hashes.get(id);
+    if (hash == null) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      byte[] buffer = new byte[65536];
+      try (InputStream in = new FileInputStream(input)) {
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          hasher.putBytes(buffer, 0, read);
+        }
+      }
+      hash = hasher.hash().toString();
+      if (hashes.size() > MAX_INDEXED_FILES) {
+        hashes.clear();
+      }
+      hashes.put(id, hash);
+    }
+    return hash;
+  }
+
+  private static long sizeOf(File file) {
+    if (!file.isDirectory()) {
+      return file.length();
+    }
+    long size = 0;
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        size += sizeOf(child);
+      }
+    }
+    return size;
+  }
+}
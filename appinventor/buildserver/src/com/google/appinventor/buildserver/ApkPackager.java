@@ -0,0 +1,269 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.android.apksig.ApkSigner;
+import com.android.apksig.apk.ApkFormatException;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packages the resources, dex files and native libraries of an app into an APK and signs it,
+ * all in this process.
+ *
+ * <p>This replaces ApkBuilder, zipalign and apksigner, which each wrote the whole APK, the last
+ * two in a process of their own. The packager aligns the entries that are stored uncompressed
+ * as it writes them, padding their local headers so that their data starts on a 4 byte
+ * boundary, as zipalign did. {@link #sign} then adds the v1 (JAR) and v2 (APK Signature Scheme)
+ * signatures, which leaves the entries where they are, so they stay aligned.</p>
+ */
+final class ApkPackager implements Closeable {
+
+  // The alias and passwords of the keys that ProjectBuilder.createKeyStore generates
+  static final String KEY_ALIAS = "AndroidKey";
+  private static final char[] KEYSTORE_PASSWORD = "android".toCharArray();
+
+  // The extra field that zipalign and apksig use to pad local headers
+  private static final int ALIGNMENT_EXTRA_ID = 0xd935;
+  private static final int ALIGNMENT_EXTRA_SIZE = 6;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int ALIGNMENT = 4;
+
+  // Earlier times do not fit in a zip header, and would get an extra field of their own
+  private static final long MIN_TIME = 315619200000L;  // 1980-01-02
+
+  private final CountingOutputStream counter;
+  private final ZipOutputStream zip;
+  private final Set<String> names = new HashSet<String>();
+
+  /**
+   * Creates a packager that writes an unsigned APK.
+   *
+   * @param apk the file to write the APK to
+   * @throws IOException if the file cannot be created
+   */
+  ApkPackager(File apk) throws IOException {
+    counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(apk)));
+    zip = new ZipOutputStream(counter);
+  }
+
+  /**
+   * Adds the entries of a zip file, such as the resources packaged by aapt, leaving out its
+   * directories and META-INF, as ApkBuilder did. Entries keep their compression method.
+   *
+   * @param source the zip file
+   * @throws IOException if the file cannot be read, or has an entry that was already added
+   */
+  void addZip(File source) throws IOException {
+    try (ZipFile sourceZip = new ZipFile(source)) {
+      Enumeration<? extends ZipEntry> entries = sourceZip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory() || entry.getName().startsWith("META-INF/")) {
+          continue;
+        }
+        try (InputStream in = sourceZip.getInputStream(entry)) {
+          if (entry.getMethod() == ZipEntry.STORED) {
+            putStored(entry.getName(), entry.getTime(), entry.getSize(), entry.getCrc(), in);
+          } else {
+            putDeflated(entry.getName(), entry.getTime(), in);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds a file, compressed.
+   *
+   * @param file the file
+   * @param name the path of the file in the APK
+   * @throws IOException if the file cannot be read, or its path was already added
+   */
+  void addFile(File file, String name) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      putDeflated(name, file.lastModified(), in);
+    }
+  }
+
+  /**
+   * Adds the native libraries in the subdirectories of a directory, one per processor
+   * architecture, as lib/&lt;architecture&gt;/&lt;library&gt;.
+   *
+   * @param libsDir the directory
+   * @throws IOException if a library cannot be read
+   */
+  void addNativeLibraries(File libsDir) throws IOException {
+    File[] abiDirs = libsDir.listFiles();
+    if (abiDirs == null) {
+      throw new IOException(libsDir + " is not a directory");
+    }
+    for (File abiDir : abiDirs) {
+      File[] libs = abiDir.listFiles();
+      if (libs == null) {
+        continue;
+      }
+      for (File lib : libs) {
+        String name = lib.getName().toLowerCase(Locale.US);
+        if (lib.isFile() && (name.endsWith(".so") || name.endsWith(".bc"))) {
+          addFile(lib, "lib/" + abiDir.getName() + "/" + lib.getName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Finishes writing the APK.
+   */
+  @Override
+  public void close() throws IOException {
+    zip.close();
+  }
+
+  private void putDeflated(String name, long time, InputStream in) throws IOException {
+    checkName(name);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.DEFLATED);
+    entry.setTime(Math.max(time, MIN_TIME));
+    zip.putNextEntry(entry);
+    ByteStreams.copy(in, zip);
+    zip.closeEntry();
+  }
+
+  private void putStored(String name, long time, long size, long crc, InputStream in)
+      throws IOException {
+    checkName(name);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setTime(Math.max(time, MIN_TIME));
+    entry.setSize(size);
+    entry.setCompressedSize(size);
+    entry.setCrc(crc);
+    // The previous entry is complete, so the count is where this entry's local header starts
+    long dataStart = counter.getCount() + LOCAL_HEADER_SIZE
+        + name.getBytes(Charsets.UTF_8).length + ALIGNMENT_EXTRA_SIZE;
+    int padding = (int) ((ALIGNMENT - dataStart % ALIGNMENT) % ALIGNMENT);
+    byte[] extra = new byte[ALIGNMENT_EXTRA_SIZE + padding];
+    writeShort(extra, 0, ALIGNMENT_EXTRA_ID);
+    writeShort(extra, 2, extra.length - 4);
+    writeShort(extra, 4, ALIGNMENT);
+    entry.setExtra(extra);
+    zip.putNextEntry(entry);
+    ByteStreams.copy(in, zip);
+    zip.closeEntry();
+  }
+
+  private void checkName(String name) throws IOException {
+    if (!names.add(name)) {
+      throw new IOException("Duplicate file " + name + " in the APK");
+    }
+  }
+
+  private static void writeShort(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >> 8);
+  }
+
+  /**
+   * Signs an APK that was written by a packager.
+   *
+   * @param unsignedApk the APK to sign
+   * @param keystore the keystore that holds the key
+   * @param signedApk the file to write the signed APK to
+   * @param minSdkVersion the minSdkVersion of the APK's manifest
+   * @throws IOException if an APK or the keystore cannot be read or written
+   * @throws ApkFormatException if the unsigned APK is malformed
+   * @throws GeneralSecurityException if the key cannot be read or used
+   */
+  static void sign(File unsignedApk, File keystore, File signedApk, int minSdkVersion)
+      throws IOException, ApkFormatException, GeneralSecurityException {
+    ApkSigner.SignerConfig signer = loadSigner(keystore, KEY_ALIAS);
+    new ApkSigner.Builder(Collections.singletonList(signer))
+        .setInputApk(unsignedApk)
+        .setOutputApk(signedApk)
+        .setMinSdkVersion(minSdkVersion)
+        // v3 stays on, as it was with apksigner
+        .setV1SigningEnabled(true)
+        .setV2SigningEnabled(true)
+        .build()
+        .sign();
+  }
+
+  private static ApkSigner.SignerConfig loadSigner(File keystore, String alias)
+      throws IOException, GeneralSecurityException {
+    KeyStore keyStore = loadKeyStore(keystore);
+    PrivateKey key = (PrivateKey) keyStore.getKey(alias, KEYSTORE_PASSWORD);
+    Certificate[] chain = keyStore.getCertificateChain(alias);
+    if (key == null || chain == null || chain.length == 0) {
+      throw new GeneralSecurityException("No key " + alias + " in " + keystore);
+    }
+    List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+    for (Certificate certificate : chain) {
+      certificates.add((X509Certificate) certificate);
+    }
+    return new ApkSigner.SignerConfig.Builder(getSignatureName(alias), key, certificates)
+        .build();
+  }
+
+  /**
+   * Loads a keystore made by keytool, which makes JKS keystores on older JDKs and PKCS12
+   * keystores on newer ones.
+   */
+  private static KeyStore loadKeyStore(File keystore)
+      throws IOException, GeneralSecurityException {
+    GeneralSecurityException failure = null;
+    for (String type : new String[] { "JKS", "PKCS12" }) {
+      KeyStore keyStore = KeyStore.getInstance(type);
+      try (InputStream in = new FileInputStream(keystore)) {
+        keyStore.load(in, KEYSTORE_PASSWORD);
+        return keyStore;
+      } catch (IOException e) {
+        // Thrown for a keystore of another type as well as for a bad password
+        failure = new GeneralSecurityException("Unable to load " + keystore, e);
+      }
+    }
+    throw failure;
+  }
+
+  /**
+   * Gets the base name of the v1 signature files in META-INF, which apksigner derives from the
+   * key alias: up to 8 characters, in upper case, with characters that are not allowed replaced.
+   */
+  static String getSignatureName(String alias) {
+    StringBuilder name = new StringBuilder();
+    String upper = alias.toUpperCase(Locale.US);
+    for (int i = 0; i < upper.length() && name.length() < 8; i++) {
+      char c = upper.charAt(i);
+      boolean allowed = (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+      name.append(allowed ? c : '_');
+    }
+    return name.length() == 0 ? "CERT" : name.toString();
+  }
+}
@@ -0,0 +1,292 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Shares the results of identical builds.
+ *
+ * <p>Students often ask for the same build several times in a row, and classrooms build the
+ * same template projects. Builds are identified by a fingerprint of everything their result
+ * depends on: the contents of the project zip, regardless of the order and times of its
+ * entries, the user, the kind of build and the version of the build server. A build whose
+ * fingerprint matches a build in progress does not run; it gets a copy of the result zip of
+ * that build when it finishes.</p>
+ *
+ * <p>Optionally, the result zips of successful builds are also kept on disk, so that a later
+ * identical build gets a copy without running. Only builds that were signed with a keystore
+ * from the project zip may be cached, since a build without one generates a new keystore.
+ * The result zips are kept in a {@link DiskLruCache}, which is bounded in size.</p>
+ *
+ * <p>Builds that share a build in progress are reported to a {@link StatReporter} as hits under
+ * the name {@link #IN_FLIGHT_NAME}, and builds that run as misses. Hits, misses and evictions of
+ * the cache are reported under the name {@link #NAME}.</p>
+ */
+final class BuildDeduplicator {
+
+  static final String NAME = "build-results";
+
+  static final String IN_FLIGHT_NAME = "in-flight-builds";
+
+  /**
+   * Receives the result of an identical build.
+   */
+  interface Follower {
+    /**
+     * Called, on the executor of the deduplicator, with the result of an identical build.
+     *
+     * @param resultZip a copy of the result zip of the build, which the follower must delete,
+     *     or null if the build did not produce one
+     */
+    void resultReady(File resultZip);
+  }
+
+  // Change this whenever the layout of the result zip or of the fingerprint changes.
+  private static final String VERSION = "build-results-1";
+
+  private static final String SUFFIX = ".zip";
+
+  private static final HashFunction SHA256 = Hashing.sha256();
+
+  private static final Logger LOG = Logger.getLogger(BuildDeduplicator.class.getName());
+
+  // The cache of result zips, or null if only builds in progress are shared
+  private final DiskLruCache cache;
+  private final Executor executor;
+  private final StatReporter statReporter;
+
+  // Protected by this.
+  private final Map<String, List<Follower>> inFlight = new HashMap<String, List<Follower>>();
+
+  /**
+   * Creates a deduplicator, indexing any result zips already cached.
+   *
+   * @param dir the cache directory, which is created if needed, or null to only share builds
+   *     in progress
+   * @param maxBytes the maximum total size of the cached result zips
+   * @param executor the executor that followers are called on
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  BuildDeduplicator(File dir, long maxBytes, Executor executor, StatReporter statReporter)
+      throws IOException {
+    this.cache = dir != null ? new DiskLruCache(dir, SUFFIX, maxBytes, NAME, statReporter) : null;
+    this.executor = executor;
+    this.statReporter = statReporter;
+  }
+
+  /**
+   * Computes the fingerprint of a build.
+   *
+   * @param projectZip the project zip
+   * @param userName the user the build is for, whose name is in a generated keystore
+   * @param isAab whether an Android App Bundle is built instead of an APK
+   * @param isForCompanion whether the companion is built
+   * @param isForEmulator whether the build is for the emulator
+   * @param serverVersion the version of the build server
+   * @return the fingerprint
+   * @throws IOException if the project zip cannot be read
+   */
+  static String fingerprint(File projectZip, String userName, boolean isAab,
+      boolean isForCompanion, boolean isForEmulator, String serverVersion) throws IOException {
+    Hasher hasher = SHA256.newHasher();
+    putString(hasher, VERSION);
+    putString(hasher, serverVersion);
+    putString(hasher, String.valueOf(userName));
+    hasher.putBoolean(isAab).putBoolean(isForCompanion).putBoolean(isForEmulator);
+    try (ZipFile zip = new ZipFile(projectZip)) {
+      List<ZipEntry> files = new ArrayList<ZipEntry>();
+      Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+      while (zipEntries.hasMoreElements()) {
+        ZipEntry entry = zipEntries.nextElement();
+        if (!entry.isDirectory()) {
+          files.add(entry);
+        }
+      }
+      Collections.sort(files, new Comparator<ZipEntry>() {
+        @Override
+        public int compare(ZipEntry a, ZipEntry b) {
+          return a.getName().compareTo(b.getName());
+        }
+      });
+      byte[] buffer = new byte[8192];
+      for (ZipEntry entry : files) {
+        Hasher contents = SHA256.newHasher();
+        try (InputStream in = zip.getInputStream(entry)) {
+          int count;
+          while ((count = in.read(buffer)) != -1) {
+            contents.putBytes(buffer, 0, count);
+          }
+        }
+        putString(hasher, entry.getName());
+        hasher.putBytes(contents.hash().asBytes());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, Charsets.UTF_8);
+  }
+
+  /**
+   * Joins an identical build, if one is in progress or cached. Otherwise, the caller becomes
+   * the build in progress for the fingerprint, and must call {@link #finish} when it is done.
+   *
+   * @param fingerprint the fingerprint of the build
+   * @param follower receives the result of the identical build
+   * @return true if the follower will receive the result of an identical build, false if the
+   *     caller must run the build
+   */
+  boolean join(String fingerprint, Follower follower) {
+    if (joinInFlight(fingerprint, follower)) {
+      return true;
+    }
+    File cached = restore(fingerprint);
+    if (cached != null) {
+      deliver(follower, cached);
+      return true;
+    }
+    synchronized (this) {
+      // An identical build may have started while we looked in the cache
+      if (joinInFlight(fingerprint, follower)) {
+        return true;
+      }
+      inFlight.put(fingerprint, new ArrayList<Follower>());
+    }
+    statReporter.cacheEvent(IN_FLIGHT_NAME, CacheEvent.MISS);
+    return false;
+  }
+
+  /**
+   * Finishes a build that was started after {@link #join} returned false, passing copies of
+   * its result zip to the builds that joined it.
+   *
+   * @param fingerprint the fingerprint of the build
+   * @param resultZip the result zip of the build, which the caller keeps, or null if the build
+   *     did not produce one
+   * @param cacheable whether the result zip may be cached for later builds
+   */
+  void finish(String fingerprint, final File resultZip, boolean cacheable) {
+    List<Follower> followers;
+    synchronized (this) {
+      followers = inFlight.remove(fingerprint);
+    }
+    if (followers != null) {
+      for (Follower follower : followers) {
+        File copy = null;
+        if (resultZip != null) {
+          try {
+            copy = copyToTempFile(resultZip);
+          } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to copy the result of build " + fingerprint, e);
+          }
+        }
+        deliver(follower, copy);
+      }
+    }
+    if (cacheable && resultZip != null && cache != null) {
+      cache.store(fingerprint, new DiskLruCache.Writer() {
+        @Override
+        public long write(File entry) throws IOException {
+          Files.copy(resultZip, entry);
+          return entry.length();
+        }
+      });
+    }
+  }
+
+  synchronized int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  int getEntryCount() {
+    return cache != null ? cache.getEntryCount() : 0;
+  }
+
+  long getTotalBytes() {
+    return cache != null ? cache.getTotalBytes() : 0;
+  }
+
+  private synchronized boolean joinInFlight(String fingerprint, Follower follower) {
+    List<Follower> followers = inFlight.get(fingerprint);
+    if (followers == null) {
+      return false;
+    }
+    followers.add(follower);
+    statReporter.cacheEvent(IN_FLIGHT_NAME, CacheEvent.HIT);
+    return true;
+  }
+
+  private void deliver(final Follower follower, final File resultZip) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          follower.resultReady(resultZip);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.log(Level.SEVERE, "Unable to pass on the result of an identical build", e);
+      if (resultZip != null) {
+        resultZip.delete();
+      }
+    }
+  }
+
+  /**
+   * Copies a cached result zip to a temporary file.
+   *
+   * @return the copy, or null if the result zip is not cached
+   */
+  private File restore(String fingerprint) {
+    if (cache == null) {
+      return null;
+    }
+    return cache.restore(fingerprint, new DiskLruCache.Reader<File>() {
+      @Override
+      public File read(File entry) throws IOException {
+        return copyToTempFile(entry);
+      }
+    });
+  }
+
+  private static File copyToTempFile(File file) throws IOException {
+    File copy = File.createTempFile("build-result", SUFFIX);
+    copy.deleteOnExit();  // In case build server is killed before the follower deletes it.
+    try {
+      Files.copy(file, copy);
+    } catch (IOException e) {
+      copy.delete();
+      throw e;
+    }
+    return copy;
+  }
+}
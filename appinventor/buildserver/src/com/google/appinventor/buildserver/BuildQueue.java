@@ -0,0 +1,362 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Admits builds into a bounded, prioritized queue in front of a fixed number of build threads.
+ *
+ * <p>Builds are started in priority order, first come first served within a priority. A release
+ * build that has waited for longer than {@link #AGING_MILLIS} is started before interactive
+ * builds, so that a steady stream of interactive builds cannot starve it. A build is rejected
+ * with a {@link RejectedExecutionException} when the queue is full or when its user already has
+ * the maximum number of builds waiting. A build that waits for longer than the queue deadline is
+ * not started; its expiry callback is run instead, so that the requester can be told. Expiry
+ * callbacks may block on the network, so they run on their own threads rather than on the
+ * thread that submitted or finished a build.</p>
+ *
+ * <p>Builds run on pooled threads, which are kept for a while after a build so that the next
+ * build does not need to start a thread.</p>
+ *
+ * <p>The queue depth and an estimate of the wait for a new build are available as backpressure
+ * signals.</p>
+ */
+final class BuildQueue {
+
+  /**
+   * Build priorities, most urgent first.
+   */
+  enum Priority {
+    // Builds a user is waiting on, e.g., to scan a barcode or test on a device
+    INTERACTIVE,
+    // Builds for publishing, such as Android App Bundles
+    RELEASE
+  }
+
+  // Release builds that have waited this long are started before interactive builds.
+  static final long AGING_MILLIS = 2 * 60 * 1000L;
+
+  // Weight of the latest build in the moving average of the build time.
+  private static final double BUILD_TIME_WEIGHT = 0.2;
+
+  // Assumed build time until the first build completes.
+  private static final long INITIAL_BUILD_MILLIS = 60 * 1000L;
+
+  // Build threads that have been idle this long are stopped.
+  private static final long IDLE_THREAD_SECONDS = 10 * 60;
+
+  // The number of threads that run expiry callbacks.
+  private static final int EXPIRY_THREADS = 2;
+
+  private static final Logger LOG = Logger.getLogger(BuildQueue.class.getName());
+
+  private static final class Entry {
+    final String user;
+    final Priority priority;
+    final Runnable task;
+    final Runnable onExpired;
+    final long enqueued = System.currentTimeMillis();
+
+    Entry(String user, Priority priority, Runnable task, Runnable onExpired) {
+      this.user = user;
+      this.priority = priority;
+      this.task = task;
+      this.onExpired = onExpired;
+    }
+  }
+
+  // The maximum number of active tasks. 0 means unlimited.
+  private final int maxActiveTasks;
+  private final int maxQueuedTasks;
+  private final int maxQueuedTasksPerUser;
+  private final long maxQueueMillis;
+
+  // All of the following are protected by this.
+  private final Map<Priority, Deque<Entry>> queues = new HashMap<Priority, Deque<Entry>>();
+  private final Map<String, Integer> queuedPerUser = new HashMap<String, Integer>();
+  private int queuedTaskCount = 0;
+  private int activeTaskCount = 0;
+  private int completedTaskCount = 0;
+  private int expiredTaskCount = 0;
+  private int rejectedTaskCount = 0;
+  private long totalQueueMillis = 0;
+  private long maxObservedQueueMillis = 0;
+  private int dequeuedTaskCount = 0;
+  private double averageBuildMillis = INITIAL_BUILD_MILLIS;
+
+  private final AtomicInteger startedThreadCount = new AtomicInteger(0);
+
+  // Build threads are kept for reuse. Builds are only started when a build slot is free, so the
+  // pool needs no bound of its own.
+  private final ThreadPoolExecutor workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+      IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return new Thread(runnable, "build-" + startedThreadCount.incrementAndGet());
+        }
+      });
+
+  // Expiry callbacks run here. Expired builds are bounded by the size of the queue, so the
+  // queue of callbacks needs no bound of its own.
+  private final ThreadPoolExecutor expiryReporters = new ThreadPoolExecutor(EXPIRY_THREADS,
+      EXPIRY_THREADS, IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "build-expiry-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  /**
+   * Creates a BuildQueue.
+   *
+   * @param maxActiveTasks the maximum number of builds that run at the same time, 0 for unlimited
+   * @param maxQueuedTasks the maximum number of builds waiting to start
+   * @param maxQueuedTasksPerUser the maximum number of builds of one user waiting to start
+   * @param maxQueueMillis the time after which a waiting build expires, 0 for no limit
+   */
+  BuildQueue(int maxActiveTasks, int maxQueuedTasks, int maxQueuedTasksPerUser,
+      long maxQueueMillis) {
+    this.maxActiveTasks = maxActiveTasks;
+    this.maxQueuedTasks = maxQueuedTasks;
+    this.maxQueuedTasksPerUser = maxQueuedTasksPerUser;
+    this.maxQueueMillis = maxQueueMillis;
+    for (Priority priority : Priority.values()) {
+      queues.put(priority, new ArrayDeque<Entry>());
+    }
+    expiryReporters.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Submits a build. The build starts right away if a build thread is free.
+   *
+   * @param user the user that requested the build
+   * @param priority the priority of the build
+   * @param task the build
+   * @param onExpired run instead of the build if it waits longer than the queue deadline
+   * @throws RejectedExecutionException if the queue or the user's share of it is full
+   */
+  void submit(String user, Priority priority, Runnable task, Runnable onExpired) {
+    List<Entry> expired;
+    boolean rejected = false;
+    synchronized (this) {
+      expired = removeExpired();
+      if (maxActiveTasks == 0 || activeTaskCount < maxActiveTasks) {
+        start(new Entry(user, priority, task, onExpired));
+      } else {
+        Integer userCount = queuedPerUser.get(user);
+        if (queuedTaskCount >= maxQueuedTasks
+            || (userCount != null && userCount >= maxQueuedTasksPerUser)) {
+          rejectedTaskCount++;
+          rejected = true;
+        } else {
+          queues.get(priority).addLast(new Entry(user, priority, task, onExpired));
+          queuedPerUser.put(user, userCount == null ? 1 : userCount + 1);
+          queuedTaskCount++;
+        }
+      }
+    }
+    runExpired(expired);
+    if (rejected) {
+      throw new RejectedExecutionException();
+    }
+  }
+
+  private void start(final Entry entry) {
+    activeTaskCount++;
+    workers.execute(new Runnable() {
+      @Override
+      public void run() {
+        long start = System.currentTimeMillis();
+        try {
+          entry.task.run();
+        } finally {
+          finished(System.currentTimeMillis() - start);
+        }
+      }
+    });
+  }
+
+  private void finished(long buildMillis) {
+    List<Entry> expired;
+    synchronized (this) {
+      activeTaskCount--;
+      completedTaskCount++;
+      averageBuildMillis += BUILD_TIME_WEIGHT * (buildMillis - averageBuildMillis);
+      expired = removeExpired();
+      Entry next;
+      while ((maxActiveTasks == 0 || activeTaskCount < maxActiveTasks)
+          && (next = pollNext()) != null) {
+        start(next);
+      }
+    }
+    runExpired(expired);
+  }
+
+  /**
+   * Takes the next build to start off the queue. Must be called with the lock held.
+   */
+  private Entry pollNext() {
+    Entry entry = null;
+    Deque<Entry> release = queues.get(Priority.RELEASE);
+    if (!release.isEmpty()
+        && System.currentTimeMillis() - release.peekFirst().enqueued >= AGING_MILLIS) {
+      entry = release.pollFirst();
+    } else {
+      for (Priority priority : Priority.values()) {
+        entry = queues.get(priority).pollFirst();
+        if (entry != null) {
+          break;
+        }
+      }
+    }
+    if (entry != null) {
+      dequeued(entry);
+      long waited = System.currentTimeMillis() - entry.enqueued;
+      totalQueueMillis += waited;
+      maxObservedQueueMillis = Math.max(maxObservedQueueMillis, waited);
+      dequeuedTaskCount++;
+    }
+    return entry;
+  }
+
+  /**
+   * Removes the builds that waited past the deadline. Must be called with the lock held.
+   */
+  private List<Entry> removeExpired() {
+    List<Entry> expired = new ArrayList<Entry>();
+    if (maxQueueMillis <= 0) {
+      return expired;
+    }
+    long deadline = System.currentTimeMillis() - maxQueueMillis;
+    for (Deque<Entry> queue : queues.values()) {
+      Iterator<Entry> it = queue.iterator();
+      while (it.hasNext()) {
+        Entry entry = it.next();
+        if (entry.enqueued < deadline) {
+          it.remove();
+          dequeued(entry);
+          expired.add(entry);
+          expiredTaskCount++;
+        }
+      }
+    }
+    return expired;
+  }
+
+  private void dequeued(Entry entry) {
+    queuedTaskCount--;
+    int userCount = queuedPerUser.get(entry.user) - 1;
+    if (userCount == 0) {
+      queuedPerUser.remove(entry.user);
+    } else {
+      queuedPerUser.put(entry.user, userCount);
+    }
+  }
+
+  /**
+   * Hands the expiry callbacks of expired builds to the expiry threads. Must be called without
+   * the lock held.
+   */
+  private void runExpired(List<Entry> expired) {
+    for (final Entry entry : expired) {
+      LOG.info("Build for " + entry.user + " expired after waiting "
+          + (System.currentTimeMillis() - entry.enqueued) + " ms");
+      expiryReporters.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            entry.onExpired.run();
+          } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Unable to report expired build", e);
+          }
+        }
+      });
+    }
+  }
+
+  int getMaxActiveTasks() {
+    return maxActiveTasks;
+  }
+
+  synchronized int getActiveTaskCount() {
+    return activeTaskCount;
+  }
+
+  synchronized int getCompletedTaskCount() {
+    return completedTaskCount;
+  }
+
+  synchronized int getQueuedTaskCount() {
+    return queuedTaskCount;
+  }
+
+  synchronized int getQueuedTaskCount(Priority priority) {
+    return queues.get(priority).size();
+  }
+
+  synchronized int getExpiredTaskCount() {
+    return expiredTaskCount;
+  }
+
+  synchronized int getRejectedTaskCount() {
+    return rejectedTaskCount;
+  }
+
+  synchronized long getAverageQueueMillis() {
+    return dequeuedTaskCount == 0 ? 0 : totalQueueMillis / dequeuedTaskCount;
+  }
+
+  synchronized long getMaxQueueMillis() {
+    return maxObservedQueueMillis;
+  }
+
+  int getThreadCount() {
+    return workers.getPoolSize();
+  }
+
+  int getStartedThreadCount() {
+    return startedThreadCount.get();
+  }
+
+  synchronized long getAverageBuildMillis() {
+    return (long) averageBuildMillis;
+  }
+
+  /**
+   * Estimates how long a build submitted now would wait before it starts, assuming that the
+   * builds ahead of it take the average build time.
+   *
+   * @return the estimated wait in milliseconds
+   */
+  synchronized long getEstimatedWaitMillis() {
+    if (maxActiveTasks == 0 || activeTaskCount < maxActiveTasks) {
+      return 0;
+    }
+    return (long) (averageBuildMillis * (queuedTaskCount + 1) / maxActiveTasks);
+  }
+}
@@ -6,10 +6,15 @@
 
 package com.google.appinventor.buildserver;
 
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.HistogramStatReporter;
+import com.google.appinventor.buildserver.stats.LatencyHistogram;
+import com.google.appinventor.buildserver.stats.ProcessUsageTotals;
 import com.google.appinventor.buildserver.stats.SimpleStatReporter;
 import com.google.appinventor.buildserver.stats.StatCalculator;
 import com.google.appinventor.buildserver.stats.StatCalculator.Stats;
 import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.appinventor.buildserver.stats.WindowedLatencyHistogram;
 import com.google.appinventor.common.version.GitBuildId;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
@@ -27,12 +32,13 @@ import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
@@ -47,7 +53,11 @@ import java.text.DateFormat;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -77,51 +87,174 @@ public class BuildServer {
   static class ProgressReporter {
     // We create a ProgressReporter instance which is handed off to the
     // project builder and compiler. It is called to report the progress
-    // of the build. The reporting is done by calling the callback URL
-    // and putting the status inside a "build.status" file. This isn't
-    // particularly efficient, but this is the version 0.9 implementation
-    String callbackUrlStr;
+    // of the build. Reports are sent from a shared sender thread, so a slow
+    // App Inventor server never holds up a build. Reports are coalesced:
+    // only the latest progress is sent, at most once per interval. If the
+    // App Inventor server gave us a progress URL, the progress is posted
+    // to it as plain text. Otherwise, it is posted to the callback URL
+    // inside a zipped "build.status" file, as older servers expect.
+    private static final long DEFAULT_MIN_INTERVAL_MS = 1000;
+
+    private static final ScheduledExecutorService SENDER = Executors.newScheduledThreadPool(2,
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "progress-reporter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
+    private final String callbackUrlStr;
+    private final String progressUrlStr;
+    private final long minIntervalMs;
+    private final AtomicInteger latest = new AtomicInteger(-1);
+
+    // All of the following are protected by this.
+    private boolean scheduled = false;
+    private boolean finished = false;
+    // True while a report is being sent. Reports are sent one at a time, and finish() waits for
+    // this to become false.
+    private boolean sending = false;
+    private int lastSent = -1;
+    private long lastSentTime = 0;
+
     ProgressReporter(String callbackUrlStr) {
+      this(callbackUrlStr, null);
+    }
+
+    ProgressReporter(String callbackUrlStr, String progressUrlStr) {
+      this(callbackUrlStr, progressUrlStr, DEFAULT_MIN_INTERVAL_MS);
+    }
+
+    ProgressReporter(String callbackUrlStr, String progressUrlStr, long minIntervalMs) {
       this.callbackUrlStr = callbackUrlStr;
+      this.progressUrlStr = progressUrlStr;
+      this.minIntervalMs = minIntervalMs;
     }
 
     public void report(int progress) {
+      // Stages that run in parallel may finish out of order, but progress never goes back
+      int current = latest.get();
+      while (progress > current && !latest.compareAndSet(current, progress)) {
+        current = latest.get();
+      }
+      synchronized (this) {
+        if (scheduled || finished) {
+          return;
+        }
+        scheduled = true;
+        long delay = Math.max(0, lastSentTime + minIntervalMs - System.currentTimeMillis());
+        SENDER.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    /**
+     * Stops reporting progress. Pending reports are dropped, and a report that is being sent
+     * completes before this returns, so that it cannot arrive after the build results.
+     */
+    public synchronized void finish() {
+      finished = true;
+      boolean interrupted = false;
+      while (sending) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void flush() {
+      int progress;
+      synchronized (this) {
+        scheduled = false;
+        // A report scheduled while another was being sent waits for it to complete
+        while (sending) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        progress = latest.get();
+        if (finished || progress == lastSent) {
+          return;
+        }
+        lastSent = progress;
+        lastSentTime = System.currentTimeMillis();
+        sending = true;
+      }
       try {
+        send(progress);
+      } catch (IOException e) {
+        LOG.warning("IOException during progress report: " + e.getMessage());
+      } finally {
+        synchronized (this) {
+          sending = false;
+          notifyAll();
+        }
+      }
+    }
+
+    void send(int progress) throws IOException {
+      URL url;
+      byte[] body;
+      String contentType;
+      if (progressUrlStr != null) {
+        url = new URL(progressUrlStr);
+        body = (progress + "\n").getBytes("UTF-8");
+        contentType = "text/plain; charset=utf-8";
+      } else {
+        url = new URL(callbackUrlStr);
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         ZipOutputStream zipoutput = new ZipOutputStream(output);
         zipoutput.putNextEntry(new ZipEntry("build.status"));
         PrintWriter pout = new PrintWriter(zipoutput);
         pout.println(progress);
         pout.flush();
-        zipoutput.flush();
         zipoutput.close();
-        ByteArrayInputStream zipinput = new ByteArrayInputStream(output.toByteArray());
-        URL callbackUrl = new URL(callbackUrlStr);
-        HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
+        body = output.toByteArray();
         // Make sure we aren't misinterpreted as
         // form-url-encoded
-        connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
-        connection.setConnectTimeout(5000);
-        connection.setReadTimeout(5000);
-        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
+        contentType = "application/zip; charset=utf-8";
+      }
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setDoOutput(true);
+      connection.setRequestMethod("POST");
+      connection.addRequestProperty("Content-Type", contentType);
+      connection.setFixedLengthStreamingMode(body.length);
+      connection.setConnectTimeout(5000);
+      connection.setReadTimeout(5000);
+      OutputStream out = connection.getOutputStream();
+      try {
+        out.write(body);
+      } finally {
+        out.close();
+      }
+      int responseCode = connection.getResponseCode();
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        LOG.severe("Bad Response Code! (sending status): " + responseCode);
+      }
+      // Read the whole response so that the connection can be kept alive and reused
+      InputStream in = responseCode < 400 ? connection.getInputStream()
+          : connection.getErrorStream();
+      if (in != null) {
         try {
-          BufferedInputStream bufferedInputStream = new BufferedInputStream(zipinput);
-          try {
-            ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
-            bufferedOutputStream.flush();
-          } finally {
-            bufferedInputStream.close();
-          }
+          ByteStreams.copy(in, ByteStreams.nullOutputStream());
         } finally {
-          bufferedOutputStream.close();
-        }
-        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-          LOG.severe("Bad Response Code! (sending status): "+ connection.getResponseCode());
+          in.close();
         }
-      } catch (IOException e) {
-        LOG.severe("IOException during progress report!");
       }
     }
   }
@@ -136,10 +269,26 @@ public class BuildServer {
       usage = "Maximum ram that can be used by a child processes, in MB.")
     int childProcessRamMb = 2048;
 
+    @Option(name = "--compileRamMb",
+      usage = "Memory, in MB, shared by the Kawa and DX processes of simultaneous builds. 0 means one process at a time.")
+    int compileRamMb = 0;
+
     @Option(name = "--maxSimultaneousBuilds",
       usage = "Maximum number of builds that can run in parallel. O means unlimited.")
     int maxSimultaneousBuilds = 0;  // The default is unlimited.
 
+    @Option(name = "--maxQueuedBuilds",
+      usage = "Maximum number of builds that wait for a free build slot. 0 means builds are rejected when all slots are busy.")
+    int maxQueuedBuilds = 0;
+
+    @Option(name = "--maxQueuedBuildsPerUser",
+      usage = "Maximum number of builds of a single user that wait for a free build slot.")
+    int maxQueuedBuildsPerUser = 2;
+
+    @Option(name = "--buildQueueTimeoutSec",
+      usage = "Seconds after which a waiting build is abandoned and reported as failed. 0 means no limit.")
+    int buildQueueTimeoutSec = 600;
+
     @Option(name = "--port",
       usage = "The port number to bind to on the local machine.")
     int port = 9990;
@@ -157,9 +306,79 @@ public class BuildServer {
             usage = "the directory to cache the pre-dexed libraries")
     String dexCacheDir = null;
 
+    @Option(name = "--dexCacheMaxMb",
+            usage = "Maximum size, in MB, of the pre-dexed library cache. 0 means no limit.")
+    int dexCacheMaxMb = 0;
+
+    @Option(name = "--dexCacheMaxAgeDays",
+            usage = "Days after which an unused pre-dexed library is removed. 0 means never.")
+    int dexCacheMaxAgeDays = 0;
+
+    @Option(name = "--yailClassCacheDir",
+            usage = "the directory to cache the class files of compiled YAIL sources")
+    String yailClassCacheDir = null;
+
+    @Option(name = "--yailClassCacheMb",
+            usage = "Maximum size, in MB, of the YAIL class cache.")
+    int yailClassCacheMb = 512;
+
+    @Option(name = "--aarCacheDir",
+            usage = "the directory to cache exploded AAR libraries and their merged resources")
+    String aarCacheDir = null;
+
+    @Option(name = "--aarCacheMb",
+            usage = "Maximum size, in MB, of the AAR library cache.")
+    int aarCacheMb = 1024;
+
+    @Option(name = "--aapt2CacheDir",
+            usage = "the directory to cache the resource files compiled by aapt2")
+    String aapt2CacheDir = null;
+
+    @Option(name = "--aapt2CacheMb",
+            usage = "Maximum size, in MB, of the aapt2 resource cache.")
+    int aapt2CacheMb = 256;
+
+    @Option(name = "--iconCacheDir",
+            usage = "the directory to cache the launcher icons rendered from project icons")
+    String iconCacheDir = null;
+
+    @Option(name = "--iconCacheMb",
+            usage = "Maximum size, in MB, of the launcher icon cache.")
+    int iconCacheMb = 64;
+
+    @Option(name = "--buildCacheDir",
+            usage = "the directory to cache the results of successful builds, so that identical "
+                + "builds are not run again")
+    String buildCacheDir = null;
+
+    @Option(name = "--buildCacheMb",
+            usage = "Maximum size, in MB, of the build result cache.")
+    int buildCacheMb = 1024;
+
+    @Option(name = "--resourceDir",
+            usage = "the directory to extract the build tools and libraries to, which is kept "
+                + "across restarts (default: a directory in java.io.tmpdir)")
+    String resourceDir = null;
+
     @Option(name = "--statreporter",
         usage = "the reporter to use for collecting stats")
-    String statReporter = "com.google.appinventor.buildserver.stats.SimpleStatReporter";
+    String statReporter = "com.google.appinventor.buildserver.stats.HistogramStatReporter";
+
+    @Option(name = "--kawaWorkers",
+        usage = "Number of idle Kawa compiler processes kept warm between builds. They count against --compileRamMb. 0 means a new process per build.")
+    int kawaWorkers = 0;
+
+    @Option(name = "--kawaWorkerMaxBuilds",
+        usage = "Number of builds after which a warm Kawa compiler process is replaced.")
+    int kawaWorkerMaxBuilds = 50;
+
+    @Option(name = "--kawaWorkerMaxRssMb",
+        usage = "Resident memory, in MB, above which a warm Kawa compiler process is replaced. 0 means no limit.")
+    int kawaWorkerMaxRssMb = 0;
+
+    @Option(name = "--maxIdleWorkspaces",
+        usage = "Number of project directories kept for reuse between builds. 0 means a new directory per build.")
+    int maxIdleWorkspaces = 0;
 
   }
 
@@ -175,6 +394,10 @@ public class BuildServer {
   private static final MediaType ZIP_MEDIA_TYPE =
     new MediaType("application", "zip", ImmutableMap.of("charset", "utf-8"));
 
+  // How often, and after how long a first pause, failed uploads of build results are retried
+  private static final int RESULT_UPLOAD_ATTEMPTS = 4;
+  private static final long RESULT_UPLOAD_INITIAL_BACKOFF_MS = 2000;
+
   private static final AtomicInteger buildCount = new AtomicInteger(0);
 
   // The number of build requests for this server run
@@ -196,10 +419,22 @@ public class BuildServer {
   private static int maximumActiveBuildTasks = 0;
 
   // The build executor used to limit the number of simultaneous builds.
-  // NOTE(lizlooney) - the buildExecutor must be created after the command line options are
+  // NOTE(lizlooney) - the buildQueue must be created after the command line options are
   // processed in main(). If it is created here, the number of simultaneous builds will always be
   // the default value, even if the --maxSimultaneousBuilds option is on the command line.
-  private static NonQueuingExecutor buildExecutor;
+  private static BuildQueue buildQueue;
+
+  // The scheduler that limits the number of Kawa and DX processes running at a time.
+  private static CompileScheduler compileScheduler;
+
+  // The pool of warm Kawa compilers, or null if Kawa runs in a new process for every build.
+  private static KawaCompilerPool kawaCompilerPool;
+
+  // The pool of reusable project directories, or null if every build creates its own.
+  private static WorkspacePool workspacePool;
+
+  // Shares the results of identical builds.
+  private static BuildDeduplicator buildDeduplicator;
 
   // The input zip file. It will be deleted in cleanUp.
   private File inputZip;
@@ -216,6 +451,9 @@ public class BuildServer {
   // The zip file where we put all the build results for this request.
   private File outputZip;
 
+  // The fingerprint of this build, while identical builds may be waiting for its result.
+  private String sharedFingerprint;
+
   // non-zero means we are shutting down, if currentTimeMillis is > then this, then we are
   // completely shutdown, otherwise we are just providing NOT OK for health checks but
   // otherwise still accepting jobs. This avoids having people get an error if the load
@@ -231,7 +469,9 @@ public class BuildServer {
   //                DOWN:       We return bad health and reject jobs
   //                DRAINING:   We have reached > 2/3 of max permitted jobs
   //                            We return bad health (but accept jobs) until
-  //                            the number of active jobs is < 1/3 of max
+  //                            the number of active jobs is < 1/3 of max.
+  //                            Also while the estimated queue wait is more
+  //                            than half of the queue deadline
   private enum ShutdownState { UP, SHUTTING, TURNING, DOWN, DRAINING };
 
   private static volatile boolean draining = false; // We have exceeded 2/3 max load, waiting for
@@ -244,22 +484,29 @@ public class BuildServer {
     ShutdownState shut = getShutdownState();
     if (shut == ShutdownState.UP) {
       LOG.info("Healthcheck: UP");
-      return Response.ok("ok", MediaType.TEXT_PLAIN_TYPE).build();
+      return withQueueHeaders(Response.ok("ok", MediaType.TEXT_PLAIN_TYPE)).build();
     } else if (shut == ShutdownState.DOWN) {
       LOG.info("Healthcheck: DOWN");
-      return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is shutdown").build();
+      return withQueueHeaders(Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is shutdown")).build();
     } else if (shut == ShutdownState.DRAINING) {
       LOG.info("Healthcheck: DRAINING");
-      return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is draining").build();
+      return withQueueHeaders(Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is draining")).build();
     } else if (shut == ShutdownState.TURNING) {
       LOG.info("Healthcheck: TURNING");
-      return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is turning on").build();
+      return withQueueHeaders(Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is turning on")).build();
     } else {
       LOG.info("Healthcheck: SHUTTING");
-      return Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is shutting down").build();
+      return withQueueHeaders(Response.status(Response.Status.FORBIDDEN).type(MediaType.TEXT_PLAIN_TYPE).entity("Build Server is shutting down")).build();
     }
   }
 
+  // Backpressure signals, so that load balancers can route builds elsewhere before we are full.
+  private static Response.ResponseBuilder withQueueHeaders(Response.ResponseBuilder builder) {
+    return builder
+        .header("X-Build-Queue-Depth", buildQueue.getQueuedTaskCount())
+        .header("X-Build-Queue-Estimated-Wait-Ms", buildQueue.getEstimatedWaitMillis());
+  }
+
   @GET
   @Path("vars")
   @Produces(MediaType.TEXT_HTML)
@@ -314,16 +561,86 @@ public class BuildServer {
     variables.put("failed-async-build-requests", failedBuildRequests.get() + "");
 
     // Build tasks
-    int max = buildExecutor.getMaxActiveTasks();
+    int max = buildQueue.getMaxActiveTasks();
     if (max == 0) {
       variables.put("maximum-simultaneous-build-tasks-allowed", "unlimited");
     } else {
       variables.put("maximum-simultaneous-build-tasks-allowed", max + "");
     }
-    variables.put("completed-build-tasks", buildExecutor.getCompletedTaskCount() + "");
-    maximumActiveBuildTasks = Math.max(maximumActiveBuildTasks, buildExecutor.getActiveTaskCount());
+    variables.put("completed-build-tasks", buildQueue.getCompletedTaskCount() + "");
+    maximumActiveBuildTasks = Math.max(maximumActiveBuildTasks, buildQueue.getActiveTaskCount());
     variables.put("maximum-simultaneous-build-tasks-occurred", maximumActiveBuildTasks + "");
-    variables.put("active-build-tasks", buildExecutor.getActiveTaskCount() + "");
+    variables.put("active-build-tasks", buildQueue.getActiveTaskCount() + "");
+    variables.put("queued-build-tasks", buildQueue.getQueuedTaskCount() + "");
+    for (BuildQueue.Priority priority : BuildQueue.Priority.values()) {
+      variables.put("queued-build-tasks-" + priority.name().toLowerCase(),
+          buildQueue.getQueuedTaskCount(priority) + "");
+    }
+    variables.put("expired-build-tasks", buildQueue.getExpiredTaskCount() + "");
+    variables.put("average-build-queue-time", buildQueue.getAverageQueueMillis() + " ms");
+    variables.put("maximum-build-queue-time", buildQueue.getMaxQueueMillis() + " ms");
+    variables.put("estimated-build-queue-wait", buildQueue.getEstimatedWaitMillis() + " ms");
+
+    // Kawa and DX slots
+    if (compileScheduler != null) {
+      variables.put("compile-slots", compileScheduler.getSlots() + "");
+      variables.put("compile-slots-in-use", compileScheduler.getSlotsInUse() + "");
+      variables.put("compile-slots-peak", compileScheduler.getPeakSlotsInUse() + "");
+      for (CompileScheduler.Resource resource : CompileScheduler.Resource.values()) {
+        String prefix = resource.getLabel() + "-";
+        long acquisitions = compileScheduler.getAcquisitions(resource);
+        long totalWait = compileScheduler.getTotalWaitMillis(resource);
+        variables.put(prefix + "active", compileScheduler.getActive(resource) + "");
+        variables.put(prefix + "peak-active", compileScheduler.getPeakActive(resource) + "");
+        variables.put(prefix + "waiting", compileScheduler.getWaiting(resource) + "");
+        variables.put(prefix + "runs", acquisitions + "");
+        variables.put(prefix + "avg-queue-wait",
+            (acquisitions == 0 ? 0 : totalWait / acquisitions) + " ms");
+        variables.put(prefix + "max-queue-wait",
+            compileScheduler.getMaxWaitMillis(resource) + " ms");
+      }
+    }
+
+    // Kawa workers
+    if (kawaCompilerPool != null) {
+      variables.put("kawa-workers-idle", kawaCompilerPool.getIdleWorkerCount() + "");
+      variables.put("kawa-workers-started", kawaCompilerPool.getStartedWorkerCount() + "");
+      variables.put("kawa-workers-retired", kawaCompilerPool.getRetiredWorkerCount() + "");
+      variables.put("kawa-worker-compilations", kawaCompilerPool.getCompilationCount() + "");
+      variables.put("kawa-worker-warm-compilations",
+          kawaCompilerPool.getWarmCompilationCount() + "");
+    }
+
+    // Workspaces
+    if (workspacePool != null) {
+      variables.put("workspaces-idle", workspacePool.getIdleCount() + "");
+      variables.put("workspaces-created", workspacePool.getCreatedCount() + "");
+      variables.put("workspaces-reused", workspacePool.getReusedCount() + "");
+      variables.put("workspaces-discarded", workspacePool.getDiscardedCount() + "");
+    }
+    variables.put("build-threads", buildQueue.getThreadCount() + "");
+
+    // Identical builds
+    if (buildDeduplicator != null) {
+      variables.put("shared-builds-in-flight", buildDeduplicator.getInFlightCount() + "");
+      variables.put("build-result-cache-entries", buildDeduplicator.getEntryCount() + "");
+      variables.put("build-result-cache-bytes", buildDeduplicator.getTotalBytes() + "");
+    }
+    variables.put("build-threads-started", buildQueue.getStartedThreadCount() + "");
+
+    // Child processes, by tool
+    for (Map.Entry<String, ProcessUsageTotals> tool : ProcessMonitor.getTotals().entrySet()) {
+      String prefix = "process-" + tool.getKey() + "-";
+      ProcessUsageTotals totals = tool.getValue();
+      variables.put(prefix + "runs", totals.getRuns() + "");
+      variables.put(prefix + "wall-time", totals.getWallMillis() + " ms");
+      variables.put(prefix + "user-cpu", totals.getUserCpuMillis() + " ms");
+      variables.put(prefix + "sys-cpu", totals.getSystemCpuMillis() + " ms");
+      variables.put(prefix + "avg-peak-rss", totals.getAveragePeakRssKb() + " KB");
+      variables.put(prefix + "max-peak-rss", totals.getMaxPeakRssKb() + " KB");
+      variables.put(prefix + "read-bytes", totals.getReadBytes() + "");
+      variables.put(prefix + "written-bytes", totals.getWriteBytes() + "");
+    }
 
     return mapToHtml(variables);
   }
@@ -348,6 +665,7 @@ public class BuildServer {
     variables.put("hostname", InetAddress.getLocalHost().getHostName());
 
     // Build Stats
+    Map<String, Map<CacheEvent, Long>> cacheStats = null;
     if (statReporter instanceof SimpleStatReporter) {
       StatCalculator calculator = new StatCalculator();
       processStats("last1000.",
@@ -359,11 +677,59 @@ public class BuildServer {
       processStats("failures.",
           calculator.computeStats(((SimpleStatReporter) statReporter).getFailureStats()),
           variables);
+      cacheStats = ((SimpleStatReporter) statReporter).getCacheStats();
+    } else if (statReporter instanceof HistogramStatReporter) {
+      HistogramStatReporter reporter = (HistogramStatReporter) statReporter;
+      processHistogram("successes.", reporter.getBuilds(true), variables);
+      processHistogram("failures.", reporter.getBuilds(false), variables);
+      for (Map.Entry<String, WindowedLatencyHistogram> stage : reporter.getStages().entrySet()) {
+        processHistogram("stages." + stage.getKey() + ".", stage.getValue(), variables);
+      }
+      cacheStats = reporter.getCacheStats();
+    }
+    if (cacheStats != null) {
+      for (Map.Entry<String, Map<CacheEvent, Long>> cache : cacheStats.entrySet()) {
+        for (Map.Entry<CacheEvent, Long> event : cache.getValue().entrySet()) {
+          variables.put("cache." + cache.getKey() + "." + event.getKey().name().toLowerCase(),
+              event.getValue() + "");
+        }
+      }
     }
 
     return mapToHtml(variables);
   }
 
+  private void processHistogram(String prefix, WindowedLatencyHistogram histogram,
+      Map<String, String> variables) {
+    processHistogram(prefix + "all.", histogram.getTotal(), variables);
+    for (int minutes : HistogramStatReporter.WINDOW_MINUTES) {
+      processHistogram(prefix + minutes + "m.", histogram.getWindow(minutes), variables);
+    }
+  }
+
+  private void processHistogram(String prefix, LatencyHistogram histogram,
+      Map<String, String> variables) {
+    variables.put(prefix + "count", histogram.getCount() + "");
+    for (double percentile : HistogramStatReporter.PERCENTILES) {
+      variables.put(prefix + "p" + (int) percentile,
+          histogram.getValueAtPercentile(percentile) + " ms");
+    }
+    variables.put(prefix + "max", histogram.getMax() + " ms");
+  }
+
+  @GET
+  @Path("metrics")
+  @Produces("text/plain; version=0.0.4")
+  public Response metrics() {
+    if (!(statReporter instanceof HistogramStatReporter)) {
+      return Response.status(Response.Status.NOT_FOUND).type(MediaType.TEXT_PLAIN_TYPE)
+          .entity("Metrics are only available with --statreporter "
+              + HistogramStatReporter.class.getName()).build();
+    }
+    return Response.ok(((HistogramStatReporter) statReporter).toPrometheusText(),
+        "text/plain; version=0.0.4").build();
+  }
+
   private void processStats(String prefix, Stats stats, Map<String, String> variables) {
     variables.put(prefix + "min", stats.getMinTime() + " ms");
     variables.put(prefix + "avg", stats.getAvgTime() + " ms");
@@ -548,6 +914,10 @@ public class BuildServer {
    * @param gitBuildVersion  The value of GitBuildId.getVersion() sent from
    *     YoungAndroidProjectService.build.
    * @param callbackUrlStr An url to send the build results back to.
+   * @param priority  Either "interactive" or "release". If absent, App Bundles are release builds
+   *     and APKs are interactive builds. Interactive builds are started first when builds queue.
+   * @param progressUrlStr An optional url to send the progress of the build to, as plain text.
+   *     If absent, progress is sent to the callback url in a zipped build.status file.
    * @param inputZipFile  The zip file representing the App Inventor source code.
    * @return a status response, typically OK (200) or SERVICE_UNAVAILABLE (503).
    */
@@ -559,12 +929,21 @@ public class BuildServer {
     @QueryParam("callback") final String callbackUrlStr,
     @QueryParam("gitBuildVersion") final String gitBuildVersion,
     @QueryParam("ext") final String ext,
+    @QueryParam("priority") final String priority,
+    @QueryParam("progress") final String progressUrlStr,
     final File inputZipFile) throws IOException {
     // Set the inputZip field so we can delete the input zip file later in
     // cleanUp.
     inputZip = inputZipFile;
     inputZip.deleteOnExit(); // In case build server is killed before cleanUp executes.
     String requesting_host = (new URL(callbackUrlStr)).getHost();
+    // Progress is only ever sent to the host that receives the build results
+    final String progressUrl;
+    if (progressUrlStr != null && requesting_host.equals(new URL(progressUrlStr).getHost())) {
+      progressUrl = progressUrlStr;
+    } else {
+      progressUrl = null;
+    }
 
     final boolean isAab = Main.AAB_EXTENSION_VALUE.equals(ext);
 
@@ -615,6 +994,32 @@ public class BuildServer {
         }
       }
 
+      String fingerprint = fingerprintBuild(userName, inputZipFile, isAab);
+      if (fingerprint != null && buildDeduplicator.join(fingerprint,
+          new BuildDeduplicator.Follower() {
+            @Override
+            public void resultReady(File resultZip) {
+              try {
+                if (resultZip != null) {
+                  outputZip = resultZip;
+                } else {
+                  createFailureZip("The build server was unable to build the project. "
+                      + "Please try again.");
+                }
+                sendResultZip(callbackUrlStr);
+              } catch (Exception e) {
+                LOG.severe("Exception while sending the result of an identical build: "
+                    + e.getMessage());
+              } finally {
+                cleanUp();
+              }
+            }
+          })) {
+        LOG.info("Sharing the result of an identical build for " + userName);
+        return Response.ok().type(MediaType.TEXT_PLAIN_TYPE).entity("" + 0).build();
+      }
+      sharedFingerprint = fingerprint;
+
       Runnable buildTask = new Runnable() {
           @Override
           public void run() {
@@ -622,35 +1027,17 @@ public class BuildServer {
             try {
               LOG.info("START NEW BUILD " + count);
               checkMemory();
-              buildAndCreateZip(userName, inputZipFile, isAab, new ProgressReporter(callbackUrlStr));
-              // Send zip back to the callbackUrl
-              LOG.info("CallbackURL: " + callbackUrlStr);
-              URL callbackUrl = new URL(callbackUrlStr);
-              HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
-              connection.setDoOutput(true);
-              connection.setRequestMethod("POST");
-              // Make sure we aren't misinterpreted as
-              // form-url-encoded
-              connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
-              connection.setConnectTimeout(60000);
-              connection.setReadTimeout(60000);
-              BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
+              ProgressReporter reporter = new ProgressReporter(callbackUrlStr, progressUrl);
+              boolean buildSucceeded;
               try {
-                BufferedInputStream bufferedInputStream = new BufferedInputStream(
-                  new FileInputStream(outputZip));
-                try {
-                  ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
-                  checkMemory();
-                  bufferedOutputStream.flush();
-                } finally {
-                  bufferedInputStream.close();
-                }
+                buildSucceeded = buildAndCreateZip(userName, inputZipFile, isAab, reporter);
               } finally {
-                bufferedOutputStream.close();
-              }
-              if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {LOG.severe("Bad Response Code!: "+ connection.getResponseCode());
-                // TODO(user) Maybe do some retries
+                reporter.finish();
               }
+              // A build that generated a keystore is not cached, so that later builds are
+              // signed with the keystore that the App Inventor server saves.
+              shareResult(outputZip, buildSucceeded && outputKeystore == null);
+              sendResultZip(callbackUrlStr);
             } catch (Exception e) {
               // TODO(user): Maybe send a failure callback
               LOG.severe("Exception: " + e.getMessage()+ " and the length is of inputZip is "+ inputZip.length());
@@ -661,8 +1048,29 @@ public class BuildServer {
             }
           }
         };
+      Runnable expiredTask = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              createFailureZip("The build server was too busy to start the build in time. "
+                  + "Please try again.");
+              shareResult(outputZip, false);
+              sendResultZip(callbackUrlStr);
+            } catch (Exception e) {
+              LOG.severe("Exception while reporting expired build: " + e.getMessage());
+            } finally {
+              cleanUp();
+            }
+          }
+        };
+      BuildQueue.Priority buildPriority;
+      if ("release".equals(priority) || (priority == null && isAab)) {
+        buildPriority = BuildQueue.Priority.RELEASE;
+      } else {
+        buildPriority = BuildQueue.Priority.INTERACTIVE;
+      }
       try {
-        buildExecutor.execute(buildTask);
+        buildQueue.submit(userName, buildPriority, buildTask, expiredTask);
       } catch (RejectedExecutionException e) {
         // This request was rejected because all threads in the build
         // executor are busy.
@@ -684,7 +1092,126 @@ public class BuildServer {
       .entity("" + 0).build();
   }
 
-  private void buildAndCreateZip(String userName, File inputZipFile, boolean isAab, ProgressReporter reporter)
+  private static String fingerprintBuild(String userName, File inputZipFile, boolean isAab) {
+    if (buildDeduplicator == null) {
+      return null;
+    }
+    try {
+      // The flags are those that build passes to the project builder
+      return BuildDeduplicator.fingerprint(inputZipFile, userName, isAab, false, false,
+          GitBuildId.getFingerprint());
+    } catch (IOException e) {
+      // The build will report the problem with the zip
+      LOG.warning("Unable to fingerprint build: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Passes the result zip of this build request to the identical builds that are waiting for
+   * it, if any. This is done at most once; later calls have no effect.
+   *
+   * @param resultZip the result zip, or null if there is none
+   * @param cacheable whether the result zip may be cached for later identical builds
+   */
+  private void shareResult(File resultZip, boolean cacheable) {
+    if (sharedFingerprint != null) {
+      buildDeduplicator.finish(sharedFingerprint, resultZip, cacheable);
+      sharedFingerprint = null;
+    }
+  }
+
+  /**
+   * Posts the result zip of this build request to the given callback URL. The zip is streamed
+   * from disk rather than buffered in memory. Saving results is idempotent on the App Inventor
+   * server, so if the upload fails or the server responds with an error, the whole zip is sent
+   * again after a backoff.
+   */
+  private void sendResultZip(String callbackUrlStr) throws IOException {
+    LOG.info("CallbackURL: " + callbackUrlStr);
+    long backoffMs = RESULT_UPLOAD_INITIAL_BACKOFF_MS;
+    for (int attempt = 1; ; attempt++) {
+      String failure;
+      try {
+        int responseCode = postResultZip(callbackUrlStr);
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+          return;
+        }
+        LOG.severe("Bad Response Code!: " + responseCode);
+        if (responseCode < 500) {
+          // The server rejected the results, and will do so again
+          return;
+        }
+        failure = "response code " + responseCode;
+      } catch (IOException e) {
+        if (attempt >= RESULT_UPLOAD_ATTEMPTS) {
+          throw e;
+        }
+        failure = e.getMessage();
+      }
+      if (attempt >= RESULT_UPLOAD_ATTEMPTS) {
+        LOG.severe("Giving up sending build results after " + attempt + " attempts");
+        return;
+      }
+      LOG.warning("Sending build results failed (" + failure + "), attempt " + attempt
+          + " of " + RESULT_UPLOAD_ATTEMPTS + ", retrying in " + backoffMs + " ms");
+      try {
+        Thread.sleep(backoffMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while sending build results", e);
+      }
+      backoffMs *= 2;
+    }
+  }
+
+  private int postResultZip(String callbackUrlStr) throws IOException {
+    URL callbackUrl = new URL(callbackUrlStr);
+    HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
+    connection.setDoOutput(true);
+    connection.setRequestMethod("POST");
+    // Make sure we aren't misinterpreted as
+    // form-url-encoded
+    connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
+    // Stream the zip instead of letting HttpURLConnection buffer all of it to compute the length
+    connection.setFixedLengthStreamingMode(outputZip.length());
+    connection.setConnectTimeout(60000);
+    connection.setReadTimeout(60000);
+    BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
+    try {
+      BufferedInputStream bufferedInputStream = new BufferedInputStream(
+        new FileInputStream(outputZip));
+      try {
+        ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
+        checkMemory();
+        bufferedOutputStream.flush();
+      } finally {
+        bufferedInputStream.close();
+      }
+    } finally {
+      bufferedOutputStream.close();
+    }
+    return connection.getResponseCode();
+  }
+
+  /**
+   * Creates a result zip that reports a failure without building anything.
+   */
+  private void createFailureZip(String message) throws IOException, JSONException {
+    failedBuildRequests.getAndIncrement();
+    outputZip = File.createTempFile(inputZip.getName(), ".zip");
+    outputZip.deleteOnExit();  // In case build server is killed before cleanUp executes.
+    ZipOutputStream zipOutputStream =
+      new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputZip)));
+    zipOutputStream.putNextEntry(new ZipEntry("build.out"));
+    PrintStream zipPrintStream = new PrintStream(zipOutputStream);
+    zipPrintStream.print(genBuildOutput(new Result(Result.GENERAL_FAILURE, "", message)));
+    zipPrintStream.flush();
+    zipOutputStream.flush();
+    zipOutputStream.close();
+  }
+
+  private boolean buildAndCreateZip(String userName, File inputZipFile, boolean isAab, ProgressReporter reporter)
     throws IOException, JSONException {
     Result buildResult = build(userName, inputZipFile, isAab, reporter);
     boolean buildSucceeded = buildResult.succeeded();
@@ -711,6 +1238,7 @@ public class BuildServer {
     zipPrintStream.flush();
     zipOutputStream.flush();
     zipOutputStream.close();
+    return buildSucceeded;
   }
 
   private String genBuildOutput(Result buildResult) throws JSONException {
@@ -751,6 +1279,8 @@ public class BuildServer {
   }
 
   private void cleanUp() {
+    // Identical builds still waiting get no result, as this build did not produce one
+    shareResult(null, false);
     if (inputZip != null) {
       inputZip.delete();
     }
@@ -803,18 +1333,24 @@ public class BuildServer {
         @Override
         public void run() {
           shuttingTime = System.currentTimeMillis();
-          if (buildExecutor == null) {
+          if (buildQueue == null) {
             /* We haven't really started up yet... */
             return;
           }
           while (true) {
-            int tasks = buildExecutor.getActiveTaskCount();
+            int tasks = buildQueue.getActiveTaskCount() + buildQueue.getQueuedTaskCount();
             if (tasks <= 0) {
               try {
                 Thread.sleep(10000); // One final wait so people can get
                                      // their barcode
               } catch (InterruptedException e) {
               }
+              if (kawaCompilerPool != null) {
+                kawaCompilerPool.shutdown();
+              }
+              if (workspacePool != null) {
+                workspacePool.shutdown();
+              }
               return;
             }
             try {
@@ -826,8 +1362,82 @@ public class BuildServer {
         }
       });
 
-    // Now that the command line options have been processed, we can create the buildExecutor.
-    buildExecutor = new NonQueuingExecutor(commandLineOptions.maxSimultaneousBuilds);
+    // Now that the command line options have been processed, we can create the buildQueue.
+    buildQueue = new BuildQueue(commandLineOptions.maxSimultaneousBuilds,
+        commandLineOptions.maxQueuedBuilds, commandLineOptions.maxQueuedBuildsPerUser,
+        TimeUnit.SECONDS.toMillis(commandLineOptions.buildQueueTimeoutSec));
+
+    compileScheduler = new CompileScheduler(CompileScheduler.computeSlots(
+        Runtime.getRuntime().availableProcessors(), commandLineOptions.compileRamMb,
+        commandLineOptions.childProcessRamMb));
+    Compiler.setCompileScheduler(compileScheduler);
+    LOG.info("Kawa and DX slots: " + compileScheduler.getSlots());
+
+    ResourceExtractor resourceExtractor = new ResourceExtractor(
+        commandLineOptions.resourceDir != null ? new File(commandLineOptions.resourceDir)
+            : ResourceExtractor.getDefaultParentDirectory(),
+        statReporter);
+    Compiler.setResourceExtractor(resourceExtractor);
+    resourceExtractor.prepare(Compiler.getSharedResources(),
+        Runtime.getRuntime().availableProcessors());
+    // Parse the component descriptors before the first build needs them
+    ComponentInfoIndex.getSimpleComponents();
+
+    if (commandLineOptions.dexCacheDir != null) {
+      DexCache.open(new File(commandLineOptions.dexCacheDir),
+          commandLineOptions.dexCacheMaxMb * 1024L * 1024L,
+          TimeUnit.DAYS.toMillis(commandLineOptions.dexCacheMaxAgeDays), statReporter);
+    }
+
+    if (commandLineOptions.yailClassCacheDir != null) {
+      Compiler.setYailClassCache(new YailClassCache(new File(commandLineOptions.yailClassCacheDir),
+          commandLineOptions.yailClassCacheMb * 1024L * 1024L, statReporter));
+    }
+
+    if (commandLineOptions.aarCacheDir != null) {
+      Compiler.setAarCache(new AarCache(new File(commandLineOptions.aarCacheDir),
+          commandLineOptions.aarCacheMb * 1024L * 1024L, statReporter));
+    }
+
+    if (commandLineOptions.aapt2CacheDir != null) {
+      Compiler.setResourceFlatCache(new ResourceFlatCache(
+          new File(commandLineOptions.aapt2CacheDir),
+          commandLineOptions.aapt2CacheMb * 1024L * 1024L, statReporter));
+    }
+
+    if (commandLineOptions.iconCacheDir != null) {
+      Compiler.setIconCache(new IconCache(new File(commandLineOptions.iconCacheDir),
+          commandLineOptions.iconCacheMb * 1024L * 1024L, statReporter));
+    }
+
+    // Results of identical builds are sent from threads of their own, as they run no build
+    buildDeduplicator = new BuildDeduplicator(
+        commandLineOptions.buildCacheDir != null ? new File(commandLineOptions.buildCacheDir)
+            : null,
+        commandLineOptions.buildCacheMb * 1024L * 1024L,
+        Executors.newCachedThreadPool(new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger(0);
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "shared-build-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }),
+        statReporter);
+
+    if (commandLineOptions.kawaWorkers > 0) {
+      kawaCompilerPool = new KawaCompilerPool(compileScheduler, commandLineOptions.kawaWorkers,
+          commandLineOptions.kawaWorkerMaxBuilds, commandLineOptions.kawaWorkerMaxRssMb);
+      Compiler.setKawaCompilerPool(kawaCompilerPool);
+    }
+
+    if (commandLineOptions.maxIdleWorkspaces > 0) {
+      workspacePool = new WorkspacePool(new File(System.getProperty("java.io.tmpdir")),
+          commandLineOptions.maxIdleWorkspaces);
+      ProjectBuilder.setWorkspacePool(workspacePool);
+    }
 
     int port = commandLineOptions.port;
     SelectorThread threadSelector = GrizzlyServerFactory.create("http://localhost:" + port + "/");
@@ -868,12 +1478,17 @@ public class BuildServer {
     }
 
     if (shuttingTime == 0) {
-      int max = buildExecutor.getMaxActiveTasks();
+      // A new build would likely wait for more than half of the queue deadline
+      long queueTimeout = TimeUnit.SECONDS.toMillis(commandLineOptions.buildQueueTimeoutSec);
+      if (queueTimeout > 0 && buildQueue.getEstimatedWaitMillis() > queueTimeout / 2) {
+        return ShutdownState.DRAINING;
+      }
+      int max = buildQueue.getMaxActiveTasks();
       if (max < 10) {           // Only do this scheme if we are not unlimited
                                 // (unlimited == 0) and allow more then 10 max builds
         return ShutdownState.UP;
       }
-      int active = buildExecutor.getActiveTaskCount();
+      int active = buildQueue.getActiveTaskCount();
       if (draining) {
         if (active < max/3) {
           draining = false;
@@ -0,0 +1,232 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out slots for the memory hungry child processes of a build (Kawa and DX).
+ *
+ * <p>Every Kawa or DX process runs with a heap of up to {@code childProcessRamMb}, so the number
+ * of slots is the memory budget divided by that amount, capped by the number of available
+ * processors. Slots are granted in arrival order regardless of the resource being requested.
+ * Each resource keeps its own counters for queue wait time and concurrency.</p>
+ *
+ * <p>A warm Kawa worker that {@link KawaCompilerPool} keeps between builds holds the slot it was
+ * started with, so idle workers count against the budget too. A request that finds no free slot
+ * first asks the {@link Reclaimer} to stop one of them.</p>
+ */
+final class CompileScheduler {
+
+  /**
+   * The kinds of work that need a slot.
+   */
+  enum Resource {
+    KAWA("kawa"),
+    DX("dx");
+
+    private final String label;
+
+    Resource(String label) {
+      this.label = label;
+    }
+
+    String getLabel() {
+      return label;
+    }
+  }
+
+  /**
+   * A granted slot. It must be released exactly once, normally in a finally block.
+   */
+  final class Slot {
+    private final Resource resource;
+    private boolean released = false;
+
+    private Slot(Resource resource) {
+      this.resource = resource;
+    }
+
+    void release() {
+      if (released) {
+        return;
+      }
+      released = true;
+      stats[resource.ordinal()].active.decrementAndGet();
+      slotsInUse.decrementAndGet();
+      permits.release();
+    }
+  }
+
+  /**
+   * Stops idle work that holds a slot, such as a warm Kawa worker.
+   */
+  interface Reclaimer {
+    /**
+     * Stops one piece of idle work, if there is any, and releases its slot.
+     */
+    void reclaim();
+  }
+
+  private static final class ResourceStats {
+    final AtomicInteger waiting = new AtomicInteger();
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger peakActive = new AtomicInteger();
+    final AtomicLong acquisitions = new AtomicLong();
+    final AtomicLong totalWaitMillis = new AtomicLong();
+    final AtomicLong maxWaitMillis = new AtomicLong();
+  }
+
+  private final int slots;
+  private final Semaphore permits;
+  private final AtomicInteger slotsInUse = new AtomicInteger();
+  private final AtomicInteger peakSlotsInUse = new AtomicInteger();
+  private final ResourceStats[] stats = new ResourceStats[Resource.values().length];
+  private volatile Reclaimer reclaimer = null;
+
+  /**
+   * Creates a scheduler.
+   *
+   * @param slots the number of Kawa or DX processes that may run at the same time
+   */
+  CompileScheduler(int slots) {
+    if (slots < 1) {
+      throw new IllegalArgumentException("slots must be positive: " + slots);
+    }
+    this.slots = slots;
+    this.permits = new Semaphore(slots, true);
+    for (int i = 0; i < stats.length; i++) {
+      stats[i] = new ResourceStats();
+    }
+  }
+
+  /**
+   * Computes the number of slots that fit in a memory budget.
+   *
+   * @param processors the number of available processors
+   * @param ramBudgetMb the memory, in MB, that all child processes may use together, or 0 to
+   *     allow a single process at a time
+   * @param childProcessRamMb the memory, in MB, used by one child process
+   * @return the number of slots, at least 1
+   */
+  static int computeSlots(int processors, int ramBudgetMb, int childProcessRamMb) {
+    if (ramBudgetMb <= 0 || childProcessRamMb <= 0) {
+      return 1;
+    }
+    return Math.max(1, Math.min(processors, ramBudgetMb / childProcessRamMb));
+  }
+
+  /**
+   * Waits for a free slot.
+   *
+   * @param resource the kind of work the slot is used for
+   * @return the granted slot
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  Slot acquire(Resource resource) throws InterruptedException {
+    ResourceStats resourceStats = stats[resource.ordinal()];
+    long start = System.currentTimeMillis();
+    resourceStats.waiting.incrementAndGet();
+    try {
+      // Unlike tryAcquire(), this does not take a slot ahead of those already waiting
+      if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+        Reclaimer idle = reclaimer;
+        if (idle != null) {
+          idle.reclaim();
+        }
+        permits.acquire();
+      }
+    } finally {
+      resourceStats.waiting.decrementAndGet();
+    }
+    long waitMillis = System.currentTimeMillis() - start;
+    resourceStats.acquisitions.incrementAndGet();
+    resourceStats.totalWaitMillis.addAndGet(waitMillis);
+    updateMax(resourceStats.maxWaitMillis, waitMillis);
+    updateMax(resourceStats.peakActive, resourceStats.active.incrementAndGet());
+    updateMax(peakSlotsInUse, slotsInUse.incrementAndGet());
+    return new Slot(resource);
+  }
+
+  /**
+   * Sets the reclaimer that is asked to free a slot when a request finds none.
+   *
+   * @param reclaimer the reclaimer, or null for none
+   */
+  void setReclaimer(Reclaimer reclaimer) {
+    this.reclaimer = reclaimer;
+  }
+
+  /**
+   * Checks whether any request is waiting for a slot, in which case idle work should give its
+   * slot back rather than keep it.
+   */
+  boolean hasWaiters() {
+    for (ResourceStats resourceStats : stats) {
+      if (resourceStats.waiting.get() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int getSlots() {
+    return slots;
+  }
+
+  int getSlotsInUse() {
+    return slotsInUse.get();
+  }
+
+  int getPeakSlotsInUse() {
+    return peakSlotsInUse.get();
+  }
+
+  int getWaiting(Resource resource) {
+    return stats[resource.ordinal()].waiting.get();
+  }
+
+  int getActive(Resource resource) {
+    return stats[resource.ordinal()].active.get();
+  }
+
+  int getPeakActive(Resource resource) {
+    return stats[resource.ordinal()].peakActive.get();
+  }
+
+  long getAcquisitions(Resource resource) {
+    return stats[resource.ordinal()].acquisitions.get();
+  }
+
+  long getTotalWaitMillis(Resource resource) {
+    return stats[resource.ordinal()].totalWaitMillis.get();
+  }
+
+  long getMaxWaitMillis(Resource resource) {
+    return stats[resource.ordinal()].maxWaitMillis.get();
+  }
+
+  private static void updateMax(AtomicInteger max, int value) {
+    int current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        return;
+      }
+    }
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        return;
+      }
+    }
+  }
+}
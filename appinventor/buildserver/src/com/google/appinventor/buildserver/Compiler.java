@@ -8,7 +8,8 @@ package com.google.appinventor.buildserver;
 
 import com.android.ide.common.internal.AaptCruncher;
 import com.android.ide.common.internal.PngCruncher;
-import com.android.sdklib.build.ApkBuilder;
+import com.google.appinventor.buildserver.stats.NullStatReporter;
+import com.google.appinventor.buildserver.stats.ProcessUsage;
 import com.google.appinventor.buildserver.stats.StatReporter;
 import com.google.appinventor.buildserver.util.AARLibraries;
 import com.google.appinventor.buildserver.util.AARLibrary;
@@ -17,8 +18,10 @@ import com.google.appinventor.components.common.ComponentDescriptorConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -29,8 +32,10 @@ import java.awt.Image;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -53,20 +58,27 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 import javax.imageio.ImageIO;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -95,8 +107,55 @@ public final class Compiler {
 
   public static int currentProgress = 10;
 
-  // Kawa and DX processes can use a lot of memory. We only launch one Kawa or DX process at a time.
-  private static final Object SYNC_KAWA_OR_DX = new Object();
+  // Kawa and DX processes can use a lot of memory. The scheduler limits how many run at a time.
+  // By default only one Kawa or DX process runs at a time.
+  private static volatile CompileScheduler compileScheduler = new CompileScheduler(1);
+
+  // Warm Kawa compiler processes shared by all builds, or null to start a new process per build.
+  private static volatile KawaCompilerPool kawaCompilerPool = null;
+
+  // Class files of previously compiled YAIL sources, or null to compile every source.
+  private static volatile YailClassCache yailClassCache = null;
+
+  // The cache of .flat files compiled by aapt2, or null to compile all resources for every build
+  private static volatile ResourceFlatCache resourceFlatCache = null;
+
+  // Runs the independent stages of builds at the same time. Most of their work is done by child
+  // processes, which the compile scheduler limits, so a few threads per processor is plenty.
+  private static final ExecutorService STAGE_EXECUTOR = Executors.newFixedThreadPool(
+      2 * Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "compiler-stage-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // Renders the launcher icons of builds, one density and shape per task. Rendering is all
+  // computation, so there is no point in more threads than processors.
+  private static final ExecutorService ICON_EXECUTOR = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "compiler-icon-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // The cache of rendered launcher icons, or null to render the icons for every build
+  private static volatile IconCache iconCache = null;
+
+  // Number of resource files given to one run of aapt2 compile
+  private static final int AAPT2_COMPILE_BATCH_SIZE = 500;
+
+  // The cache of exploded AAR libraries, or null to explode them for every build
+  private static volatile AarCache aarCache = null;
 
   private static final String SLASH = File.separator;
   private static final String SLASHREGEX = File.separatorChar == '\\' ? "\\\\" : "/";
@@ -117,6 +176,10 @@ public final class Compiler {
   private static final String EXT_COMPS_DIR_NAME = "external_comps";
 
   private static final String DEFAULT_ICON = RUNTIME_FILES_DIR + "ya.png";
+  // The rounded corner, round and adaptive foreground launcher icons in each mipmap directory
+  private static final String[] LAUNCHER_ICON_NAMES = {
+      "ic_launcher.png", "ic_launcher_round.png", "ic_launcher_foreground.png"
+  };
 
   /*
    * Resource paths to yail runtime, runtime library files and sdk tools.
@@ -128,16 +191,12 @@ public final class Compiler {
       RUNTIME_FILES_DIR + "android.jar";
   private static final String[] SUPPORT_JARS;
   private static final String[] SUPPORT_AARS;
-  private static final String COMP_BUILD_INFO =
-      RUNTIME_FILES_DIR + "simple_components_build_info.json";
   private static final String DX_JAR =
       RUNTIME_TOOLS_DIR + "dx.jar";
   private static final String KAWA_RUNTIME =
       RUNTIME_FILES_DIR + "kawa.jar";
   private static final String SIMPLE_ANDROID_RUNTIME_JAR =
       RUNTIME_FILES_DIR + "AndroidRuntime.jar";
-  private static final String APKSIGNER_JAR =
-      RUNTIME_TOOLS_DIR + "apksigner.jar";
 
   /*
    * Note for future updates: This list can be obtained from an Android Studio project running the
@@ -185,18 +244,12 @@ public final class Compiler {
 
   private static final String LINUX_AAPT_TOOL =
       RUNTIME_TOOLS_DIR + "linux/aapt";
-  private static final String LINUX_ZIPALIGN_TOOL =
-      RUNTIME_TOOLS_DIR + "linux/zipalign";
   private static final String MAC_AAPT_TOOL =
       RUNTIME_TOOLS_DIR + "mac/aapt";
-  private static final String MAC_ZIPALIGN_TOOL =
-      RUNTIME_TOOLS_DIR + "mac/zipalign";
   private static final String WINDOWS_AAPT_TOOL =
       RUNTIME_TOOLS_DIR + "windows/aapt";
   private static final String WINDOWS_PTHEAD_DLL =
       RUNTIME_TOOLS_DIR + "windows/libwinpthread-1.dll";
-  private static final String WINDOWS_ZIPALIGN_TOOL =
-      RUNTIME_TOOLS_DIR + "windows/zipalign";
 
   private static final String LINUX_AAPT2_TOOL =
       RUNTIME_TOOLS_DIR + "linux/aapt2";
@@ -239,6 +292,8 @@ public final class Compiler {
       permissionConstraintsNeeded = new ConcurrentHashMap<>();
   private final ConcurrentMap<String, Set<String>> minSdksNeeded =
       new ConcurrentHashMap<String, Set<String>>();
+  // The minSdkVersion in the manifest, which decides the digest algorithms of the signature
+  private int minSdkVersion;
   private final Set<String> uniqueLibsNeeded = Sets.newHashSet();
   private final ConcurrentMap<String, Map<String, Map<String, Set<String>>>> conditionals =
       new ConcurrentHashMap<>();
@@ -266,6 +321,11 @@ public final class Compiler {
    * Set of exploded AAR libraries.
    */
   private AARLibraries explodedAarLibs;
+  // The entry of aarCache that holds explodedAarLibs, if any
+  private AarCache.Entry aarCacheEntry;
+  // Completes when the project's media assets have been extracted, if they are extracted while
+  // the build runs
+  private Future<?> projectAssets;
 
   /**
    * File where the compiled R resources are written.
@@ -295,13 +355,10 @@ public final class Compiler {
       new ConcurrentHashMap<String, Set<String>>();
 
   /**
-   * Map used to hold the names and paths of resources that we've written out
-   * as temp files.
-   * Don't use this map directly. Please call getResource() with one of the
-   * constants above to get the (temp file) path to a resource.
+   * Extracts the resources named by the constants above to files. Don't use this directly.
+   * Please call getResource() with one of the constants above to get the path to a resource.
    */
-  private static final ConcurrentMap<String, File> resources =
-      new ConcurrentHashMap<String, File>();
+  private static volatile ResourceExtractor resourceExtractor;
 
   // TODO(user,lizlooney): i18n here and in lines below that call String.format(...)
   private static final String COMPILATION_ERROR =
@@ -361,9 +418,8 @@ public final class Compiler {
   private File libsDir; // The directory that will contain any native libraries for packaging
   private String dexCacheDir;
 
-  private JSONArray simpleCompsBuildInfo;
   private JSONArray extCompsBuildInfo;
-  private JSONArray buildInfo;
+  private ComponentInfoIndex componentInfo;  // built-in components plus this project's extensions
   private Set<String> simpleCompTypes;  // types needed by the project
   private Set<String> extCompTypes; // types needed by the project
 
@@ -375,7 +431,7 @@ public final class Compiler {
   /**
    * Mapping from type name to path in project to minimize tests against the file system.
    */
-  private Map<String, String> extTypePathCache = new HashMap<String, String>();
+  private final Map<String, String> extTypePathCache = new ConcurrentHashMap<String, String>();
 
   private static final Logger LOG = Logger.getLogger(Compiler.class.getName());
 
@@ -1189,6 +1245,7 @@ public final class Compiler {
           }
         }
       }
+      minSdkVersion = minSdk;
 
       // make permissions unique by putting them in one set
       Set<String> permissions = Sets.newHashSet();
@@ -1490,6 +1547,8 @@ public final class Compiler {
    * @param userErrors stream to write user-visible error messages
    * @param keystoreFilePath
    * @param childProcessRam   maximum RAM for child processes, in MBs.
+   * @param projectAssets completes when the project's media assets have been extracted, or null
+   *     if they are extracted already
    * @return  {@code true} if the compilation succeeds, {@code false} otherwise
    * @throws JSONException
    * @throws IOException
@@ -1498,23 +1557,31 @@ public final class Compiler {
       Map<String, Set<String>> compBlocks, PrintStream out, PrintStream err, PrintStream userErrors,
       boolean isForCompanion, boolean isForEmulator, boolean includeDangerousPermissions,
       String keystoreFilePath, int childProcessRam, String dexCacheDir, String outputFileName,
-      BuildServer.ProgressReporter reporter, boolean isAab, StatReporter statReporter)
+      BuildServer.ProgressReporter reporter, boolean isAab, StatReporter statReporter,
+      Future<?> projectAssets)
       throws IOException, JSONException {
     // Create a new compiler instance for the compilation
     Compiler compiler = new Compiler(project, compTypes, compBlocks, out, err, userErrors,
         isForCompanion, isForEmulator, includeDangerousPermissions, childProcessRam, dexCacheDir,
         reporter);
+    compiler.projectAssets = projectAssets;
 
     return compileWithStats(compiler, project, isAab, keystoreFilePath, outputFileName, out,
         reporter, statReporter);
   }
 
-  private static boolean compileWithStats(Compiler compiler, Project project, boolean isAab,
-      String keystoreFilePath, String outputFileName, PrintStream out,
-      BuildServer.ProgressReporter reporter, StatReporter statReporter) {
+  private static boolean compileWithStats(final Compiler compiler, Project project,
+      final boolean isAab, String keystoreFilePath, String outputFileName, final PrintStream out,
+      final BuildServer.ProgressReporter reporter, final StatReporter statReporter) {
     boolean success = false;
     long start = System.currentTimeMillis();
     statReporter.startBuild(compiler);
+    ProcessMonitor.setListener(new ProcessMonitor.Listener() {
+      @Override
+      public void processFinished(ProcessUsage usage) {
+        statReporter.processFinished(compiler, usage);
+      }
+    });
 
     try {
       // Set initial progress to 0%
@@ -1558,12 +1625,9 @@ public final class Compiler {
       compiler.generateBroadcastReceiver();
 
       // Create build directory.
-      File buildDir = createDir(project.getBuildDirectory());
-
-      // Prepare application icon.
-      out.println("________Preparing application icon");
-      File resDir = createDir(buildDir, "res");
-      File drawableDir = createDir(resDir, "drawable");
+      final File buildDir = createDir(project.getBuildDirectory());
+      final File resDir = createDir(buildDir, "res");
+      final File drawableDir = createDir(resDir, "drawable");
 
       // Create mipmap directories
       File mipmapHdpi = createDir(resDir,"mipmap-hdpi");
@@ -1573,157 +1637,209 @@ public final class Compiler {
       File mipmapXxxhdpi = createDir(resDir,"mipmap-xxxhdpi");
 
       // Create list of mipmaps for all icon types with respective sizes
-      List<File> mipmapDirectoriesForIcons = Arrays.asList(mipmapMdpi, mipmapHdpi, mipmapXhdpi,
-          mipmapXxhdpi, mipmapXxxhdpi);
-      List<Integer> standardSizesForMipmaps = Arrays.asList(48,72,96,144,192);
-      List<Integer> foregroundSizesForMipmaps = Arrays.asList(108,162,216,324,432);
-
-      statReporter.nextStage(compiler, "prepareApplicationIcon");
-      if (!compiler.prepareApplicationIcon(new File(drawableDir, "ya.png"),
-          mipmapDirectoriesForIcons, standardSizesForMipmaps, foregroundSizesForMipmaps)) {
-        return false;
-      }
-      if (reporter != null) {
-        reporter.report(15);        // Have to call directly because we are in a
-      }                             // Static context
-
-      statReporter.nextStage(compiler, "createAnimationXml");
-      // Create anim directory and animation xml files
-      out.println("________Creating animation xml");
-      File animDir = createDir(resDir, "anim");
-      if (!compiler.createAnimationXml(animDir)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "createValuesXml");
-      // Create values directory and style xml files
-      out.println("________Creating style xml");
-      File styleDir = createDir(resDir, "values");
-      File style11Dir = createDir(resDir, "values-v11");
-      File style14Dir = createDir(resDir, "values-v14");
-      File style21Dir = createDir(resDir, "values-v21");
-      File style23Dir = createDir(resDir, "values-v23");
-      if (!compiler.createValuesXml(styleDir, "")
-          || !compiler.createValuesXml(style11Dir, "-v11")
-          || !compiler.createValuesXml(style14Dir, "-v14")
-          || !compiler.createValuesXml(style21Dir, "-v21")
-          || !compiler.createValuesXml(style23Dir, "-v23")) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "createProviderXml");
-      out.println("________Creating provider_path xml");
-      File providerDir = createDir(resDir, "xml");
-      if (!compiler.createProviderXml(providerDir)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "createNetworkConfigXml");
-      out.println("________Creating network_security_config xml");
-      if (!compiler.createNetworkConfigXml(providerDir)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "writeICLauncher");
-      // Generate ic_launcher.xml
-      out.println("________Generating adaptive icon file");
-      File mipmapV26 = createDir(resDir, "mipmap-anydpi-v26");
-      File icLauncher = new File(mipmapV26, "ic_launcher.xml");
-      if (!compiler.writeICLauncher(icLauncher, false)) {
-        return false;
-      }
-
-      // Generate ic_launcher_round.xml
-      out.println("________Generating round adaptive icon file");
-      File icLauncherRound = new File(mipmapV26, "ic_launcher_round.xml");
-      if (!compiler.writeICLauncher(icLauncherRound, true)) {
-        return false;
-      }
-
-      // Generate ic_launcher_background.xml
-      out.println("________Generating adaptive icon background file");
-      File icBackgroundColor = new File(styleDir, "ic_launcher_background.xml");
-      if (!compiler.writeICLauncherBackground(icBackgroundColor)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "writeAndroidManifest");
-      // Generate AndroidManifest.xml
-      out.println("________Generating manifest file");
-      File manifestFile = new File(buildDir, "AndroidManifest.xml");
-      if (!compiler.writeAndroidManifest(manifestFile)) {
-        return false;
-      }
-      if (reporter != null) {
-        reporter.report(20);
-      }
-
-      statReporter.nextStage(compiler, "insertNativeLibs");
-      // Insert native libraries
-      out.println("________Attaching native libraries");
-      if (!compiler.insertNativeLibs(buildDir)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "attachAarLibraries");
-      // Attach Android AAR Library dependencies
-      out.println("________Attaching Android Archive (AAR) libraries");
-      if (!compiler.attachAarLibraries(buildDir)) {
-        return false;
-      }
-
-      statReporter.nextStage(compiler, "attachCompAssets");
-      // Add raw assets to sub-directory of project assets.
-      out.println("________Attaching component assets");
-      if (!compiler.attachCompAssets()) {
-        return false;
-      }
-
-      // Invoke aapt to package everything up
-      out.println("________Invoking AAPT");
-      File deployDir = createDir(buildDir, "deploy");
-      String tmpPackageName = deployDir.getAbsolutePath() + SLASH
+      final List<File> mipmapDirectoriesForIcons = Arrays.asList(mipmapMdpi, mipmapHdpi,
+          mipmapXhdpi, mipmapXxhdpi, mipmapXxxhdpi);
+      final List<Integer> standardSizesForMipmaps = Arrays.asList(48,72,96,144,192);
+      final List<Integer> foregroundSizesForMipmaps = Arrays.asList(108,162,216,324,432);
+
+      final File animDir = createDir(resDir, "anim");
+      final File styleDir = createDir(resDir, "values");
+      final File style11Dir = createDir(resDir, "values-v11");
+      final File style14Dir = createDir(resDir, "values-v14");
+      final File style21Dir = createDir(resDir, "values-v21");
+      final File style23Dir = createDir(resDir, "values-v23");
+      final File providerDir = createDir(resDir, "xml");
+      final File mipmapV26 = createDir(resDir, "mipmap-anydpi-v26");
+      final File manifestFile = new File(buildDir, "AndroidManifest.xml");
+      final File deployDir = createDir(buildDir, "deploy");
+      final String tmpPackageName = deployDir.getAbsolutePath() + SLASH
           + project.getProjectName() + "." + (isAab ? "apk" : "ap_");
-      File srcJavaDir = createDir(buildDir, "generated/src");
-      File rconstJavaDir = createDir(buildDir, "generated/symbols");
-      if (isAab) {
-        statReporter.nextStage(compiler, "aapt2");
-        if (!compiler.runAapt2Compile(resDir)) {
-          return false;
-        }
-        if (!compiler.runAapt2Link(manifestFile, tmpPackageName, rconstJavaDir)) {
-          return false;
-        }
-      } else {
-        statReporter.nextStage(compiler, "aapt");
-        if (!compiler.runAaptPackage(manifestFile, resDir, tmpPackageName, srcJavaDir,
-            rconstJavaDir)) {
-          return false;
-        }
-      }
-      if (reporter != null) {
-        reporter.report(30);
-      }
-
-      statReporter.nextStage(compiler, "generateClasses");
-      // Create class files.
-      out.println("________Compiling source files");
-      File classesDir = createDir(buildDir, "classes");
-      if (!compiler.generateRClasses(classesDir)) {
-        return false;
-      }
-      if (!compiler.generateClasses(classesDir)) {
+      final File srcJavaDir = createDir(buildDir, "generated/src");
+      final File rconstJavaDir = createDir(buildDir, "generated/symbols");
+      final File classesDir = createDir(buildDir, "classes");
+      final File tmpDir = createDir(buildDir, "tmp");
+      final String dexedClassesDir = tmpDir.getAbsolutePath();
+
+      // The stages that prepare the inputs of aapt (icons, XML, manifest, libraries, assets) do
+      // not depend on each other, so they run at the same time, as do the native libraries with
+      // everything else. The time the stages take together, their critical path, is reported as
+      // the "criticalPath" stage, and each stage's own time under its name.
+      StageGraph stages = new StageGraph(compiler, statReporter);
+      stages.add("prepareApplicationIcon", new String[0], new String[] { "res" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              out.println("________Preparing application icon");
+              if (!compiler.prepareApplicationIcon(new File(drawableDir, "ya.png"),
+                  mipmapDirectoriesForIcons, standardSizesForMipmaps,
+                  foregroundSizesForMipmaps)) {
+                return false;
+              }
+              if (reporter != null) {
+                reporter.report(15);
+              }
+              return true;
+            }
+          });
+      stages.add("createAnimationXml", new String[0], new String[] { "res" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Create animation xml files
+              out.println("________Creating animation xml");
+              return compiler.createAnimationXml(animDir);
+            }
+          });
+      stages.add("createValuesXml", new String[0], new String[] { "res" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Create style xml files
+              out.println("________Creating style xml");
+              return compiler.createValuesXml(styleDir, "")
+                  && compiler.createValuesXml(style11Dir, "-v11")
+                  && compiler.createValuesXml(style14Dir, "-v14")
+                  && compiler.createValuesXml(style21Dir, "-v21")
+                  && compiler.createValuesXml(style23Dir, "-v23");
+            }
+          });
+      stages.add("createProviderXml", new String[0], new String[] { "res" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              out.println("________Creating provider_path xml");
+              if (!compiler.createProviderXml(providerDir)) {
+                return false;
+              }
+              out.println("________Creating network_security_config xml");
+              return compiler.createNetworkConfigXml(providerDir);
+            }
+          });
+      stages.add("writeICLauncher", new String[0], new String[] { "res" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Generate ic_launcher.xml
+              out.println("________Generating adaptive icon file");
+              if (!compiler.writeICLauncher(new File(mipmapV26, "ic_launcher.xml"), false)) {
+                return false;
+              }
+              // Generate ic_launcher_round.xml
+              out.println("________Generating round adaptive icon file");
+              if (!compiler.writeICLauncher(new File(mipmapV26, "ic_launcher_round.xml"),
+                  true)) {
+                return false;
+              }
+              // Generate ic_launcher_background.xml
+              out.println("________Generating adaptive icon background file");
+              return compiler.writeICLauncherBackground(
+                  new File(styleDir, "ic_launcher_background.xml"));
+            }
+          });
+      stages.add("writeAndroidManifest", new String[0], new String[] { "manifest" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Generate AndroidManifest.xml
+              out.println("________Generating manifest file");
+              if (!compiler.writeAndroidManifest(manifestFile)) {
+                return false;
+              }
+              if (reporter != null) {
+                reporter.report(20);
+              }
+              return true;
+            }
+          });
+      stages.add("insertNativeLibs", new String[0], new String[] { "nativeLibs" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Insert native libraries
+              out.println("________Attaching native libraries");
+              return compiler.insertNativeLibs(buildDir);
+            }
+          });
+      stages.add("attachAarLibraries", new String[0], new String[] { "libraries" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Attach Android AAR Library dependencies
+              out.println("________Attaching Android Archive (AAR) libraries");
+              return compiler.attachAarLibraries(buildDir);
+            }
+          });
+      stages.add("attachCompAssets", new String[0], new String[] { "assets" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Add raw assets to sub-directory of project assets.
+              out.println("________Attaching component assets");
+              return compiler.awaitProjectAssets() && compiler.attachCompAssets();
+            }
+          });
+      stages.add(isAab ? "aapt2" : "aapt",
+          new String[] { "res", "manifest", "libraries", "assets" },
+          new String[] { "packagedResources" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Invoke aapt to package everything up
+              out.println("________Invoking AAPT");
+              if (isAab) {
+                if (!compiler.runAapt2Compile(resDir)
+                    || !compiler.runAapt2Link(manifestFile, tmpPackageName, rconstJavaDir)) {
+                  return false;
+                }
+              } else if (!compiler.runAaptPackage(manifestFile, resDir, tmpPackageName,
+                  srcJavaDir, rconstJavaDir)) {
+                return false;
+              }
+              if (reporter != null) {
+                reporter.report(30);
+              }
+              return true;
+            }
+          });
+      stages.add("generateRClasses", new String[] { "packagedResources", "libraries" },
+          new String[] { "rClasses" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              return compiler.generateRClasses(classesDir);
+            }
+          });
+      // Kawa's class path has the R classes of the libraries, so it waits for them
+      stages.add("generateClasses", new String[] { "rClasses", "libraries" },
+          new String[] { "classes" },
+          new StageGraph.Stage() {
+            @Override
+            public boolean run() {
+              // Create class files.
+              out.println("________Compiling source files");
+              if (!compiler.generateClasses(classesDir)) {
+                return false;
+              }
+              if (reporter != null) {
+                reporter.report(35);
+              }
+              return true;
+            }
+          });
+
+      statReporter.nextStage(compiler, "compile");
+      long compileStart = System.currentTimeMillis();
+      boolean compiled = stages.run(STAGE_EXECUTOR);
+      statReporter.stageFinished(compiler, "criticalPath",
+          System.currentTimeMillis() - compileStart);
+      if (!compiled) {
         return false;
       }
-      if (reporter != null) {
-        reporter.report(35);
-      }
+      LOG.info("Critical path: " + Joiner.on(" > ").join(stages.getCriticalPath()));
 
       statReporter.nextStage(compiler, "runMultidex");
       // Invoke dx on class files
       out.println("________Invoking DX");
-      File tmpDir = createDir(buildDir, "tmp");
-      String dexedClassesDir = tmpDir.getAbsolutePath();
       // TODO(markf): Running DX is now pretty slow (~25 sec overhead the first time and ~15 sec
       // overhead for subsequent runs).  I think it's because of the need to dx the entire
       // kawa runtime every time.  We should probably only do that once and then copy all the
@@ -1753,30 +1869,26 @@ public final class Compiler {
           return false;
         }
       } else {
-        statReporter.nextStage(compiler, "runApkBuilder");
-        // Seal the apk with ApkBuilder
-        out.println("________Invoking ApkBuilder");
+        statReporter.nextStage(compiler, "packageApk");
+        // Package the apk, which is aligned but not yet signed
+        out.println("________Packaging the apk file");
         String fileName = outputFileName;
         if (fileName == null) {
           fileName = project.getProjectName() + ".apk";
         }
         String apkAbsolutePath = deployDir.getAbsolutePath() + SLASH + fileName;
-        if (!compiler.runApkBuilder(apkAbsolutePath, tmpPackageName, dexedClassesDir)) {
+        File unsignedApk = new File(tmpDir, "unsigned.apk");
+        if (!compiler.runApkPackager(unsignedApk, tmpPackageName, dexedClassesDir)) {
           return false;
         }
         if (reporter != null) {
           reporter.report(95);
         }
 
-        // ZipAlign the apk file
-        out.println("________ZipAligning the apk file");
-        if (!compiler.runZipAlign(apkAbsolutePath, tmpDir)) {
-          return false;
-        }
-
         // Sign the apk file
+        statReporter.nextStage(compiler, "signApk");
         out.println("________Signing the apk file");
-        if (!compiler.runApkSigner(apkAbsolutePath, keystoreFilePath)) {
+        if (!compiler.signApk(unsignedApk, apkAbsolutePath, keystoreFilePath)) {
           return false;
         }
       }
@@ -1790,6 +1902,10 @@ public final class Compiler {
 
       success = true;
     } finally {
+      if (compiler.aarCacheEntry != null) {
+        compiler.aarCacheEntry.release();
+      }
+      ProcessMonitor.setListener(null);
       statReporter.stopBuild(compiler, success);
     }
     return true;
@@ -1844,31 +1960,29 @@ public final class Compiler {
   }
 
   /*
-   * Runs ApkBuilder by using the API instead of calling its main method because the main method
-   * can call System.exit(1), which will bring down our server.
+   * Packages the resources, dex files and native libraries into an unsigned apk, aligning the
+   * entries that are not compressed.
    */
-  private boolean runApkBuilder(String apkAbsolutePath, String zipArchive, String dexedClassesDir) {
-    try {
-      ApkBuilder apkBuilder =
-          new ApkBuilder(apkAbsolutePath, zipArchive,
-            dexedClassesDir + File.separator + "classes.dex", null, System.out);
+  private boolean runApkPackager(File unsignedApk, String zipArchive, String dexedClassesDir) {
+    try (ApkPackager packager = new ApkPackager(unsignedApk)) {
+      packager.addZip(new File(zipArchive));
+      packager.addFile(new File(dexedClassesDir, "classes.dex"), "classes.dex");
       if (dexFiles.size() > 1) {
         for (File f : dexFiles) {
           if (!f.getName().equals("classes.dex")) {
-            apkBuilder.addFile(f, f.getName());
+            packager.addFile(f, f.getName());
           }
         }
       }
       if (nativeLibsNeeded.size() != 0) { // Need to add native libraries...
-        apkBuilder.addNativeLibraries(libsDir);
+        packager.addNativeLibraries(libsDir);
       }
-      apkBuilder.sealApk();
       return true;
-    } catch (Exception e) {
+    } catch (IOException e) {
       // This is fatal.
       e.printStackTrace();
-      LOG.warning("YAIL compiler - ApkBuilder failed.");
-      err.println("YAIL compiler - ApkBuilder failed.");
+      LOG.warning("YAIL compiler - packaging the apk failed.");
+      err.println("YAIL compiler - packaging the apk failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "ApkBuilder"));
       return false;
     }
@@ -1921,6 +2035,7 @@ public final class Compiler {
       List<Project.SourceDescriptor> sources = project.getSources();
       List<String> sourceFileNames = Lists.newArrayListWithCapacity(sources.size());
       List<String> classFileNames = Lists.newArrayListWithCapacity(sources.size());
+      List<String> sourceRelativePaths = Lists.newArrayListWithCapacity(sources.size());
       boolean userCodeExists = false;
       for (Project.SourceDescriptor source : sources) {
         String sourceFileName = source.getFile().getAbsolutePath();
@@ -1949,6 +2064,7 @@ public final class Compiler {
         }
         sourceFileNames.add(sourceFileName);
         classFileNames.add(classFileName);
+        sourceRelativePaths.add(sourceFileRelativePath);
       }
 
       if (!userCodeExists) {
@@ -1969,6 +2085,13 @@ public final class Compiler {
         classpath.append(COLON);
       }
 
+      // The part of the class path extracted from the build server's own resources, which is
+      // the same for every build that uses the same components. Entries that live in the
+      // project's build directory are collected separately in buildClasspath.
+      StringBuilder sharedClasspath = new StringBuilder(classpath);
+      StringBuilder buildClasspath = new StringBuilder();
+      boolean usesBuildSpecificClasses = false;
+
       // attach the jars of external comps
       Set<String> addedExtJars = new HashSet<String>();
       for (String type : extCompTypes) {
@@ -1977,6 +2100,7 @@ public final class Compiler {
           classpath.append(sourcePath);
           classpath.append(COLON);
           addedExtJars.add(sourcePath);
+          usesBuildSpecificClasses = true;
         }
       }
 
@@ -1988,6 +2112,8 @@ public final class Compiler {
 
           if (simpleCompTypes.contains(type)) {
             sourcePath = getResource(pathSuffix);
+            sharedClasspath.append(sourcePath);
+            sharedClasspath.append(COLON);
           } else if (extCompTypes.contains(type)) {
             sourcePath = getExtCompDirPath(type) + pathSuffix;
           } else {
@@ -2009,18 +2135,49 @@ public final class Compiler {
           uniqueLibsNeeded.add(abspath);
           classpath.append(abspath);
           classpath.append(COLON);
+          usesBuildSpecificClasses = true;
         }
       }
       if (explodedAarLibs.size() > 0) {
         classpath.append(explodedAarLibs.getOutputDirectory().getAbsolutePath());
         classpath.append(COLON);
+        buildClasspath.append(explodedAarLibs.getOutputDirectory().getAbsolutePath());
       }
 
       classpath.append(getResource(ANDROID_RUNTIME));
+      sharedClasspath.append(getResource(ANDROID_RUNTIME));
 
       System.out.println("Libraries Classpath = " + classpath);
 
       String yailRuntime = getResource(YAIL_RUNTIME);
+      String packagePrefix = Signatures.getPackageName(project.getMainClass()) + ".";
+
+      // Sources whose class files are in the class cache are not given to Kawa. The cache keys
+      // are indexed like kawaSourceFileNames, with the runtime last.
+      List<String> kawaSourceFileNames = Lists.newArrayList(sourceFileNames);
+      kawaSourceFileNames.add(yailRuntime);
+      YailClassCache cache = yailClassCache;
+      Map<String, String> cacheKeys = new HashMap<String, String>();
+      Set<String> classFilesBeforeKawa = null;
+      if (cache != null) {
+        String classpathHash = cache.hashClasspath(classpath.toString());
+        for (int i = 0; i < sourceFileNames.size(); i++) {
+          cacheKeys.put(sourceFileNames.get(i), cache.key(classpathHash, new File(yailRuntime),
+              packagePrefix, sourceRelativePaths.get(i), new File(sourceFileNames.get(i))));
+        }
+        cacheKeys.put(yailRuntime,
+            cache.key(classpathHash, new File(yailRuntime), packagePrefix, null, null));
+        Iterator<String> it = kawaSourceFileNames.iterator();
+        while (it.hasNext()) {
+          if (cache.restore(cacheKeys.get(it.next()), classesDir)) {
+            it.remove();
+          }
+        }
+        classFilesBeforeKawa = new HashSet<String>(DiskLruCache.listRelativePaths(classesDir));
+        out.println("Class cache: " + (sourceFileNames.size() + 1 - kawaSourceFileNames.size())
+            + " of " + (sourceFileNames.size() + 1) + " sources restored");
+      }
+
       List<String> kawaCommandArgs = Lists.newArrayList();
       int mx = childProcessRamMb - 200;
       Collections.addAll(kawaCommandArgs,
@@ -2031,15 +2188,14 @@ public final class Compiler {
           "kawa.repl",
           "-f", yailRuntime,
           "-d", classesDir.getAbsolutePath(),
-          "-P", Signatures.getPackageName(project.getMainClass()) + ".",
+          "-P", packagePrefix,
           "-C");
       // TODO(lizlooney) - we are currently using (and have always used) absolute paths for the
       // source file names. The resulting .class files contain references to the source file names,
       // including the name of the tmp directory that contains them. We may be able to avoid that
       // by using source file names that are relative to the project root and using the project
       // root as the working directory for the Kawa compiler process.
-      kawaCommandArgs.addAll(sourceFileNames);
-      kawaCommandArgs.add(yailRuntime);
+      kawaCommandArgs.addAll(kawaSourceFileNames);
       String[] kawaCommandLine = kawaCommandArgs.toArray(new String[kawaCommandArgs.size()]);
 
       long start = System.currentTimeMillis();
@@ -2047,10 +2203,34 @@ public final class Compiler {
       // them to the protocol buffer for logging purposes. (See
       // buildserver/ProjectBuilder.processCompilerOutout.
       ByteArrayOutputStream kawaOutputStream = new ByteArrayOutputStream();
-      boolean kawaSuccess;
-      synchronized (SYNC_KAWA_OR_DX) {
-        kawaSuccess = Execution.execute(null, kawaCommandLine,
-            System.out, new PrintStream(kawaOutputStream));
+      boolean kawaSuccess = true;
+      if (!kawaSourceFileNames.isEmpty()) {
+        // Extension classes can change from one build to the next, but Kawa caches the classes
+        // it has seen, so only builds made of the server's own components can use a warm
+        // worker. Workers hold scheduler slots of their own.
+        KawaCompilerPool pool = kawaCompilerPool;
+        KawaCompilerPool.Outcome outcome = null;
+        if (pool != null && !usesBuildSpecificClasses) {
+          outcome = pool.compile(sharedClasspath.toString(), buildClasspath.toString(),
+              yailRuntime, mx, classesDir, packagePrefix, kawaSourceFileNames, System.out,
+              new PrintStream(kawaOutputStream));
+        }
+        if (outcome != null && outcome.handled) {
+          kawaSuccess = outcome.success;
+          LOG.info("Kawa worker: warm = " + outcome.warm + ", RSS = " + outcome.rssKb + " KB");
+        } else {
+          CompileScheduler.Slot slot = compileScheduler.acquire(CompileScheduler.Resource.KAWA);
+          try {
+            kawaSuccess = Execution.execute(null, kawaCommandLine,
+                System.out, new PrintStream(kawaOutputStream));
+          } finally {
+            slot.release();
+          }
+        }
+      }
+      if (kawaSuccess && cache != null && !kawaSourceFileNames.isEmpty()) {
+        storeCompiledClasses(cache, cacheKeys, classesDir, classFilesBeforeKawa,
+            kawaSourceFileNames, sourceFileNames, classFileNames, yailRuntime);
       }
       if (!kawaSuccess) {
         LOG.log(Level.SEVERE, "Kawa compile has failed.");
@@ -2078,90 +2258,37 @@ public final class Compiler {
       e.printStackTrace();
       userErrors.print(String.format(ERROR_IN_STAGE, "Compile"));
       return false;
-    }
-
-    return true;
-  }
-
-  private boolean runZipAlign(String apkAbsolutePath, File tmpDir) {
-    // TODO(user): add zipalign tool appinventor->lib->android->tools->linux and windows
-    // Need to make sure assets directory exists otherwise zipalign will fail.
-    createDir(project.getAssetsDirectory());
-    String zipAlignTool;
-    String osName = System.getProperty("os.name");
-    if (osName.equals("Mac OS X")) {
-      zipAlignTool = MAC_ZIPALIGN_TOOL;
-    } else if (osName.equals("Linux")) {
-      zipAlignTool = LINUX_ZIPALIGN_TOOL;
-    } else if (osName.startsWith("Windows")) {
-      zipAlignTool = WINDOWS_ZIPALIGN_TOOL;
-    } else {
-      LOG.warning("YAIL compiler - cannot run ZIPALIGN on OS " + osName);
-      err.println("YAIL compiler - cannot run ZIPALIGN on OS " + osName);
-      userErrors.print(String.format(ERROR_IN_STAGE, "ZIPALIGN"));
-      return false;
-    }
-    // TODO: create tmp file for zipaling result
-    String zipAlignedPath = tmpDir.getAbsolutePath() + SLASH + "zipaligned.apk";
-    // zipalign -f 4 infile.zip outfile.zip
-    String[] zipAlignCommandLine = {
-        getResource(zipAlignTool),
-        "-f",
-        "4",
-        apkAbsolutePath,
-        zipAlignedPath
-    };
-    long startZipAlign = System.currentTimeMillis();
-    // Using System.err and System.out on purpose. Don't want to pollute build messages with
-    // tools output
-    if (!Execution.execute(null, zipAlignCommandLine, System.out, System.err)) {
-      LOG.warning("YAIL compiler - ZIPALIGN execution failed.");
-      err.println("YAIL compiler - ZIPALIGN execution failed.");
-      userErrors.print(String.format(ERROR_IN_STAGE, "ZIPALIGN"));
-      return false;
-    }
-    if (!copyFile(zipAlignedPath, apkAbsolutePath)) {
-      LOG.warning("YAIL compiler - ZIPALIGN file copy failed.");
-      err.println("YAIL compiler - ZIPALIGN file copy failed.");
-      userErrors.print(String.format(ERROR_IN_STAGE, "ZIPALIGN"));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      userErrors.print(String.format(ERROR_IN_STAGE, "Compile"));
       return false;
     }
-    String zipALignTimeMessage = "ZIPALIGN time: " +
-        ((System.currentTimeMillis() - startZipAlign) / 1000.0) + " seconds";
-    out.println(zipALignTimeMessage);
-    LOG.info(zipALignTimeMessage);
+
     return true;
   }
 
-  private boolean runApkSigner(String apkAbsolutePath, String keystoreAbsolutePath) {
-    int mx = childProcessRamMb - 200;
-    /*
-      apksigner sign\
-      --ks <keystore file>\
-      --ks-key-alias AndroidKey\
-      --ks-pass pass:android\
-      <APK>
-    */
-    String[] apksignerCommandLine = {
-      System.getProperty("java.home") + "/bin/java", "-jar",
-      "-mx" + mx + "M",
-      getResource(APKSIGNER_JAR), "sign",
-      "-ks", keystoreAbsolutePath,
-      "-ks-key-alias", "AndroidKey",
-      "-ks-pass", "pass:android",
-      apkAbsolutePath
-    };
-
-    long startApkSigner = System.currentTimeMillis();
-    if (!Execution.execute(null, apksignerCommandLine, System.out, System.err)) {
-      LOG.warning("YAIL compiler - apksigner execution failed.");
-      err.println("YAIL compiler - apksigner execution failed.");
+  /*
+   * Signs the apk in this process, writing it to its final location.
+   */
+  private boolean signApk(File unsignedApk, String apkAbsolutePath, String keystoreAbsolutePath) {
+    long startSign = System.currentTimeMillis();
+    try {
+      ApkPackager.sign(unsignedApk, new File(keystoreAbsolutePath), new File(apkAbsolutePath),
+          minSdkVersion);
+    } catch (Exception e) {
+      // This is fatal.
+      e.printStackTrace();
+      LOG.warning("YAIL compiler - signing the apk failed.");
+      err.println("YAIL compiler - signing the apk failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "APKSIGNER"));
       return false;
+    } finally {
+      unsignedApk.delete();
     }
-    String apkSignerTimeMessage = "APKSIGNER time: " + ((System.currentTimeMillis() - startApkSigner) / 1000.0) + " seconds";
-    out.println(apkSignerTimeMessage);
-    LOG.info(apkSignerTimeMessage);
+    String signTimeMessage = "APKSIGNER time: "
+        + ((System.currentTimeMillis() - startSign) / 1000.0) + " seconds";
+    out.println(signTimeMessage);
+    LOG.info(signTimeMessage);
     return true;
   }
 
@@ -2233,51 +2360,54 @@ public final class Compiler {
   }
 
   /*
-   * Loads the icon for the application, either a user provided one or the default one.
+   * Loads the icon for the application, either a user provided one or the default one, and
+   * renders the launcher icons from it, unless the icon cache already has them.
    */
-  private boolean prepareApplicationIcon(File outputPngFile, List<File> mipmapDirectories, List<Integer> standardICSizes, List<Integer> foregroundICSizes) {
+  private boolean prepareApplicationIcon(File outputPngFile, List<File> mipmapDirectories,
+      List<Integer> standardICSizes, List<Integer> foregroundICSizes) {
     String userSpecifiedIcon = Strings.nullToEmpty(project.getIcon());
     try {
-      BufferedImage icon;
+      byte[] iconBytes;
       if (!userSpecifiedIcon.isEmpty()) {
-        File iconFile = new File(project.getAssetsDirectory(), userSpecifiedIcon);
-        icon = ImageIO.read(iconFile);
-        if (icon == null) {
-          // This can happen if the iconFile isn't an image file.
-          // For example, icon is null if the file is a .wav file.
-          // TODO(lizlooney) - This happens if the user specifies a .ico file. We should
-          // fix that.
-          userErrors.print(String.format(ICON_ERROR, userSpecifiedIcon));
-          return false;
-        }
+        iconBytes = Files.toByteArray(new File(project.getAssetsDirectory(), userSpecifiedIcon));
       } else {
         // Load the default image.
-        icon = ImageIO.read(Compiler.class.getResource(DEFAULT_ICON));
+        iconBytes = Resources.toByteArray(Compiler.class.getResource(DEFAULT_ICON));
       }
 
-      BufferedImage roundIcon = produceRoundIcon(icon);
-      BufferedImage roundRectIcon = produceRoundedCornerIcon(icon);
-      BufferedImage foregroundIcon = produceForegroundImageIcon(icon);
-
-      // For each mipmap directory, create all types of ic_launcher photos with respective mipmap sizes
-      for(int i=0; i < mipmapDirectories.size(); i++){
-        File mipmapDirectory = mipmapDirectories.get(i);
-        Integer standardSize = standardICSizes.get(i);
-        Integer foregroundSize = foregroundICSizes.get(i);
-
-        BufferedImage round = resizeImage(roundIcon,standardSize,standardSize);
-        BufferedImage roundRect = resizeImage(roundRectIcon,standardSize,standardSize);
-        BufferedImage foreground = resizeImage(foregroundIcon,foregroundSize,foregroundSize);
-
-        File roundIconPng = new File(mipmapDirectory,"ic_launcher_round.png");
-        File roundRectIconPng = new File(mipmapDirectory,"ic_launcher.png");
-        File foregroundPng = new File(mipmapDirectory,"ic_launcher_foreground.png");
+      // The paths of the rendered icons, relative to the resource directory
+      File resDir = outputPngFile.getParentFile().getParentFile();
+      List<String> iconPaths = new ArrayList<String>();
+      iconPaths.add(outputPngFile.getParentFile().getName() + ZIPSLASH + outputPngFile.getName());
+      for (File mipmapDirectory : mipmapDirectories) {
+        for (String name : LAUNCHER_ICON_NAMES) {
+          iconPaths.add(mipmapDirectory.getName() + ZIPSLASH + name);
+        }
+      }
+      IconCache cache = iconCache;
+      String key = null;
+      if (cache != null) {
+        key = IconCache.key(iconBytes,
+            Arrays.asList(iconPaths, standardICSizes, foregroundICSizes));
+        if (cache.restore(key, resDir, iconPaths)) {
+          return true;
+        }
+      }
 
-        ImageIO.write(round, "png", roundIconPng);
-        ImageIO.write(roundRect, "png", roundRectIconPng);
-        ImageIO.write(foreground, "png", foregroundPng);
+      BufferedImage icon = ImageIO.read(new ByteArrayInputStream(iconBytes));
+      if (icon == null) {
+        // This can happen if the iconFile isn't an image file.
+        // For example, icon is null if the file is a .wav file.
+        // TODO(lizlooney) - This happens if the user specifies a .ico file. We should
+        // fix that.
+        userErrors.print(String.format(ICON_ERROR, userSpecifiedIcon));
+        return false;
+      }
+      renderApplicationIcons(icon, outputPngFile, mipmapDirectories, standardICSizes,
+          foregroundICSizes);
+      if (cache != null) {
+        cache.store(key, resDir, iconPaths);
       }
-      ImageIO.write(icon, "png", outputPngFile);
     } catch (Exception e) {
       e.printStackTrace();
       // If the user specified the icon, this is fatal.
@@ -2290,6 +2420,89 @@ public final class Compiler {
     return true;
   }
 
+  /*
+   * Renders the launcher icons for each mipmap directory, with the shapes, sizes and densities
+   * rendered at the same time.
+   */
+  private void renderApplicationIcons(final BufferedImage icon, final File outputPngFile,
+      List<File> mipmapDirectories, List<Integer> standardICSizes,
+      List<Integer> foregroundICSizes) throws Exception {
+    List<Callable<BufferedImage>> shapes = new ArrayList<Callable<BufferedImage>>();
+    shapes.add(new Callable<BufferedImage>() {
+      @Override
+      public BufferedImage call() {
+        return produceRoundedCornerIcon(icon);
+      }
+    });
+    shapes.add(new Callable<BufferedImage>() {
+      @Override
+      public BufferedImage call() {
+        return produceRoundIcon(icon);
+      }
+    });
+    shapes.add(new Callable<BufferedImage>() {
+      @Override
+      public BufferedImage call() {
+        return produceForegroundImageIcon(icon);
+      }
+    });
+    shapes.add(new Callable<BufferedImage>() {
+      @Override
+      public BufferedImage call() throws IOException {
+        ImageIO.write(icon, "png", outputPngFile);
+        return null;
+      }
+    });
+    List<BufferedImage> shapedIcons = runIconTasks(shapes);
+
+    // For each mipmap directory, create all types of ic_launcher photos with respective mipmap
+    // sizes, in the order of LAUNCHER_ICON_NAMES
+    List<Callable<BufferedImage>> resized = new ArrayList<Callable<BufferedImage>>();
+    for (int i = 0; i < mipmapDirectories.size(); i++) {
+      File mipmapDirectory = mipmapDirectories.get(i);
+      Integer standardSize = standardICSizes.get(i);
+      Integer foregroundSize = foregroundICSizes.get(i);
+      for (int shape = 0; shape < LAUNCHER_ICON_NAMES.length; shape++) {
+        // The last shape is the adaptive foreground
+        int size = shape == LAUNCHER_ICON_NAMES.length - 1 ? foregroundSize : standardSize;
+        resized.add(resizeIconTask(shapedIcons.get(shape), size,
+            new File(mipmapDirectory, LAUNCHER_ICON_NAMES[shape])));
+      }
+    }
+    runIconTasks(resized);
+  }
+
+  private Callable<BufferedImage> resizeIconTask(final BufferedImage shapedIcon, final int size,
+      final File png) {
+    return new Callable<BufferedImage>() {
+      @Override
+      public BufferedImage call() throws IOException {
+        ImageIO.write(resizeImage(shapedIcon, size, size), "png", png);
+        return null;
+      }
+    };
+  }
+
+  /*
+   * Runs icon rendering tasks on the icon executor and returns their results in order, or throws
+   * the exception of the first task that failed.
+   */
+  private static List<BufferedImage> runIconTasks(List<Callable<BufferedImage>> tasks)
+      throws Exception {
+    List<BufferedImage> results = new ArrayList<BufferedImage>();
+    for (Future<BufferedImage> future : ICON_EXECUTOR.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+    }
+    return results;
+  }
+
   /**
    * Processes recursively the directory pointed at by {@code dir} and adds any class files
    * encountered to the {@code classes} set.
@@ -2398,6 +2611,7 @@ public final class Compiler {
       if (isForCompanion) {
         inputList.add(recordForMainDex(new File(getResource(ACRA_RUNTIME)), mainDexClasses));
       }
+      int mainDexInputCount = inputList.size();
 
       for (String jar : SUPPORT_JARS) {
         if (CRITICAL_JARS.contains(jar)) {  // already covered above
@@ -2434,13 +2648,24 @@ public final class Compiler {
         dexTask.setDexedLibs(dexCacheDir);
       }
       String dxTimeMessage;
-      synchronized (SYNC_KAWA_OR_DX) {
+      CompileScheduler.Slot slot = compileScheduler.acquire(CompileScheduler.Resource.DX);
+      try {
         setProgress(50);
         long startDx = System.currentTimeMillis();
-        success = dexTask.execute(inputList);
+        // Merge pre-dexed libraries when possible, so that only the app's classes are dexed.
+        Set<File> secondaryDexInputs = new LinkedHashSet<>(
+            inputList.subList(mainDexInputCount, inputList.size()));
+        secondaryDexInputs.removeAll(inputList.subList(0, mainDexInputCount));
+        success = dexCacheDir != null && dexTask.executeIncremental(classesDir,
+            inputList.subList(1, mainDexInputCount), new ArrayList<>(secondaryDexInputs));
+        if (!success) {
+          success = dexTask.execute(inputList);
+        }
         dxTimeMessage = String.format(Locale.getDefault(), "DX time: %f seconds",
             (System.currentTimeMillis() - startDx) / 1000.0);
         setProgress(75);
+      } finally {
+        slot.release();
       }
 
       // Aggregate all of the classes.dex files output by dx
@@ -2461,6 +2686,9 @@ public final class Compiler {
     } catch (IOException e) {
       // Error will be reported below
       success = false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      success = false;
     }
     if (!success) {
       LOG.warning("YAIL compiler - DX execution failed.");
@@ -2583,7 +2811,9 @@ public final class Compiler {
     String[] aapt2CompileCommandLine = aapt2CommandLine.toArray(new String[0]);
 
     long startAapt2 = System.currentTimeMillis();
-    if (!Execution.execute(null, aapt2CompileCommandLine, System.out, System.err)) {
+    ResourceFlatCache cache = resourceFlatCache;
+    if (cache != null ? !runAapt2CompileWithCache(cache, getResource(aapt2Tool))
+        : !Execution.execute(null, aapt2CompileCommandLine, System.out, System.err)) {
       LOG.warning("YAIL compiler - AAPT2 compile execution failed.");
       err.println("YAIL compiler - AAPT2 compile execution failed.");
       userErrors.print(String.format(ERROR_IN_STAGE, "AAPT2 compile"));
@@ -2596,6 +2826,85 @@ public final class Compiler {
     return true;
   }
 
+  /**
+   * Compiles the merged resources with aapt2, reusing the .flat files of resource files that an
+   * earlier build compiled, and zips all .flat files into resourcesZip for the link step.
+   *
+   * @param cache the cache of .flat files
+   * @param aapt2Tool the path of the aapt2 binary
+   * @return true if the resources were compiled, false otherwise
+   */
+  private boolean runAapt2CompileWithCache(ResourceFlatCache cache, String aapt2Tool) {
+    List<String> options = Collections.singletonList("--no-crunch");
+    File flatDir = createDir(createDir(project.getBuildDirectory(), "intermediates"), "flat");
+    File restoredDir = createDir(flatDir, "restored");
+    File compiledDir = createDir(flatDir, "compiled");
+    try {
+      Map<String, String> keys = new HashMap<>();
+      List<String> misses = new ArrayList<>();
+      int resourceCount = 0;
+      for (String path : ResourceFlatCache.listResourceFiles(mergedResDir)) {
+        resourceCount++;
+        String key = cache.key(new File(aapt2Tool), options, path, new File(mergedResDir, path));
+        if (!cache.restore(key, new File(restoredDir, path.replace('/', '_') + ".flat"))) {
+          keys.put(path, key);
+          misses.add(path);
+        }
+      }
+      out.println("________Compiling " + misses.size() + " of " + resourceCount
+          + " resources, the others were cached");
+
+      for (int i = 0; i < misses.size(); i += AAPT2_COMPILE_BATCH_SIZE) {
+        List<String> aapt2CommandLine = new ArrayList<>();
+        aapt2CommandLine.add(aapt2Tool);
+        aapt2CommandLine.add("compile");
+        aapt2CommandLine.add("-o");
+        aapt2CommandLine.add(compiledDir.getAbsolutePath());
+        aapt2CommandLine.addAll(options);
+        aapt2CommandLine.add("-v");
+        for (String path : misses.subList(i,
+            Math.min(misses.size(), i + AAPT2_COMPILE_BATCH_SIZE))) {
+          aapt2CommandLine.add(new File(mergedResDir, path).getAbsolutePath());
+        }
+        if (!Execution.execute(null, aapt2CommandLine.toArray(new String[0]), System.out,
+            System.err)) {
+          return false;
+        }
+      }
+
+      String[] compiled = compiledDir.list();
+      Map<String, String> flatFiles = ResourceFlatCache.matchFlatFiles(misses,
+          Arrays.asList(compiled == null ? new String[0] : compiled));
+      for (Map.Entry<String, String> flatFile : flatFiles.entrySet()) {
+        cache.store(keys.get(flatFile.getKey()), new File(compiledDir, flatFile.getValue()));
+      }
+
+      // The flat files are compressed already
+      ZipOutputStream zip = new ZipOutputStream(
+          new BufferedOutputStream(new FileOutputStream(resourcesZip)));
+      try {
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        for (File dir : new File[] { restoredDir, compiledDir }) {
+          File[] flats = dir.listFiles();
+          if (flats == null) {
+            continue;
+          }
+          for (File flat : flats) {
+            zip.putNextEntry(new ZipEntry(flat.getName()));
+            Files.copy(flat, zip);
+            zip.closeEntry();
+          }
+        }
+      } finally {
+        zip.close();
+      }
+      return true;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
   private boolean runAapt2Link(File manifestFile, String tmpPackageName, File symbolOutputDir) {
     String aapt2Tool;
     String osName = System.getProperty("os.name");
@@ -2669,7 +2978,20 @@ public final class Compiler {
             .setKeystore(keystoreFilePath)
             .setDexDir(dexedClassesDir);
 
-      Future<Boolean> aab = Executors.newSingleThreadExecutor().submit(aabCompiler);
+      // The processes that bundletool and jarsigner run belong to this build's stats
+      final AabCompiler task = aabCompiler;
+      final ProcessMonitor.Listener listener = ProcessMonitor.getListener();
+      Future<Boolean> aab = Executors.newSingleThreadExecutor().submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          ProcessMonitor.setListener(listener);
+          try {
+            return task.call();
+          } finally {
+            ProcessMonitor.setListener(null);
+          }
+        }
+      });
       return aab.get();
     } catch (InterruptedException | ExecutionException e) {
       e.printStackTrace();
@@ -2758,6 +3080,7 @@ public final class Compiler {
 
     // walk components list for libraries ending in ".aar"
     try {
+      List<File> aarFiles = new ArrayList<>();
       for (Set<String> libs : libsNeeded.values()) {
         Iterator<String> i = libs.iterator();
         while (i.hasNext()) {
@@ -2765,15 +3088,27 @@ public final class Compiler {
           if (libname.endsWith(".aar")) {
             i.remove();
             if (!processedLibs.contains(libname)) {
-              // explode libraries into ${buildDir}/exploded-aars/<package>/
-              AARLibrary aarLib = new AARLibrary(new File(getResource(RUNTIME_FILES_DIR + libname)));
-              aarLib.unpackToDirectory(explodedBaseDir);
-              explodedAarLibs.add(aarLib);
+              aarFiles.add(new File(getResource(RUNTIME_FILES_DIR + libname)));
               processedLibs.add(libname);
             }
           }
         }
       }
+      AarCache cache = aarCache;
+      if (cache != null) {
+        // use the libraries exploded by an earlier build with the same libraries
+        aarCacheEntry = cache.acquire(aarFiles);
+        for (AARLibrary aarLib : aarCacheEntry.getLibraries()) {
+          explodedAarLibs.add(aarLib);
+        }
+      } else {
+        for (File aarFile : aarFiles) {
+          // explode libraries into ${buildDir}/exploded-aars/<package>/
+          AARLibrary aarLib = new AARLibrary(aarFile);
+          aarLib.unpackToDirectory(explodedBaseDir);
+          explodedAarLibs.add(aarLib);
+        }
+      }
       return true;
     } catch(IOException e) {
       e.printStackTrace();
@@ -2782,6 +3117,27 @@ public final class Compiler {
     }
   }
 
+  /**
+   * Waits until the project's media assets have been extracted from the project zip.
+   *
+   * @return true if the assets were extracted, otherwise false
+   */
+  private boolean awaitProjectAssets() {
+    if (projectAssets == null) {
+      return true;
+    }
+    try {
+      projectAssets.get();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+    }
+    userErrors.print(String.format(ERROR_IN_STAGE, "Assets"));
+    return false;
+  }
+
   private boolean attachCompAssets() {
     createDir(project.getBuildDirectory()); // Needed to insert resources.
     try {
@@ -2845,6 +3201,12 @@ public final class Compiler {
     File resDir = createDir(intermediates, "res");
     mergedResDir = createDir(resDir, "merged");
     PngCruncher cruncher = new AaptCruncher(getResource(aaptTool), null, null);
+    if (aarCacheEntry != null) {
+      File libraryResDir = aarCacheEntry.getMergedResources(explodedAarLibs, cruncher);
+      if (libraryResDir != null) {
+        explodedAarLibs.setMergedLibraryResources(libraryResDir);
+      }
+    }
     return explodedAarLibs.mergeResources(mergedResDir, mainResDir, cruncher);
   }
 
@@ -2869,40 +3231,144 @@ public final class Compiler {
   }
 
   /**
-   * Writes out the given resource as a temp file and returns the absolute path.
-   * Caches the location of the files, so we can reuse them.
+   * Sets the pool of warm Kawa compilers used by subsequent builds.
+   *
+   * @param pool the pool to use, or null to run Kawa in a new process for every build
+   */
+  static void setKawaCompilerPool(KawaCompilerPool pool) {
+    kawaCompilerPool = pool;
+  }
+
+  /**
+   * Adds the class files that Kawa generated for each compiled source to the class cache.
+   *
+   * <p>The class files of a screen are the screen class and its inner classes, which are found
+   * next to each other. Everything else that Kawa generated belongs to the runtime.</p>
+   */
+  private static void storeCompiledClasses(YailClassCache cache, Map<String, String> cacheKeys,
+      File classesDir, Set<String> classFilesBeforeKawa, List<String> compiledFileNames,
+      List<String> sourceFileNames, List<String> classFileNames, String yailRuntime) {
+    String classesPath = classesDir.getAbsolutePath() + "/";
+    Set<String> generated = new HashSet<String>(DiskLruCache.listRelativePaths(classesDir));
+    generated.removeAll(classFilesBeforeKawa);
+    for (int i = 0; i < sourceFileNames.size(); i++) {
+      String classFile = classFileNames.get(i).substring(classesPath.length());
+      if (!compiledFileNames.contains(sourceFileNames.get(i)) || !generated.contains(classFile)) {
+        continue;
+      }
+      String base = classFile.substring(0, classFile.length() - ".class".length());
+      List<String> screenClasses = Lists.newArrayList();
+      Iterator<String> it = generated.iterator();
+      while (it.hasNext()) {
+        String path = it.next();
+        if (path.equals(classFile) || path.startsWith(base + "$")) {
+          screenClasses.add(path);
+          it.remove();
+        }
+      }
+      cache.store(cacheKeys.get(sourceFileNames.get(i)), classesDir, screenClasses);
+    }
+    if (compiledFileNames.contains(yailRuntime) && !generated.isEmpty()) {
+      cache.store(cacheKeys.get(yailRuntime), classesDir, generated);
+    }
+  }
+
+  /**
+   * Sets the class cache used to skip compiling unchanged YAIL sources.
+   *
+   * @param cache the cache to use, or null to compile every source of every build
+   */
+  static void setYailClassCache(YailClassCache cache) {
+    yailClassCache = cache;
+  }
+
+  /**
+   * Sets the cache of aapt2 .flat files used by subsequent builds.
+   *
+   * @param cache the cache to use, or null to compile all resources for every build
+   */
+  static void setResourceFlatCache(ResourceFlatCache cache) {
+    resourceFlatCache = cache;
+  }
+
+  /**
+   * Sets the cache of rendered launcher icons used by subsequent builds.
+   *
+   * @param cache the cache to use, or null to render the icons for every build
+   */
+  static void setIconCache(IconCache cache) {
+    iconCache = cache;
+  }
+
+  /**
+   * Sets the cache of exploded AAR libraries used by subsequent builds.
+   *
+   * @param cache the cache to use, or null to explode the libraries for every build
+   */
+  static void setAarCache(AarCache cache) {
+    aarCache = cache;
+  }
+
+  /**
+   * Sets the scheduler that limits the number of Kawa and DX processes running at a time.
+   *
+   * @param scheduler the scheduler shared by all builds
+   */
+  static void setCompileScheduler(CompileScheduler scheduler) {
+    compileScheduler = scheduler;
+  }
+
+  /**
+   * Sets the extractor that writes out resources for getResource().
+   *
+   * @param extractor the extractor shared by all builds
+   */
+  static void setResourceExtractor(ResourceExtractor extractor) {
+    resourceExtractor = extractor;
+  }
+
+  /**
+   * Gets the resources that every build needs on this platform, so that they can be extracted
+   * before the first build.
+   */
+  static List<String> getSharedResources() {
+    List<String> shared = new ArrayList<String>(Arrays.asList(ACRA_RUNTIME, ANDROID_RUNTIME,
+        DX_JAR, KAWA_RUNTIME, SIMPLE_ANDROID_RUNTIME_JAR, BUNDLETOOL_JAR,
+        YAIL_RUNTIME));
+    shared.addAll(Arrays.asList(SUPPORT_JARS));
+    for (String aar : SUPPORT_AARS) {
+      shared.add(RUNTIME_FILES_DIR + aar);
+    }
+    String osName = System.getProperty("os.name");
+    if (osName.equals("Mac OS X")) {
+      shared.addAll(Arrays.asList(MAC_AAPT_TOOL, MAC_AAPT2_TOOL));
+    } else if (osName.equals("Linux")) {
+      shared.addAll(Arrays.asList(LINUX_AAPT_TOOL, LINUX_AAPT2_TOOL));
+    } else if (osName.startsWith("Windows")) {
+      shared.addAll(Arrays.asList(WINDOWS_AAPT_TOOL, WINDOWS_AAPT2_TOOL));
+    }
+    return shared;
+  }
+
+  /**
+   * Writes out the given resource to a file and returns the absolute path. The files are kept
+   * across builds and restarts, so we can reuse them.
    *
    * @param resourcePath the name of the resource
    */
-  static synchronized String getResource(String resourcePath) {
+  static String getResource(String resourcePath) {
+    ResourceExtractor extractor = resourceExtractor;
     try {
-      File file = resources.get(resourcePath);
-      if (file == null) {
-        String basename = PathUtil.basename(resourcePath);
-        String prefix;
-        String suffix;
-        int lastDot = basename.lastIndexOf(".");
-        if (lastDot != -1) {
-          prefix = basename.substring(0, lastDot);
-          suffix = basename.substring(lastDot);
-        } else {
-          prefix = basename;
-          suffix = "";
-        }
-        while (prefix.length() < 3) {
-          prefix = prefix + "_";
-        }
-        file = File.createTempFile(prefix, suffix);
-        file.setExecutable(true);
-        file.deleteOnExit();
-        file.getParentFile().mkdirs();
-        Files.copy(Resources.newInputStreamSupplier(Compiler.class.getResource(resourcePath)),
-            file);
-        resources.put(resourcePath, file);
-      }
-      return file.getAbsolutePath();
-    } catch (NullPointerException e) {
-      throw new IllegalStateException("Unable to find required library: " + resourcePath, e);
+      if (extractor == null) {
+        synchronized (Compiler.class) {
+          if (resourceExtractor == null) {
+            resourceExtractor = new ResourceExtractor(
+                ResourceExtractor.getDefaultParentDirectory(), new NullStatReporter());
+          }
+          extractor = resourceExtractor;
+        }
+      }
+      return extractor.get(resourcePath);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -2938,10 +3404,7 @@ public final class Compiler {
 
   private boolean loadJsonInfo() {
     try {
-      buildInfo = new JSONArray(
-          "[" + simpleCompsBuildInfo.join(",") + ","
-              + extCompsBuildInfo.join(",") + "]"
-      );
+      componentInfo = ComponentInfoIndex.getSimpleComponents().withExtensions(extCompsBuildInfo);
       return true;
     } catch (JSONException e) {
       e.printStackTrace();
@@ -2960,38 +3423,28 @@ public final class Compiler {
         return;
       }
 
-      if (buildInfo == null) {
+      if (componentInfo == null) {
         loadJsonInfo();
       }
 
-      for (int i = 0; i < buildInfo.length(); ++i) {
-        JSONObject compJson = buildInfo.getJSONObject(i);
-        JSONArray infoArray = null;
-        String type = compJson.getString("type");
-        infoArray = compJson.optJSONArray(targetInfo);
-        if (infoArray == null) {
-          LOG.log(Level.INFO, "Component \"" + type + "\" does not specify " + targetInfo);
-          // Continue to process other components
+      for (String type : Iterables.concat(simpleCompTypes, extCompTypes)) {
+        ComponentInfoIndex.Component component = componentInfo.get(type);
+        if (component == null) {
           continue;
         }
-
-        if (!simpleCompTypes.contains(type) && !extCompTypes.contains(type)) {
+        Set<String> infoSet = component.getInfo(targetInfo);
+        if (infoSet == null) {
+          LOG.log(Level.INFO, "Component \"" + type + "\" does not specify " + targetInfo);
+          // Continue to process other components
           continue;
         }
 
-        Set<String> infoSet = Sets.newHashSet();
-        for (int j = 0; j < infoArray.length(); ++j) {
-          String info = infoArray.getString(j);
-          if (!info.isEmpty()) {
-            infoSet.add(info);
-          }
-        }
-
         if (!infoSet.isEmpty()) {
-          infoMap.put(type, infoSet);
+          // Copied, because the sets of the index are shared by all builds
+          infoMap.put(type, new HashSet<>(infoSet));
         }
 
-        processConditionalInfo(compJson, type, targetInfo);
+        processConditionalInfo(component, type, targetInfo);
       }
     }
   }
@@ -3002,13 +3455,12 @@ public final class Compiler {
       return;
     }
 
-    for (int i = 0; i < buildInfo.length(); i++) {
-      JSONObject compJson = buildInfo.getJSONObject(i);
-      String type = compJson.getString("type");
-      if (!simpleCompTypes.contains(type) && !extCompTypes.contains(type)) {
-        // Component type not used.
+    for (String type : Iterables.concat(simpleCompTypes, extCompTypes)) {
+      ComponentInfoIndex.Component component = componentInfo.get(type);
+      if (component == null) {
         continue;
       }
+      JSONObject compJson = component.getJson();
 
       JSONObject infoObject = compJson.optJSONObject(
           ComponentDescriptorConstants.PERMISSION_CONSTRAINTS_TARGET);
@@ -3082,28 +3534,18 @@ public final class Compiler {
    *                   BROADCAST_RECEIVERS_TARGET, SERVICES_TARGET,
    *                   CONTENT_PROVIDERS_TARGET
    */
-  private void processConditionalInfo(JSONObject compJson, String type, String targetInfo) {
+  private void processConditionalInfo(ComponentInfoIndex.Component component, String type,
+      String targetInfo) {
     // Strip off the package name since SCM and BKY use unqualified names
     type = type.substring(type.lastIndexOf('.') + 1);
 
-    JSONObject conditionals = compJson.optJSONObject(ComponentDescriptorConstants.CONDITIONALS_TARGET);
-    if (conditionals != null) {
-      JSONObject jsonBlockMap = conditionals.optJSONObject(targetInfo);
-      if (jsonBlockMap != null) {
-        if (!this.conditionals.containsKey(targetInfo)) {
-          this.conditionals.put(targetInfo, new HashMap<String, Map<String, Set<String>>>());
-        }
-        Map<String, Set<String>> blockMap = new HashMap<>();
-        this.conditionals.get(targetInfo).put(type, blockMap);
-        for (String key : (List<String>) Lists.newArrayList(jsonBlockMap.keys())) {
-          JSONArray data = jsonBlockMap.optJSONArray(key);
-          HashSet<String> result = new HashSet<>();
-          for (int i = 0; i < data.length(); i++) {
-            result.add(data.optString(i));
-          }
-          blockMap.put(key, result);
-        }
+    Map<String, Set<String>> blockMap = component.getConditionals(targetInfo);
+    if (blockMap != null) {
+      if (!this.conditionals.containsKey(targetInfo)) {
+        this.conditionals.put(targetInfo, new HashMap<String, Map<String, Set<String>>>());
       }
+      // The block map is only read, so it is shared with the index
+      this.conditionals.get(targetInfo).put(type, blockMap);
     }
   }
 
@@ -3170,11 +3612,8 @@ public final class Compiler {
   }
 
   private void readBuildInfo() {
+    extCompsBuildInfo = new JSONArray();
     try {
-      simpleCompsBuildInfo = new JSONArray(Resources.toString(
-          Compiler.class.getResource(COMP_BUILD_INFO), Charsets.UTF_8));
-
-      extCompsBuildInfo = new JSONArray();
       Set<String> readComponentInfos = new HashSet<String>();
       for (String type : extCompTypes) {
         // .../assets/external_comps/com.package.MyExtComp/files/component_build_info.json
@@ -3219,21 +3658,17 @@ public final class Compiler {
 
   private void prepareCompTypes(Set<String> neededTypes) {
     try {
-      JSONArray buildInfo = new JSONArray(Resources.toString(
-          Compiler.class.getResource(COMP_BUILD_INFO), Charsets.UTF_8));
-
-      Set<String> allSimpleTypes = Sets.newHashSet();
-      for (int i = 0; i < buildInfo.length(); ++i) {
-        JSONObject comp = buildInfo.getJSONObject(i);
-        allSimpleTypes.add(comp.getString("type"));
+      ComponentInfoIndex simpleComponents = ComponentInfoIndex.getSimpleComponents();
+      simpleCompTypes = Sets.newHashSet();
+      extCompTypes = Sets.newHashSet();
+      for (String type : neededTypes) {
+        if (simpleComponents.contains(type)) {
+          simpleCompTypes.add(type);
+        } else {
+          extCompTypes.add(type);
+        }
       }
 
-      simpleCompTypes = Sets.newHashSet(neededTypes);
-      simpleCompTypes.retainAll(allSimpleTypes);
-
-      extCompTypes = Sets.newHashSet(neededTypes);
-      extCompTypes.removeAll(allSimpleTypes);
-
     } catch (Exception e) {
       e.printStackTrace();
     }
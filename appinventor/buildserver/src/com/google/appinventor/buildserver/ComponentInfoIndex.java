@@ -0,0 +1,237 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.components.common.ComponentDescriptorConstants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * An immutable index of the build information of components: for each component type, the
+ * permissions, libraries, assets, activities, broadcast receivers and other values that it
+ * declares, and the values that it needs only when some of its blocks are used.
+ *
+ * <p>The index of the built-in components is parsed once per server from
+ * simple_components_build_info.json and shared by all builds. A build that uses extensions gets
+ * its own index with {@link #withExtensions}, which holds only the extensions and falls back to
+ * the shared index for everything else.</p>
+ */
+final class ComponentInfoIndex {
+
+  private static final String SIMPLE_COMPONENTS_BUILD_INFO =
+      "/files/simple_components_build_info.json";
+  private static final String SIMPLE_COMPONENTS = "/files/simple_components.json";
+
+  /**
+   * The build information of one component type.
+   */
+  static final class Component {
+    private final String type;
+    private final JSONObject json;
+    private final Map<String, Set<String>> infos;
+    private final Map<String, Map<String, Set<String>>> conditionals;
+
+    private Component(JSONObject json) throws JSONException {
+      this.type = json.getString("type");
+      this.json = json;
+      Map<String, Set<String>> infos = new HashMap<String, Set<String>>();
+      Iterator<?> keys = json.keys();
+      while (keys.hasNext()) {
+        String key = (String) keys.next();
+        JSONArray values = json.optJSONArray(key);
+        if (values != null) {
+          infos.put(key, toSet(values));
+        }
+      }
+      this.infos = Collections.unmodifiableMap(infos);
+      Map<String, Map<String, Set<String>>> conditionals =
+          new HashMap<String, Map<String, Set<String>>>();
+      JSONObject conditionalsJson =
+          json.optJSONObject(ComponentDescriptorConstants.CONDITIONALS_TARGET);
+      if (conditionalsJson != null) {
+        Iterator<?> targets = conditionalsJson.keys();
+        while (targets.hasNext()) {
+          String target = (String) targets.next();
+          JSONObject blocksJson = conditionalsJson.optJSONObject(target);
+          if (blocksJson == null) {
+            continue;
+          }
+          Map<String, Set<String>> blocks = new HashMap<String, Set<String>>();
+          Iterator<?> blockNames = blocksJson.keys();
+          while (blockNames.hasNext()) {
+            String blockName = (String) blockNames.next();
+            JSONArray values = blocksJson.optJSONArray(blockName);
+            if (values != null) {
+              blocks.put(blockName, toSet(values));
+            }
+          }
+          conditionals.put(target, Collections.unmodifiableMap(blocks));
+        }
+      }
+      this.conditionals = Collections.unmodifiableMap(conditionals);
+    }
+
+    String getType() {
+      return type;
+    }
+
+    /**
+     * Gets the values that the component declares for an annotation target, such as
+     * {@link ComponentDescriptorConstants#PERMISSIONS_TARGET}.
+     *
+     * @return the values, or null if the component does not specify the target
+     */
+    Set<String> getInfo(String target) {
+      return infos.get(target);
+    }
+
+    /**
+     * Gets the values that the component needs for an annotation target when a block is used.
+     *
+     * @return a map from block name to values, or null if the component has none
+     */
+    Map<String, Set<String>> getConditionals(String target) {
+      return conditionals.get(target);
+    }
+
+    /**
+     * Gets the component's build information as JSON, for the parts that are not indexed. The
+     * object is shared and must not be modified.
+     */
+    JSONObject getJson() {
+      return json;
+    }
+
+    private static Set<String> toSet(JSONArray values) {
+      Set<String> set = new HashSet<String>();
+      for (int i = 0; i < values.length(); i++) {
+        String value = values.optString(i);
+        if (!value.isEmpty()) {
+          set.add(value);
+        }
+      }
+      return Collections.unmodifiableSet(set);
+    }
+  }
+
+  // Parsed the first time a build needs them
+  private static volatile ComponentInfoIndex simpleComponents;
+  private static volatile Map<String, String> simpleComponentTypesByName;
+
+  private final ComponentInfoIndex parent;
+  private final Map<String, Component> components;
+
+  @VisibleForTesting
+  ComponentInfoIndex(ComponentInfoIndex parent, JSONArray buildInfos)
+      throws JSONException {
+    this.parent = parent;
+    Map<String, Component> components = new HashMap<String, Component>();
+    for (int i = 0; i < buildInfos.length(); i++) {
+      Component component = new Component(buildInfos.getJSONObject(i));
+      components.put(component.getType(), component);
+    }
+    this.components = Collections.unmodifiableMap(components);
+  }
+
+  /**
+   * Gets the index of the built-in components, parsing it if no build has needed it yet.
+   *
+   * @throws IllegalStateException if the build information cannot be read
+   */
+  static ComponentInfoIndex getSimpleComponents() {
+    if (simpleComponents == null) {
+      loadSimpleComponents();
+    }
+    return simpleComponents;
+  }
+
+  /**
+   * Gets the types of the built-in components by their names, such as Button.
+   *
+   * @throws IllegalStateException if the component descriptors cannot be read
+   */
+  static Map<String, String> getSimpleComponentTypesByName() {
+    if (simpleComponentTypesByName == null) {
+      loadSimpleComponents();
+    }
+    return simpleComponentTypesByName;
+  }
+
+  private static synchronized void loadSimpleComponents() {
+    if (simpleComponents != null) {
+      return;
+    }
+    try {
+      JSONArray descriptors = new JSONArray(readResource(SIMPLE_COMPONENTS));
+      Map<String, String> typesByName = new HashMap<String, String>();
+      for (int i = 0; i < descriptors.length(); i++) {
+        JSONObject descriptor = descriptors.getJSONObject(i);
+        typesByName.put(descriptor.getString("name"), descriptor.getString("type"));
+      }
+      simpleComponentTypesByName = Collections.unmodifiableMap(typesByName);
+      simpleComponents = new ComponentInfoIndex(null,
+          new JSONArray(readResource(SIMPLE_COMPONENTS_BUILD_INFO)));
+    } catch (IOException | JSONException e) {
+      throw new IllegalStateException("Unable to read the component descriptors", e);
+    }
+  }
+
+  private static String readResource(String path) throws IOException {
+    URL url = Compiler.class.getResource(path);
+    if (url == null) {
+      throw new IOException("Missing resource " + path);
+    }
+    return Resources.toString(url, Charsets.UTF_8);
+  }
+
+  /**
+   * Creates an index of this index's components and the components of some extensions.
+   *
+   * @param extensionBuildInfos the build information of the extensions
+   * @return the new index, or this index if there are no extensions
+   * @throws JSONException if the build information of an extension is malformed
+   */
+  ComponentInfoIndex withExtensions(JSONArray extensionBuildInfos) throws JSONException {
+    if (extensionBuildInfos.length() == 0) {
+      return this;
+    }
+    return new ComponentInfoIndex(this, extensionBuildInfos);
+  }
+
+  /**
+   * Tells whether the index has the given component type.
+   */
+  boolean contains(String type) {
+    return get(type) != null;
+  }
+
+  /**
+   * Gets the build information of a component type.
+   *
+   * @return the component, or null if the index does not have the type
+   */
+  Component get(String type) {
+    Component component = components.get(type);
+    if (component == null && parent != null) {
+      component = parent.get(type);
+    }
+    return component;
+  }
+}
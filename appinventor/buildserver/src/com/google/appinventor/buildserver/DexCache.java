@@ -0,0 +1,357 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.NullStatReporter;
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A directory of pre-dexed libraries shared by all builds, and possibly by several build
+ * servers.
+ *
+ * <p>Entries are named after the SHA-256 hash of the library they were made from. Hashes are
+ * computed with a streaming digest and remembered by path, size and modification time, so each
+ * library is read once per server run. Entries are created under a lock of their own, so builds
+ * that pre-dex different libraries do not wait for each other. New entries are written to a
+ * temporary file, checked, and renamed into place, so an entry is either complete or absent.
+ * When the server starts, temporary files and entries that are not valid dex archives are
+ * removed.</p>
+ *
+ * <p>The cache may be limited in total size and in the age of its entries. Entries that were used
+ * recently are never evicted, since a build may be about to read them.</p>
+ */
+final class DexCache {
+
+  /**
+   * Writes the dexed form of a library.
+   */
+  interface Producer {
+    /**
+     * Converts a library into a dex archive.
+     *
+     * @param input the library to convert
+     * @param output the archive to write
+     * @return true if the archive was written, false otherwise
+     */
+    boolean produce(File input, File output);
+  }
+
+  static final String NAME = "dex";
+
+  private static final String PREFIX = "dex-cached-";
+  private static final String SUFFIX = ".jar";
+  private static final String TEMP_PREFIX = ".tmp-";
+
+  // Entries used more recently than this are not evicted.
+  private static final long MIN_EVICTION_AGE_MILLIS = 10 * 60 * 1000L;
+
+  private static final int MAX_INDEXED_FILES = 10000;
+
+  // A library that dx failed to convert this many times in a row is not converted again until
+  // FAILURE_EXPIRY_MILLIS after the last failure. A single failure may be transient, e.g., dx ran
+  // out of memory or was killed, while a library that does not fit in one dex file fails every
+  // time.
+  static final int MAX_FAILURES = 3;
+  private static final long FAILURE_EXPIRY_MILLIS = 60 * 60 * 1000L;
+
+  private static final Logger LOG = Logger.getLogger(DexCache.class.getName());
+
+  private static final class Failures {
+    final int count;
+    final long lastMillis;
+
+    Failures(int count, long lastMillis) {
+      this.count = count;
+      this.lastMillis = lastMillis;
+    }
+  }
+
+  private static final ConcurrentMap<String, DexCache> CACHES =
+      new ConcurrentHashMap<String, DexCache>();
+
+  private final File dir;
+  private final long maxBytes;
+  private final long maxAgeMillis;
+  private final StatReporter statReporter;
+
+  // Content hashes of libraries, keyed by path, size and modification time
+  private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<String, String>();
+
+  // One lock per entry name
+  private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+  // Consecutive failures of dx to produce an entry, by entry name. Updated under the entry's lock.
+  private final ConcurrentMap<String, Failures> failures =
+      new ConcurrentHashMap<String, Failures>();
+
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private DexCache(File dir, long maxBytes, long maxAgeMillis, StatReporter statReporter) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.maxAgeMillis = maxAgeMillis;
+    this.statReporter = statReporter;
+  }
+
+  /**
+   * Opens the cache in a directory with the given limits, removing temporary files and corrupt
+   * entries. The first call for a directory determines its limits.
+   *
+   * @param dir the cache directory
+   * @param maxBytes the maximum total size of the entries, or 0 for no limit
+   * @param maxAgeMillis the maximum time since an entry was last used, or 0 for no limit
+   * @param statReporter the reporter that receives cache events
+   * @return the cache for the directory
+   */
+  static DexCache open(File dir, long maxBytes, long maxAgeMillis, StatReporter statReporter) {
+    String path = dir.getAbsolutePath();
+    DexCache cache = CACHES.get(path);
+    if (cache == null) {
+      DexCache newCache = new DexCache(dir.getAbsoluteFile(), maxBytes, maxAgeMillis,
+          statReporter);
+      cache = CACHES.putIfAbsent(path, newCache);
+      if (cache == null) {
+        cache = newCache;
+        cache.scrub();
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Gets the cache in a directory, opening it without limits if needed.
+   *
+   * @param dir the cache directory
+   * @return the cache for the directory
+   */
+  static DexCache forDirectory(File dir) {
+    return open(dir, 0, 0, new NullStatReporter());
+  }
+
+  /**
+   * Gets the dexed form of a library, producing it if it is not in the cache yet.
+   *
+   * @param input the library
+   * @param producer converts the library if needed
+   * @return the dexed library, or null if it could not be produced
+   * @throws IOException if the library cannot be read
+   */
+  File get(File input, Producer producer) throws IOException {
+    String name = PREFIX + hash(input) + SUFFIX;
+    File entry = new File(dir, name);
+    Failures failed = failures.get(name);
+    if (failed != null && failed.count >= MAX_FAILURES
+        && System.currentTimeMillis() - failed.lastMillis < FAILURE_EXPIRY_MILLIS) {
+      return null;
+    }
+    boolean created = false;
+    synchronized (lockFor(name)) {
+      if (entry.isFile()) {
+        entry.setLastModified(System.currentTimeMillis());
+        statReporter.cacheEvent(NAME, CacheEvent.HIT);
+        System.out.println(String.format("Using Pre-Dexed %1$s <- %2$s",
+            name, input.getAbsolutePath()));
+      } else {
+        statReporter.cacheEvent(NAME, CacheEvent.MISS);
+        System.out.println(String.format("Pre-Dexing %1$s -> %2$s",
+            input.getAbsolutePath(), name));
+        // dx decides on the output format by the suffix, so keep it
+        File temp = new File(dir, TEMP_PREFIX + UUID.randomUUID() + "-" + name);
+        try {
+          if (!producer.produce(input, temp) || !isValid(temp)) {
+            failed = failures.get(name);
+            failures.put(name, new Failures(failed == null ? 1 : failed.count + 1,
+                System.currentTimeMillis()));
+            return null;
+          }
+          moveIntoPlace(temp, entry);
+          failures.remove(name);
+          created = true;
+        } finally {
+          temp.delete();
+        }
+      }
+    }
+    if (created) {
+      evict();
+    }
+    return entry;
+  }
+
+  /**
+   * Removes entries that are too old or that exceed the size limit, least recently used first.
+   */
+  void evict() {
+    if ((maxBytes <= 0 && maxAgeMillis <= 0) || !evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      List<File> entries = listEntries();
+      Collections.sort(entries, new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+          return Long.compare(a.lastModified(), b.lastModified());
+        }
+      });
+      long totalBytes = 0;
+      for (File entry : entries) {
+        totalBytes += entry.length();
+      }
+      long now = System.currentTimeMillis();
+      for (File entry : entries) {
+        long age = now - entry.lastModified();
+        boolean tooOld = maxAgeMillis > 0 && age > maxAgeMillis;
+        boolean tooLarge = maxBytes > 0 && totalBytes > maxBytes;
+        if (!tooOld && !tooLarge) {
+          break;
+        } else if (age < MIN_EVICTION_AGE_MILLIS) {
+          continue;
+        }
+        long size = entry.length();
+        synchronized (lockFor(entry.getName())) {
+          if (entry.delete()) {
+            totalBytes -= size;
+            statReporter.cacheEvent(NAME, CacheEvent.EVICTION);
+          }
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * Removes temporary files left by an interrupted server and entries that are not valid.
+   */
+  private void scrub() {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      LOG.warning("Unable to create dex cache directory " + dir);
+      return;
+    }
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    int removed = 0;
+    for (File file : files) {
+      boolean partial = file.getName().startsWith(TEMP_PREFIX);
+      boolean corrupt = !partial && file.getName().startsWith(PREFIX) && !isValid(file);
+      if ((partial || corrupt) && file.delete()) {
+        removed++;
+      }
+    }
+    if (removed > 0) {
+      LOG.info("Removed " + removed + " incomplete entries from dex cache " + dir);
+    }
+    evict();
+  }
+
+  private List<File> listEntries() {
+    File[] files = dir.listFiles();
+    List<File> entries = new ArrayList<File>();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX)) {
+          entries.add(file);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private Object lockFor(String name) {
+    Object lock = locks.get(name);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(name, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  private String hash(File input) throws IOException {
+    String id = input.getAbsolutePath() + File.pathSeparator + input.length()
+        + File.pathSeparator + input.lastModified();
+    String hash = hashes.get(id);
+    if (hash == null) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      byte[] buffer = new byte[65536];
+      try (InputStream in = new FileInputStream(input)) {
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          hasher.putBytes(buffer, 0, read);
+        }
+      }
+      hash = hasher.hash().toString();
+      if (hashes.size() > MAX_INDEXED_FILES) {
+        hashes.clear();
+      }
+      hashes.put(id, hash);
+    }
+    return hash;
+  }
+
+  private static void moveIntoPlace(File temp, File entry) throws IOException {
+    try {
+      Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Checks that a file is a readable archive with a dex file whose header is complete.
+   */
+  private static boolean isValid(File file) {
+    try (ZipFile zip = new ZipFile(file)) {
+      ZipEntry classes = zip.getEntry("classes.dex");
+      if (classes == null) {
+        return false;
+      }
+      byte[] magic = new byte[4];
+      try (InputStream in = zip.getInputStream(classes)) {
+        int read = 0;
+        while (read < magic.length) {
+          int n = in.read(magic, read, magic.length - read);
+          if (n < 0) {
+            return false;
+          }
+          read += n;
+        }
+      }
+      return Arrays.equals(magic, new byte[] { 'd', 'e', 'x', '\n' });
+    } catch (IOException e) {
+      LOG.log(Level.INFO, "Invalid dex cache entry " + file, e);
+      return false;
+    }
+  }
+}
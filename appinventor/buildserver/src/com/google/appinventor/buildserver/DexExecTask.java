@@ -16,23 +16,22 @@
 
 package com.google.appinventor.buildserver;
 
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
 
 /**
  * Dex task, modified from the Android SDK to run in BuildServer.
@@ -47,11 +46,18 @@ public class DexExecTask {
     private boolean mNoLocals = false;
     private int mChildProcessRamMb = 1024;
     private boolean mDisableDexMerger = false;
-    private static Map<String, String> alreadyChecked = new HashMap<String, String>();
     private String mainDexFile = null;
     private boolean mPredex = true;
 
-    private static final Object semaphore = new Object(); // Used to protect dex cache creation
+
+    // A dex file can reference at most this many methods, fields or types.
+    private static final int MAX_DEX_IDS = 65536;
+
+    // Offsets of the type_ids_size, field_ids_size and method_ids_size fields in the dex header.
+    private static final int TYPE_IDS_SIZE_OFFSET = 0x40;
+    private static final int FIELD_IDS_SIZE_OFFSET = 0x50;
+    private static final int METHOD_IDS_SIZE_OFFSET = 0x58;
+    private static final int DEX_HEADER_SIZE = 0x70;
 
 
     /**
@@ -115,71 +121,195 @@ public class DexExecTask {
     }
 
     private boolean preDexLibraries(List<File> inputs) {
-        if (mDisableDexMerger || inputs.size() == 1) {
+        return preDexLibraries(inputs, false);
+    }
+
+    private boolean preDexLibraries(List<File> inputs, boolean force) {
+        if (mDisableDexMerger || (inputs.size() == 1 && !force)) {
             // only one input, no need to put a pre-dexed version, even if this path is
             // just a jar file (case for proguard'ed builds)
             return true;
         }
 
-        synchronized (semaphore) {
-
-            final int count = inputs.size();
-            for (int i = 0; i < count; i++) {
-                File input = inputs.get(i);
-                if (input.isFile()) {
-                    // check if this libs needs to be pre-dexed
-                    String fileName = getDexFileName(input);
-                    File dexedLib = new File(mDexedLibs, fileName);
-                    String dexedLibPath = dexedLib.getAbsolutePath();
-
-                    if (!dexedLib.isFile()/*||
-                                                    dexedLib.lastModified() < input.lastModified()*/) {
-
-                        System.out.println(
-                            String.format("Pre-Dexing %1$s -> %2$s",
-                              input.getAbsolutePath(), fileName));
-
-                        if (dexedLib.isFile()) {
-                            dexedLib.delete();
-                        }
-
-                        boolean dexSuccess = runDx(input, dexedLibPath, /*showInputs=*/ false);
-                        if (!dexSuccess) return false;
-                    } else {
-                        System.out.println(
-                            String.format("Using Pre-Dexed %1$s <- %2$s",
-                              fileName, input.getAbsolutePath()));
-                    }
-
-                    // replace the input with the pre-dex libs.
-                    inputs.set(i, dexedLib);
+        DexCache cache = DexCache.forDirectory(new File(mDexedLibs));
+        DexCache.Producer producer = new DexCache.Producer() {
+            @Override
+            public boolean produce(File input, File output) {
+                return runDx(Collections.singleton(input), output.getAbsolutePath(),
+                    /*showInputs=*/ false, /*multiDex=*/ false);
+            }
+        };
+        final int count = inputs.size();
+        for (int i = 0; i < count; i++) {
+            File input = inputs.get(i);
+            if (input.isFile()) {
+                // replace the input with the pre-dex libs.
+                File dexedLib;
+                try {
+                    dexedLib = cache.get(input, producer);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+                if (dexedLib == null) {
+                    return false;
                 }
+                inputs.set(i, dexedLib);
             }
-            return true;
         }
+        return true;
     }
 
-    private String getDexFileName(File inputFile) {
-        String hashed = getHashFor(inputFile);
-        return "dex-cached-" + hashed + ".jar";
-    }
-
-    private String getHashFor(File inputFile) {
-        String retval = alreadyChecked.get(inputFile.getAbsolutePath());
-        if (retval != null) return retval;
-        // add a hash of the original file path
+    /**
+     * Dexes the inputs by merging pre-dexed libraries instead of running dx over all of them.
+     *
+     * <p>dx does not accept pre-dexed libraries in multi-dex mode, so the main dex list is honoured
+     * by construction instead: the classes directory and the main dex libraries are merged into
+     * classes.dex, which is exactly the content that {@code --minimal-main-dex} puts there. The
+     * remaining libraries are packed into classes2.dex, classes3.dex and so on, starting a new file
+     * whenever the reference counts of the next library might overflow the current one. Only the
+     * classes directory is dexed for every build, the libraries are dexed once per content hash.</p>
+     *
+     * <p>If anything fails, for example because a library does not fit in a single dex file, the
+     * output directory is cleaned up and false is returned so that the caller can fall back to
+     * {@link #execute(List)}.</p>
+     *
+     * @param classesDir the directory of compiled application classes
+     * @param mainDexLibs libraries whose classes must be in the main dex file
+     * @param secondaryLibs the remaining libraries
+     * @return true if the dex files were written, false otherwise
+     */
+    public boolean executeIncremental(File classesDir, List<File> mainDexLibs,
+            List<File> secondaryLibs) {
+        if (mDexedLibs == null || mDisableDexMerger) {
+            return false;
+        }
+        File workDir = new File(mOutput, "incremental-dex");
+        workDir.mkdirs();
+        List<File> outputs = new ArrayList<File>();
         try {
-            HashFunction hashFunction = Hashing.md5();
-            HashCode hashCode = hashFunction.hashBytes(Files.readAllBytes(inputFile.toPath()));
-            retval = hashCode.toString();
-            alreadyChecked.put(inputFile.getAbsolutePath(), retval);
-            return retval;
+            List<File> mainDexInputs = new ArrayList<File>(mainDexLibs);
+            List<File> secondaryInputs = new ArrayList<File>(secondaryLibs);
+            if (!preDexLibraries(mainDexInputs, true) || !preDexLibraries(secondaryInputs, true)) {
+                return false;
+            }
+
+            File appDex = new File(workDir, "app-classes.jar");
+            if (!runDx(Collections.singleton(classesDir), appDex.getAbsolutePath(), false, false)) {
+                return false;
+            }
+
+            System.out.println(String.format(
+                    "Merging pre-dexed libraries into %1$s...", mOutput));
+            mainDexInputs.add(0, appDex);
+            File mainDex = new File(mOutput, "classes.dex");
+            outputs.add(mainDex);
+            if (!runDexMerger(mainDexInputs, mainDex)) {
+                return false;
+            }
+
+            for (List<File> group : packSecondaryDexes(secondaryInputs)) {
+                File secondaryDex = new File(mOutput, "classes" + (outputs.size() + 1) + ".dex");
+                outputs.add(secondaryDex);
+                if (!runDexMerger(group, secondaryDex)) {
+                    return false;
+                }
+            }
+            outputs.clear();  // Success, keep the outputs
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
-            return "ERROR";
+            return false;
+        } finally {
+            for (File output : outputs) {
+                output.delete();
+            }
+            FileUtils.deleteQuietly(workDir);
         }
     }
 
+    /**
+     * Groups pre-dexed libraries so that no group can overflow the reference limits of a dex file.
+     * The sum of the reference counts of the libraries is an upper bound of the count of the
+     * merged file, since merging only removes duplicate references.
+     */
+    private static List<List<File>> packSecondaryDexes(List<File> dexedLibs) throws IOException {
+        List<List<File>> groups = new ArrayList<List<File>>();
+        List<File> group = new ArrayList<File>();
+        int[] groupCounts = new int[3];
+        for (File lib : dexedLibs) {
+            int[] counts = readIdCounts(lib);
+            boolean fits = true;
+            for (int i = 0; i < counts.length; i++) {
+                fits &= groupCounts[i] + counts[i] <= MAX_DEX_IDS;
+            }
+            if (!fits && !group.isEmpty()) {
+                groups.add(group);
+                group = new ArrayList<File>();
+                groupCounts = new int[3];
+            }
+            group.add(lib);
+            for (int i = 0; i < counts.length; i++) {
+                groupCounts[i] += counts[i];
+            }
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Reads the number of type, field and method references from the header of the classes.dex
+     * file in a pre-dexed library.
+     */
+    private static int[] readIdCounts(File dexedLib) throws IOException {
+        try (ZipFile zip = new ZipFile(dexedLib)) {
+            ZipEntry entry = zip.getEntry("classes.dex");
+            if (entry == null) {
+                throw new IOException("No classes.dex in " + dexedLib);
+            }
+            byte[] header = new byte[DEX_HEADER_SIZE];
+            try (InputStream in = zip.getInputStream(entry)) {
+                new DataInputStream(in).readFully(header);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            return new int[] {
+                buffer.getInt(TYPE_IDS_SIZE_OFFSET),
+                buffer.getInt(FIELD_IDS_SIZE_OFFSET),
+                buffer.getInt(METHOD_IDS_SIZE_OFFSET)
+            };
+        }
+    }
+
+    private boolean runDexMerger(List<File> inputs, File output) throws IOException {
+        if (inputs.size() == 1) {
+            try (ZipFile zip = new ZipFile(inputs.get(0))) {
+                ZipEntry entry = zip.getEntry("classes.dex");
+                if (entry == null) {
+                    return false;
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    Files.copy(in, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return true;
+        }
+        List<String> commandLineList = new ArrayList<String>();
+        commandLineList.add(System.getProperty("java.home") + "/bin/java");
+        commandLineList.add("-mx" + (mChildProcessRamMb - 200) + "M");
+        commandLineList.add("-cp");
+        commandLineList.add(mExecutable);
+        commandLineList.add("com.android.dx.merge.DexMerger");
+        commandLineList.add(output.getAbsolutePath());
+        for (File input : inputs) {
+            commandLineList.add(input.getAbsolutePath());
+        }
+        String[] mergerCommandLine = commandLineList.toArray(new String[commandLineList.size()]);
+        return Execution.execute(null, mergerCommandLine, System.out, System.err)
+                && output.isFile();
+    }
+
     public boolean execute(List<File> paths) {
         // pre dex libraries if needed
         if (mPredex) {
@@ -193,11 +323,12 @@ public class DexExecTask {
         return runDx(paths, mOutput, mVerbose /*showInputs*/);
     }
 
-    private boolean runDx(File input, String output, boolean showInputs) {
-        return runDx(Collections.singleton(input), output, showInputs);
+    private boolean runDx(Collection<File> inputs, String output, boolean showInputs) {
+        return runDx(inputs, output, showInputs, mainDexFile != null);
     }
 
-    private boolean runDx(Collection<File> inputs, String output, boolean showInputs) {
+    private boolean runDx(Collection<File> inputs, String output, boolean showInputs,
+            boolean multiDex) {
         int mx = mChildProcessRamMb - 200;
 
         List<String> commandLineList = new ArrayList<String>();
@@ -209,7 +340,7 @@ public class DexExecTask {
         commandLineList.add("--dex");
         commandLineList.add("--positions=lines");
 
-        if (mainDexFile != null) {
+        if (multiDex) {
             commandLineList.add("--multi-dex");
             commandLineList.add("--main-dex-list=" + mainDexFile);
             commandLineList.add("--minimal-main-dex");
@@ -0,0 +1,285 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The storage of an on-disk cache whose entries are files or directories named after their keys.
+ *
+ * <p>Entries are written to a temporary file or directory and renamed into place, so readers
+ * never see a partial entry, and temporary files left behind by a server that stopped are
+ * removed at startup. Entries already in the directory are indexed at startup, by their last
+ * modification time, which is updated whenever an entry is used.</p>
+ *
+ * <p>The cache is bounded in size. When it grows beyond its limit, the least recently used
+ * entries are removed. Hits, misses and evictions are reported to a {@link StatReporter} under
+ * the name of the cache.</p>
+ */
+final class DiskLruCache {
+
+  /**
+   * Reads an entry.
+   *
+   * @param <T> the result of reading an entry
+   */
+  interface Reader<T> {
+    /**
+     * Reads an entry, which may be removed while it is read.
+     *
+     * @param entry the file or directory of the entry
+     * @return the result of reading the entry, which must not be null
+     * @throws IOException if the entry cannot be read
+     */
+    T read(File entry) throws IOException;
+  }
+
+  /**
+   * Writes an entry.
+   */
+  interface Writer {
+    /**
+     * Writes an entry.
+     *
+     * @param entry the file or directory to write the entry to, which does not exist
+     * @return the size of the entry in bytes
+     * @throws IOException if the entry cannot be written
+     */
+    long write(File entry) throws IOException;
+  }
+
+  private static final String TEMP_PREFIX = ".tmp-";
+
+  private static final Logger LOG = Logger.getLogger(DiskLruCache.class.getName());
+
+  private static final class Entry {
+    final long size;
+    volatile long lastUsed;
+
+    Entry(long size, long lastUsed) {
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+
+  private final File dir;
+  private final String suffix;
+  private final long maxBytes;
+  private final String name;
+  private final StatReporter statReporter;
+
+  // All of the following are protected by this.
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private long totalBytes = 0;
+
+  /**
+   * Creates a cache backed by the given directory, indexing any entries already present.
+   *
+   * @param dir the cache directory, which is created if needed
+   * @param suffix the suffix of the names of entries, e.g., ".zip", or "" for none
+   * @param maxBytes the maximum total size of the entries
+   * @param name the name of the cache in logs and cache events
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  DiskLruCache(File dir, String suffix, long maxBytes, String name, StatReporter statReporter)
+      throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create " + name + " cache directory " + dir);
+    }
+    this.dir = dir;
+    this.suffix = suffix;
+    this.maxBytes = maxBytes;
+    this.name = name;
+    this.statReporter = statReporter;
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        String childName = child.getName();
+        if (childName.startsWith(TEMP_PREFIX)) {
+          // Left behind by a server that stopped while writing an entry
+          FileUtils.deleteQuietly(child);
+        } else if (childName.endsWith(suffix)) {
+          long size = sizeOf(child);
+          entries.put(childName.substring(0, childName.length() - suffix.length()),
+              new Entry(size, child.lastModified()));
+          totalBytes += size;
+        }
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Reads an entry, marking it as used.
+   *
+   * @param key the key of the entry
+   * @param reader reads the entry
+   * @return the result of the reader, or null if the entry is not cached or cannot be read
+   */
+  <T> T restore(String key, Reader<T> reader) {
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    if (entry != null) {
+      File file = new File(dir, key + suffix);
+      try {
+        T result = reader.read(file);
+        entry.lastUsed = System.currentTimeMillis();
+        file.setLastModified(entry.lastUsed);
+        statReporter.cacheEvent(name, CacheEvent.HIT);
+        return result;
+      } catch (IOException e) {
+        // The entry may have been evicted while we were reading it
+        LOG.log(Level.INFO, "Unable to restore " + name + " cache entry " + key, e);
+      }
+    }
+    statReporter.cacheEvent(name, CacheEvent.MISS);
+    return null;
+  }
+
+  /**
+   * Stores an entry under the given key, unless there already is one.
+   *
+   * @param key the key of the entry
+   * @param writer writes the entry
+   */
+  void store(String key, Writer writer) {
+    synchronized (this) {
+      if (entries.containsKey(key)) {
+        return;
+      }
+    }
+    File temp = new File(dir, TEMP_PREFIX + UUID.randomUUID());
+    try {
+      long size = writer.write(temp);
+      synchronized (this) {
+        if (entries.containsKey(key) || !temp.renameTo(new File(dir, key + suffix))) {
+          return;
+        }
+        entries.put(key, new Entry(size, System.currentTimeMillis()));
+        totalBytes += size;
+        evict();
+      }
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to store " + name + " cache entry " + key, e);
+    } finally {
+      if (temp.exists()) {
+        FileUtils.deleteQuietly(temp);
+      }
+    }
+  }
+
+  synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  private synchronized void evict() {
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    List<Map.Entry<String, Entry>> byAge = new ArrayList<Map.Entry<String, Entry>>(
+        entries.entrySet());
+    Collections.sort(byAge, new Comparator<Map.Entry<String, Entry>>() {
+      @Override
+      public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+        return Long.compare(a.getValue().lastUsed, b.getValue().lastUsed);
+      }
+    });
+    for (Map.Entry<String, Entry> oldest : byAge) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      entries.remove(oldest.getKey());
+      totalBytes -= oldest.getValue().size;
+      FileUtils.deleteQuietly(new File(dir, oldest.getKey() + suffix));
+      statReporter.cacheEvent(name, CacheEvent.EVICTION);
+    }
+  }
+
+  /**
+   * Lists the files below a directory, for caches whose entries are made of several files.
+   *
+   * @param dir the directory to list
+   * @return the paths of all files below dir, relative to dir and using '/' as separator
+   */
+  static List<String> listRelativePaths(File dir) {
+    List<String> paths = new ArrayList<String>();
+    listFiles(dir, "", paths);
+    return paths;
+  }
+
+  /**
+   * Computes the SHA-256 hash of the contents of a file, for use in a key.
+   *
+   * @param file the file
+   * @return the hash as a hexadecimal string
+   * @throws IOException if the file cannot be read
+   */
+  static String hashFile(File file) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    byte[] buffer = new byte[65536];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        hasher.putBytes(buffer, 0, read);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void listFiles(File dir, String prefix, List<String> paths) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        listFiles(child, prefix + child.getName() + "/", paths);
+      } else {
+        paths.add(prefix + child.getName());
+      }
+    }
+  }
+
+  private static long sizeOf(File file) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      return file.length();
+    }
+    long size = 0;
+    for (File child : children) {
+      size += sizeOf(child);
+    }
+    return size;
+  }
+}
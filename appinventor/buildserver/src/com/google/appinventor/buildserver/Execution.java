@@ -109,9 +109,14 @@ public final class Execution {
     }
     try {
       Process process = Runtime.getRuntime().exec(command, null, workingDir);
+      ProcessMonitor.Monitor monitor = ProcessMonitor.start(process, command);
       new RedirectStreamHandler(new PrintWriter(out, true), process.getInputStream());
       new RedirectStreamHandler(new PrintWriter(err, true), process.getErrorStream());
-      return process.waitFor() == 0;
+      try {
+        return process.waitFor() == 0;
+      } finally {
+        monitor.finish();
+      }
     } catch (Exception e) {
       LOG.log(Level.WARNING, "____Execution failure: ", e);
       return false;
@@ -132,10 +137,12 @@ public final class Execution {
       StringBuffer err) throws IOException {
     LOG.log(Level.INFO, "____Executing " + joiner.join(command));
     Process process = Runtime.getRuntime().exec(command, null, workingDir);
+    ProcessMonitor.Monitor monitor = ProcessMonitor.start(process, command);
     Thread outThread = new RedirectStreamToStringBuffer(out, process.getInputStream());
     Thread errThread = new RedirectStreamToStringBuffer(err, process.getErrorStream());
     try {
       process.waitFor();
+      monitor.finish();
       outThread.join();
       errThread.join();
     } catch (InterruptedException e) {
@@ -0,0 +1,122 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An on-disk cache of the launcher icons that builds render from the icon of a project.
+ *
+ * <p>Rendering the round, rounded corner and adaptive foreground icons for every density takes
+ * seconds for a large icon, but only depends on the icon, the sizes it is rendered at and the
+ * shapes it is rendered in. Entries are keyed by a SHA-256 hash of these, and each holds the
+ * rendered files in a directory, by their path relative to the resource directory of the
+ * build.</p>
+ *
+ * <p>The entries are kept in a {@link DiskLruCache}, which is bounded in size. Hits, misses and
+ * evictions are reported to a {@link StatReporter} under the name {@link #NAME}.</p>
+ */
+final class IconCache {
+
+  static final String NAME = "icons";
+
+  // Change this whenever the way icons are rendered or the layout of an entry changes.
+  private static final String VERSION = "icon-cache-1";
+
+  private final DiskLruCache cache;
+
+  /**
+   * Creates a cache backed by the given directory, indexing any entries already present.
+   *
+   * @param dir the cache directory, which is created if needed
+   * @param maxBytes the maximum total size of the cached icons
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  IconCache(File dir, long maxBytes, StatReporter statReporter) throws IOException {
+    cache = new DiskLruCache(dir, "", maxBytes, NAME, statReporter);
+  }
+
+  /**
+   * Computes the key of the icons rendered from an icon.
+   *
+   * @param icon the contents of the icon file
+   * @param parameters everything else the rendered icons depend on, such as their sizes and the
+   *     directories they are written to
+   * @return the key of the cache entry
+   */
+  static String key(byte[] icon, List<?> parameters) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(VERSION, Charsets.UTF_8);
+    hasher.putBytes(icon);
+    for (Object parameter : parameters) {
+      hasher.putString(String.valueOf(parameter), Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies cached icons into a build.
+   *
+   * @param key the key of the entry
+   * @param resDir the resource directory of the build
+   * @param paths the paths of the icons relative to the resource directory
+   * @return true if the entry was found and copied, false otherwise
+   */
+  boolean restore(String key, final File resDir, final List<String> paths) {
+    return cache.restore(key, new DiskLruCache.Reader<Boolean>() {
+      @Override
+      public Boolean read(File entry) throws IOException {
+        for (String path : paths) {
+          File target = new File(resDir, path);
+          Files.createParentDirs(target);
+          Files.copy(new File(entry, path), target);
+        }
+        return true;
+      }
+    }) != null;
+  }
+
+  /**
+   * Stores the icons rendered in a build under the given key.
+   *
+   * @param key the key of the entry
+   * @param resDir the resource directory of the build
+   * @param paths the paths of the icons relative to the resource directory
+   */
+  void store(String key, final File resDir, final List<String> paths) {
+    cache.store(key, new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        long size = 0;
+        for (String path : paths) {
+          File source = new File(resDir, path);
+          File target = new File(entry, path);
+          Files.createParentDirs(target);
+          Files.copy(source, target);
+          size += source.length();
+        }
+        return size;
+      }
+    });
+  }
+
+  int getEntryCount() {
+    return cache.getEntryCount();
+  }
+
+  long getTotalBytes() {
+    return cache.getTotalBytes();
+  }
+}
@@ -0,0 +1,138 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for a long-lived Kawa compiler process managed by {@link KawaCompilerPool}.
+ *
+ * <p>The worker loads the YAIL runtime once at startup and then compiles one batch of YAIL
+ * sources per request read from standard input. Each request is a single line of tab separated
+ * fields:</p>
+ *
+ * <pre>
+ *   compile &lt;classes dir&gt; &lt;package prefix&gt; &lt;build classpath&gt; &lt;source&gt;...
+ * </pre>
+ *
+ * <p>Entries of the build classpath (separated by {@link File#pathSeparator}) are made visible
+ * to Kawa through the thread context class loader for the duration of the request. When a
+ * request has been handled, the worker writes {@link #DONE} followed by its resident set size
+ * in kilobytes to standard output and {@link #DONE} to standard error so that the parent can
+ * separate the output of consecutive requests. Kawa terminates the process when a source fails
+ * to compile, which the parent treats as a failed compilation.</p>
+ *
+ * <p>This class must only depend on the JDK since it runs outside of the build server's
+ * classpath. Kawa is not on the classpath the build server is compiled against, so it is
+ * called reflectively; the worker process is started with the extracted kawa.jar.</p>
+ */
+public final class KawaCompileWorker {
+
+  static final String READY = "@@kawa-worker-ready";
+  static final String DONE = "@@kawa-worker-done";
+  static final String COMPILE = "compile";
+  static final String EXIT = "exit";
+
+  private KawaCompileWorker() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: KawaCompileWorker <runtime.scm>");
+      System.exit(2);
+    }
+    Method processArgs = Class.forName("kawa.repl")
+        .getMethod("processArgs", String[].class, int.class, int.class);
+    Class<?> outPort = Class.forName("gnu.mapping.OutPort");
+    Method outDefault = outPort.getMethod("outDefault");
+    Method errDefault = outPort.getMethod("errDefault");
+    Method flush = outPort.getMethod("flush");
+
+    processArgs.invoke(null, new String[] { "-f", args[0] }, 0, 2);
+    System.out.println(READY);
+    System.out.flush();
+
+    ClassLoader parent = KawaCompileWorker.class.getClassLoader();
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] fields = line.split("\t");
+      if (fields.length == 0 || EXIT.equals(fields[0])) {
+        break;
+      } else if (!COMPILE.equals(fields[0]) || fields.length < 5) {
+        System.err.println("Malformed request: " + line);
+        System.exit(2);
+      }
+      List<String> kawaArgs = new ArrayList<String>();
+      kawaArgs.add("-d");
+      kawaArgs.add(fields[1]);
+      kawaArgs.add("-P");
+      kawaArgs.add(fields[2]);
+      kawaArgs.add("-C");
+      for (int i = 4; i < fields.length; i++) {
+        kawaArgs.add(fields[i]);
+      }
+      Thread.currentThread().setContextClassLoader(
+          new URLClassLoader(toUrls(fields[3]), parent));
+      try {
+        String[] kawaCommandLine = kawaArgs.toArray(new String[kawaArgs.size()]);
+        processArgs.invoke(null, kawaCommandLine, 0, kawaCommandLine.length);
+      } finally {
+        Thread.currentThread().setContextClassLoader(parent);
+      }
+      // Kawa buffers its own ports, so drain them before writing the markers.
+      flush.invoke(outDefault.invoke(null));
+      flush.invoke(errDefault.invoke(null));
+      System.err.println(DONE);
+      System.err.flush();
+      System.out.println(DONE + " " + readRssKb());
+      System.out.flush();
+    }
+    System.exit(0);
+  }
+
+  private static URL[] toUrls(String classpath) throws IOException {
+    List<URL> urls = new ArrayList<URL>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        urls.add(new File(entry).toURI().toURL());
+      }
+    }
+    return urls.toArray(new URL[urls.size()]);
+  }
+
+  /**
+   * Reads the resident set size of this process from /proc/self/status.
+   *
+   * @return the resident set size in kilobytes, or -1 if it is not available on this platform
+   */
+  private static long readRssKb() {
+    File status = new File("/proc/self/status");
+    if (!status.exists()) {
+      return -1;
+    }
+    try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // Fall through
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,462 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.ProcessUsage;
+import com.google.common.base.Joiner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of warm Kawa compiler processes.
+ *
+ * <p>Launching a new JVM and loading runtime.scm costs several seconds on every build. The pool
+ * keeps {@link KawaCompileWorker} processes alive between builds so that each build only pays
+ * for compiling its own YAIL sources. Workers are keyed by their (stable) classpath, so builds
+ * that need the same component libraries share workers. A worker is retired after
+ * {@code maxBuildsPerWorker} compilations or once its resident set size exceeds
+ * {@code maxRssKb}, and a fresh worker is started in its place so the next build finds a warm
+ * one.</p>
+ *
+ * <p>Each worker holds a {@link CompileScheduler} slot from when it is started until it is
+ * stopped, whether it is compiling or idle, so warm workers count against the memory budget of
+ * the scheduler. An idle worker gives its slot back when a request is waiting for one. The work
+ * a worker does for a build is reported as the usage of a {@value #TOOL} process.</p>
+ *
+ * @see KawaCompileWorker
+ */
+final class KawaCompilerPool {
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(KawaCompilerPool.class.getName());
+
+  // How long we are willing to wait for a single compilation before giving up on the worker.
+  private static final long COMPILE_TIMEOUT_MINUTES = 10;
+
+  // The tool name under which compilations by workers are reported.
+  static final String TOOL = "kawa-worker";
+
+  /**
+   * The outcome of a compilation request.
+   */
+  static final class Outcome {
+    // True if the worker could be started and took the request. If false, the caller should
+    // compile the sources some other way.
+    final boolean handled;
+    // True if the sources compiled without error.
+    final boolean success;
+    // True if the request was served by a worker that had already loaded the runtime.
+    final boolean warm;
+    // Resident set size of the worker after the compilation, in KB, or -1 if unknown.
+    final long rssKb;
+
+    private Outcome(boolean handled, boolean success, boolean warm, long rssKb) {
+      this.handled = handled;
+      this.success = success;
+      this.warm = warm;
+      this.rssKb = rssKb;
+    }
+  }
+
+  private final CompileScheduler scheduler;
+  private final int maxIdleWorkers;
+  private final int maxBuildsPerWorker;
+  private final long maxRssKb;
+
+  // Idle workers, most recently used first.
+  private final LinkedList<Worker> idleWorkers = new LinkedList<Worker>();
+
+  private final AtomicInteger startedWorkers = new AtomicInteger(0);
+  private final AtomicInteger retiredWorkers = new AtomicInteger(0);
+  private final AtomicInteger compilations = new AtomicInteger(0);
+  private final AtomicInteger warmCompilations = new AtomicInteger(0);
+
+  /**
+   * Creates a KawaCompilerPool, which becomes the reclaimer of the scheduler.
+   *
+   * @param scheduler the scheduler that hands out the slots held by workers
+   * @param maxIdleWorkers the maximum number of idle workers kept alive
+   * @param maxBuildsPerWorker the number of compilations after which a worker is replaced
+   * @param maxRssMb the resident set size, in MB, above which a worker is replaced
+   */
+  KawaCompilerPool(CompileScheduler scheduler, int maxIdleWorkers, int maxBuildsPerWorker,
+      int maxRssMb) {
+    this.scheduler = scheduler;
+    this.maxIdleWorkers = maxIdleWorkers;
+    this.maxBuildsPerWorker = maxBuildsPerWorker;
+    this.maxRssKb = maxRssMb * 1024L;
+    scheduler.setReclaimer(new CompileScheduler.Reclaimer() {
+      @Override
+      public void reclaim() {
+        Worker evicted;
+        synchronized (KawaCompilerPool.this) {
+          evicted = idleWorkers.pollLast();
+        }
+        if (evicted != null) {
+          evicted.destroy();
+        }
+      }
+    });
+  }
+
+  /**
+   * Compiles YAIL sources with a pooled worker. If no idle worker matches, this waits for a
+   * scheduler slot for a new one, so the caller must not hold a slot of its own.
+   *
+   * @param classpath the classpath shared by all builds served by the worker
+   * @param buildClasspath classpath entries specific to this build
+   * @param yailRuntime path to runtime.scm
+   * @param maxHeapMb the maximum heap size of a newly started worker, in MB
+   * @param classesDir the directory where class files are written
+   * @param packagePrefix the package prefix of the compiled screens
+   * @param sourceFileNames the sources to compile
+   * @param out stream receiving the compiler's standard output
+   * @param err stream receiving the compiler's diagnostics
+   * @return the outcome of the request
+   */
+  Outcome compile(String classpath, String buildClasspath, String yailRuntime, int maxHeapMb,
+      File classesDir, String packagePrefix, List<String> sourceFileNames, PrintStream out,
+      PrintStream err) throws InterruptedException {
+    Worker worker = checkOut(classpath, yailRuntime, maxHeapMb);
+    if (worker == null) {
+      return new Outcome(false, false, false, -1);
+    }
+    boolean warm = worker.builds > 0;
+    List<String> request = new ArrayList<String>();
+    request.add(KawaCompileWorker.COMPILE);
+    request.add(classesDir.getAbsolutePath());
+    request.add(packagePrefix);
+    request.add(buildClasspath);
+    request.addAll(sourceFileNames);
+    try {
+      if (!worker.awaitReady()) {
+        worker.destroy();
+        return new Outcome(false, false, false, -1);
+      }
+      ProcessMonitor.Sample before = worker.sample();
+      long start = System.currentTimeMillis();
+      long rssKb = worker.compile(Joiner.on('\t').join(request), out, err);
+      reportUsage(worker, before, start, rssKb);
+      compilations.incrementAndGet();
+      if (warm) {
+        warmCompilations.incrementAndGet();
+      }
+      if (rssKb == Worker.FAILED) {
+        // Kawa exits when a compilation fails, so there's nothing to return to the pool.
+        replace(worker);
+        return new Outcome(true, false, warm, -1);
+      }
+      checkIn(worker, rssKb);
+      return new Outcome(true, true, warm, rssKb);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Kawa worker failed", e);
+      worker.destroy();
+      return new Outcome(false, false, warm, -1);
+    }
+  }
+
+  private Worker checkOut(String classpath, String yailRuntime, int maxHeapMb)
+      throws InterruptedException {
+    synchronized (this) {
+      Iterator<Worker> it = idleWorkers.iterator();
+      while (it.hasNext()) {
+        Worker worker = it.next();
+        if (worker.matches(classpath, yailRuntime, maxHeapMb)) {
+          it.remove();
+          return worker;
+        }
+      }
+    }
+    CompileScheduler.Slot slot = scheduler.acquire(CompileScheduler.Resource.KAWA);
+    return startWorker(classpath, yailRuntime, maxHeapMb, slot);
+  }
+
+  private void checkIn(Worker worker, long rssKb) {
+    worker.builds++;
+    if (worker.builds >= maxBuildsPerWorker || (maxRssKb > 0 && rssKb > maxRssKb)) {
+      LOG.info("Retiring Kawa worker after " + worker.builds + " builds, RSS " + rssKb + " KB");
+      replace(worker);
+      return;
+    }
+    keepIdle(worker);
+  }
+
+  /**
+   * Stops a worker and starts a fresh one with the same slot.
+   */
+  private void replace(Worker worker) {
+    retiredWorkers.incrementAndGet();
+    worker.stop();
+    Worker replacement = startWorker(worker.classpath, worker.yailRuntime, worker.maxHeapMb,
+        worker.slot);
+    if (replacement != null) {
+      keepIdle(replacement);
+    }
+  }
+
+  private void keepIdle(Worker worker) {
+    Worker evicted = null;
+    synchronized (this) {
+      idleWorkers.addFirst(worker);
+      // A request that is waiting for a slot needs one more than a warm worker does
+      if (idleWorkers.size() > maxIdleWorkers || scheduler.hasWaiters()) {
+        evicted = idleWorkers.removeLast();
+      }
+    }
+    if (evicted != null) {
+      evicted.destroy();
+    }
+  }
+
+  /**
+   * Starts a worker that holds the given slot, or releases the slot if it cannot.
+   */
+  private Worker startWorker(String classpath, String yailRuntime, int maxHeapMb,
+      CompileScheduler.Slot slot) {
+    try {
+      Worker worker = new Worker(classpath, yailRuntime, maxHeapMb, slot);
+      startedWorkers.incrementAndGet();
+      return worker;
+    } catch (IOException | URISyntaxException e) {
+      LOG.log(Level.WARNING, "Unable to start Kawa worker", e);
+      slot.release();
+      return null;
+    }
+  }
+
+  /**
+   * Reports what a compilation cost the worker that ran it to the build that asked for it.
+   */
+  private static void reportUsage(Worker worker, ProcessMonitor.Sample before, long start,
+      long rssKb) {
+    ProcessMonitor.Sample after = worker.sample();
+    long userCpuMillis = 0;
+    long systemCpuMillis = 0;
+    long readBytes = 0;
+    long writeBytes = 0;
+    if (before != null && after != null) {
+      userCpuMillis = after.userCpuMillis - before.userCpuMillis;
+      systemCpuMillis = after.systemCpuMillis - before.systemCpuMillis;
+      readBytes = after.readBytes - before.readBytes;
+      writeBytes = after.writeBytes - before.writeBytes;
+    }
+    ProcessMonitor.report(new ProcessUsage(TOOL, System.currentTimeMillis() - start,
+        userCpuMillis, systemCpuMillis, Math.max(rssKb, 0), readBytes, writeBytes));
+  }
+
+  /**
+   * Stops all idle workers.
+   */
+  void shutdown() {
+    List<Worker> workers;
+    synchronized (this) {
+      workers = new ArrayList<Worker>(idleWorkers);
+      idleWorkers.clear();
+    }
+    for (Worker worker : workers) {
+      worker.destroy();
+    }
+  }
+
+  public synchronized int getIdleWorkerCount() {
+    return idleWorkers.size();
+  }
+
+  public int getStartedWorkerCount() {
+    return startedWorkers.get();
+  }
+
+  public int getRetiredWorkerCount() {
+    return retiredWorkers.get();
+  }
+
+  public int getCompilationCount() {
+    return compilations.get();
+  }
+
+  public int getWarmCompilationCount() {
+    return warmCompilations.get();
+  }
+
+  /**
+   * A single {@link KawaCompileWorker} process.
+   */
+  private static final class Worker {
+    static final long FAILED = -2;
+
+    private static final String EOF = "";
+
+    final String classpath;
+    final String yailRuntime;
+    final int maxHeapMb;
+    final CompileScheduler.Slot slot;
+    int builds = 0;
+
+    private final Process process;
+    private final Writer stdin;
+    private final BlockingQueue<String> outEvents = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<String> errEvents = new LinkedBlockingQueue<String>();
+    private volatile PrintStream currentOut = System.out;
+    private volatile PrintStream currentErr = System.err;
+
+    Worker(String classpath, String yailRuntime, int maxHeapMb, CompileScheduler.Slot slot)
+        throws IOException, URISyntaxException {
+      this.classpath = classpath;
+      this.yailRuntime = yailRuntime;
+      this.maxHeapMb = maxHeapMb;
+      this.slot = slot;
+      String workerLocation = new File(KawaCompileWorker.class.getProtectionDomain()
+          .getCodeSource().getLocation().toURI()).getAbsolutePath();
+      String[] command = {
+          System.getProperty("java.home") + "/bin/java",
+          "-Dfile.encoding=UTF-8",
+          "-mx" + maxHeapMb + "M",
+          "-cp", classpath + File.pathSeparator + workerLocation,
+          KawaCompileWorker.class.getName(),
+          yailRuntime
+      };
+      LOG.info("Starting Kawa worker: " + Joiner.on(" ").join(command));
+      process = Runtime.getRuntime().exec(command);
+      stdin = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+      startReader(process.getInputStream(), outEvents, true);
+      startReader(process.getErrorStream(), errEvents, false);
+    }
+
+    boolean matches(String classpath, String yailRuntime, int maxHeapMb) {
+      return this.classpath.equals(classpath) && this.yailRuntime.equals(yailRuntime)
+          && this.maxHeapMb == maxHeapMb;
+    }
+
+    private void startReader(final InputStream input, final BlockingQueue<String> events,
+        final boolean isOut) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+              if (line.startsWith(KawaCompileWorker.READY)
+                  || line.startsWith(KawaCompileWorker.DONE)) {
+                events.add(line);
+              } else if (isOut) {
+                currentOut.println(line);
+              } else {
+                currentErr.println(line);
+              }
+            }
+          } catch (IOException e) {
+            // Treated as the end of the stream
+          } finally {
+            events.add(EOF);
+          }
+        }
+      }, "KawaWorker-" + (isOut ? "out" : "err"));
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /**
+     * Waits for the worker to finish loading the runtime.
+     *
+     * @return true if the worker is ready, false if it exited during startup
+     */
+    boolean awaitReady() throws IOException {
+      if (builds > 0) {
+        return true;
+      }
+      String event = poll(outEvents);
+      return event.startsWith(KawaCompileWorker.READY);
+    }
+
+    /**
+     * Sends a compile request and waits for it to complete.
+     *
+     * @return the resident set size reported by the worker, or {@link #FAILED}
+     */
+    long compile(String request, PrintStream out, PrintStream err) throws IOException {
+      currentOut = out;
+      currentErr = err;
+      try {
+        stdin.write(request);
+        stdin.write('\n');
+        stdin.flush();
+        // Wait for both streams so that all of the diagnostics have been copied
+        String errEvent = poll(errEvents);
+        String outEvent = poll(outEvents);
+        if (!errEvent.startsWith(KawaCompileWorker.DONE)
+            || !outEvent.startsWith(KawaCompileWorker.DONE)) {
+          return FAILED;
+        }
+        try {
+          return Long.parseLong(outEvent.substring(KawaCompileWorker.DONE.length()).trim());
+        } catch (NumberFormatException e) {
+          return -1;
+        }
+      } finally {
+        currentOut = System.out;
+        currentErr = System.err;
+      }
+    }
+
+    private String poll(BlockingQueue<String> events) throws IOException {
+      try {
+        String event = events.poll(COMPILE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        if (event == null) {
+          throw new IOException("Timed out waiting for Kawa worker");
+        }
+        return event;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for Kawa worker", e);
+      }
+    }
+
+    ProcessMonitor.Sample sample() {
+      return ProcessMonitor.sample(process);
+    }
+
+    /**
+     * Stops the worker and releases its slot.
+     */
+    void destroy() {
+      stop();
+      slot.release();
+    }
+
+    /**
+     * Stops the worker, keeping its slot for a replacement.
+     */
+    void stop() {
+      try {
+        stdin.write(KawaCompileWorker.EXIT);
+        stdin.write('\n');
+        stdin.close();
+      } catch (IOException e) {
+        // The process is already gone
+      }
+      process.destroy();
+    }
+  }
+}
@@ -0,0 +1,321 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.ProcessUsage;
+import com.google.appinventor.buildserver.stats.ProcessUsageTotals;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures the resources used by the child processes that {@link Execution} runs.
+ *
+ * <p>On Linux, a shared thread samples /proc/&lt;pid&gt;/stat, status and io of every running
+ * child every {@link #SAMPLE_INTERVAL_MS} ms. Once a process has exited, its /proc entry is gone,
+ * so every usage figure is as of the last sample: CPU time, I/O and peak RSS reached in the
+ * final interval are missed. On other systems only the wall time is measured.</p>
+ *
+ * <p>The usage of each process is added to per-tool totals, which are shown on
+ * /buildserver/vars, and passed to the listener of the thread that started the process, which
+ * is how it ends up in the stats of the build that ran it.</p>
+ */
+final class ProcessMonitor {
+
+  /**
+   * Receives the usage of the processes started by a thread.
+   */
+  interface Listener {
+    void processFinished(ProcessUsage usage);
+  }
+
+  static final long SAMPLE_INTERVAL_MS = 100;
+
+  // The kernel reports CPU times in clock ticks, which are 1/100 s on all common Linux platforms.
+  private static final long MILLIS_PER_TICK = 10;
+
+  private static final File PROC = new File("/proc");
+
+  private static final Logger LOG = Logger.getLogger(ProcessMonitor.class.getName());
+
+  private static final ScheduledExecutorService SAMPLER =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "process-monitor");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private static final ThreadLocal<Listener> listener = new ThreadLocal<Listener>();
+
+  private static final ConcurrentMap<String, ProcessUsageTotals> totals =
+      new ConcurrentHashMap<String, ProcessUsageTotals>();
+
+  /**
+   * The resources that a process had used when it was last sampled.
+   */
+  static final class Sample {
+    long userCpuMillis;
+    long systemCpuMillis;
+    long peakRssKb;
+    long readBytes;
+    long writeBytes;
+  }
+
+  /**
+   * Measures one process, from when it was started until {@link #finish()} is called.
+   */
+  static final class Monitor implements Runnable {
+    private final String tool;
+    private final File procDir;
+    private final long start = System.currentTimeMillis();
+    private final Listener listener;
+    private volatile Sample last = null;
+    private ScheduledFuture<?> task;
+
+    private Monitor(String tool, File procDir, Listener listener) {
+      this.tool = tool;
+      this.procDir = procDir;
+      this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+      Sample sample = readSample(procDir);
+      if (sample != null) {
+        last = sample;
+      }
+    }
+
+    /**
+     * Stops sampling once the process has exited, and reports its usage.
+     *
+     * @return the usage of the process
+     */
+    ProcessUsage finish() {
+      if (task != null) {
+        task.cancel(false);
+      }
+      Sample sample = last;
+      if (sample == null) {
+        sample = new Sample();
+      }
+      ProcessUsage usage = new ProcessUsage(tool, System.currentTimeMillis() - start,
+          sample.userCpuMillis, sample.systemCpuMillis, sample.peakRssKb, sample.readBytes,
+          sample.writeBytes);
+      record(usage, listener);
+      return usage;
+    }
+  }
+
+  private ProcessMonitor() {
+  }
+
+  /**
+   * Sets the listener that receives the usage of the processes started by the current thread.
+   *
+   * @param newListener the listener, or null to remove it
+   */
+  static void setListener(Listener newListener) {
+    if (newListener == null) {
+      listener.remove();
+    } else {
+      listener.set(newListener);
+    }
+  }
+
+  static Listener getListener() {
+    return listener.get();
+  }
+
+  /**
+   * Starts measuring a process that was just started.
+   *
+   * @param process the process
+   * @param command the command line of the process
+   * @return a monitor whose {@link Monitor#finish()} must be called when the process has exited
+   */
+  static Monitor start(Process process, String[] command) {
+    Monitor monitor;
+    long pid = getPid(process);
+    if (pid > 0 && PROC.isDirectory()) {
+      monitor = new Monitor(toolName(command), new File(PROC, Long.toString(pid)),
+          listener.get());
+      monitor.task = SAMPLER.scheduleAtFixedRate(monitor, SAMPLE_INTERVAL_MS / 2,
+          SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    } else {
+      monitor = new Monitor(toolName(command), null, listener.get());
+    }
+    return monitor;
+  }
+
+  /**
+   * Reports work done for the current thread by a process that outlives it, such as a warm Kawa
+   * worker, as if a process of its own had done it.
+   *
+   * @param usage the resources used by the work
+   */
+  static void report(ProcessUsage usage) {
+    record(usage, listener.get());
+  }
+
+  /**
+   * Samples the resources a running process has used so far.
+   *
+   * @param process the process
+   * @return the sample, or null if the process cannot be sampled on this system
+   */
+  static Sample sample(Process process) {
+    long pid = getPid(process);
+    return pid > 0 ? readSample(new File(PROC, Long.toString(pid))) : null;
+  }
+
+  private static void record(ProcessUsage usage, Listener listener) {
+    getTotals(usage.getTool()).add(usage);
+    if (listener != null) {
+      try {
+        listener.processFinished(usage);
+      } catch (RuntimeException e) {
+        LOG.log(Level.WARNING, "Unable to report process usage", e);
+      }
+    }
+    LOG.info(usage.toString());
+  }
+
+  /**
+   * Gets the usage of all processes run so far, by tool.
+   *
+   * @return a map from tool name to the totals of that tool, sorted by tool name
+   */
+  static Map<String, ProcessUsageTotals> getTotals() {
+    return Collections.unmodifiableMap(new TreeMap<String, ProcessUsageTotals>(totals));
+  }
+
+  private static ProcessUsageTotals getTotals(String tool) {
+    ProcessUsageTotals toolTotals = totals.get(tool);
+    if (toolTotals == null) {
+      ProcessUsageTotals newTotals = new ProcessUsageTotals();
+      toolTotals = totals.putIfAbsent(tool, newTotals);
+      if (toolTotals == null) {
+        toolTotals = newTotals;
+      }
+    }
+    return toolTotals;
+  }
+
+  /**
+   * Names the tool that a command runs: the program, or for Java, the jar or the main class.
+   */
+  static String toolName(String[] command) {
+    if (command.length == 0) {
+      return "unknown";
+    }
+    String program = new File(command[0]).getName();
+    if (!program.equals("java") && !program.equals("java.exe")) {
+      return program.endsWith(".exe") ? program.substring(0, program.length() - 4) : program;
+    }
+    for (int i = 1; i < command.length; i++) {
+      String arg = command[i];
+      if (arg.equals("-jar")) {
+        // The jar is the first argument after -jar that is not an option
+        for (int j = i + 1; j < command.length; j++) {
+          if (!command[j].startsWith("-")) {
+            String jar = new File(command[j]).getName();
+            return jar.endsWith(".jar") ? jar.substring(0, jar.length() - 4) : jar;
+          }
+        }
+        break;
+      } else if (arg.equals("-cp") || arg.equals("-classpath")) {
+        i++;
+      } else if (!arg.startsWith("-")) {
+        return arg;
+      }
+    }
+    return program;
+  }
+
+  /**
+   * Reads the resources that a process has used so far from its /proc directory.
+   *
+   * @param procDir the /proc directory of the process
+   * @return the resources used, or null if the process is gone
+   */
+  static Sample readSample(File procDir) {
+    if (procDir == null) {
+      return null;
+    }
+    try {
+      Sample sample = new Sample();
+      // The command name in parentheses may contain spaces, so fields are counted after it
+      String stat = Files.toString(new File(procDir, "stat"), Charsets.UTF_8);
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+      sample.userCpuMillis = Long.parseLong(fields[11]) * MILLIS_PER_TICK;
+      sample.systemCpuMillis = Long.parseLong(fields[12]) * MILLIS_PER_TICK;
+      List<String> status = Files.readLines(new File(procDir, "status"), Charsets.UTF_8);
+      for (String line : status) {
+        if (line.startsWith("VmHWM:")) {
+          sample.peakRssKb = parseValue(line);
+        }
+      }
+      File io = new File(procDir, "io");
+      if (io.canRead()) {
+        for (String line : Files.readLines(io, Charsets.UTF_8)) {
+          if (line.startsWith("rchar:")) {
+            sample.readBytes = parseValue(line);
+          } else if (line.startsWith("wchar:")) {
+            sample.writeBytes = parseValue(line);
+          }
+        }
+      }
+      return sample;
+    } catch (IOException | RuntimeException e) {
+      // The process exited while we were reading, or this is not the /proc we know
+      return null;
+    }
+  }
+
+  private static long parseValue(String line) {
+    String[] parts = line.substring(line.indexOf(':') + 1).trim().split("\\s+");
+    return Long.parseLong(parts[0]);
+  }
+
+  private static long getPid(Process process) {
+    try {
+      // Java 9 and later
+      Method pid = Process.class.getMethod("pid");
+      return (Long) pid.invoke(process);
+    } catch (ReflectiveOperationException e) {
+      // Fall through
+    }
+    try {
+      // java.lang.UNIXProcess in Java 8
+      Field pid = process.getClass().getDeclaredField("pid");
+      pid.setAccessible(true);
+      return pid.getInt(process);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return -1;
+    }
+  }
+}
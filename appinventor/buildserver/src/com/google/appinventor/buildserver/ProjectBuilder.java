@@ -34,9 +34,17 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,6 +77,8 @@ public final class ProjectBuilder {
   private static final String PROJECT_PROPERTIES_FILE_NAME = PROJECT_DIRECTORY + "/" +
                                                             "project.properties";
   private static final String KEYSTORE_FILE_NAME = YoungAndroidConstants.PROJECT_KEYSTORE_LOCATION;
+  private static final String ASSETS_DIRECTORY = "assets/";
+  private static final String EXTENSIONS_DIRECTORY = ASSETS_DIRECTORY + "external_comps/";
 
   private static final String FORM_PROPERTIES_EXTENSION =
       YoungAndroidConstants.FORM_PROPERTIES_EXTENSION;
@@ -90,21 +100,43 @@ public final class ProjectBuilder {
 
   private final StatReporter statReporter;
 
+  // Completes when the media assets of the project have been extracted
+  private Future<?> projectAssets;
+
+  // Set when the build is done, so that media assets need no longer be extracted
+  private volatile boolean abandoned = false;
+
+  // Extracts the media assets of projects while their builds run
+  private static final ExecutorService ASSET_EXTRACTOR = Executors.newCachedThreadPool(
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "asset-extractor-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  // Reusable project directories, or null to create a new directory for every build
+  private static volatile WorkspacePool workspacePool = null;
+
   /**
-   * Creates a new directory beneath the system's temporary directory (as
-   * defined by the {@code java.io.tmpdir} system property), and returns its
-   * name. The name of the directory will contain the current time (in millis),
-   * and a random number.
+   * Creates a new directory beneath the given directory, usually the system's
+   * temporary directory (as defined by the {@code java.io.tmpdir} system
+   * property), and returns its name. The name of the directory will contain
+   * the current time (in millis), and a random number.
    *
    * <p>This method assumes that the temporary volume is writable, has free
    * inodes and free blocks, and that it will not be called thousands of times
    * per second.
    *
+   * @param baseDir the directory in which to create the new directory
    * @return the newly-created directory
    * @throws IllegalStateException if the directory could not be created
    */
-  private static File createNewTempDir() {
-    File baseDir = new File(System.getProperty("java.io.tmpdir"));
+  static File createNewTempDir(File baseDir) {
     String baseNamePrefix = System.currentTimeMillis() + "_" + Math.random() + "-";
 
     final int TEMP_DIR_ATTEMPTS = 10000;
@@ -126,17 +158,31 @@ public final class ProjectBuilder {
     this.statReporter = statReporter;
   }
 
+  /**
+   * Sets the pool of project directories used by subsequent builds.
+   *
+   * @param pool the pool to use, or null to create and delete a directory for every build
+   */
+  static void setWorkspacePool(WorkspacePool pool) {
+    workspacePool = pool;
+  }
+
   Result build(String userName, ZipFile inputZip, File outputDir, String outputFileName,
     boolean isForCompanion, boolean isForEmulator, boolean includeDangerousPermissions, String[] extraExtensions,
     int childProcessRam, String dexCachePath, BuildServer.ProgressReporter reporter, boolean isAab) {
+    projectAssets = null;
+    abandoned = false;
     try {
       // Download project files into a temporary directory
-      File projectRoot = createNewTempDir();
+      WorkspacePool pool = workspacePool;
+      File projectRoot = pool != null ? pool.acquire()
+          : createNewTempDir(new File(System.getProperty("java.io.tmpdir")));
       LOG.info("temporary project root: " + projectRoot.getAbsolutePath());
       try {
         List<String> sourceFiles;
+        List<ZipEntry> mediaAssets = new ArrayList<ZipEntry>();
         try {
-          sourceFiles = extractProjectFiles(inputZip, projectRoot);
+          sourceFiles = extractProjectFiles(inputZip, projectRoot, mediaAssets);
         } catch (IOException e) {
           LOG.severe("unexpected problem extracting project file from zip");
           return Result.createFailingResult("", "Problems processing zip file.");
@@ -152,6 +198,17 @@ public final class ProjectBuilder {
         // Create project object from project properties file.
         Project project = getProjectProperties(projectRoot);
 
+        // The icon is needed early in the build, the other media assets only when packaging
+        Iterator<ZipEntry> mediaAssetIterator = mediaAssets.iterator();
+        while (mediaAssetIterator.hasNext()) {
+          ZipEntry mediaAsset = mediaAssetIterator.next();
+          if (mediaAsset.getName().equals(ASSETS_DIRECTORY + project.getIcon())) {
+            extractProjectFile(inputZip, mediaAsset, projectRoot);
+            mediaAssetIterator.remove();
+          }
+        }
+        projectAssets = extractMediaAssets(inputZip, mediaAssets, projectRoot);
+
         File buildTmpDir = new File(projectRoot, "build/tmp");
         buildTmpDir.mkdirs();
 
@@ -175,7 +232,8 @@ public final class ProjectBuilder {
         boolean success =
             Compiler.compile(project, componentTypes, componentBlocks, console, console, userErrors,
                 isForCompanion, isForEmulator, includeDangerousPermissions, keyStorePath,
-                childProcessRam, dexCachePath, outputFileName, reporter, isAab, statReporter);
+                childProcessRam, dexCachePath, outputFileName, reporter, isAab, statReporter,
+                projectAssets);
         console.close();
         userErrors.close();
 
@@ -205,12 +263,17 @@ public final class ProjectBuilder {
         }
         return new Result(success, messages, errors.toString(PathUtil.DEFAULT_CHARSET));
       } finally {
-        // On some platforms (OS/X), the java.io.tmpdir contains a symlink. We need to use the
-        // canonical path here so that Files.deleteRecursively will work.
+        awaitMediaAssets();
+        if (pool != null) {
+          pool.release(projectRoot);
+        } else {
+          // On some platforms (OS/X), the java.io.tmpdir contains a symlink. We need to use the
+          // canonical path here so that Files.deleteRecursively will work.
 
-        // Note (ralph):  deleteRecursively has been removed from the guava-11.0.1 lib
-        // Replacing with deleteDirectory, which is supposed to delete the entire directory.
-        FileUtils.deleteQuietly(new File(projectRoot.getCanonicalPath()));
+          // Note (ralph):  deleteRecursively has been removed from the guava-11.0.1 lib
+          // Replacing with deleteDirectory, which is supposed to delete the entire directory.
+          FileUtils.deleteQuietly(new File(projectRoot.getCanonicalPath()));
+        }
       }
     } catch (Exception e) {
       e.printStackTrace();
@@ -228,16 +291,41 @@ public final class ProjectBuilder {
     return compSet;
   }
 
-  private ArrayList<String> extractProjectFiles(ZipFile inputZip, File projectRoot)
-      throws IOException {
+  /**
+   * Extracts the files of a project, except for its media assets, which are only needed when the
+   * app is packaged. Extensions, which are kept among the assets, are extracted.
+   *
+   * @param inputZip the project zip
+   * @param projectRoot the directory to extract the project into
+   * @param mediaAssets receives the entries of the media assets, which are not extracted
+   * @return the paths of all of the project's files, including the media assets
+   * @throws IOException if a file cannot be extracted
+   */
+  private ArrayList<String> extractProjectFiles(ZipFile inputZip, File projectRoot,
+      List<ZipEntry> mediaAssets) throws IOException {
     ArrayList<String> projectFileNames = Lists.newArrayList();
     Enumeration<? extends ZipEntry> inputZipEnumeration = inputZip.entries();
     while (inputZipEnumeration.hasMoreElements()) {
       ZipEntry zipEntry = inputZipEnumeration.nextElement();
-      final InputStream extractedInputStream = inputZip.getInputStream(zipEntry);
-      File extractedFile = new File(projectRoot, zipEntry.getName());
-      LOG.info("extracting " + extractedFile.getAbsolutePath() + " from input zip");
-      Files.createParentDirs(extractedFile); // Do I need this?
+      String name = zipEntry.getName();
+      if (name.startsWith(ASSETS_DIRECTORY) && !name.startsWith(EXTENSIONS_DIRECTORY)
+          && !zipEntry.isDirectory()) {
+        mediaAssets.add(zipEntry);
+        projectFileNames.add(new File(projectRoot, name).getPath());
+      } else {
+        projectFileNames.add(extractProjectFile(inputZip, zipEntry, projectRoot).getPath());
+      }
+    }
+    return projectFileNames;
+  }
+
+  private static File extractProjectFile(ZipFile inputZip, ZipEntry zipEntry, File projectRoot)
+      throws IOException {
+    final InputStream extractedInputStream = inputZip.getInputStream(zipEntry);
+    File extractedFile = new File(projectRoot, zipEntry.getName());
+    LOG.info("extracting " + extractedFile.getAbsolutePath() + " from input zip");
+    Files.createParentDirs(extractedFile); // Do I need this?
+    try {
       Files.copy(
           new InputSupplier<InputStream>() {
             public InputStream getInput() throws IOException {
@@ -245,9 +333,53 @@ public final class ProjectBuilder {
             }
           },
           extractedFile);
-      projectFileNames.add(extractedFile.getPath());
+    } finally {
+      extractedInputStream.close();
+    }
+    return extractedFile;
+  }
+
+  /**
+   * Starts extracting media assets in the background.
+   *
+   * @return a future that completes when the assets have been extracted, or null if there are no
+   *     assets to extract
+   */
+  private Future<?> extractMediaAssets(final ZipFile inputZip, final List<ZipEntry> mediaAssets,
+      final File projectRoot) {
+    if (mediaAssets.isEmpty()) {
+      return null;
+    }
+    return ASSET_EXTRACTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        for (ZipEntry mediaAsset : mediaAssets) {
+          if (abandoned) {
+            break;
+          }
+          extractProjectFile(inputZip, mediaAsset, projectRoot);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Waits for the extraction of media assets to stop, so that the project directory can be removed
+   * and the project zip closed.
+   */
+  private void awaitMediaAssets() {
+    if (projectAssets == null) {
+      return;
+    }
+    abandoned = true;
+    try {
+      projectAssets.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // The build has reported it
     }
-    return projectFileNames;
   }
 
   private static Set<String> getComponentTypes(List<String> files, File assetsDir)
@@ -320,15 +452,8 @@ public final class ProjectBuilder {
    */
   private static Map<String, String> createNameTypeMap(File assetsDir)
       throws IOException, JSONException {
-    Map<String, String> nameTypeMap = Maps.newHashMap();
-
-    JSONArray simpleCompsJson = new JSONArray(Resources.toString(ProjectBuilder.
-        class.getResource("/files/simple_components.json"), Charsets.UTF_8));
-    for (int i = 0; i < simpleCompsJson.length(); ++i) {
-      JSONObject simpleCompJson = simpleCompsJson.getJSONObject(i);
-      nameTypeMap.put(simpleCompJson.getString("name"),
-          simpleCompJson.getString("type"));
-    }
+    Map<String, String> nameTypeMap =
+        Maps.newHashMap(ComponentInfoIndex.getSimpleComponentTypesByName());
 
     File extCompsDir = new File(assetsDir, "external_comps");
     if (!extCompsDir.exists()) {
@@ -0,0 +1,300 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.appinventor.common.version.GitBuildId;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Extracts the jars, tools and other resources that builds need from the build server's class
+ * path into a directory that is kept across restarts.
+ *
+ * <p>Each version of the build server has its own subdirectory, named by a hash of its git
+ * fingerprint, in which a resource keeps its path, so tools that look for libraries next to
+ * themselves find them. Next to each file is a <code>.sha256</code> file that holds the hash of
+ * its contents and the size and time of the resource it was extracted from. A file is reused
+ * only if the resource is unchanged and the file still has that hash; otherwise it is extracted
+ * again to a temporary file and renamed into place, so a file is never seen half written.</p>
+ *
+ * <p>{@link #prepare} extracts or validates many resources in parallel, which the server does
+ * at startup. After that, {@link #get} is a lookup in a concurrent map and takes no locks. A
+ * resource that was not prepared is extracted on first use, holding a lock for that resource
+ * only. Reused and extracted files are reported to a {@link StatReporter} as hits and misses
+ * under the name {@link #NAME}.</p>
+ */
+final class ResourceExtractor {
+
+  static final String NAME = "resources";
+
+  // Change this whenever the layout of the directory changes.
+  private static final String VERSION = "resources-1";
+
+  private static final String TEMP_PREFIX = ".tmp-";
+  private static final String HASH_SUFFIX = ".sha256";
+  private static final String LOCK_FILE = ".lock";
+
+  // Versions that no server is running and that have not been started for this long are removed
+  // when the extractor is created
+  private static final long MAX_UNUSED_VERSION_AGE_MS = TimeUnit.DAYS.toMillis(7);
+
+  private static final Logger LOG = Logger.getLogger(ResourceExtractor.class.getName());
+
+  // Absolute paths of the files that have been extracted or validated, by resource path
+  private final ConcurrentMap<String, String> paths = new ConcurrentHashMap<String, String>();
+
+  // One lock per resource path
+  private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+  private final File dir;
+  private final StatReporter statReporter;
+  private final FileChannel lockChannel;
+
+  /**
+   * Creates an extractor that writes to a subdirectory of the given directory for the version of
+   * this build server, removing the subdirectories of versions that no running server uses and
+   * that have not been started for a week.
+   *
+   * @param parentDir the directory shared by all versions, which is created if needed
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  ResourceExtractor(File parentDir, StatReporter statReporter) throws IOException {
+    String version = Hashing.sha256().newHasher()
+        .putString(VERSION, Charsets.UTF_8)
+        .putString(GitBuildId.getVersion() + "/" + GitBuildId.getFingerprint(), Charsets.UTF_8)
+        .hash().toString().substring(0, 16);
+    this.dir = new File(parentDir, version).getAbsoluteFile();
+    this.statReporter = statReporter;
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create resource directory " + dir);
+    }
+    // Servers of this version share the directory; the lock keeps others from removing it
+    lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+    try {
+      lockChannel.lock(0, Long.MAX_VALUE, true);
+    } catch (OverlappingFileLockException e) {
+      // Another extractor in this server already holds it
+    }
+    long now = System.currentTimeMillis();
+    dir.setLastModified(now);
+    File[] children = parentDir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (!child.equals(dir) && child.lastModified() < now - MAX_UNUSED_VERSION_AGE_MS
+            && !isInUse(child)) {
+          FileUtils.deleteQuietly(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the directory that resources are extracted to when none is given.
+   */
+  static File getDefaultParentDirectory() {
+    return new File(System.getProperty("java.io.tmpdir"), "appinventor-resources");
+  }
+
+  /**
+   * Gets the directory that resources are extracted to.
+   */
+  File getDirectory() {
+    return dir;
+  }
+
+  /**
+   * Gets the path of the extracted copy of a resource, extracting it if needed.
+   *
+   * @param resourcePath the path of the resource on the class path
+   * @return the absolute path of the extracted file
+   * @throws IllegalStateException if there is no such resource
+   * @throws IOException if the resource cannot be extracted
+   */
+  String get(String resourcePath) throws IOException {
+    String path = paths.get(resourcePath);
+    if (path == null) {
+      synchronized (lockFor(resourcePath)) {
+        path = paths.get(resourcePath);
+        if (path == null) {
+          path = extract(resourcePath).getAbsolutePath();
+          paths.put(resourcePath, path);
+        }
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Extracts or validates resources in parallel, so that later calls to {@link #get} do not have
+   * to. Resources that cannot be extracted are logged and left to fail when a build needs them.
+   *
+   * @param resourcePaths the paths of the resources on the class path
+   * @param threads the number of resources to extract at a time
+   */
+  void prepare(Collection<String> resourcePaths, int threads) {
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (final String resourcePath : resourcePaths) {
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws IOException {
+            return get(resourcePath);
+          }
+        }));
+      }
+      for (Future<String> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          LOG.log(Level.WARNING, "Unable to extract resource", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    LOG.info("Prepared " + resourcePaths.size() + " resources in " + dir + " in "
+        + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Returns the file for a resource, reusing the one already extracted if it is valid.
+   */
+  private File extract(String resourcePath) throws IOException {
+    URL url = Compiler.class.getResource(resourcePath);
+    if (url == null) {
+      throw new IllegalStateException("Unable to find required library: " + resourcePath);
+    }
+    URLConnection connection = url.openConnection();
+    // For resources in a jar, these come from the jar's directory, without inflating the entry
+    String source = connection.getContentLengthLong() + " " + connection.getLastModified();
+    File file = new File(dir, resourcePath.startsWith("/")
+        ? resourcePath.substring(1) : resourcePath);
+    File hashFile = new File(file.getPath() + HASH_SUFFIX);
+    if (file.isFile() && hashFile.isFile()) {
+      String[] recorded = Files.toString(hashFile, Charsets.UTF_8).trim().split(" ", 2);
+      if (recorded.length == 2 && recorded[1].equals(source)
+          && recorded[0].equals(hash(file))) {
+        statReporter.cacheEvent(NAME, CacheEvent.HIT);
+        return file;
+      }
+      LOG.warning("Extracting " + resourcePath + " again, because " + file + " is stale");
+    }
+    statReporter.cacheEvent(NAME, CacheEvent.MISS);
+    File parent = file.getParentFile();
+    // Resources that share a directory are extracted in parallel, so mkdirs can lose a race
+    if (!parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Unable to create " + parent);
+    }
+    File tempFile = new File(parent, TEMP_PREFIX + UUID.randomUUID());
+    try {
+      Hasher hasher = Hashing.sha256().newHasher();
+      byte[] buffer = new byte[65536];
+      try (InputStream in = connection.getInputStream();
+          OutputStream out = new FileOutputStream(tempFile)) {
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          out.write(buffer, 0, read);
+          hasher.putBytes(buffer, 0, read);
+        }
+      }
+      tempFile.setExecutable(true);
+      // The old hash goes first, so that a file is never paired with the hash of another
+      hashFile.delete();
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Unable to extract " + resourcePath + " to " + file);
+      }
+      Files.write(hasher.hash().toString() + " " + source, hashFile, Charsets.UTF_8);
+      return file;
+    } finally {
+      if (tempFile.exists()) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private Object lockFor(String key) {
+    Object lock = locks.get(key);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(key, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  /**
+   * Tells whether a running server holds the lock of a version directory.
+   */
+  private static boolean isInUse(File versionDir) {
+    File lockFile = new File(versionDir, LOCK_FILE);
+    if (!lockFile.isFile()) {
+      return false;
+    }
+    try (FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel()) {
+      FileLock lock = channel.tryLock();
+      if (lock == null) {
+        return true;
+      }
+      lock.release();
+      return false;
+    } catch (IOException | OverlappingFileLockException e) {
+      // Locked by this server, or not ours to remove
+      return true;
+    }
+  }
+
+  private static String hash(File file) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    byte[] buffer = new byte[65536];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        hasher.putBytes(buffer, 0, read);
+      }
+    }
+    return hasher.hash().toString();
+  }
+}
@@ -0,0 +1,214 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * An on-disk cache of the .flat files that aapt2 compiles from single resource files.
+ *
+ * <p>aapt2 compiles each resource file on its own, so its output only depends on the file, its
+ * path below the resource directory, the aapt2 binary and the compile options. Entries are keyed
+ * by a SHA-256 hash of these and hold the .flat file. A build compiles only the resource files
+ * that are not in the cache, and links against the cached .flat files of the others.</p>
+ *
+ * <p>The entries are kept in a {@link DiskLruCache}, which is bounded in size. Hits, misses and
+ * evictions are reported to a {@link StatReporter} under the name {@link #NAME}.</p>
+ */
+final class ResourceFlatCache {
+
+  static final String NAME = "aapt2-flat";
+
+  // Change this whenever the layout of an entry or the inputs of the key change.
+  private static final String VERSION = "resource-flat-cache-1";
+
+  private static final String SUFFIX = ".flat";
+
+  private static final int MAX_INDEXED_FILES = 10000;
+
+  // Hashes of aapt2 binaries, keyed by path, length and modification time
+  private final Map<String, String> toolHashes = new ConcurrentHashMap<String, String>();
+
+  private final DiskLruCache cache;
+
+  /**
+   * Creates a cache backed by the given directory, indexing any entries already present.
+   *
+   * @param dir the cache directory, which is created if needed
+   * @param maxBytes the maximum total size of the cached .flat files
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  ResourceFlatCache(File dir, long maxBytes, StatReporter statReporter) throws IOException {
+    cache = new DiskLruCache(dir, SUFFIX, maxBytes, NAME, statReporter);
+  }
+
+  /**
+   * Computes the key of the .flat file compiled from a resource file.
+   *
+   * @param aapt2Tool the aapt2 binary
+   * @param options the options given to aapt2 compile
+   * @param relativePath the path of the resource relative to the resource directory, such as
+   *     drawable/icon.png
+   * @param source the resource file
+   * @return the key of the cache entry
+   * @throws IOException if a file cannot be read
+   */
+  String key(File aapt2Tool, List<String> options, String relativePath, File source)
+      throws IOException {
+    String toolId = aapt2Tool.getAbsolutePath() + File.pathSeparator + aapt2Tool.length()
+        + File.pathSeparator + aapt2Tool.lastModified();
+    String toolHash = toolHashes.get(toolId);
+    if (toolHash == null) {
+      toolHash = DiskLruCache.hashFile(aapt2Tool);
+      if (toolHashes.size() > MAX_INDEXED_FILES) {
+        toolHashes.clear();
+      }
+      toolHashes.put(toolId, toolHash);
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(VERSION, Charsets.UTF_8);
+    hasher.putString(toolHash, Charsets.UTF_8);
+    for (String option : options) {
+      hasher.putString(option, Charsets.UTF_8);
+    }
+    hasher.putString(relativePath, Charsets.UTF_8);
+    hasher.putString(DiskLruCache.hashFile(source), Charsets.UTF_8);
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies a cached .flat file.
+   *
+   * @param key the key of the entry
+   * @param target the file to copy the entry to
+   * @return true if the entry was found and copied, false otherwise
+   */
+  boolean restore(String key, final File target) {
+    return cache.restore(key, new DiskLruCache.Reader<Boolean>() {
+      @Override
+      public Boolean read(File entry) throws IOException {
+        Files.copy(entry, target);
+        return true;
+      }
+    }) != null;
+  }
+
+  /**
+   * Stores a .flat file under the given key.
+   *
+   * @param key the key of the entry
+   * @param flat the .flat file compiled by aapt2
+   */
+  void store(String key, final File flat) {
+    cache.store(key, new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        Files.copy(flat, entry);
+        return entry.length();
+      }
+    });
+  }
+
+  int getEntryCount() {
+    return cache.getEntryCount();
+  }
+
+  long getTotalBytes() {
+    return cache.getTotalBytes();
+  }
+
+  /**
+   * Lists the resource files in a resource directory, which are the files directly below its
+   * subdirectories, such as drawable/icon.png.
+   *
+   * @param resDir the resource directory
+   * @return the paths of the resource files relative to resDir, using '/' as separator
+   */
+  static List<String> listResourceFiles(File resDir) {
+    List<String> resourceFiles = new ArrayList<String>();
+    for (String path : DiskLruCache.listRelativePaths(resDir)) {
+      int slash = path.indexOf('/');
+      if (slash > 0 && slash == path.lastIndexOf('/')) {
+        resourceFiles.add(path);
+      }
+    }
+    return resourceFiles;
+  }
+
+  /**
+   * Matches the .flat files that aapt2 compiled to the resource files they were compiled from.
+   *
+   * <p>aapt2 names a .flat file after the directory and the name of its resource file. It may add
+   * a platform version to the qualifiers of the directory and names values files .arsc.flat, e.g.,
+   * drawable-hdpi/icon.png becomes drawable-hdpi-v4_icon.png.flat and values/strings.xml becomes
+   * values_strings.arsc.flat. Resource files that match no .flat file, or more than one, are left
+   * out.</p>
+   *
+   * @param relativePaths the paths of the resource files relative to the resource directory
+   * @param flatNames the names of the compiled .flat files
+   * @return the name of the .flat file compiled from each resource file that was matched
+   */
+  static Map<String, String> matchFlatFiles(List<String> relativePaths, List<String> flatNames) {
+    Map<String, String> matches = new HashMap<String, String>();
+    Map<String, Integer> flatMatchCounts = new HashMap<String, Integer>();
+    for (String path : relativePaths) {
+      int slash = path.indexOf('/');
+      if (slash < 0) {
+        continue;
+      }
+      String dirName = path.substring(0, slash);
+      String fileName = path.substring(slash + 1);
+      int dash = dirName.indexOf('-');
+      String type = dash < 0 ? dirName : dirName.substring(0, dash);
+      int dot = fileName.indexOf('.');
+      String name = dot < 0 ? fileName : fileName.substring(0, dot);
+      String extension = dot < 0 ? "" : fileName.substring(dot);
+      if ("values".equals(type)) {
+        extension = ".arsc";
+      }
+      Pattern pattern = Pattern.compile(Pattern.quote(dirName) + "(-v\\d+)?_"
+          + Pattern.quote(name + extension + SUFFIX));
+      String match = null;
+      int count = 0;
+      for (String flatName : flatNames) {
+        if (pattern.matcher(flatName).matches()) {
+          match = flatName;
+          count++;
+        }
+      }
+      if (count == 1) {
+        matches.put(path, match);
+        Integer flatCount = flatMatchCounts.get(match);
+        flatMatchCounts.put(match, flatCount == null ? 1 : flatCount + 1);
+      }
+    }
+    // Leave out .flat files that more than one resource file matched
+    List<String> ambiguous = new ArrayList<String>();
+    for (Map.Entry<String, String> match : matches.entrySet()) {
+      if (flatMatchCounts.get(match.getValue()) > 1) {
+        ambiguous.add(match.getKey());
+      }
+    }
+    for (String path : ambiguous) {
+      matches.remove(path);
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,277 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.StatReporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the stages of a build that do not depend on each other at the same time.
+ *
+ * <p>Each stage declares the names of the things it reads and writes, such as "manifest" or
+ * "classes". A stage starts once every stage that writes one of the things it reads has
+ * finished, so stages that write to the same thing may run together and must not conflict.
+ * Stages run on a shared, bounded executor, and never wait for each other while holding one of
+ * its threads. The thread that calls {@link #run} only schedules them.</p>
+ *
+ * <p>The duration of each stage is reported to a {@link StatReporter} with
+ * {@link StatReporter#stageFinished}. The chain of stages that determined how long the graph
+ * took to run, its critical path, is available from {@link #getCriticalPath()}.</p>
+ */
+final class StageGraph {
+
+  /**
+   * A stage of a build.
+   */
+  interface Stage {
+    /**
+     * Runs the stage.
+     *
+     * @return true if the stage succeeded, false if it failed and has reported why
+     */
+    boolean run();
+  }
+
+  private static final class Node {
+    private final String name;
+    private final Set<String> inputs;
+    private final Set<String> outputs;
+    private final Stage stage;
+    private final List<Node> dependencies = new ArrayList<Node>();
+    private final List<Node> dependents = new ArrayList<Node>();
+    private int waitingFor;
+    // From System.nanoTime, fine enough that a stage ends after those it waited for
+    private long start;
+    private long end;
+    private boolean success;
+
+    private Node(String name, Set<String> inputs, Set<String> outputs, Stage stage) {
+      this.name = name;
+      this.inputs = inputs;
+      this.outputs = outputs;
+      this.stage = stage;
+    }
+  }
+
+  private final Compiler compiler;
+  private final StatReporter statReporter;
+  private final List<Node> nodes = new ArrayList<Node>();
+  private final Map<String, Node> nodesByName = new HashMap<String, Node>();
+  private List<String> criticalPath = Collections.emptyList();
+
+  /**
+   * Creates an empty graph.
+   *
+   * @param compiler the build the stages belong to
+   * @param statReporter the reporter that receives the duration of each stage
+   */
+  StageGraph(Compiler compiler, StatReporter statReporter) {
+    this.compiler = compiler;
+    this.statReporter = statReporter;
+  }
+
+  /**
+   * Adds a stage to the graph.
+   *
+   * @param name the name of the stage, under which its duration is reported
+   * @param inputs the things the stage reads
+   * @param outputs the things the stage writes
+   * @param stage the stage
+   * @return this graph
+   */
+  StageGraph add(String name, String[] inputs, String[] outputs, Stage stage) {
+    if (nodesByName.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate stage " + name);
+    }
+    Node node = new Node(name, new HashSet<String>(Arrays.asList(inputs)),
+        new HashSet<String>(Arrays.asList(outputs)), stage);
+    nodes.add(node);
+    nodesByName.put(name, node);
+    return this;
+  }
+
+  /**
+   * Runs the stages and waits for them to finish. Once a stage fails, or the calling thread is
+   * interrupted, no more stages are started, but those already running are allowed to finish
+   * before this returns, so that the build may release what they use. If the thread was
+   * interrupted, it is interrupted again before this returns false.
+   *
+   * @param executor the executor that runs the stages
+   * @return true if every stage succeeded, false otherwise
+   * @throws IllegalStateException if a stage reads something no stage writes, or the stages
+   *     depend on each other in a cycle
+   * @throws RuntimeException if a stage threw one
+   */
+  boolean run(Executor executor) {
+    link();
+    CompletionService<Node> completed = new ExecutorCompletionService<Node>(executor);
+    final ProcessMonitor.Listener listener = ProcessMonitor.getListener();
+    int running = 0;
+    int finished = 0;
+    boolean failed = false;
+    boolean interrupted = false;
+    RuntimeException thrown = null;
+    LinkedList<Node> ready = new LinkedList<Node>();
+    for (Node node : nodes) {
+      if (node.waitingFor == 0) {
+        ready.add(node);
+      }
+    }
+    while (!ready.isEmpty() || running > 0) {
+      while (!ready.isEmpty() && !failed) {
+        submit(completed, ready.removeFirst(), listener);
+        running++;
+      }
+      ready.clear();
+      if (running == 0) {
+        break;
+      }
+      Node node;
+      try {
+        node = completed.take().get();
+      } catch (InterruptedException e) {
+        // The build was abandoned, but the stages still running use its files
+        interrupted = true;
+        failed = true;
+        continue;
+      } catch (ExecutionException e) {
+        running--;
+        failed = true;
+        if (thrown == null) {
+          thrown = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+              : new RuntimeException(e.getCause());
+        }
+        continue;
+      }
+      running--;
+      finished++;
+      if (!node.success) {
+        failed = true;
+        continue;
+      }
+      for (Node dependent : node.dependents) {
+        if (--dependent.waitingFor == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    if (thrown != null) {
+      throw thrown;
+    }
+    if (failed) {
+      return false;
+    }
+    if (finished < nodes.size()) {
+      throw new IllegalStateException("Build stages depend on each other in a cycle");
+    }
+    criticalPath = findCriticalPath();
+    return true;
+  }
+
+  /**
+   * Gets the names of the stages on the critical path of the last successful run, in the order
+   * in which they ran.
+   */
+  List<String> getCriticalPath() {
+    return criticalPath;
+  }
+
+  private void submit(CompletionService<Node> completed, final Node node,
+      final ProcessMonitor.Listener listener) {
+    completed.submit(new Callable<Node>() {
+      @Override
+      public Node call() {
+        // Child processes of the stage count toward the build that runs it
+        ProcessMonitor.setListener(listener);
+        node.start = System.nanoTime();
+        try {
+          node.success = node.stage.run();
+        } finally {
+          node.end = System.nanoTime();
+          ProcessMonitor.setListener(null);
+          statReporter.stageFinished(compiler, node.name, (node.end - node.start) / 1000000);
+        }
+        return node;
+      }
+    });
+  }
+
+  private void link() {
+    Map<String, List<Node>> writers = new HashMap<String, List<Node>>();
+    for (Node node : nodes) {
+      node.dependencies.clear();
+      node.dependents.clear();
+      for (String output : node.outputs) {
+        List<Node> outputWriters = writers.get(output);
+        if (outputWriters == null) {
+          outputWriters = new ArrayList<Node>();
+          writers.put(output, outputWriters);
+        }
+        outputWriters.add(node);
+      }
+    }
+    for (Node node : nodes) {
+      Set<Node> dependencies = new HashSet<Node>();
+      for (String input : node.inputs) {
+        List<Node> inputWriters = writers.get(input);
+        if (inputWriters == null) {
+          throw new IllegalStateException("Stage " + node.name + " reads " + input
+              + ", which no stage writes");
+        }
+        dependencies.addAll(inputWriters);
+      }
+      dependencies.remove(node);
+      node.dependencies.addAll(dependencies);
+      node.waitingFor = dependencies.size();
+      for (Node dependency : dependencies) {
+        dependency.dependents.add(node);
+      }
+    }
+  }
+
+  /**
+   * Walks back from the stage that finished last, each time to the dependency that finished
+   * last, which is the one the stage waited for.
+   */
+  private List<String> findCriticalPath() {
+    Node last = null;
+    for (Node node : nodes) {
+      if (last == null || node.end > last.end) {
+        last = node;
+      }
+    }
+    LinkedList<String> path = new LinkedList<String>();
+    while (last != null) {
+      path.addFirst(last.name);
+      Node previous = null;
+      for (Node dependency : last.dependencies) {
+        if (previous == null || dependency.end > previous.end) {
+          previous = dependency;
+        }
+      }
+      last = previous;
+    }
+    return Collections.unmodifiableList(path);
+  }
+}
@@ -0,0 +1,204 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A pool of project directories that are reused by successive builds.
+ *
+ * <p>A new workspace is created with the directories that every build creates, such as
+ * build/tmp, the resource directories and assets. When a build is done, its workspace is reset:
+ * files are removed but these directories are kept, as are the AAR libraries that were exploded
+ * into build/exploded-aars, which are the same for most builds. This avoids creating and removing
+ * thousands of files and directories for every build.</p>
+ *
+ * <p>At most {@code maxIdle} workspaces are kept. Workspaces that are released while the pool is
+ * full, or that cannot be reset, are deleted.</p>
+ */
+final class WorkspacePool {
+
+  // Directories, relative to the workspace, that are kept (but emptied) between builds.
+  private static final String[] SKELETON = {
+    "assets",
+    "build",
+    "build/tmp",
+    "build/res",
+    "build/res/anim",
+    "build/res/drawable",
+    "build/res/mipmap-anydpi-v26",
+    "build/res/mipmap-hdpi",
+    "build/res/mipmap-mdpi",
+    "build/res/mipmap-xhdpi",
+    "build/res/mipmap-xxhdpi",
+    "build/res/mipmap-xxxhdpi",
+    "build/res/values",
+    "build/res/values-v11",
+    "build/res/values-v14",
+    "build/res/values-v21",
+    "build/res/values-v23",
+    "build/res/xml",
+    "src",
+    "youngandroidproject"
+  };
+
+  // Directories, relative to the workspace, that are kept with their contents between builds.
+  private static final String[] RETAINED = {
+    "build/exploded-aars"
+  };
+
+  private static final Logger LOG = Logger.getLogger(WorkspacePool.class.getName());
+
+  private final File baseDir;
+  private final int maxIdle;
+  private final Deque<File> idle = new ArrayDeque<File>();
+  private final AtomicInteger created = new AtomicInteger(0);
+  private final AtomicInteger reused = new AtomicInteger(0);
+  private final AtomicInteger discarded = new AtomicInteger(0);
+
+  /**
+   * Creates a WorkspacePool.
+   *
+   * @param baseDir the directory in which workspaces are created
+   * @param maxIdle the maximum number of workspaces kept for reuse
+   */
+  WorkspacePool(File baseDir, int maxIdle) {
+    this.baseDir = baseDir;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Takes a workspace for a build, creating one if none is idle.
+   *
+   * @return an empty workspace
+   * @throws IllegalStateException if a new workspace could not be created
+   */
+  File acquire() {
+    File workspace;
+    synchronized (idle) {
+      workspace = idle.pollFirst();
+    }
+    if (workspace != null) {
+      reused.incrementAndGet();
+      return workspace;
+    }
+    workspace = ProjectBuilder.createNewTempDir(baseDir);
+    for (String path : SKELETON) {
+      new File(workspace, path).mkdirs();
+    }
+    created.incrementAndGet();
+    return workspace;
+  }
+
+  /**
+   * Returns a workspace to the pool once its build is done.
+   *
+   * @param workspace a workspace obtained from {@link #acquire()}
+   */
+  void release(File workspace) {
+    boolean keep;
+    synchronized (idle) {
+      keep = idle.size() < maxIdle;
+    }
+    if (keep) {
+      try {
+        reset(workspace);
+      } catch (IOException e) {
+        LOG.warning("Unable to reset workspace " + workspace + ": " + e.getMessage());
+        keep = false;
+      }
+    }
+    if (keep) {
+      synchronized (idle) {
+        idle.addFirst(workspace);
+      }
+    } else {
+      discarded.incrementAndGet();
+      FileUtils.deleteQuietly(workspace);
+    }
+  }
+
+  /**
+   * Deletes all idle workspaces.
+   */
+  void shutdown() {
+    synchronized (idle) {
+      for (File workspace : idle) {
+        FileUtils.deleteQuietly(workspace);
+      }
+      idle.clear();
+    }
+  }
+
+  int getIdleCount() {
+    synchronized (idle) {
+      return idle.size();
+    }
+  }
+
+  int getCreatedCount() {
+    return created.get();
+  }
+
+  int getReusedCount() {
+    return reused.get();
+  }
+
+  int getDiscardedCount() {
+    return discarded.get();
+  }
+
+  /**
+   * Removes everything from a workspace except for the skeleton directories and the retained
+   * directories.
+   */
+  static void reset(File workspace) throws IOException {
+    reset(workspace, "");
+    for (String path : SKELETON) {
+      File dir = new File(workspace, path);
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Unable to create " + dir);
+      }
+    }
+  }
+
+  private static void reset(File dir, String relativePath) throws IOException {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      throw new IOException("Unable to list " + dir);
+    }
+    for (File child : children) {
+      String childPath = relativePath + child.getName();
+      if (child.isDirectory() && !Files.isSymbolicLink(child.toPath())) {
+        if (contains(RETAINED, childPath)) {
+          continue;
+        } else if (contains(SKELETON, childPath)) {
+          reset(child, childPath + "/");
+          continue;
+        }
+      }
+      // Unlike deleteQuietly, this does not follow a symbolic link to a directory
+      FileUtils.forceDelete(child);
+    }
+  }
+
+  private static boolean contains(String[] paths, String path) {
+    for (String candidate : paths) {
+      if (candidate.equals(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
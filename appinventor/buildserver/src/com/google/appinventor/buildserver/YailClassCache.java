@@ -0,0 +1,185 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.StatReporter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An on-disk cache of the class files that Kawa produces for a single YAIL source.
+ *
+ * <p>Entries are keyed by a SHA-256 hash of everything that affects the compiler output: the
+ * YAIL source, the YAIL runtime, the package prefix and the contents of every class path entry
+ * (which covers the Kawa version and the component libraries). Each entry is a directory named
+ * after its key that holds the class files at their paths relative to the classes directory.</p>
+ *
+ * <p>The entries are kept in a {@link DiskLruCache}, which is bounded in size. Hits, misses and
+ * evictions are reported to a {@link StatReporter} under the name {@link #NAME}.</p>
+ */
+final class YailClassCache {
+
+  static final String NAME = "yail-classes";
+
+  // Change this whenever the layout of an entry or the inputs of the key change.
+  private static final String VERSION = "yail-class-cache-1";
+
+  // Hashes of class path entries that belong to the build server, which do not change while it
+  // is running. Keyed by path, length and modification time.
+  private final Map<String, String> fileHashes = new ConcurrentHashMap<String, String>();
+
+  private final DiskLruCache cache;
+
+  /**
+   * Creates a cache backed by the given directory, indexing any entries already present.
+   *
+   * @param dir the cache directory, which is created if needed
+   * @param maxBytes the maximum total size of the cached class files
+   * @param statReporter the reporter that receives cache events
+   * @throws IOException if the directory cannot be created
+   */
+  YailClassCache(File dir, long maxBytes, StatReporter statReporter) throws IOException {
+    cache = new DiskLruCache(dir, "", maxBytes, NAME, statReporter);
+  }
+
+  /**
+   * Computes the hash of a class path, which is the common part of the keys of one build.
+   *
+   * @param classpath the class path given to Kawa
+   * @return the hash of the contents of all of the class path entries
+   * @throws IOException if an entry cannot be read
+   */
+  String hashClasspath(String classpath) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(VERSION, StandardCharsets.UTF_8);
+    for (String path : classpath.split(File.pathSeparator)) {
+      if (!path.isEmpty()) {
+        hasher.putString(hashPath(new File(path)), StandardCharsets.UTF_8);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Computes the key of the class files generated for a YAIL source.
+   *
+   * @param classpathHash the result of {@link #hashClasspath(String)}
+   * @param runtime the YAIL runtime loaded by Kawa
+   * @param packagePrefix the package prefix given to Kawa
+   * @param relativePath the path of the source relative to the source root, or null for the
+   *     runtime itself
+   * @param source the YAIL source
+   * @return the key of the cache entry
+   * @throws IOException if a file cannot be read
+   */
+  String key(String classpathHash, File runtime, String packagePrefix, String relativePath,
+      File source) throws IOException {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(classpathHash, StandardCharsets.UTF_8);
+    hasher.putString(hashPath(runtime), StandardCharsets.UTF_8);
+    hasher.putString(packagePrefix, StandardCharsets.UTF_8);
+    if (relativePath != null) {
+      hasher.putString(relativePath, StandardCharsets.UTF_8);
+      hasher.putString(DiskLruCache.hashFile(source), StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Copies the class files of an entry into a classes directory.
+   *
+   * @param key the key of the entry
+   * @param classesDir the classes directory of the build
+   * @return true if the entry was found and copied, false otherwise
+   */
+  boolean restore(String key, final File classesDir) {
+    return cache.restore(key, new DiskLruCache.Reader<Boolean>() {
+      @Override
+      public Boolean read(File entry) throws IOException {
+        copyTree(entry, classesDir);
+        return true;
+      }
+    }) != null;
+  }
+
+  /**
+   * Stores class files from a classes directory under the given key.
+   *
+   * @param key the key of the entry
+   * @param classesDir the classes directory of the build
+   * @param relativePaths the paths of the class files, relative to classesDir
+   */
+  void store(String key, final File classesDir, final Collection<String> relativePaths) {
+    cache.store(key, new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        long size = 0;
+        for (String path : relativePaths) {
+          File target = new File(entry, path);
+          Files.createParentDirs(target);
+          Files.copy(new File(classesDir, path), target);
+          size += target.length();
+        }
+        return size;
+      }
+    });
+  }
+
+  int getEntryCount() {
+    return cache.getEntryCount();
+  }
+
+  long getTotalBytes() {
+    return cache.getTotalBytes();
+  }
+
+  private String hashPath(File file) throws IOException {
+    if (file.isDirectory()) {
+      // Build specific directories, such as the R classes of AAR libraries, are hashed in full.
+      Hasher hasher = Hashing.sha256().newHasher();
+      List<String> paths = DiskLruCache.listRelativePaths(file);
+      Collections.sort(paths);
+      for (String path : paths) {
+        hasher.putString(path, StandardCharsets.UTF_8);
+        hasher.putString(DiskLruCache.hashFile(new File(file, path)), StandardCharsets.UTF_8);
+      }
+      return hasher.hash().toString();
+    }
+    String id = file.getAbsolutePath() + File.pathSeparator + file.length()
+        + File.pathSeparator + file.lastModified();
+    String hash = fileHashes.get(id);
+    if (hash == null) {
+      hash = DiskLruCache.hashFile(file);
+      if (fileHashes.size() > 10000) {
+        fileHashes.clear();
+      }
+      fileHashes.put(id, hash);
+    }
+    return hash;
+  }
+
+  private static void copyTree(File source, File target) throws IOException {
+    List<String> paths = DiskLruCache.listRelativePaths(source);
+    if (paths.isEmpty()) {
+      throw new IOException("Empty cache entry " + source);
+    }
+    for (String path : paths) {
+      File targetFile = new File(target, path);
+      Files.createParentDirs(targetFile);
+      Files.copy(new File(source, path), targetFile);
+    }
+  }
+}
@@ -0,0 +1,20 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+/**
+ * CacheEvent enumerates the events that build caches report to a {@link StatReporter}.
+ */
+public enum CacheEvent {
+  /** A lookup found a usable entry. */
+  HIT,
+
+  /** A lookup did not find a usable entry. */
+  MISS,
+
+  /** An entry was removed to keep the cache within its size limit. */
+  EVICTION
+}
@@ -0,0 +1,50 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * CacheEventCounts counts the events reported for each build cache.
+ */
+final class CacheEventCounts {
+
+  private final ConcurrentMap<String, AtomicLongArray> cacheEvents = new ConcurrentHashMap<>();
+
+  void increment(String cache, CacheEvent event) {
+    AtomicLongArray counts = cacheEvents.get(cache);
+    if (counts == null) {
+      AtomicLongArray newCounts = new AtomicLongArray(CacheEvent.values().length);
+      counts = cacheEvents.putIfAbsent(cache, newCounts);
+      if (counts == null) {
+        counts = newCounts;
+      }
+    }
+    counts.incrementAndGet(event.ordinal());
+  }
+
+  /**
+   * Gets the number of times each event was reported for each cache.
+   *
+   * @return a map from cache name to the event counts of that cache, sorted by cache name
+   */
+  Map<String, Map<CacheEvent, Long>> get() {
+    Map<String, Map<CacheEvent, Long>> result = new TreeMap<>();
+    for (Map.Entry<String, AtomicLongArray> entry : cacheEvents.entrySet()) {
+      Map<CacheEvent, Long> counts = new LinkedHashMap<>();
+      for (CacheEvent event : CacheEvent.values()) {
+        counts.put(event, entry.getValue().get(event.ordinal()));
+      }
+      result.put(entry.getKey(), counts);
+    }
+    return result;
+  }
+}
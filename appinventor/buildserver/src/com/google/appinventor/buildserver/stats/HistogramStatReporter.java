@@ -0,0 +1,274 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+import com.google.appinventor.buildserver.Compiler;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * HistogramStatReporter records the duration of builds and of each of their stages in
+ * {@link WindowedLatencyHistogram}s, from which percentiles can be computed over the lifetime
+ * of the server or over the last few minutes. Unlike {@link SimpleStatReporter}, it keeps no
+ * per-build records, and reporting takes no shared locks, so it can be left on under full load.
+ */
+public class HistogramStatReporter implements StatReporter {
+
+  /**
+   * The lengths, in minutes, of the sliding windows over which stats are exported.
+   */
+  public static final int[] WINDOW_MINUTES = { 1, 5, WindowedLatencyHistogram.MAX_WINDOW_MINUTES };
+
+  /**
+   * The percentiles that are exported for each histogram.
+   */
+  public static final double[] PERCENTILES = { 50, 90, 99 };
+
+  private static final Logger LOG =
+      Logger.getLogger(HistogramStatReporter.class.getCanonicalName());
+
+  private static final class ActiveBuild {
+    final long start;
+    final AtomicLong stageStart;
+    volatile String stage = "start";
+
+    ActiveBuild(long start) {
+      this.start = start;
+      this.stageStart = new AtomicLong(start);
+    }
+  }
+
+  private final ConcurrentMap<Compiler, ActiveBuild> activeBuilds = new ConcurrentHashMap<>();
+  private final WindowedLatencyHistogram successfulBuilds = new WindowedLatencyHistogram();
+  private final WindowedLatencyHistogram failedBuilds = new WindowedLatencyHistogram();
+  private final ConcurrentMap<String, WindowedLatencyHistogram> stages =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ProcessUsageTotals> stageProcesses =
+      new ConcurrentHashMap<>();
+  private final CacheEventCounts cacheEvents = new CacheEventCounts();
+
+  @Override
+  public void startBuild(Compiler compiler) {
+    activeBuilds.put(compiler, new ActiveBuild(System.currentTimeMillis()));
+  }
+
+  @Override
+  public void nextStage(Compiler compiler, String stage) {
+    ActiveBuild build = activeBuilds.get(compiler);
+    if (build == null) {
+      LOG.warning("Got compiler with uninitialized stats object");
+      return;
+    }
+    long now = System.currentTimeMillis();
+    getStage(stage).record(now - build.stageStart.getAndSet(now), now);
+    build.stage = stage;
+  }
+
+  @Override
+  public void stageFinished(Compiler compiler, String stage, long durationMillis) {
+    getStage(stage).record(durationMillis, System.currentTimeMillis());
+  }
+
+  @Override
+  public void processFinished(Compiler compiler, ProcessUsage usage) {
+    ActiveBuild build = activeBuilds.get(compiler);
+    if (build != null) {
+      getProcessTotals(build.stage).add(usage);
+    }
+  }
+
+  @Override
+  public void stopBuild(Compiler compiler, boolean success) {
+    ActiveBuild build = activeBuilds.remove(compiler);
+    if (build == null) {
+      LOG.warning("Got compiler with uninitialized stats object");
+      return;
+    }
+    long now = System.currentTimeMillis();
+    (success ? successfulBuilds : failedBuilds).record(now - build.start, now);
+  }
+
+  @Override
+  public void cacheEvent(String cache, CacheEvent event) {
+    cacheEvents.increment(cache, event);
+  }
+
+  /**
+   * Gets the durations of successful or failed builds.
+   *
+   * @param success true for successful builds, false for failed builds
+   * @return the histogram of build durations
+   */
+  public WindowedLatencyHistogram getBuilds(boolean success) {
+    return success ? successfulBuilds : failedBuilds;
+  }
+
+  /**
+   * Gets the durations of the stages that builds have entered.
+   *
+   * @return a map from stage name to the histogram of its durations, sorted by stage name
+   */
+  public Map<String, WindowedLatencyHistogram> getStages() {
+    return Collections.unmodifiableMap(new TreeMap<>(stages));
+  }
+
+  /**
+   * Gets the resources used by the child processes run in each stage.
+   *
+   * @return a map from stage name to the usage of its processes, sorted by stage name
+   */
+  public Map<String, ProcessUsageTotals> getStageProcesses() {
+    return Collections.unmodifiableMap(new TreeMap<>(stageProcesses));
+  }
+
+  /**
+   * Gets the number of times each event was reported for each cache.
+   *
+   * @return a map from cache name to the event counts of that cache, sorted by cache name
+   */
+  public Map<String, Map<CacheEvent, Long>> getCacheStats() {
+    return cacheEvents.get();
+  }
+
+  /**
+   * Writes all stats in the Prometheus text exposition format. Build and stage durations are
+   * summaries whose quantiles cover the longest window, and whose sums and counts cover the
+   * lifetime of the server.
+   *
+   * @return the stats, one sample per line
+   */
+  public String toPrometheusText() {
+    StringBuilder out = new StringBuilder();
+    int window = WINDOW_MINUTES[WINDOW_MINUTES.length - 1];
+
+    out.append("# HELP buildserver_build_duration_ms Duration of builds, in milliseconds.\n");
+    out.append("# TYPE buildserver_build_duration_ms summary\n");
+    appendSummary(out, "buildserver_build_duration_ms", "outcome=\"success\"",
+        successfulBuilds, window);
+    appendSummary(out, "buildserver_build_duration_ms", "outcome=\"failure\"",
+        failedBuilds, window);
+
+    out.append("# HELP buildserver_stage_duration_ms Duration of build stages, in milliseconds.\n");
+    out.append("# TYPE buildserver_stage_duration_ms summary\n");
+    Map<String, WindowedLatencyHistogram> sortedStages = getStages();
+    for (Map.Entry<String, WindowedLatencyHistogram> stage : sortedStages.entrySet()) {
+      appendSummary(out, "buildserver_stage_duration_ms",
+          "stage=\"" + escapeLabel(stage.getKey()) + "\"", stage.getValue(), window);
+    }
+
+    out.append("# HELP buildserver_stage_duration_max_ms Longest duration of build stages, "
+        + "in milliseconds.\n");
+    out.append("# TYPE buildserver_stage_duration_max_ms gauge\n");
+    for (Map.Entry<String, WindowedLatencyHistogram> stage : sortedStages.entrySet()) {
+      out.append("buildserver_stage_duration_max_ms{stage=\"")
+          .append(escapeLabel(stage.getKey())).append("\"} ")
+          .append(stage.getValue().getTotal().getMax()).append('\n');
+    }
+
+    Map<String, ProcessUsageTotals> processes = getStageProcesses();
+    out.append("# HELP buildserver_stage_process_runs_total Child processes run by build "
+        + "stages.\n");
+    out.append("# TYPE buildserver_stage_process_runs_total counter\n");
+    for (Map.Entry<String, ProcessUsageTotals> stage : processes.entrySet()) {
+      appendSample(out, "buildserver_stage_process_runs_total", stage.getKey(), null,
+          stage.getValue().getRuns());
+    }
+    out.append("# HELP buildserver_stage_process_cpu_ms_total CPU time of the child processes "
+        + "of build stages, in milliseconds.\n");
+    out.append("# TYPE buildserver_stage_process_cpu_ms_total counter\n");
+    for (Map.Entry<String, ProcessUsageTotals> stage : processes.entrySet()) {
+      appendSample(out, "buildserver_stage_process_cpu_ms_total", stage.getKey(),
+          "mode=\"user\"", stage.getValue().getUserCpuMillis());
+      appendSample(out, "buildserver_stage_process_cpu_ms_total", stage.getKey(),
+          "mode=\"system\"", stage.getValue().getSystemCpuMillis());
+    }
+    out.append("# HELP buildserver_stage_process_io_bytes_total Bytes read and written by the "
+        + "child processes of build stages.\n");
+    out.append("# TYPE buildserver_stage_process_io_bytes_total counter\n");
+    for (Map.Entry<String, ProcessUsageTotals> stage : processes.entrySet()) {
+      appendSample(out, "buildserver_stage_process_io_bytes_total", stage.getKey(),
+          "direction=\"read\"", stage.getValue().getReadBytes());
+      appendSample(out, "buildserver_stage_process_io_bytes_total", stage.getKey(),
+          "direction=\"write\"", stage.getValue().getWriteBytes());
+    }
+    out.append("# HELP buildserver_stage_process_peak_rss_kb Largest peak RSS of the child "
+        + "processes of build stages, in KB.\n");
+    out.append("# TYPE buildserver_stage_process_peak_rss_kb gauge\n");
+    for (Map.Entry<String, ProcessUsageTotals> stage : processes.entrySet()) {
+      appendSample(out, "buildserver_stage_process_peak_rss_kb", stage.getKey(), null,
+          stage.getValue().getMaxPeakRssKb());
+    }
+
+    out.append("# HELP buildserver_cache_events_total Events in the build caches.\n");
+    out.append("# TYPE buildserver_cache_events_total counter\n");
+    for (Map.Entry<String, Map<CacheEvent, Long>> cache : getCacheStats().entrySet()) {
+      for (Map.Entry<CacheEvent, Long> event : cache.getValue().entrySet()) {
+        out.append("buildserver_cache_events_total{cache=\"")
+            .append(escapeLabel(cache.getKey())).append("\",event=\"")
+            .append(event.getKey().name().toLowerCase()).append("\"} ")
+            .append(event.getValue()).append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  private WindowedLatencyHistogram getStage(String stage) {
+    WindowedLatencyHistogram histogram = stages.get(stage);
+    if (histogram == null) {
+      WindowedLatencyHistogram newHistogram = new WindowedLatencyHistogram();
+      histogram = stages.putIfAbsent(stage, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  private ProcessUsageTotals getProcessTotals(String stage) {
+    ProcessUsageTotals totals = stageProcesses.get(stage);
+    if (totals == null) {
+      ProcessUsageTotals newTotals = new ProcessUsageTotals();
+      totals = stageProcesses.putIfAbsent(stage, newTotals);
+      if (totals == null) {
+        totals = newTotals;
+      }
+    }
+    return totals;
+  }
+
+  private static void appendSample(StringBuilder out, String name, String stage,
+      String labels, long value) {
+    out.append(name).append("{stage=\"").append(escapeLabel(stage)).append('"');
+    if (labels != null) {
+      out.append(',').append(labels);
+    }
+    out.append("} ").append(value).append('\n');
+  }
+
+  private static void appendSummary(StringBuilder out, String name, String labels,
+      WindowedLatencyHistogram histogram, int windowMinutes) {
+    LatencyHistogram window = histogram.getWindow(windowMinutes);
+    for (double percentile : PERCENTILES) {
+      out.append(name).append('{').append(labels).append(",quantile=\"")
+          .append(percentile / 100).append("\"} ")
+          .append(window.getValueAtPercentile(percentile)).append('\n');
+    }
+    LatencyHistogram total = histogram.getTotal();
+    out.append(name).append("_sum{").append(labels).append("} ").append(total.getSum())
+        .append('\n');
+    out.append(name).append("_count{").append(labels).append("} ").append(total.getCount())
+        .append('\n');
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -22,7 +22,19 @@ public class NullStatReporter implements StatReporter {
   public void nextStage(Compiler compiler, String stage) {
   }
 
+  @Override
+  public void stageFinished(Compiler compiler, String stage, long durationMillis) {
+  }
+
   @Override
   public void stopBuild(Compiler compiler, boolean success) {
   }
+
+  @Override
+  public void processFinished(Compiler compiler, ProcessUsage usage) {
+  }
+
+  @Override
+  public void cacheEvent(String cache, CacheEvent event) {
+  }
 }
@@ -0,0 +1,78 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+/**
+ * ProcessUsage holds the resources used by a child process of the build server, such as aapt or
+ * Kawa. CPU times, peak RSS and I/O are measured from /proc, so they are zero on systems without
+ * it.
+ */
+public final class ProcessUsage {
+  private final String tool;
+  private final long wallMillis;
+  private final long userCpuMillis;
+  private final long systemCpuMillis;
+  private final long peakRssKb;
+  private final long readBytes;
+  private final long writeBytes;
+
+  /**
+   * Creates a ProcessUsage.
+   *
+   * @param tool the name of the program that ran, such as aapt2 or dx
+   * @param wallMillis the time from starting the process until it exited
+   * @param userCpuMillis the CPU time spent in user mode
+   * @param systemCpuMillis the CPU time spent in the kernel
+   * @param peakRssKb the peak resident set size, in KB
+   * @param readBytes the number of bytes read, including from the page cache
+   * @param writeBytes the number of bytes written
+   */
+  public ProcessUsage(String tool, long wallMillis, long userCpuMillis, long systemCpuMillis,
+      long peakRssKb, long readBytes, long writeBytes) {
+    this.tool = tool;
+    this.wallMillis = wallMillis;
+    this.userCpuMillis = userCpuMillis;
+    this.systemCpuMillis = systemCpuMillis;
+    this.peakRssKb = peakRssKb;
+    this.readBytes = readBytes;
+    this.writeBytes = writeBytes;
+  }
+
+  public String getTool() {
+    return tool;
+  }
+
+  public long getWallMillis() {
+    return wallMillis;
+  }
+
+  public long getUserCpuMillis() {
+    return userCpuMillis;
+  }
+
+  public long getSystemCpuMillis() {
+    return systemCpuMillis;
+  }
+
+  public long getPeakRssKb() {
+    return peakRssKb;
+  }
+
+  public long getReadBytes() {
+    return readBytes;
+  }
+
+  public long getWriteBytes() {
+    return writeBytes;
+  }
+
+  @Override
+  public String toString() {
+    return tool + ": wall " + wallMillis + " ms, user " + userCpuMillis + " ms, sys "
+        + systemCpuMillis + " ms, peak RSS " + peakRssKb + " KB, read " + readBytes
+        + " bytes, written " + writeBytes + " bytes";
+  }
+}
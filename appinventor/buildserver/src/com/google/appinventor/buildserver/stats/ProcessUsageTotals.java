@@ -0,0 +1,70 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ProcessUsageTotals adds up the {@link ProcessUsage} of many runs of the same tool. Adding a
+ * run takes no locks.
+ */
+public final class ProcessUsageTotals {
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong wallMillis = new AtomicLong();
+  private final AtomicLong userCpuMillis = new AtomicLong();
+  private final AtomicLong systemCpuMillis = new AtomicLong();
+  private final AtomicLong peakRssKbSum = new AtomicLong();
+  private final AtomicLong maxPeakRssKb = new AtomicLong();
+  private final AtomicLong readBytes = new AtomicLong();
+  private final AtomicLong writeBytes = new AtomicLong();
+
+  public void add(ProcessUsage usage) {
+    runs.incrementAndGet();
+    wallMillis.addAndGet(usage.getWallMillis());
+    userCpuMillis.addAndGet(usage.getUserCpuMillis());
+    systemCpuMillis.addAndGet(usage.getSystemCpuMillis());
+    peakRssKbSum.addAndGet(usage.getPeakRssKb());
+    long max = maxPeakRssKb.get();
+    while (usage.getPeakRssKb() > max && !maxPeakRssKb.compareAndSet(max, usage.getPeakRssKb())) {
+      max = maxPeakRssKb.get();
+    }
+    readBytes.addAndGet(usage.getReadBytes());
+    writeBytes.addAndGet(usage.getWriteBytes());
+  }
+
+  public long getRuns() {
+    return runs.get();
+  }
+
+  public long getWallMillis() {
+    return wallMillis.get();
+  }
+
+  public long getUserCpuMillis() {
+    return userCpuMillis.get();
+  }
+
+  public long getSystemCpuMillis() {
+    return systemCpuMillis.get();
+  }
+
+  public long getAveragePeakRssKb() {
+    long count = runs.get();
+    return count == 0 ? 0 : peakRssKbSum.get() / count;
+  }
+
+  public long getMaxPeakRssKb() {
+    return maxPeakRssKb.get();
+  }
+
+  public long getReadBytes() {
+    return readBytes.get();
+  }
+
+  public long getWriteBytes() {
+    return writeBytes.get();
+  }
+}
@@ -6,12 +6,14 @@
 package com.google.appinventor.buildserver.stats;
 
 import com.google.appinventor.buildserver.Compiler;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -33,9 +35,11 @@ public class SimpleStatReporter implements StatReporter {
   public static class BuildStats {
     private final long start = System.currentTimeMillis();
     private final Map<String, Long> stages = new LinkedHashMap<>();
+    private final Map<String, List<ProcessUsage>> processes = new LinkedHashMap<>();
     private long end;
     private long duration;
     private long last = start;
+    private volatile String stage = "start";
 
     private BuildStats() {
       // Not instantiable outside this class
@@ -53,8 +57,34 @@ public class SimpleStatReporter implements StatReporter {
       return duration;
     }
 
-    public Map<String, Long> getStages() {
-      return Collections.unmodifiableMap(stages);
+    public synchronized Map<String, Long> getStages() {
+      return Collections.unmodifiableMap(new LinkedHashMap<>(stages));
+    }
+
+    /**
+     * Gets the child processes that the build ran, by the stage that ran them.
+     *
+     * @return a map from stage name to the usage of the processes run in that stage
+     */
+    public synchronized Map<String, List<ProcessUsage>> getProcesses() {
+      Map<String, List<ProcessUsage>> copy = new LinkedHashMap<>();
+      for (Map.Entry<String, List<ProcessUsage>> entry : processes.entrySet()) {
+        copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+      }
+      return Collections.unmodifiableMap(copy);
+    }
+
+    private synchronized void putStage(String name, long durationMillis) {
+      stages.put(name, durationMillis);
+    }
+
+    private synchronized void addProcess(ProcessUsage usage) {
+      List<ProcessUsage> stageProcesses = processes.get(stage);
+      if (stageProcesses == null) {
+        stageProcesses = new ArrayList<>();
+        processes.put(stage, stageProcesses);
+      }
+      stageProcesses.add(usage);
     }
   }
 
@@ -64,8 +94,10 @@ public class SimpleStatReporter implements StatReporter {
   private final Deque<BuildStats> failedBuilds = new LinkedList<>();
   private final Deque<BuildStats> orderedBuilds = new LinkedList<>();
 
+  private final CacheEventCounts cacheEvents = new CacheEventCounts();
+
   @Override
-  public void startBuild(Compiler compiler) {
+  public synchronized void startBuild(Compiler compiler) {
     activeBuilds.put(compiler, new BuildStats());
   }
 
@@ -79,8 +111,33 @@ public class SimpleStatReporter implements StatReporter {
       LOG.warning("Got compiler with uninitialized stats object");
       return;
     }
-    stats.stages.put(stage, System.currentTimeMillis() - stats.last);
+    stats.putStage(stage, System.currentTimeMillis() - stats.last);
     stats.last = System.currentTimeMillis();
+    stats.stage = stage;
+  }
+
+  @Override
+  public void stageFinished(Compiler compiler, String stage, long durationMillis) {
+    BuildStats stats;
+    synchronized (this) {
+      stats = activeBuilds.get(compiler);
+    }
+    if (stats == null) {
+      LOG.warning("Got compiler with uninitialized stats object");
+      return;
+    }
+    stats.putStage(stage, durationMillis);
+  }
+
+  @Override
+  public void processFinished(Compiler compiler, ProcessUsage usage) {
+    BuildStats stats;
+    synchronized (this) {
+      stats = activeBuilds.get(compiler);
+    }
+    if (stats != null) {
+      stats.addProcess(usage);
+    }
   }
 
   @Override
@@ -99,16 +156,38 @@ public class SimpleStatReporter implements StatReporter {
     queueAndExpire(stats, orderedBuilds);
   }
 
+  @Override
+  public void cacheEvent(String cache, CacheEvent event) {
+    cacheEvents.increment(cache, event);
+  }
+
+  /**
+   * Gets the number of times each event was reported for each cache.
+   *
+   * @return a map from cache name to the event counts of that cache, sorted by cache name
+   */
+  public Map<String, Map<CacheEvent, Long>> getCacheStats() {
+    return cacheEvents.get();
+  }
+
   public Collection<BuildStats> getSuccessStats() {
-    return Collections.unmodifiableCollection(successfulBuilds);
+    return snapshot(successfulBuilds);
   }
 
   public Collection<BuildStats> getFailureStats() {
-    return Collections.unmodifiableCollection(failedBuilds);
+    return snapshot(failedBuilds);
   }
 
   public Collection<BuildStats> getOrderedStats() {
-    return Collections.unmodifiableCollection(orderedBuilds);
+    return snapshot(orderedBuilds);
+  }
+
+  // Copies the stats so that they can be read while builds finish
+  @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+  private static Collection<BuildStats> snapshot(final Deque<BuildStats> source) {
+    synchronized (source) {
+      return Collections.unmodifiableCollection(new ArrayList<>(source));
+    }
   }
 
   @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
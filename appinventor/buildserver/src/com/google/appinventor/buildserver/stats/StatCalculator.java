@@ -23,9 +23,8 @@ public class StatCalculator {
     private double minTime = Double.POSITIVE_INFINITY;
     private double avgTime = 0;
     private double maxTime = Double.NEGATIVE_INFINITY;
-    private double stdev = 0;
+    private double sumOfSquares = 0;  // Of the differences from the mean
     private int count = 0;
-    private boolean avgComputed = false;
 
     private final Map<String, Stats> stats = new LinkedHashMap<>();
 
@@ -45,7 +44,7 @@ public class StatCalculator {
     }
 
     public double getStdev() {
-      return stdev;
+      return count == 0 ? 0 : Math.sqrt(sumOfSquares / count);
     }
 
     /**
@@ -67,24 +66,14 @@ public class StatCalculator {
       return Collections.unmodifiableSet(stats.keySet());
     }
 
+    // Updates the mean and variance in a single pass, using Welford's algorithm
     private void update(double duration) {
       minTime = Math.min(minTime, duration);
-      avgTime += duration;
       maxTime = Math.max(maxTime, duration);
       count++;
-    }
-
-    private void updateStdev(double duration) {
-      if (!avgComputed) {
-        avgTime /= count;
-        avgComputed = true;
-      }
-      stdev += Math.pow(duration - avgTime, 2.0);
-    }
-
-    private void finalizeComputation() {
-      stdev /= count;
-      stdev = Math.sqrt(stdev);
+      double delta = duration - avgTime;
+      avgTime += delta / count;
+      sumOfSquares += delta * (duration - avgTime);
     }
   }
 
@@ -102,18 +91,6 @@ public class StatCalculator {
         stats.getStageStats(stage.getKey()).update(stage.getValue());
       }
     }
-    for (BuildStats report : reports) {
-      stats.updateStdev(report.getDuration());
-      for (Map.Entry<String, Long> stage : report.getStages().entrySet()) {
-        stats.getStageStats(stage.getKey()).updateStdev(stage.getValue());
-      }
-    }
-    for (BuildStats report : reports) {
-      stats.finalizeComputation();
-      for (String stage : report.getStages().keySet()) {
-        stats.getStageStats(stage).finalizeComputation();
-      }
-    }
     return stats;
   }
 }
@@ -29,6 +29,18 @@ public interface StatReporter {
    */
   void nextStage(Compiler compiler, String stage);
 
+  /**
+   * Indicate to the StatReporter that a stage that ran alongside other stages of the build has
+   * finished. Unlike {@link #nextStage(Compiler, String)}, this does not change the stage the
+   * build is in; the time spent running such stages together is reported by the enclosing call
+   * to nextStage.
+   *
+   * @param compiler the compilation process in progress
+   * @param stage the stage that finished
+   * @param durationMillis how long the stage ran
+   */
+  void stageFinished(Compiler compiler, String stage, long durationMillis);
+
   /**
    * Indicate to the StatReporter that a build has finished and whether it was successful.
    *
@@ -36,4 +48,21 @@ public interface StatReporter {
    * @param success true if the build was a success, false otherwise
    */
   void stopBuild(Compiler compiler, boolean success);
+
+  /**
+   * Indicate to the StatReporter that a child process run by a build has exited. The process
+   * belongs to the stage that the build is in.
+   *
+   * @param compiler the compilation process that ran the child process
+   * @param usage the resources used by the child process
+   */
+  void processFinished(Compiler compiler, ProcessUsage usage);
+
+  /**
+   * Indicate to the StatReporter that an event occurred in one of the build caches.
+   *
+   * @param cache the name of the cache
+   * @param event the event that occurred
+   */
+  void cacheEvent(String cache, CacheEvent event);
 }
@@ -0,0 +1,107 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WindowedLatencyHistogram records durations both since the server started and per minute, for
+ * the last {@link #MAX_WINDOW_MINUTES} minutes, so that percentiles can be computed over a
+ * sliding time window.
+ *
+ * <p>The per-minute histograms are kept in a ring. The first duration recorded in a new minute
+ * clears the slot it reuses. A duration recorded by another thread while the slot is cleared may
+ * be lost from the windows, but never from the totals.
+ */
+public final class WindowedLatencyHistogram {
+
+  public static final int MAX_WINDOW_MINUTES = 15;
+
+  private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final class Slot {
+    final AtomicLong minute = new AtomicLong(-1);
+    final LatencyHistogram histogram = new LatencyHistogram();
+  }
+
+  private final LatencyHistogram total = new LatencyHistogram();
+  private final Slot[] slots = new Slot[MAX_WINDOW_MINUTES];
+
+  public WindowedLatencyHistogram() {
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new Slot();
+    }
+  }
+
+  /**
+   * Records a duration at the current time.
+   *
+   * @param value the duration, in milliseconds
+   */
+  public void record(long value) {
+    record(value, System.currentTimeMillis());
+  }
+
+  /**
+   * Records a duration at the given time.
+   *
+   * @param value the duration, in milliseconds
+   * @param now the time at which the duration ended, in milliseconds since the epoch
+   */
+  public void record(long value, long now) {
+    total.record(value);
+    long minute = now / MINUTE_MS;
+    Slot slot = slots[(int) (minute % slots.length)];
+    long slotMinute = slot.minute.get();
+    if (slotMinute < minute && slot.minute.compareAndSet(slotMinute, minute)) {
+      slot.histogram.reset();
+    }
+    if (slot.minute.get() == minute) {
+      slot.histogram.record(value);
+    }
+  }
+
+  /**
+   * Gets the durations recorded since this histogram was created.
+   */
+  public LatencyHistogram getTotal() {
+    return total;
+  }
+
+  /**
+   * Gets the durations recorded in the current minute and the minutes before it.
+   *
+   * @param minutes the length of the window, between 1 and {@link #MAX_WINDOW_MINUTES}
+   * @return a new histogram of the durations in the window
+   */
+  public LatencyHistogram getWindow(int minutes) {
+    return getWindow(minutes, System.currentTimeMillis());
+  }
+
+  /**
+   * Gets the durations recorded in the given minute and the minutes before it.
+   *
+   * @param minutes the length of the window, between 1 and {@link #MAX_WINDOW_MINUTES}
+   * @param now the end of the window, in milliseconds since the epoch
+   * @return a new histogram of the durations in the window
+   */
+  public LatencyHistogram getWindow(int minutes, long now) {
+    if (minutes < 1 || minutes > MAX_WINDOW_MINUTES) {
+      throw new IllegalArgumentException("Window must be between 1 and " + MAX_WINDOW_MINUTES
+          + " minutes: " + minutes);
+    }
+    long minute = now / MINUTE_MS;
+    LatencyHistogram window = new LatencyHistogram();
+    for (Slot slot : slots) {
+      long slotMinute = slot.minute.get();
+      if (slotMinute <= minute && slotMinute > minute - minutes) {
+        window.add(slot.histogram);
+      }
+    }
+    return window;
+  }
+}
@@ -21,6 +21,7 @@ import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
 import com.android.builder.internal.SymbolLoader;
 import com.android.builder.internal.SymbolWriter;
 import com.android.ide.common.internal.PngCruncher;
+import com.android.ide.common.internal.PngException;
 import com.android.ide.common.res2.MergedResourceWriter;
 import com.android.ide.common.res2.MergingException;
 import com.android.ide.common.res2.ResourceMerger;
@@ -28,6 +29,7 @@ import com.android.ide.common.res2.ResourceSet;
 import com.android.utils.ILogger;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.io.Files;
 
 /**
  * AARLibraries implements a set of {@link AARLibrary} and performs additional bookkeeping by
@@ -74,6 +76,11 @@ public class AARLibraries extends HashSet<AARLibrary> {
    */
   private Set<File> natives = new HashSet<>();
 
+  /**
+   * Resources of the AAR libraries that were merged earlier, or null to merge them with the app's.
+   */
+  private File mergedLibraryResources;
+
   /**
    * Maps the package name for the dependency to any symbols it declares.
    */
@@ -99,9 +106,8 @@ public class AARLibraries extends HashSet<AARLibrary> {
       libraries.addAll(e.getLibraries());
       natives.addAll(e.getNatives());
       try {
-        if (e.getRTxt() != null) {
-          SymbolLoader loader = new SymbolLoader(e.getRTxt(), LOG);
-          loader.load();
+        SymbolLoader loader = e.getSymbols(LOG);
+        if (loader != null) {
           symbols.put(packageName, loader);
         }
       } catch(IOException ex) {
@@ -142,6 +148,18 @@ public class AARLibraries extends HashSet<AARLibrary> {
     return outputDir;
   }
 
+  /**
+   * Sets a directory holding the result of {@link #mergeLibraryResources(File, PngCruncher)} for
+   * the libraries in this collection. Subsequent calls to
+   * {@link #mergeResources(File, File, PngCruncher)} start from these resources instead of
+   * merging the libraries again.
+   *
+   * @param dir the merged library resources
+   */
+  public void setMergedLibraryResources(File dir) {
+    mergedLibraryResources = dir;
+  }
+
   /**
    * Gets a list of resource sets loaded from the AAR libraries in the collection. Note that this
    * is computed on every call (results are not cached), so it is recommended that the caller only
@@ -170,10 +188,63 @@ public class AARLibraries extends HashSet<AARLibrary> {
    * @return true if the merge was successful, otherwise false.
    */
   public boolean mergeResources(File outputDir, File mainResDir, PngCruncher cruncher) {
-    List<ResourceSet> resourceSets = getResourceSets();
+    List<ResourceSet> resourceSets;
+    if (mergedLibraryResources != null) {
+      // The PNGs of the libraries were crunched when they were merged
+      final File libraryResources = mergedLibraryResources;
+      final PngCruncher appCruncher = cruncher;
+      cruncher = new PngCruncher() {
+        @Override
+        public int start() {
+          return appCruncher.start();
+        }
+
+        @Override
+        public void crunchPng(int key, File from, File to) throws PngException {
+          String libraryPath = libraryResources.getAbsolutePath() + File.separator;
+          if (from.getAbsolutePath().startsWith(libraryPath)) {
+            try {
+              Files.copy(from, to);
+            } catch (IOException e) {
+              throw new PngException(e);
+            }
+          } else {
+            appCruncher.crunchPng(key, from, to);
+          }
+        }
+
+        @Override
+        public void end(int key) throws InterruptedException {
+          appCruncher.end(key);
+        }
+      };
+      resourceSets = new ArrayList<>();
+      ResourceSet librarySet = new ResourceSet("libraries");
+      librarySet.addSource(libraryResources);
+      resourceSets.add(librarySet);
+    } else {
+      resourceSets = getResourceSets();
+    }
     ResourceSet mainResSet = new ResourceSet("main");
     mainResSet.addSource(mainResDir);
     resourceSets.add(mainResSet);
+    return merge(resourceSets, outputDir, cruncher);
+  }
+
+  /**
+   * Merges the resources of the AAR libraries in the collection, without those of the app. The
+   * result can be shared by builds that use the same libraries.
+   *
+   * @param outputDir the directory to write the merged resources to.
+   * @param cruncher configured PNG cruncher utility for reducing the size of PNG assets.
+   * @return true if the merge was successful, otherwise false.
+   */
+  public boolean mergeLibraryResources(File outputDir, PngCruncher cruncher) {
+    return merge(getResourceSets(), outputDir, cruncher);
+  }
+
+  private static boolean merge(List<ResourceSet> resourceSets, File outputDir,
+      PngCruncher cruncher) {
     ResourceMerger merger = new ResourceMerger();
 
     try {
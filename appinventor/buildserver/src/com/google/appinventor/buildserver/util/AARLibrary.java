@@ -20,7 +20,12 @@ import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.commons.io.IOUtils;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import com.android.builder.internal.SymbolLoader;
 import com.android.io.StreamException;
+import com.android.utils.ILogger;
 import com.android.xml.AndroidManifest;
 
 /**
@@ -38,6 +43,9 @@ public class AARLibrary {
   private static final String LIBS_DIR = "libs/";
   private static final String JNI_DIR = "jni/";
 
+  // Written after the archive has been unpacked. Records the archive it was unpacked from.
+  private static final String UNPACKED_STAMP = ".unpacked";
+
   /**
    * Path to the AAR file modeled by the AARLibrary.
    */
@@ -99,6 +107,11 @@ public class AARLibrary {
    */
   private Set<File> jni = new HashSet<>();
 
+  /**
+   * Symbols declared in R.txt, once loaded.
+   */
+  private SymbolLoader symbols;
+
   /**
    * File wrapper around a zip stream to allow extracting the package name from the AndroidManifest.
    */
@@ -222,7 +235,8 @@ public class AARLibrary {
   /**
    * Unpacks the Android Archive to a directory in the file system. The unpacking operation will
    * create a new directory named with the archive's package name to prevent collisions with
-   * other Android Archives.
+   * other Android Archives. If the directory already holds the contents of the same archive,
+   * e.g., because a build workspace is reused, the archive is not unpacked again.
    * @param path the path to where the archive will be unpacked.
    * @throws IOException if any error occurs attempting to read the archive or write new files to
    *                     the file system.
@@ -233,6 +247,14 @@ public class AARLibrary {
       zip = new ZipFile(aarPath);
       packageName = extractPackageName(zip);
       basedir = new File(path, packageName);
+      File stamp = new File(basedir, UNPACKED_STAMP);
+      String stampContents = aarPath.getAbsolutePath() + "\n" + aarPath.length() + "\n"
+          + aarPath.lastModified();
+      if (stamp.isFile() && stampContents.equals(Files.toString(stamp, Charsets.UTF_8))) {
+        loadFromDirectory(basedir);
+        return;
+      }
+      stamp.delete();
       if (!basedir.exists() && !basedir.mkdirs()) {
         throw new IOException("Unable to create directory for AAR package: " + basedir);
       }
@@ -266,11 +288,64 @@ public class AARLibrary {
       if (!resdir.exists()) {
         resdir = null;
       }
+      Files.write(stampContents, stamp, Charsets.UTF_8);
     } finally {
       IOUtils.closeQuietly(zip);
     }
   }
 
+  /**
+   * Uses a directory into which the archive was unpacked earlier, e.g., by a cache of unpacked
+   * archives, instead of unpacking it again.
+   *
+   * @param dir the directory holding the unpacked archive, named after its package name
+   */
+  public void loadFromDirectory(final File dir) {
+    packageName = dir.getName();
+    basedir = dir;
+    catalogDirectory(dir);
+    resdir = new File(dir, "res");
+    if (!resdir.exists()) {
+      resdir = null;
+    }
+  }
+
+  /**
+   * Gets the symbols declared in the library's R.txt. The symbols are loaded on first use, so that
+   * a library shared by several builds is only read once.
+   *
+   * @param logger the logger for problems found in R.txt
+   * @return the symbols, or null if the library has no R.txt
+   * @throws IOException if R.txt cannot be read
+   */
+  public synchronized SymbolLoader getSymbols(ILogger logger) throws IOException {
+    if (symbols == null && rtxt != null) {
+      SymbolLoader loader = new SymbolLoader(rtxt, logger);
+      loader.load();
+      symbols = loader;
+    }
+    return symbols;
+  }
+
+  /**
+   * Catalogs the files of an archive that was unpacked earlier.
+   *
+   * @param dir a directory of the unpacked archive
+   */
+  private void catalogDirectory(File dir) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      if (child.isDirectory()) {
+        catalogDirectory(child);
+      } else if (!UNPACKED_STAMP.equals(child.getName())) {
+        catalog(child);
+      }
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,151 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.android.ide.common.internal.PngCruncher;
+import com.android.ide.common.internal.PngException;
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.appinventor.buildserver.util.AARLibraries;
+import com.google.appinventor.buildserver.util.AARLibrary;
+import com.google.appinventor.common.testutils.TestUtils;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests AarCache class.
+ */
+public class AarCacheTest extends TestCase {
+  private static final String SUPPORT_DIR = TestUtils.APP_INVENTOR_ROOT_DIR
+      + "/lib/android/support/";
+
+  private static final File CORE = new File(SUPPORT_DIR + "core-1.0.0.aar");
+  private static final File LOADER = new File(SUPPORT_DIR + "loader-1.0.0.aar");
+  private static final File VIEWPAGER = new File(SUPPORT_DIR + "viewpager-1.0.0.aar");
+
+  private static final PngCruncher COPYING_CRUNCHER = new PngCruncher() {
+    @Override
+    public int start() {
+      return 0;
+    }
+
+    @Override
+    public void crunchPng(int key, File from, File to) throws PngException {
+      try {
+        Files.copy(from, to);
+      } catch (IOException e) {
+        throw new PngException(e);
+      }
+    }
+
+    @Override
+    public void end(int key) {
+    }
+  };
+
+  private File tempDir;
+  private File cacheDir;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testSameLibrariesShareAnEntry() throws Exception {
+    AarCache cache = new AarCache(cacheDir, 100L * 1024 * 1024, reporter);
+    AarCache.Entry first = cache.acquire(Arrays.asList(CORE, LOADER));
+    AarCache.Entry second = cache.acquire(Arrays.asList(LOADER, CORE));
+    assertSame(first, second);
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(1L, (long) reporter.getCacheStats().get(AarCache.NAME).get(CacheEvent.MISS));
+    assertEquals(1L, (long) reporter.getCacheStats().get(AarCache.NAME).get(CacheEvent.HIT));
+
+    List<AARLibrary> libraries = first.getLibraries();
+    assertEquals(2, libraries.size());
+    assertEquals("androidx.core", libraries.get(0).getPackageName());
+    assertTrue(libraries.get(0).getRTxt().isFile());
+    assertTrue(libraries.get(0).getResDirectory().isDirectory());
+    assertSame(libraries.get(0).getSymbols(null), libraries.get(0).getSymbols(null));
+
+    AarCache.Entry other = cache.acquire(Arrays.asList(CORE, VIEWPAGER));
+    assertNotSame(first, other);
+    assertEquals(2, cache.getEntryCount());
+    first.release();
+    second.release();
+    other.release();
+  }
+
+  public void testMergedResourcesAreShared() throws Exception {
+    AarCache cache = new AarCache(cacheDir, 100L * 1024 * 1024, reporter);
+    AarCache.Entry entry = cache.acquire(Arrays.asList(CORE, LOADER));
+    AARLibraries libraries = new AARLibraries(new File(tempDir, "generated"));
+    libraries.addAll(entry.getLibraries());
+    File merged = entry.getMergedResources(libraries, COPYING_CRUNCHER);
+    assertNotNull(merged);
+    assertTrue(new File(merged, "values/values.xml").isFile());
+    assertEquals(merged, entry.getMergedResources(libraries, null));
+
+    // Merging with the app's resources starts from the merged library resources
+    File mainResDir = new File(tempDir, "res");
+    File appValues = new File(mainResDir, "values/strings.xml");
+    Files.createParentDirs(appValues);
+    Files.write("<resources><string name=\"app\">App</string></resources>", appValues,
+        Charsets.UTF_8);
+    libraries.setMergedLibraryResources(merged);
+    File outputDir = new File(tempDir, "merged");
+    assertTrue(libraries.mergeResources(outputDir, mainResDir, COPYING_CRUNCHER));
+    String values = Files.toString(new File(outputDir, "values/values.xml"),
+        Charsets.UTF_8);
+    assertTrue(values.contains("name=\"app\""));
+    assertTrue(values.contains("notification_"));
+    entry.release();
+  }
+
+  public void testEntriesInUseAreNotEvicted() throws Exception {
+    AarCache cache = new AarCache(cacheDir, 1, reporter);
+    AarCache.Entry first = cache.acquire(Arrays.asList(CORE));
+    AarCache.Entry second = cache.acquire(Arrays.asList(LOADER));
+    assertEquals(2, cache.getEntryCount());
+    first.release();
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(1L,
+        (long) reporter.getCacheStats().get(AarCache.NAME).get(CacheEvent.EVICTION));
+    second.release();
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  public void testEntriesSurviveRestart() throws Exception {
+    AarCache cache = new AarCache(cacheDir, 100L * 1024 * 1024, reporter);
+    cache.acquire(Arrays.asList(CORE, LOADER)).release();
+    assertTrue(new File(cacheDir, ".tmp-partial").mkdirs());
+
+    AarCache restarted = new AarCache(cacheDir, 100L * 1024 * 1024, reporter);
+    assertEquals(1, restarted.getEntryCount());
+    assertEquals(cache.getTotalBytes(), restarted.getTotalBytes());
+    assertFalse(new File(cacheDir, ".tmp-partial").exists());
+    AarCache.Entry entry = restarted.acquire(Arrays.asList(LOADER, CORE));
+    assertEquals("androidx.loader", entry.getLibraries().get(0).getPackageName());
+    assertEquals(1L, (long) reporter.getCacheStats().get(AarCache.NAME).get(CacheEvent.HIT));
+    entry.release();
+  }
+}
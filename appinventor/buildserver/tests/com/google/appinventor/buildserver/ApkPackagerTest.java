@@ -0,0 +1,199 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests ApkPackager class.
+ */
+public class ApkPackagerTest extends TestCase {
+  private static final int MIN_SDK = 7;
+
+  // Ends the block that holds the v2 signature, between the entries and the central directory
+  private static final String APK_SIGNING_BLOCK_MAGIC = "APK Sig Block 42";
+
+  // Odd lengths, so that stored entries would not be aligned on their own
+  private static final String[] STORED_NAMES = { "res/raw/a.ogg", "res/raw/bb.ogg", "assets/c" };
+
+  private File tempDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testPackage() throws Exception {
+    File resources = writeResources();
+    File dex = writeFile("classes.dex", 1001);
+    File libsDir = new File(tempDir, "libs");
+    File abiDir = new File(libsDir, "armeabi-v7a");
+    assertTrue(abiDir.mkdirs());
+    Files.write("lib".getBytes(Charsets.UTF_8), new File(abiDir, "libfoo.so"));
+    Files.write("txt".getBytes(Charsets.UTF_8), new File(abiDir, "README"));
+
+    File apk = new File(tempDir, "unsigned.apk");
+    try (ApkPackager packager = new ApkPackager(apk)) {
+      packager.addZip(resources);
+      packager.addFile(dex, "classes.dex");
+      packager.addNativeLibraries(libsDir);
+    }
+
+    try (ZipFile zip = new ZipFile(apk)) {
+      assertNotNull(zip.getEntry("AndroidManifest.xml"));
+      assertNull(zip.getEntry("META-INF/MANIFEST.MF"));
+      assertNull(zip.getEntry("res/"));
+      assertEquals(1001L, zip.getEntry("classes.dex").getSize());
+      assertNotNull(zip.getEntry("lib/armeabi-v7a/libfoo.so"));
+      assertNull(zip.getEntry("lib/armeabi-v7a/README"));
+      for (String name : STORED_NAMES) {
+        assertEquals(ZipEntry.STORED, zip.getEntry(name).getMethod());
+      }
+    }
+    // Each stored entry holds its own name, which must be where its header says its data is
+    byte[] bytes = Files.toByteArray(apk);
+    for (String name : STORED_NAMES) {
+      int offset = getDataOffset(bytes, name);
+      assertEquals(name, new String(bytes, offset, name.length(), Charsets.UTF_8));
+    }
+    assertAligned(apk);
+  }
+
+  public void testDuplicate() throws Exception {
+    File dex = writeFile("classes.dex", 10);
+    try (ApkPackager packager = new ApkPackager(new File(tempDir, "unsigned.apk"))) {
+      packager.addFile(dex, "classes.dex");
+      packager.addFile(dex, "classes.dex");
+      fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testSign() throws Exception {
+    File keystore = new File(ProjectBuilder.createKeyStore("test", tempDir, "android.keystore"));
+    File unsigned = new File(tempDir, "unsigned.apk");
+    try (ApkPackager packager = new ApkPackager(unsigned)) {
+      packager.addZip(writeResources());
+      packager.addFile(writeFile("classes.dex", 1001), "classes.dex");
+    }
+    File signed = new File(tempDir, "signed.apk");
+    ApkPackager.sign(unsigned, keystore, signed, MIN_SDK);
+
+    // ApkVerifier needs a real AndroidManifest.xml, so this checks that the signatures are there
+    try (ZipFile zip = new ZipFile(signed)) {
+      assertNotNull(zip.getEntry("META-INF/MANIFEST.MF"));
+      assertNotNull(zip.getEntry("META-INF/ANDROIDK.SF"));
+      assertNotNull(zip.getEntry("META-INF/ANDROIDK.RSA"));
+    }
+    assertTrue(new String(Files.toByteArray(signed), Charsets.ISO_8859_1)
+        .contains(APK_SIGNING_BLOCK_MAGIC));
+    assertAligned(signed);
+  }
+
+  public void testSignWithMissingKeystore() throws Exception {
+    File unsigned = new File(tempDir, "unsigned.apk");
+    try (ApkPackager packager = new ApkPackager(unsigned)) {
+      packager.addZip(writeResources());
+    }
+    File signed = new File(tempDir, "signed.apk");
+    try {
+      ApkPackager.sign(unsigned, new File(tempDir, "missing.keystore"), signed, MIN_SDK);
+      fail("Expected an exception");
+    } catch (Exception e) {
+      // expected
+    }
+    assertFalse(signed.exists());
+  }
+
+  public void testSignatureName() {
+    assertEquals("ANDROIDK", ApkPackager.getSignatureName(ApkPackager.KEY_ALIAS));
+    assertEquals("MY_KEY", ApkPackager.getSignatureName("my.key"));
+  }
+
+  /**
+   * Writes a zip like the one aapt makes, with compressed and uncompressed entries.
+   */
+  private File writeResources() throws IOException {
+    File resources = new File(tempDir, "resources.ap_");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(resources))) {
+      out.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+      out.write(new byte[333]);
+      out.closeEntry();
+      out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      out.closeEntry();
+      out.putNextEntry(new ZipEntry("res/"));
+      out.closeEntry();
+      for (String name : STORED_NAMES) {
+        byte[] data = name.getBytes(Charsets.UTF_8);
+        ZipEntry stored = new ZipEntry(name);
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        stored.setCrc(crc.getValue());
+        out.putNextEntry(stored);
+        out.write(data);
+        out.closeEntry();
+      }
+    }
+    return resources;
+  }
+
+  private File writeFile(String name, int size) throws IOException {
+    byte[] data = new byte[size];
+    Arrays.fill(data, (byte) 'd');
+    File file = new File(tempDir, name);
+    Files.write(data, file);
+    return file;
+  }
+
+  private static void assertAligned(File apk) throws IOException {
+    byte[] bytes = Files.toByteArray(apk);
+    for (String name : STORED_NAMES) {
+      assertEquals(name, 0, getDataOffset(bytes, name) % 4);
+    }
+  }
+
+  /**
+   * Finds where the data of an entry starts by finding its local file header.
+   */
+  private static int getDataOffset(byte[] zip, String name) {
+    byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+    for (int i = 0; i + 30 + nameBytes.length <= zip.length; i++) {
+      if (zip[i] == 'P' && zip[i + 1] == 'K' && zip[i + 2] == 3 && zip[i + 3] == 4
+          && readShort(zip, i + 26) == nameBytes.length
+          && Arrays.equals(nameBytes, Arrays.copyOfRange(zip, i + 30, i + 30 + nameBytes.length))) {
+        return i + 30 + nameBytes.length + readShort(zip, i + 28);
+      }
+    }
+    fail("No local file header for " + name);
+    return -1;
+  }
+
+  private static int readShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+  }
+}
@@ -0,0 +1,194 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests BuildDeduplicator class.
+ */
+public class BuildDeduplicatorTest extends TestCase {
+  private static final String VERSION = "nb200";
+
+  private File tempDir;
+  private File cacheDir;
+  private SimpleStatReporter reporter;
+
+  /**
+   * Collects the result zips passed to it.
+   */
+  private static class Results implements BuildDeduplicator.Follower {
+    final List<String> contents = new ArrayList<String>();
+
+    @Override
+    public void resultReady(File resultZip) {
+      try {
+        contents.add(resultZip == null ? null : Files.toString(resultZip, Charsets.UTF_8));
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      } finally {
+        if (resultZip != null) {
+          resultZip.delete();
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testFingerprint() throws Exception {
+    File zip = writeZip("a.zip", 1500000000000L,
+        "src/Screen1.scm", "form", "src/Screen1.bky", "blocks");
+    String fingerprint = BuildDeduplicator.fingerprint(zip, "user", false, false, false, VERSION);
+
+    // The order and times of the entries do not matter
+    File reordered = writeZip("b.zip", 1600000000000L,
+        "src/Screen1.bky", "blocks", "src/Screen1.scm", "form");
+    assertEquals(fingerprint,
+        BuildDeduplicator.fingerprint(reordered, "user", false, false, false, VERSION));
+
+    File changed = writeZip("c.zip", 1500000000000L,
+        "src/Screen1.scm", "form", "src/Screen1.bky", "bloc");
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(changed, "user", false, false, false, VERSION)));
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(zip, "other", false, false, false, VERSION)));
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(zip, "user", true, false, false, VERSION)));
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(zip, "user", false, true, false, VERSION)));
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(zip, "user", false, false, true, VERSION)));
+    assertFalse(fingerprint.equals(
+        BuildDeduplicator.fingerprint(zip, "user", false, false, false, "nb201")));
+  }
+
+  public void testInFlight() throws Exception {
+    BuildDeduplicator deduplicator = new BuildDeduplicator(null, 0,
+        MoreExecutors.sameThreadExecutor(), reporter);
+    Results results = new Results();
+    assertFalse(deduplicator.join("key", results));
+    assertTrue(deduplicator.join("key", results));
+    assertTrue(deduplicator.join("key", results));
+    assertEquals(1, deduplicator.getInFlightCount());
+    assertTrue(results.contents.isEmpty());
+
+    deduplicator.finish("key", writeFile("result", "apk"), true);
+    assertEquals(2, results.contents.size());
+    assertEquals("apk", results.contents.get(0));
+    assertEquals("apk", results.contents.get(1));
+    assertEquals(0, deduplicator.getInFlightCount());
+    assertEquals(2L, (long) reporter.getCacheStats().get(BuildDeduplicator.IN_FLIGHT_NAME)
+        .get(CacheEvent.HIT));
+    assertEquals(1L, (long) reporter.getCacheStats().get(BuildDeduplicator.IN_FLIGHT_NAME)
+        .get(CacheEvent.MISS));
+
+    // Without a cache, the next build runs
+    assertFalse(deduplicator.join("key", results));
+  }
+
+  public void testFailedBuild() throws Exception {
+    BuildDeduplicator deduplicator = new BuildDeduplicator(cacheDir, 1024 * 1024,
+        MoreExecutors.sameThreadExecutor(), reporter);
+    Results results = new Results();
+    assertFalse(deduplicator.join("key", results));
+    assertTrue(deduplicator.join("key", results));
+    deduplicator.finish("key", null, false);
+    assertEquals(1, results.contents.size());
+    assertNull(results.contents.get(0));
+    assertFalse(deduplicator.join("key", results));
+  }
+
+  public void testCache() throws Exception {
+    BuildDeduplicator deduplicator = new BuildDeduplicator(cacheDir, 1024 * 1024,
+        MoreExecutors.sameThreadExecutor(), reporter);
+    Results results = new Results();
+    assertFalse(deduplicator.join("uncacheable", results));
+    deduplicator.finish("uncacheable", writeFile("result", "apk and keystore"), false);
+    assertFalse(deduplicator.join("uncacheable", results));
+
+    assertFalse(deduplicator.join("key", results));
+    File resultZip = writeFile("result", "apk");
+    deduplicator.finish("key", resultZip, true);
+    assertTrue(resultZip.exists());
+    assertTrue(deduplicator.join("key", results));
+    assertEquals(1, results.contents.size());
+    assertEquals("apk", results.contents.get(0));
+    assertEquals(1L, (long) reporter.getCacheStats().get(BuildDeduplicator.NAME)
+        .get(CacheEvent.HIT));
+
+    // Entries survive a restart
+    BuildDeduplicator restarted = new BuildDeduplicator(cacheDir, 1024 * 1024,
+        MoreExecutors.sameThreadExecutor(), reporter);
+    assertEquals(1, restarted.getEntryCount());
+    assertEquals(3L, restarted.getTotalBytes());
+  }
+
+  public void testEviction() throws Exception {
+    BuildDeduplicator deduplicator = new BuildDeduplicator(cacheDir, 5,
+        MoreExecutors.sameThreadExecutor(), reporter);
+    Results results = new Results();
+    assertFalse(deduplicator.join("first", results));
+    deduplicator.finish("first", writeFile("first", "apk"), true);
+    Thread.sleep(10);
+    assertFalse(deduplicator.join("second", results));
+    deduplicator.finish("second", writeFile("second", "apk"), true);
+    assertEquals(1, deduplicator.getEntryCount());
+    assertEquals(1L, (long) reporter.getCacheStats().get(BuildDeduplicator.NAME)
+        .get(CacheEvent.EVICTION));
+    assertTrue(deduplicator.join("second", results));
+    assertFalse(deduplicator.join("first", results));
+  }
+
+  private File writeFile(String name, String contents) throws IOException {
+    File file = new File(tempDir, name);
+    Files.write(contents, file, Charsets.UTF_8);
+    return file;
+  }
+
+  /**
+   * Writes a zip of the given names and contents, with the given entry time.
+   */
+  private File writeZip(String name, long time, String... namesAndContents) throws IOException {
+    File file = new File(tempDir, name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        ZipEntry entry = new ZipEntry(namesAndContents[i]);
+        entry.setTime(time);
+        out.putNextEntry(entry);
+        out.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+}
@@ -0,0 +1,145 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests BuildQueue class.
+ */
+public class BuildQueueTest extends TestCase {
+
+  private static final Runnable NOTHING = new Runnable() {
+    @Override
+    public void run() {
+    }
+  };
+
+  private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+  private Runnable blockUntil(final CountDownLatch latch, final String name) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        started.add(name);
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          // Finish the task
+        }
+      }
+    };
+  }
+
+  private Runnable record(final String name, final CountDownLatch done) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        started.add(name);
+        done.countDown();
+      }
+    };
+  }
+
+  public void testInteractiveBuildsStartFirst() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 10, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(3);
+    queue.submit("a", BuildQueue.Priority.RELEASE, blockUntil(release, "first"), NOTHING);
+    queue.submit("b", BuildQueue.Priority.RELEASE, record("release", done), NOTHING);
+    queue.submit("c", BuildQueue.Priority.INTERACTIVE, record("interactive1", done), NOTHING);
+    queue.submit("d", BuildQueue.Priority.INTERACTIVE, record("interactive2", done), NOTHING);
+    assertEquals(1, queue.getActiveTaskCount());
+    assertEquals(3, queue.getQueuedTaskCount());
+    assertEquals(2, queue.getQueuedTaskCount(BuildQueue.Priority.INTERACTIVE));
+    assertEquals(1, queue.getQueuedTaskCount(BuildQueue.Priority.RELEASE));
+
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("first", "interactive1", "interactive2", "release"), started);
+    assertEquals(0, queue.getQueuedTaskCount());
+  }
+
+  public void testRejectsWhenFull() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 2, 1, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    queue.submit("a", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "first"), NOTHING);
+    queue.submit("a", BuildQueue.Priority.INTERACTIVE, NOTHING, NOTHING);
+    try {
+      queue.submit("a", BuildQueue.Priority.INTERACTIVE, NOTHING, NOTHING);
+      fail("Expected the user's second queued build to be rejected");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    queue.submit("b", BuildQueue.Priority.INTERACTIVE, NOTHING, NOTHING);
+    try {
+      queue.submit("c", BuildQueue.Priority.INTERACTIVE, NOTHING, NOTHING);
+      fail("Expected a build to be rejected when the queue is full");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(2, queue.getRejectedTaskCount());
+    assertEquals(2, queue.getQueuedTaskCount());
+    release.countDown();
+  }
+
+  public void testNoQueueRejectsAtCapacity() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 0, 2, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    queue.submit("a", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "first"), NOTHING);
+    try {
+      queue.submit("b", BuildQueue.Priority.INTERACTIVE, NOTHING, NOTHING);
+      fail("Expected the build to be rejected");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    release.countDown();
+  }
+
+  public void testExpiredBuildsAreReported() throws Exception {
+    BuildQueue queue = new BuildQueue(1, 10, 10, 100);
+    CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch expired = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    queue.submit("a", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "first"), NOTHING);
+    queue.submit("b", BuildQueue.Priority.INTERACTIVE, record("expired", done),
+        new Runnable() {
+          @Override
+          public void run() {
+            expired.countDown();
+          }
+        });
+    Thread.sleep(200);
+    release.countDown();
+    assertTrue(expired.await(5, TimeUnit.SECONDS));
+    assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, queue.getExpiredTaskCount());
+    assertEquals(0, queue.getQueuedTaskCount());
+    assertFalse(started.contains("expired"));
+  }
+
+  public void testEstimatedWait() throws Exception {
+    BuildQueue queue = new BuildQueue(2, 10, 10, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    assertEquals(0, queue.getEstimatedWaitMillis());
+    queue.submit("a", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "1"), NOTHING);
+    queue.submit("b", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "2"), NOTHING);
+    long oneBuild = queue.getAverageBuildMillis();
+    assertEquals(oneBuild / 2, queue.getEstimatedWaitMillis());
+    queue.submit("c", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "3"), NOTHING);
+    queue.submit("d", BuildQueue.Priority.INTERACTIVE, blockUntil(release, "4"), NOTHING);
+    assertEquals(oneBuild * 3 / 2, queue.getEstimatedWaitMillis());
+    release.countDown();
+  }
+}
@@ -0,0 +1,65 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests CompileScheduler class.
+ */
+public class CompileSchedulerTest extends TestCase {
+
+  public void testComputeSlots() {
+    assertEquals(1, CompileScheduler.computeSlots(32, 0, 2048));
+    assertEquals(1, CompileScheduler.computeSlots(32, 1024, 2048));
+    assertEquals(4, CompileScheduler.computeSlots(32, 8192, 2048));
+    assertEquals(2, CompileScheduler.computeSlots(2, 8192, 2048));
+  }
+
+  public void testSlotsAreShared() throws Exception {
+    final CompileScheduler scheduler = new CompileScheduler(2);
+    CompileScheduler.Slot kawa = scheduler.acquire(CompileScheduler.Resource.KAWA);
+    CompileScheduler.Slot dx = scheduler.acquire(CompileScheduler.Resource.DX);
+    assertEquals(2, scheduler.getSlotsInUse());
+    assertEquals(1, scheduler.getActive(CompileScheduler.Resource.KAWA));
+    assertEquals(1, scheduler.getActive(CompileScheduler.Resource.DX));
+
+    final CompileScheduler.Slot[] queued = new CompileScheduler.Slot[1];
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queued[0] = scheduler.acquire(CompileScheduler.Resource.KAWA);
+          acquired.countDown();
+        } catch (InterruptedException e) {
+          // Test fails below
+        }
+      }
+    };
+    waiter.start();
+    assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, scheduler.getWaiting(CompileScheduler.Resource.KAWA));
+
+    dx.release();
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    waiter.join();
+    assertEquals(2, scheduler.getActive(CompileScheduler.Resource.KAWA));
+    assertEquals(0, scheduler.getActive(CompileScheduler.Resource.DX));
+    assertEquals(2, scheduler.getPeakActive(CompileScheduler.Resource.KAWA));
+    assertTrue(scheduler.getMaxWaitMillis(CompileScheduler.Resource.KAWA) >= 200);
+
+    kawa.release();
+    kawa.release();  // A second release has no effect
+    queued[0].release();
+    assertEquals(0, scheduler.getSlotsInUse());
+    assertEquals(2, scheduler.getPeakSlotsInUse());
+    assertEquals(2, scheduler.getAcquisitions(CompileScheduler.Resource.KAWA));
+  }
+}
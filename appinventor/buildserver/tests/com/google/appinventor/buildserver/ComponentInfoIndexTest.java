@@ -0,0 +1,76 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.components.common.ComponentDescriptorConstants;
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jettison.json.JSONArray;
+
+/**
+ * Tests ComponentInfoIndex class.
+ */
+public class ComponentInfoIndexTest extends TestCase {
+  private static final String TEXTING = "com.google.appinventor.components.runtime.Texting";
+  private static final String BUTTON = "com.google.appinventor.components.runtime.Button";
+  private static final String EXTENSION = "com.example.MyExtension";
+
+  private ComponentInfoIndex simple;
+
+  @Override
+  protected void setUp() throws Exception {
+    simple = new ComponentInfoIndex(null, new JSONArray("["
+        + "{\"type\": \"" + TEXTING + "\","
+        + " \"permissions\": [\"android.permission.SEND_SMS\", \"\"],"
+        + " \"conditionals\": {\"permissions\": {"
+        + "   \"ReceivingEnabled\": [\"android.permission.RECEIVE_SMS\"]}}},"
+        + "{\"type\": \"" + BUTTON + "\", \"permissions\": []}]"));
+  }
+
+  public void testInfo() {
+    ComponentInfoIndex.Component texting = simple.get(TEXTING);
+    assertEquals(Sets.newHashSet("android.permission.SEND_SMS"),
+        texting.getInfo(ComponentDescriptorConstants.PERMISSIONS_TARGET));
+    assertNull(texting.getInfo(ComponentDescriptorConstants.LIBRARIES_TARGET));
+    assertTrue(simple.get(BUTTON).getInfo(ComponentDescriptorConstants.PERMISSIONS_TARGET)
+        .isEmpty());
+    assertNull(simple.get(EXTENSION));
+  }
+
+  public void testConditionals() {
+    Map<String, Set<String>> blocks = simple.get(TEXTING)
+        .getConditionals(ComponentDescriptorConstants.PERMISSIONS_TARGET);
+    assertEquals(Sets.newHashSet("android.permission.RECEIVE_SMS"),
+        blocks.get("ReceivingEnabled"));
+    assertNull(simple.get(BUTTON)
+        .getConditionals(ComponentDescriptorConstants.PERMISSIONS_TARGET));
+  }
+
+  public void testInfoIsImmutable() {
+    try {
+      simple.get(TEXTING).getInfo(ComponentDescriptorConstants.PERMISSIONS_TARGET).add("x");
+      fail("Expected UnsupportedOperationException");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testWithExtensions() throws Exception {
+    assertSame(simple, simple.withExtensions(new JSONArray()));
+    ComponentInfoIndex withExtension = simple.withExtensions(new JSONArray(
+        "[{\"type\": \"" + EXTENSION + "\", \"assets\": [\"model.tflite\"]}]"));
+    assertEquals(Sets.newHashSet("model.tflite"), withExtension.get(EXTENSION)
+        .getInfo(ComponentDescriptorConstants.ASSETS_TARGET));
+    // The built-in components are shared, not copied
+    assertSame(simple.get(TEXTING), withExtension.get(TEXTING));
+    assertFalse(simple.contains(EXTENSION));
+  }
+}
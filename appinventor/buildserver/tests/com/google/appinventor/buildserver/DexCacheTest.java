@@ -0,0 +1,193 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests DexCache class.
+ */
+public class DexCacheTest extends TestCase {
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private File tempDir;
+  private File cacheDir;
+  private SimpleStatReporter reporter;
+  private final AtomicInteger produced = new AtomicInteger();
+
+  private final DexCache.Producer producer = new DexCache.Producer() {
+    @Override
+    public boolean produce(File input, File output) {
+      produced.incrementAndGet();
+      try {
+        writeDexJar(output, 1000);
+        return true;
+      } catch (Exception e) {
+        return false;
+      }
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "dexCache");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testEntriesAreReused() throws Exception {
+    DexCache cache = DexCache.open(cacheDir, 0, 0, reporter);
+    File lib = write("lib.jar", "library");
+    File first = cache.get(lib, producer);
+    assertNotNull(first);
+    assertEquals(first, cache.get(lib, producer));
+    assertEquals(1, produced.get());
+    assertEquals(1, cacheDir.list().length);
+
+    // Same content at another path
+    assertEquals(first, cache.get(write("copy.jar", "library"), producer));
+    assertEquals(1, produced.get());
+    assertEquals(2L, (long) reporter.getCacheStats().get(DexCache.NAME).get(CacheEvent.HIT));
+  }
+
+  public void testConcurrentBuildsProduceOnce() throws Exception {
+    final DexCache cache = DexCache.open(cacheDir, 0, 0, reporter);
+    final File lib = write("lib.jar", "library");
+    final CountDownLatch start = new CountDownLatch(1);
+    final File[] results = new File[4];
+    Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            results[index] = cache.get(lib, producer);
+          } catch (Exception e) {
+            // Checked below
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, produced.get());
+    for (File result : results) {
+      assertEquals(results[0], result);
+    }
+  }
+
+  public void testFailuresAreRemembered() throws Exception {
+    DexCache cache = DexCache.open(cacheDir, 0, 0, reporter);
+    DexCache.Producer broken = new DexCache.Producer() {
+      @Override
+      public boolean produce(File input, File output) {
+        produced.incrementAndGet();
+        try {
+          Files.write("not a zip", output, Charsets.UTF_8);
+        } catch (Exception e) {
+          // ignored
+        }
+        return true;
+      }
+    };
+    File lib = write("lib.jar", "library");
+    for (int i = 0; i < DexCache.MAX_FAILURES + 2; i++) {
+      assertNull(cache.get(lib, broken));
+    }
+    assertEquals(DexCache.MAX_FAILURES, produced.get());
+    assertEquals(0, cacheDir.list().length);
+  }
+
+  public void testTransientFailuresAreRetried() throws Exception {
+    DexCache cache = DexCache.open(cacheDir, 0, 0, reporter);
+    final AtomicInteger remainingFailures = new AtomicInteger(DexCache.MAX_FAILURES - 1);
+    DexCache.Producer flaky = new DexCache.Producer() {
+      @Override
+      public boolean produce(File input, File output) {
+        return remainingFailures.getAndDecrement() <= 0 && producer.produce(input, output);
+      }
+    };
+    File lib = write("lib.jar", "library");
+    for (int i = 0; i < DexCache.MAX_FAILURES - 1; i++) {
+      assertNull(cache.get(lib, flaky));
+    }
+    assertNotNull(cache.get(lib, flaky));
+    assertEquals(1, produced.get());
+  }
+
+  public void testScrubRemovesPartialAndCorruptEntries() throws Exception {
+    cacheDir.mkdirs();
+    File valid = new File(cacheDir, "dex-cached-aaaa.jar");
+    writeDexJar(valid, 10);
+    Files.write("partial", new File(cacheDir, ".tmp-1234-dex-cached-bbbb.jar"), Charsets.UTF_8);
+    Files.write("truncated", new File(cacheDir, "dex-cached-cccc.jar"), Charsets.UTF_8);
+    DexCache.open(cacheDir, 0, 0, reporter);
+    assertEquals(1, cacheDir.list().length);
+    assertTrue(valid.exists());
+  }
+
+  public void testOldAndExcessEntriesAreEvicted() throws Exception {
+    cacheDir.mkdirs();
+    long now = System.currentTimeMillis();
+    File ancient = new File(cacheDir, "dex-cached-1.jar");
+    File old = new File(cacheDir, "dex-cached-2.jar");
+    File recent = new File(cacheDir, "dex-cached-3.jar");
+    writeDexJar(ancient, 10);
+    writeDexJar(old, 4000);
+    writeDexJar(recent, 4000);
+    ancient.setLastModified(now - 30 * DAY);
+    old.setLastModified(now - 2 * DAY);
+    DexCache cache = DexCache.open(cacheDir, 5000, 7 * DAY, reporter);
+    assertFalse(ancient.exists());
+    assertFalse(old.exists());
+    // Recently used entries are kept even when the cache is over its limit
+    assertTrue(recent.exists());
+    cache.get(write("lib.jar", "library"), producer);
+    assertEquals(2, cacheDir.list().length);
+    assertEquals(2L, (long) reporter.getCacheStats().get(DexCache.NAME)
+        .get(CacheEvent.EVICTION));
+  }
+
+  private File write(String name, String content) throws Exception {
+    File file = new File(tempDir, name);
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+
+  private static void writeDexJar(File file, int size) throws Exception {
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+      zip.setLevel(0);
+      zip.putNextEntry(new ZipEntry("classes.dex"));
+      zip.write("dex\n035\0".getBytes(Charsets.US_ASCII));
+      zip.write(new byte[size]);
+      zip.closeEntry();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.common.testutils.TestUtils;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests the incremental mode of DexExecTask, which merges pre-dexed libraries.
+ */
+public class DexExecTaskTest extends TestCase {
+  private static final String LIB_DIR = TestUtils.APP_INVENTOR_ROOT_DIR + "/lib/";
+
+  private File tempDir;
+  private File classesDir;
+  private File outputDir;
+  private File dexCacheDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    classesDir = new File(tempDir, "classes");
+    outputDir = new File(tempDir, "out");
+    dexCacheDir = new File(tempDir, "dexCache");
+    outputDir.mkdirs();
+    dexCacheDir.mkdirs();
+    // Stand-in for the classes compiled from the user's screens
+    extractClasses(new File(LIB_DIR + "json/json.jar"), classesDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testMergesPreDexedLibraries() throws Exception {
+    File mainLib = new File(LIB_DIR + "args4j/args4j-2.0.18.jar");
+    File secondaryLib = new File(LIB_DIR + "commons-io/commons-io-2.0.1.jar");
+    assertTrue(newTask().executeIncremental(classesDir, Arrays.asList(mainLib),
+        Arrays.asList(secondaryLib)));
+    assertTrue(new File(outputDir, "classes.dex").isFile());
+    assertTrue(new File(outputDir, "classes2.dex").isFile());
+    assertFalse(new File(outputDir, "classes3.dex").exists());
+    assertFalse(new File(outputDir, "incremental-dex").exists());
+    assertEquals(2, dexCacheDir.list().length);
+
+    // The main dex file contains the app classes and the main dex library
+    String mainDex = new String(java.nio.file.Files.readAllBytes(
+        new File(outputDir, "classes.dex").toPath()), "ISO-8859-1");
+    assertTrue(mainDex.contains("Lorg/json/JSONObject;"));
+    assertTrue(mainDex.contains("Lorg/kohsuke/args4j/CmdLineParser;"));
+    assertFalse(mainDex.contains("Lorg/apache/commons/io/IOUtils;"));
+
+    // A second build reuses the pre-dexed libraries
+    List<String> cached = Arrays.asList(dexCacheDir.list());
+    Collections.sort(cached);
+    FileUtils.deleteQuietly(outputDir);
+    outputDir.mkdirs();
+    assertTrue(newTask().executeIncremental(classesDir, Arrays.asList(mainLib),
+        Arrays.asList(secondaryLib)));
+    List<String> reused = Arrays.asList(dexCacheDir.list());
+    Collections.sort(reused);
+    assertEquals(cached, reused);
+  }
+
+  public void testFailsWithoutDexCache() {
+    DexExecTask task = newTask();
+    task.setDisableDexMerger(true);
+    assertFalse(task.executeIncremental(classesDir, Collections.<File>emptyList(),
+        Collections.<File>emptyList()));
+  }
+
+  private DexExecTask newTask() {
+    DexExecTask task = new DexExecTask();
+    task.setExecutable(LIB_DIR + "android/tools/dx.jar");
+    task.setOutput(outputDir.getAbsolutePath());
+    task.setDexedLibs(dexCacheDir.getAbsolutePath());
+    task.setChildProcessRamMb(1024);
+    task.setMainDexClassesFile(new File(classesDir, "main-classes.txt").getAbsolutePath());
+    return task;
+  }
+
+  private static void extractClasses(File jar, File dir) throws Exception {
+    try (ZipFile zip = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(".class")) {
+          File target = new File(dir, entry.getName());
+          Files.createParentDirs(target);
+          try (InputStream in = zip.getInputStream(entry);
+              OutputStream out = new FileOutputStream(target)) {
+            ByteStreams.copy(in, out);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests DiskLruCache class.
+ */
+public class DiskLruCacheTest extends TestCase {
+  private static final String NAME = "test";
+
+  private static final DiskLruCache.Reader<String> READ_STRING =
+      new DiskLruCache.Reader<String>() {
+        @Override
+        public String read(File entry) throws IOException {
+          return Files.toString(entry, Charsets.UTF_8);
+        }
+      };
+
+  private File cacheDir;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    cacheDir = Files.createTempDir();
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(cacheDir);
+  }
+
+  public void testStoreAndRestore() throws Exception {
+    DiskLruCache cache = new DiskLruCache(cacheDir, ".txt", 1024, NAME, reporter);
+    assertNull(cache.restore("key", READ_STRING));
+    cache.store("key", writeString("contents"));
+    assertEquals("contents", cache.restore("key", READ_STRING));
+    assertTrue(new File(cacheDir, "key.txt").isFile());
+    // An entry is only written once
+    cache.store("key", writeString("other contents"));
+    assertEquals("contents", cache.restore("key", READ_STRING));
+    assertEquals(2L, (long) reporter.getCacheStats().get(NAME).get(CacheEvent.HIT));
+    assertEquals(1L, (long) reporter.getCacheStats().get(NAME).get(CacheEvent.MISS));
+  }
+
+  public void testFailedWritesAreNotStored() throws Exception {
+    DiskLruCache cache = new DiskLruCache(cacheDir, ".txt", 1024, NAME, reporter);
+    cache.store("key", new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        Files.write("partial", entry, Charsets.UTF_8);
+        throw new IOException("disk full");
+      }
+    });
+    assertEquals(0, cache.getEntryCount());
+    assertNull(cache.restore("key", READ_STRING));
+    String[] children = cacheDir.list();
+    assertEquals(0, children.length);
+  }
+
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    DiskLruCache cache = new DiskLruCache(cacheDir, ".txt", 20, NAME, reporter);
+    cache.store("a", writeString("0123456789"));
+    Thread.sleep(10);
+    cache.store("b", writeString("0123456789"));
+    Thread.sleep(10);
+    assertNotNull(cache.restore("a", READ_STRING));
+    cache.store("c", writeString("0123456789"));
+
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(20, cache.getTotalBytes());
+    assertFalse(new File(cacheDir, "b.txt").exists());
+    assertNotNull(cache.restore("a", READ_STRING));
+    assertNotNull(cache.restore("c", READ_STRING));
+    assertEquals(1L, (long) reporter.getCacheStats().get(NAME).get(CacheEvent.EVICTION));
+  }
+
+  public void testEntriesAreIndexedAtStartup() throws Exception {
+    DiskLruCache cache = new DiskLruCache(cacheDir, "", 1024, NAME, reporter);
+    cache.store("dir", new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        File file = new File(entry, "sub/file");
+        Files.createParentDirs(file);
+        Files.write("12345", file, Charsets.UTF_8);
+        return file.length();
+      }
+    });
+    File partial = new File(cacheDir, ".tmp-1234/file");
+    Files.createParentDirs(partial);
+    Files.write("partial", partial, Charsets.UTF_8);
+
+    DiskLruCache restarted = new DiskLruCache(cacheDir, "", 1024, NAME, reporter);
+    assertEquals(1, restarted.getEntryCount());
+    assertEquals(5, restarted.getTotalBytes());
+    assertFalse(partial.getParentFile().exists());
+    assertNotNull(restarted.restore("dir", new DiskLruCache.Reader<Boolean>() {
+      @Override
+      public Boolean read(File entry) {
+        return new File(entry, "sub/file").isFile();
+      }
+    }));
+
+    // A smaller limit evicts entries at startup
+    DiskLruCache smaller = new DiskLruCache(cacheDir, "", 4, NAME, reporter);
+    assertEquals(0, smaller.getEntryCount());
+    assertFalse(new File(cacheDir, "dir").exists());
+  }
+
+  private static DiskLruCache.Writer writeString(final String contents) {
+    return new DiskLruCache.Writer() {
+      @Override
+      public long write(File entry) throws IOException {
+        Files.write(contents, entry, Charsets.UTF_8);
+        return entry.length();
+      }
+    };
+  }
+}
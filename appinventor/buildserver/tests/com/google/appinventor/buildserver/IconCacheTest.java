@@ -0,0 +1,100 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests IconCache class.
+ */
+public class IconCacheTest extends TestCase {
+  private static final List<String> PATHS = Arrays.asList("drawable/ya.png",
+      "mipmap-mdpi/ic_launcher.png", "mipmap-hdpi/ic_launcher.png");
+
+  private File tempDir;
+  private File cacheDir;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testKey() {
+    byte[] icon = "icon".getBytes(Charsets.UTF_8);
+    List<?> parameters = Arrays.asList(PATHS, Arrays.asList(48, 72));
+    String key = IconCache.key(icon, parameters);
+    assertEquals(key, IconCache.key("icon".getBytes(Charsets.UTF_8), parameters));
+    assertFalse(key.equals(IconCache.key("new icon".getBytes(Charsets.UTF_8), parameters)));
+    assertFalse(key.equals(IconCache.key(icon, Arrays.asList(PATHS, Arrays.asList(48, 96)))));
+  }
+
+  public void testStoreAndRestore() throws Exception {
+    IconCache cache = new IconCache(cacheDir, 1024 * 1024, reporter);
+    File buildRes = writeIcons("build/res", "icon");
+    File otherRes = new File(tempDir, "other/res");
+    assertFalse(cache.restore("key", otherRes, PATHS));
+    cache.store("key", buildRes, PATHS);
+    assertTrue(cache.restore("key", otherRes, PATHS));
+    for (String path : PATHS) {
+      assertEquals("icon " + path, Files.toString(new File(otherRes, path), Charsets.UTF_8));
+    }
+    assertEquals(1L, (long) reporter.getCacheStats().get(IconCache.NAME).get(CacheEvent.HIT));
+    assertEquals(1L, (long) reporter.getCacheStats().get(IconCache.NAME).get(CacheEvent.MISS));
+
+    // Entries survive a restart
+    IconCache restarted = new IconCache(cacheDir, 1024 * 1024, reporter);
+    assertEquals(1, restarted.getEntryCount());
+    assertEquals(cache.getTotalBytes(), restarted.getTotalBytes());
+  }
+
+  public void testEviction() throws Exception {
+    File buildRes = writeIcons("build/res", "icon");
+    long entryBytes = 0;
+    for (String path : PATHS) {
+      entryBytes += new File(buildRes, path).length();
+    }
+    IconCache cache = new IconCache(cacheDir, entryBytes + 1, reporter);
+    cache.store("first", buildRes, PATHS);
+    Thread.sleep(10);
+    cache.store("second", buildRes, PATHS);
+    assertEquals(1, cache.getEntryCount());
+    File restored = new File(tempDir, "restored");
+    assertFalse(cache.restore("first", restored, PATHS));
+    assertTrue(cache.restore("second", restored, PATHS));
+    assertEquals(1L, (long) reporter.getCacheStats().get(IconCache.NAME)
+        .get(CacheEvent.EVICTION));
+    assertFalse(new File(cacheDir, "first").exists());
+  }
+
+  private File writeIcons(String resPath, String contents) throws Exception {
+    File resDir = new File(tempDir, resPath);
+    for (String path : PATHS) {
+      File file = new File(resDir, path);
+      Files.createParentDirs(file);
+      Files.write(contents + " " + path, file, Charsets.UTF_8);
+    }
+    return resDir;
+  }
+}
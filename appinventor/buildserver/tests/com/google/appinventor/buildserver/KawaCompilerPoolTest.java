@@ -0,0 +1,138 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.ProcessUsage;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests KawaCompilerPool class.
+ */
+public class KawaCompilerPoolTest extends TestCase {
+  private File tempDir;
+  private String kawaJar;
+  private String runtime;
+  private CompileScheduler scheduler;
+  private KawaCompilerPool pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    kawaJar = new File(kawa.repl.class.getProtectionDomain().getCodeSource().getLocation()
+        .toURI()).getAbsolutePath();
+    runtime = write("runtime.scm",
+        "(define-syntax twice (syntax-rules () ((_ x) (begin x x))))\n");
+    scheduler = new CompileScheduler(2);
+    pool = new KawaCompilerPool(scheduler, 2, 3, 0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdown();
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testWorkerIsReused() throws Exception {
+    String source = write("Screen1.yail", "(define (foo) (twice (java.lang.System:gc)))\n");
+    assertCompiles(source, "out1", false);
+    assertCompiles(source, "out2", true);
+    assertEquals(1, pool.getStartedWorkerCount());
+    assertEquals(1, pool.getIdleWorkerCount());
+    assertEquals(1, pool.getWarmCompilationCount());
+  }
+
+  public void testWorkerIsRetiredAfterMaxBuilds() throws Exception {
+    String source = write("Screen1.yail", "(define (foo) (twice (java.lang.System:gc)))\n");
+    for (int i = 0; i < 3; i++) {
+      assertCompiles(source, "out" + i, i > 0);
+    }
+    assertEquals(1, pool.getRetiredWorkerCount());
+    // The replacement is warm by the time the next build arrives
+    assertEquals(2, pool.getStartedWorkerCount());
+    assertEquals(1, pool.getIdleWorkerCount());
+  }
+
+  public void testCompilationUsageIsReported() throws Exception {
+    final List<ProcessUsage> usages = new ArrayList<ProcessUsage>();
+    ProcessMonitor.setListener(new ProcessMonitor.Listener() {
+      @Override
+      public void processFinished(ProcessUsage usage) {
+        usages.add(usage);
+      }
+    });
+    try {
+      String source = write("Screen1.yail", "(define (foo) (twice (java.lang.System:gc)))\n");
+      assertCompiles(source, "out", false);
+    } finally {
+      ProcessMonitor.setListener(null);
+    }
+    assertEquals(1, usages.size());
+    assertEquals(KawaCompilerPool.TOOL, usages.get(0).getTool());
+    assertTrue(usages.get(0).getWallMillis() >= 0);
+  }
+
+  public void testIdleWorkersHoldSlots() throws Exception {
+    String source = write("Screen1.yail", "(define (foo) (twice (java.lang.System:gc)))\n");
+    assertCompiles(source, "out", false);
+    assertEquals(1, pool.getIdleWorkerCount());
+    assertEquals(1, scheduler.getSlotsInUse());
+
+    // Once the free slot is taken, the next request stops the idle worker to get its slot
+    CompileScheduler.Slot first = scheduler.acquire(CompileScheduler.Resource.DX);
+    assertEquals(1, pool.getIdleWorkerCount());
+    CompileScheduler.Slot second = scheduler.acquire(CompileScheduler.Resource.DX);
+    assertEquals(0, pool.getIdleWorkerCount());
+    assertEquals(2, scheduler.getSlotsInUse());
+    first.release();
+    second.release();
+    assertEquals(0, scheduler.getSlotsInUse());
+  }
+
+  public void testCompileErrorIsReported() throws Exception {
+    String source = write("Screen1.yail", "(define (foo) (twice\n");
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    KawaCompilerPool.Outcome outcome = compile(source, "out", err);
+    assertTrue(outcome.handled);
+    assertFalse(outcome.success);
+    assertTrue(err.toString().contains("Screen1.yail"));
+    assertFalse(new File(tempDir, "out/test/Screen1.class").exists());
+  }
+
+  private void assertCompiles(String source, String outDir, boolean warm) throws Exception {
+    KawaCompilerPool.Outcome outcome = compile(source, outDir, new ByteArrayOutputStream());
+    assertTrue(outcome.handled);
+    assertTrue(outcome.success);
+    assertEquals(warm, outcome.warm);
+    assertTrue(new File(tempDir, outDir + "/test/Screen1.class").exists());
+  }
+
+  private KawaCompilerPool.Outcome compile(String source, String outDir,
+      ByteArrayOutputStream err) throws InterruptedException {
+    File classesDir = new File(tempDir, outDir);
+    classesDir.mkdirs();
+    return pool.compile(kawaJar, "", runtime, 256, classesDir, "test.",
+        Arrays.asList(source), new PrintStream(new ByteArrayOutputStream()),
+        new PrintStream(err, true));
+  }
+
+  private String write(String name, String content) throws Exception {
+    File file = new File(tempDir, name);
+    Files.write(content, file, Charsets.UTF_8);
+    return file.getAbsolutePath();
+  }
+}
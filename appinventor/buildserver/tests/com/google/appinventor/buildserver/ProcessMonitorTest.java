@@ -0,0 +1,99 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.ProcessUsage;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ProcessMonitor.
+ */
+public class ProcessMonitorTest extends TestCase {
+
+  private File procDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    procDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : procDir.listFiles()) {
+      file.delete();
+    }
+    procDir.delete();
+    ProcessMonitor.setListener(null);
+    super.tearDown();
+  }
+
+  public void testToolName() {
+    assertEquals("aapt2", ProcessMonitor.toolName(new String[] {
+        "/opt/android/build-tools/aapt2", "compile", "res/values/strings.xml" }));
+    assertEquals("dx", ProcessMonitor.toolName(new String[] {
+        "/usr/bin/java", "-mx1024m", "-jar", "/tools/dx.jar", "--dex" }));
+    assertEquals("bundletool", ProcessMonitor.toolName(new String[] {
+        "java", "-jar", "-mx800m", "/tools/bundletool.jar", "build-bundle" }));
+    assertEquals("kawa.repl", ProcessMonitor.toolName(new String[] {
+        "java", "-Dfile.encoding=UTF-8", "-cp", "/tools/kawa.jar", "kawa.repl", "-f" }));
+    assertEquals("unknown", ProcessMonitor.toolName(new String[0]));
+  }
+
+  public void testReadSample() throws IOException {
+    // The command name contains spaces and parentheses, which must not shift the fields
+    write("stat", "1234 (my (odd) tool) S 1 1234 1234 0 -1 4194304 100 0 0 0 250 40 0 0 20 0 "
+        + "1 0 100 1000000 500\n");
+    write("status", "Name:\tmy tool\nVmPeak:\t  300000 kB\nVmHWM:\t  123456 kB\n"
+        + "VmRSS:\t  100000 kB\n");
+    write("io", "rchar: 4096\nwchar: 2048\nsyscr: 10\nsyscw: 5\n");
+    ProcessMonitor.Sample sample = ProcessMonitor.readSample(procDir);
+    assertNotNull(sample);
+    assertEquals(2500, sample.userCpuMillis);
+    assertEquals(400, sample.systemCpuMillis);
+    assertEquals(123456, sample.peakRssKb);
+    assertEquals(4096, sample.readBytes);
+    assertEquals(2048, sample.writeBytes);
+  }
+
+  public void testReadSampleOfExitedProcess() {
+    assertNull(ProcessMonitor.readSample(new File(procDir, "gone")));
+    assertNull(ProcessMonitor.readSample(null));
+  }
+
+  public void testListenerReceivesUsage() throws IOException {
+    final List<ProcessUsage> usages = new ArrayList<ProcessUsage>();
+    ProcessMonitor.setListener(new ProcessMonitor.Listener() {
+      @Override
+      public void processFinished(ProcessUsage usage) {
+        usages.add(usage);
+      }
+    });
+    StringBuffer out = new StringBuffer();
+    StringBuffer err = new StringBuffer();
+    assertEquals(0, Execution.execute(null, new String[] { "sh", "-c", "exit 0" }, out, err));
+    assertEquals(1, usages.size());
+    assertEquals("sh", usages.get(0).getTool());
+    assertTrue(ProcessMonitor.getTotals().get("sh").getRuns() >= 1);
+
+    // Once the listener is removed, the thread's processes are no longer reported to it
+    ProcessMonitor.setListener(null);
+    assertEquals(0, Execution.execute(null, new String[] { "sh", "-c", "exit 0" }, out, err));
+    assertEquals(1, usages.size());
+  }
+
+  private void write(String name, String content) throws IOException {
+    Files.write(content, new File(procDir, name), Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,108 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests BuildServer.ProgressReporter class.
+ */
+public class ProgressReporterTest extends TestCase {
+
+  private static class RecordingReporter extends BuildServer.ProgressReporter {
+    final List<Integer> sent = new ArrayList<Integer>();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    volatile CountDownLatch release = null;
+    volatile CountDownLatch done = null;
+    volatile int expectedLast = -1;
+
+    RecordingReporter(long minIntervalMs) {
+      super("http://localhost/receivebuild", null, minIntervalMs);
+    }
+
+    @Override
+    void send(int progress) {
+      CountDownLatch releaseLatch = release;
+      if (releaseLatch != null) {
+        blocked.countDown();
+        try {
+          releaseLatch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (sent) {
+        sent.add(progress);
+      }
+      if (progress == expectedLast && done != null) {
+        done.countDown();
+      }
+    }
+
+    List<Integer> getSent() {
+      synchronized (sent) {
+        return new ArrayList<Integer>(sent);
+      }
+    }
+  }
+
+  public void testReportsAreCoalesced() throws Exception {
+    RecordingReporter reporter = new RecordingReporter(200);
+    reporter.done = new CountDownLatch(1);
+    reporter.expectedLast = 100;
+    for (int progress = 0; progress <= 100; progress++) {
+      reporter.report(progress);
+    }
+    assertTrue(reporter.done.await(5, TimeUnit.SECONDS));
+    List<Integer> sent = reporter.getSent();
+    assertTrue("Sent " + sent, sent.size() <= 2);
+    assertEquals(100, (int) sent.get(sent.size() - 1));
+  }
+
+  public void testReportsAreRateLimited() throws Exception {
+    RecordingReporter reporter = new RecordingReporter(300);
+    reporter.done = new CountDownLatch(1);
+    reporter.expectedLast = 10;
+    reporter.report(5);
+    Thread.sleep(100);
+    long start = System.currentTimeMillis();
+    reporter.report(10);
+    assertTrue(reporter.done.await(5, TimeUnit.SECONDS));
+    assertTrue(System.currentTimeMillis() - start >= 150);
+    assertEquals(2, reporter.getSent().size());
+  }
+
+  public void testReportDoesNotWaitForSend() throws Exception {
+    RecordingReporter reporter = new RecordingReporter(0);
+    reporter.release = new CountDownLatch(1);
+    reporter.report(10);
+    assertTrue(reporter.blocked.await(5, TimeUnit.SECONDS));
+    // The sender is stuck, but reporting more progress returns immediately
+    long start = System.currentTimeMillis();
+    for (int progress = 11; progress <= 50; progress++) {
+      reporter.report(progress);
+    }
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    reporter.release.countDown();
+  }
+
+  public void testNothingIsSentAfterFinish() throws Exception {
+    RecordingReporter reporter = new RecordingReporter(500);
+    reporter.report(10);
+    reporter.report(20);
+    reporter.finish();
+    int sentAtFinish = reporter.getSent().size();
+    reporter.report(30);
+    Thread.sleep(700);
+    assertEquals(sentAtFinish, reporter.getSent().size());
+    assertFalse(reporter.getSent().contains(30));
+  }
+}
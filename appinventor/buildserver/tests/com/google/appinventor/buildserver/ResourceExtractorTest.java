@@ -0,0 +1,109 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests ResourceExtractor class.
+ */
+public class ResourceExtractorTest extends TestCase {
+  // Class files are resources too, and are always on the class path of the tests
+  private static final String RESOURCE = "/com/google/appinventor/buildserver/Compiler.class";
+  private static final String OTHER_RESOURCE =
+      "/com/google/appinventor/buildserver/ResourceExtractor.class";
+
+  private File tempDir;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testExtract() throws Exception {
+    ResourceExtractor extractor = new ResourceExtractor(tempDir, reporter);
+    String path = extractor.get(RESOURCE);
+    assertEquals(new File(extractor.getDirectory(), RESOURCE.substring(1)).getAbsolutePath(),
+        path);
+    assertTrue(Arrays.equals(Resources.toByteArray(Compiler.class.getResource(RESOURCE)),
+        Files.toByteArray(new File(path))));
+    assertSame(path, extractor.get(RESOURCE));
+    assertEquals(1L, getCount(CacheEvent.MISS));
+  }
+
+  public void testReuseAfterRestart() throws Exception {
+    String path = new ResourceExtractor(tempDir, reporter).get(RESOURCE);
+    long modified = new File(path).lastModified();
+    ResourceExtractor restarted = new ResourceExtractor(tempDir, reporter);
+    assertEquals(path, restarted.get(RESOURCE));
+    assertEquals(modified, new File(path).lastModified());
+    assertEquals(1L, getCount(CacheEvent.MISS));
+    assertEquals(1L, getCount(CacheEvent.HIT));
+  }
+
+  public void testCorruptFileIsExtractedAgain() throws Exception {
+    String path = new ResourceExtractor(tempDir, reporter).get(RESOURCE);
+    Files.write("not a class", new File(path), Charsets.UTF_8);
+    assertEquals(path, new ResourceExtractor(tempDir, reporter).get(RESOURCE));
+    assertTrue(Arrays.equals(Resources.toByteArray(Compiler.class.getResource(RESOURCE)),
+        Files.toByteArray(new File(path))));
+    assertEquals(2L, getCount(CacheEvent.MISS));
+  }
+
+  public void testPrepare() throws Exception {
+    ResourceExtractor extractor = new ResourceExtractor(tempDir, reporter);
+    extractor.prepare(Arrays.asList(RESOURCE, OTHER_RESOURCE, "/no/such/resource.jar"), 2);
+    assertEquals(2L, getCount(CacheEvent.MISS));
+    extractor.get(RESOURCE);
+    extractor.get(OTHER_RESOURCE);
+    assertEquals(2L, getCount(CacheEvent.MISS));
+  }
+
+  public void testMissingResource() throws Exception {
+    try {
+      new ResourceExtractor(tempDir, reporter).get("/no/such/resource.jar");
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testUnusedVersionsAreRemoved() throws Exception {
+    File oldVersion = new File(tempDir, "0123456789abcdef");
+    assertTrue(new File(oldVersion, "tools").mkdirs());
+    oldVersion.setLastModified(System.currentTimeMillis() - 30L * 24 * 60 * 60 * 1000);
+    File recentVersion = new File(tempDir, "fedcba9876543210");
+    assertTrue(recentVersion.mkdirs());
+    new ResourceExtractor(tempDir, reporter);
+    assertFalse(oldVersion.exists());
+    assertTrue(recentVersion.exists());
+  }
+
+  private long getCount(CacheEvent event) {
+    Map<CacheEvent, Long> events = reporter.getCacheStats().get(ResourceExtractor.NAME);
+    Long count = events == null ? null : events.get(event);
+    return count == null ? 0 : count;
+  }
+}
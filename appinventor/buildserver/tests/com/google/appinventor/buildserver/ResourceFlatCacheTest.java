@@ -0,0 +1,133 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests ResourceFlatCache class.
+ */
+public class ResourceFlatCacheTest extends TestCase {
+  private static final List<String> OPTIONS = Collections.singletonList("--no-crunch");
+
+  private File tempDir;
+  private File cacheDir;
+  private File tool;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    tool = write("aapt2", "aapt2 binary");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testKey() throws Exception {
+    ResourceFlatCache cache = new ResourceFlatCache(cacheDir, 1024 * 1024, reporter);
+    File icon = write("res/drawable/icon.png", "icon");
+    String key = cache.key(tool, OPTIONS, "drawable/icon.png", icon);
+    assertEquals(key, cache.key(tool, OPTIONS, "drawable/icon.png", icon));
+    assertFalse(key.equals(cache.key(tool, OPTIONS, "mipmap-hdpi/icon.png", icon)));
+    assertFalse(key.equals(cache.key(tool, Collections.<String>emptyList(), "drawable/icon.png",
+        icon)));
+    assertFalse(key.equals(cache.key(write("other-aapt2", "other aapt2 binary"), OPTIONS,
+        "drawable/icon.png", icon)));
+    Files.write("new icon", icon, Charsets.UTF_8);
+    assertFalse(key.equals(cache.key(tool, OPTIONS, "drawable/icon.png", icon)));
+  }
+
+  public void testStoreAndRestore() throws Exception {
+    ResourceFlatCache cache = new ResourceFlatCache(cacheDir, 1024 * 1024, reporter);
+    File target = new File(tempDir, "restored.flat");
+    assertFalse(cache.restore("key", target));
+    cache.store("key", write("compiled/drawable_icon.png.flat", "flat"));
+    assertTrue(cache.restore("key", target));
+    assertEquals("flat", Files.toString(target, Charsets.UTF_8));
+    assertEquals(1L, (long) reporter.getCacheStats().get(ResourceFlatCache.NAME)
+        .get(CacheEvent.HIT));
+    assertEquals(1L, (long) reporter.getCacheStats().get(ResourceFlatCache.NAME)
+        .get(CacheEvent.MISS));
+
+    // Entries survive a restart
+    ResourceFlatCache restarted = new ResourceFlatCache(cacheDir, 1024 * 1024, reporter);
+    assertEquals(1, restarted.getEntryCount());
+    assertEquals(4, restarted.getTotalBytes());
+  }
+
+  public void testEviction() throws Exception {
+    ResourceFlatCache cache = new ResourceFlatCache(cacheDir, 10, reporter);
+    cache.store("first", write("first.flat", "123456"));
+    Thread.sleep(10);
+    cache.store("second", write("second.flat", "123456"));
+    assertEquals(1, cache.getEntryCount());
+    assertFalse(cache.restore("first", new File(tempDir, "restored.flat")));
+    assertTrue(cache.restore("second", new File(tempDir, "restored.flat")));
+    assertEquals(1L, (long) reporter.getCacheStats().get(ResourceFlatCache.NAME)
+        .get(CacheEvent.EVICTION));
+  }
+
+  public void testMatchFlatFiles() {
+    Map<String, String> matches = ResourceFlatCache.matchFlatFiles(
+        Arrays.asList("drawable/icon.png", "mipmap-hdpi/ic_launcher.png",
+            "mipmap-mdpi/ic_launcher.png", "values/values.xml", "values-v21/values-v21.xml",
+            "drawable/frame.9.png", "xml/missing.xml"),
+        Arrays.asList("drawable_icon.png.flat", "mipmap-hdpi-v4_ic_launcher.png.flat",
+            "mipmap-mdpi-v4_ic_launcher.png.flat", "values_values.arsc.flat",
+            "values-v21_values-v21.arsc.flat", "drawable_frame.9.png.flat"));
+    assertEquals(6, matches.size());
+    assertEquals("drawable_icon.png.flat", matches.get("drawable/icon.png"));
+    assertEquals("mipmap-hdpi-v4_ic_launcher.png.flat",
+        matches.get("mipmap-hdpi/ic_launcher.png"));
+    assertEquals("mipmap-mdpi-v4_ic_launcher.png.flat",
+        matches.get("mipmap-mdpi/ic_launcher.png"));
+    assertEquals("values_values.arsc.flat", matches.get("values/values.xml"));
+    assertEquals("values-v21_values-v21.arsc.flat", matches.get("values-v21/values-v21.xml"));
+    assertEquals("drawable_frame.9.png.flat", matches.get("drawable/frame.9.png"));
+    assertNull(matches.get("xml/missing.xml"));
+  }
+
+  public void testAmbiguousMatchesAreLeftOut() {
+    Map<String, String> matches = ResourceFlatCache.matchFlatFiles(
+        Arrays.asList("drawable-hdpi/icon.png", "drawable-hdpi-v4/icon.png"),
+        Arrays.asList("drawable-hdpi-v4_icon.png.flat"));
+    assertTrue(matches.isEmpty());
+  }
+
+  public void testListResourceFiles() throws Exception {
+    write("res/drawable/icon.png", "png");
+    write("res/values/strings.xml", "<resources/>");
+    write("res/stray.txt", "not a resource");
+    write("res/raw/nested/deep.bin", "not a resource either");
+    assertEquals(Arrays.asList("drawable/icon.png", "values/strings.xml"),
+        ResourceFlatCache.listResourceFiles(new File(tempDir, "res")));
+  }
+
+  private File write(String path, String contents) throws Exception {
+    File file = new File(tempDir, path);
+    Files.createParentDirs(file);
+    Files.write(contents, file, Charsets.UTF_8);
+    return file;
+  }
+}
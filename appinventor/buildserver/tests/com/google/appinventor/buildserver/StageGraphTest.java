@@ -0,0 +1,204 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.HistogramStatReporter;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests StageGraph class.
+ */
+public class StageGraphTest extends TestCase {
+  private static final String[] NONE = new String[0];
+
+  private ExecutorService executor;
+  private HistogramStatReporter reporter;
+  private List<String> ran;
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    reporter = new HistogramStatReporter();
+    ran = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  public void testDependenciesRunFirst() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("link", new String[] { "res", "manifest" }, new String[] { "apk" }, record("link"))
+        .add("icons", NONE, new String[] { "res" }, record("icons"))
+        .add("values", NONE, new String[] { "res" }, record("values"))
+        .add("manifest", NONE, new String[] { "manifest" }, record("manifest"));
+    assertTrue(graph.run(executor));
+    assertEquals(4, ran.size());
+    assertEquals("link", ran.get(3));
+    assertEquals("link", graph.getCriticalPath().get(graph.getCriticalPath().size() - 1));
+    assertEquals(Arrays.asList("icons", "link", "manifest", "values"),
+        new ArrayList<String>(reporter.getStages().keySet()));
+  }
+
+  public void testIndependentStagesRunTogether() {
+    // Each stage waits for the other to start, which only finishes if they run at the same time
+    final CountDownLatch started = new CountDownLatch(2);
+    StageGraph.Stage stage = new StageGraph.Stage() {
+      @Override
+      public boolean run() {
+        started.countDown();
+        try {
+          return started.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          return false;
+        }
+      }
+    };
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("resources", NONE, new String[] { "res" }, stage)
+        .add("classes", NONE, new String[] { "classes" }, stage);
+    assertTrue(graph.run(executor));
+  }
+
+  public void testFailureStopsDependents() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("aapt", NONE, new String[] { "resources" }, new StageGraph.Stage() {
+          @Override
+          public boolean run() {
+            ran.add("aapt");
+            return false;
+          }
+        })
+        .add("rClasses", new String[] { "resources" }, new String[] { "r" }, record("rClasses"));
+    assertFalse(graph.run(executor));
+    assertEquals(Collections.singletonList("aapt"), ran);
+  }
+
+  public void testExceptionIsRethrown() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("broken", NONE, new String[] { "x" }, new StageGraph.Stage() {
+          @Override
+          public boolean run() {
+            throw new IllegalArgumentException("broken");
+          }
+        });
+    try {
+      graph.run(executor);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertEquals("broken", e.getMessage());
+    }
+  }
+
+  public void testInterruptWaitsForRunningStages() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final StageGraph graph = new StageGraph(null, reporter)
+        .add("dex", NONE, new String[] { "dex" }, new StageGraph.Stage() {
+          @Override
+          public boolean run() {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              return false;
+            }
+            ran.add("dex");
+            return true;
+          }
+        })
+        .add("apk", new String[] { "dex" }, new String[] { "apk" }, record("apk"));
+    final boolean[] result = new boolean[2];
+    Thread runner = new Thread() {
+      @Override
+      public void run() {
+        result[0] = graph.run(executor);
+        result[1] = Thread.currentThread().isInterrupted();
+      }
+    };
+    runner.start();
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    runner.interrupt();
+    runner.join(200);
+    assertTrue("run returned while a stage was running", runner.isAlive());
+    release.countDown();
+    runner.join(10000);
+    assertFalse(runner.isAlive());
+    assertFalse(result[0]);
+    assertTrue(result[1]);
+    assertEquals(Collections.singletonList("dex"), ran);
+  }
+
+  public void testMissingInput() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("link", new String[] { "manifest" }, new String[] { "apk" }, record("link"));
+    try {
+      graph.run(executor);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertTrue(ran.isEmpty());
+  }
+
+  public void testCycle() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("a", new String[] { "b" }, new String[] { "a" }, record("a"))
+        .add("b", new String[] { "a" }, new String[] { "b" }, record("b"));
+    try {
+      graph.run(executor);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testCriticalPath() {
+    StageGraph graph = new StageGraph(null, reporter)
+        .add("icons", NONE, new String[] { "res" }, sleep("icons", 200))
+        .add("values", NONE, new String[] { "res" }, record("values"))
+        .add("aapt", new String[] { "res" }, new String[] { "packaged" }, record("aapt"))
+        .add("natives", NONE, new String[] { "libs" }, record("natives"));
+    assertTrue(graph.run(executor));
+    assertEquals(Arrays.asList("icons", "aapt"), graph.getCriticalPath());
+  }
+
+  private StageGraph.Stage record(final String name) {
+    return new StageGraph.Stage() {
+      @Override
+      public boolean run() {
+        ran.add(name);
+        return true;
+      }
+    };
+  }
+
+  private StageGraph.Stage sleep(final String name, final long millis) {
+    return new StageGraph.Stage() {
+      @Override
+      public boolean run() {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          return false;
+        }
+        ran.add(name);
+        return true;
+      }
+    };
+  }
+}
@@ -0,0 +1,81 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests WorkspacePool class.
+ */
+public class WorkspacePoolTest extends TestCase {
+
+  private File baseDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    baseDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(baseDir);
+  }
+
+  public void testWorkspaceIsResetAndReused() throws Exception {
+    WorkspacePool pool = new WorkspacePool(baseDir, 1);
+    File workspace = pool.acquire();
+    assertTrue(new File(workspace, "build/tmp").isDirectory());
+    assertTrue(new File(workspace, "build/res/values").isDirectory());
+
+    write(new File(workspace, "src/appinventor/ai_test/Test/Screen1.scm"));
+    write(new File(workspace, "build/res/values/styles.xml"));
+    write(new File(workspace, "build/classes/Screen1.class"));
+    write(new File(workspace, "build/exploded-aars/com.example/classes.jar"));
+    write(new File(workspace, "youngandroidproject/project.properties"));
+
+    pool.release(workspace);
+    assertEquals(1, pool.getIdleCount());
+    assertFalse(new File(workspace, "src/appinventor").exists());
+    assertFalse(new File(workspace, "build/res/values/styles.xml").exists());
+    assertFalse(new File(workspace, "build/classes").exists());
+    assertFalse(new File(workspace, "youngandroidproject/project.properties").exists());
+    assertTrue(new File(workspace, "build/res/values").isDirectory());
+    assertTrue(new File(workspace, "build/exploded-aars/com.example/classes.jar").isFile());
+
+    assertEquals(workspace, pool.acquire());
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(1, pool.getReusedCount());
+  }
+
+  public void testExtraWorkspacesAreDeleted() throws Exception {
+    WorkspacePool pool = new WorkspacePool(baseDir, 1);
+    File first = pool.acquire();
+    File second = pool.acquire();
+    assertFalse(first.equals(second));
+    pool.release(first);
+    pool.release(second);
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(1, pool.getDiscardedCount());
+    assertTrue(first.isDirectory());
+    assertFalse(second.exists());
+
+    pool.shutdown();
+    assertEquals(0, pool.getIdleCount());
+    assertFalse(first.exists());
+  }
+
+  private static void write(File file) throws Exception {
+    Files.createParentDirs(file);
+    Files.write("test", file, Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,122 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.buildserver.stats.CacheEvent;
+import com.google.appinventor.buildserver.stats.SimpleStatReporter;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tests YailClassCache class.
+ */
+public class YailClassCacheTest extends TestCase {
+  private File tempDir;
+  private File cacheDir;
+  private File runtime;
+  private SimpleStatReporter reporter;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    cacheDir = new File(tempDir, "cache");
+    runtime = write("runtime.scm", "(define x 1)");
+    reporter = new SimpleStatReporter();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  public void testKeyDependsOnInputs() throws Exception {
+    YailClassCache cache = new YailClassCache(cacheDir, 1 << 20, reporter);
+    File jar = write("lib.jar", "jar");
+    File source = write("src/Screen1.yail", "(foo)");
+    String classpathHash = cache.hashClasspath(jar.getPath());
+    String key = cache.key(classpathHash, runtime, "p.", "p/Screen1.yail", source);
+    assertEquals(key, cache.key(classpathHash, runtime, "p.", "p/Screen1.yail", source));
+    assertFalse(key.equals(cache.key(classpathHash, runtime, "q.", "p/Screen1.yail", source)));
+    assertFalse(key.equals(cache.key(classpathHash, runtime, "p.", null, null)));
+
+    write("src/Screen1.yail", "(bar)");
+    assertFalse(key.equals(cache.key(classpathHash, runtime, "p.", "p/Screen1.yail", source)));
+
+    write("lib.jar", "other jar");
+    jar.setLastModified(jar.lastModified() + 2000);
+    assertFalse(classpathHash.equals(cache.hashClasspath(jar.getPath())));
+  }
+
+  public void testStoreAndRestore() throws Exception {
+    YailClassCache cache = new YailClassCache(cacheDir, 1 << 20, reporter);
+    File classes = new File(tempDir, "classes1");
+    writeIn(classes, "p/Screen1.class", "screen");
+    writeIn(classes, "p/Screen1$frame.class", "frame");
+
+    File restored = new File(tempDir, "classes2");
+    assertFalse(cache.restore("k", restored));
+    cache.store("k", classes, Arrays.asList("p/Screen1.class", "p/Screen1$frame.class"));
+    assertTrue(cache.restore("k", restored));
+    assertEquals("frame",
+        Files.toString(new File(restored, "p/Screen1$frame.class"), Charsets.UTF_8));
+
+    // Entries survive a restart
+    cache = new YailClassCache(cacheDir, 1 << 20, reporter);
+    assertEquals(1, cache.getEntryCount());
+    assertEquals(11, cache.getTotalBytes());
+
+    Map<CacheEvent, Long> counts = reporter.getCacheStats().get(YailClassCache.NAME);
+    assertEquals(1L, (long) counts.get(CacheEvent.HIT));
+    assertEquals(1L, (long) counts.get(CacheEvent.MISS));
+  }
+
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    YailClassCache cache = new YailClassCache(cacheDir, 20, reporter);
+    File classes = new File(tempDir, "classes");
+    writeIn(classes, "A.class", "0123456789");
+    writeIn(classes, "B.class", "0123456789");
+    writeIn(classes, "C.class", "0123456789");
+    cache.store("a", classes, Arrays.asList("A.class"));
+    Thread.sleep(10);
+    cache.store("b", classes, Arrays.asList("B.class"));
+    Thread.sleep(10);
+    assertTrue(cache.restore("a", new File(tempDir, "out")));
+    cache.store("c", classes, Arrays.asList("C.class"));
+
+    assertEquals(2, cache.getEntryCount());
+    assertFalse(new File(cacheDir, "b").exists());
+    assertTrue(cache.restore("a", new File(tempDir, "out")));
+    assertTrue(cache.restore("c", new File(tempDir, "out")));
+    assertEquals(1L, (long) reporter.getCacheStats().get(YailClassCache.NAME)
+        .get(CacheEvent.EVICTION));
+  }
+
+  public void testPartialEntriesAreRemovedAtStartup() throws Exception {
+    writeIn(cacheDir, ".tmp-1234/p/Screen1.class", "partial");
+    YailClassCache cache = new YailClassCache(cacheDir, 1 << 20, reporter);
+    assertEquals(0, cache.getEntryCount());
+    assertFalse(new File(cacheDir, ".tmp-1234").exists());
+  }
+
+  private File write(String name, String content) throws Exception {
+    return writeIn(tempDir, name, content);
+  }
+
+  private static File writeIn(File dir, String name, String content) throws Exception {
+    File file = new File(dir, name);
+    Files.createParentDirs(file);
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+}
@@ -0,0 +1,81 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.stats;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests LatencyHistogram and WindowedLatencyHistogram classes.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+  private static final long MINUTE = 60 * 1000L;
+
+  public void testBucketsCoverAllValues() {
+    for (long value = 0; value < 100000; value++) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(value <= LatencyHistogram.highestValueInBucket(index));
+      if (index > 0) {
+        assertTrue(value > LatencyHistogram.highestValueInBucket(index - 1));
+      }
+    }
+    assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+  }
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500, histogram.getSum());
+    assertEquals(1000, histogram.getMax());
+    assertWithin(500, histogram.getValueAtPercentile(50));
+    assertWithin(900, histogram.getValueAtPercentile(90));
+    assertWithin(990, histogram.getValueAtPercentile(99));
+    assertEquals(1000, histogram.getValueAtPercentile(100));
+  }
+
+  public void testAdd() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    first.record(10);
+    second.record(5000);
+    first.add(second);
+    assertEquals(2, first.getCount());
+    assertEquals(5010, first.getSum());
+    assertEquals(5000, first.getMax());
+    assertEquals(10, first.getValueAtPercentile(50));
+  }
+
+  public void testWindows() {
+    WindowedLatencyHistogram histogram = new WindowedLatencyHistogram();
+    long start = 1000 * MINUTE;
+    histogram.record(100, start);
+    histogram.record(200, start + 2 * MINUTE);
+    histogram.record(300, start + 4 * MINUTE);
+    long now = start + 4 * MINUTE + 1000;
+    assertEquals(1, histogram.getWindow(1, now).getCount());
+    assertEquals(2, histogram.getWindow(3, now).getCount());
+    assertEquals(3, histogram.getWindow(5, now).getCount());
+    assertEquals(3, histogram.getTotal().getCount());
+
+    // Slots are reused once their minute has left the longest window
+    histogram.record(400, start + WindowedLatencyHistogram.MAX_WINDOW_MINUTES * MINUTE);
+    now = start + WindowedLatencyHistogram.MAX_WINDOW_MINUTES * MINUTE;
+    LatencyHistogram window = histogram.getWindow(WindowedLatencyHistogram.MAX_WINDOW_MINUTES,
+        now);
+    assertEquals(3, window.getCount());
+    assertEquals(900, window.getSum());
+    assertEquals(4, histogram.getTotal().getCount());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but got " + actual,
+        actual >= expected && actual <= expected * 1.125);
+  }
+}